@@ -16,6 +16,7 @@ android {
         versionCode = 1
         versionName = "1.0"
     }
+    useLibrary("android.test.mock") // MockContentResolver for the scanner's fake-provider tests
     lintOptions {
         disable("DependencyViolation") // This will suppress warnings like this one
     }
@@ -29,6 +30,7 @@ android {
 }
 
 dependencies {
+    implementation(project(":core"))
     implementation("androidx.appcompat:appcompat:1.3.0")
     implementation("androidx.constraintlayout:constraintlayout:2.1.4")
     implementation("androidx.core:core-ktx:1.12.0") // Downgrade from 1.13.0
@@ -37,6 +39,7 @@ dependencies {
     implementation("androidx.transition:transition:1.4.1") // Downgrade from 1.5.0
     implementation("androidx.annotation:annotation-experimental:1.3.0") // Downgrade from 1.4.0
     implementation("com.google.android.material:material:1.12.0")
+    implementation("androidx.recyclerview:recyclerview:1.3.2")
     implementation("com.github.bumptech.glide:glide:4.15.1")
     annotationProcessor("com.github.bumptech.glide:compiler:4.15.1")
     testImplementation("junit:junit:4.13.2")
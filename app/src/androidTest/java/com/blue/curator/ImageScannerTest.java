@@ -0,0 +1,340 @@
+package com.blue.curator;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.test.mock.MockContentResolver;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link ImageScanner} against a fake documents provider.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageScannerTest {
+
+    private static final String AUTHORITY = "com.blue.curator.test.documents";
+
+    private FakeDocumentsProvider provider;
+    private MockContentResolver resolver;
+    private Uri treeUri;
+
+    @Before
+    public void setUp() {
+        provider = new FakeDocumentsProvider();
+        ProviderInfo info = new ProviderInfo();
+        info.authority = AUTHORITY;
+        provider.attachInfo(InstrumentationRegistry.getInstrumentation().getTargetContext(), info);
+        resolver = new MockContentResolver();
+        resolver.addProvider(AUTHORITY, provider);
+        treeUri = DocumentsContract.buildTreeDocumentUri(AUTHORITY, "root");
+    }
+
+    @Test
+    public void scanIssuesOneQueryAndKeepsOnlyImages() {
+        provider.addImages(40);
+        provider.addRow("dir", "DCIM", DocumentsContract.Document.MIME_TYPE_DIR);
+        provider.addRow("notes", "notes.txt", "text/plain");
+
+        RecordingListener listener = new RecordingListener();
+        List<ScannedImage> images = new ImageScanner(resolver).scan(treeUri, listener);
+
+        assertEquals(1, provider.queries.get());
+        assertEquals(40, images.size());
+        assertEquals(40, listener.total);
+        assertEquals("img0", images.get(0).getDocumentId());
+        assertEquals("image/jpeg", images.get(0).getMimeType());
+        assertEquals(1000, images.get(0).getSize());
+    }
+
+    @Test
+    public void firstPageArrivesBeforeTheRest() {
+        provider.addImages(600);
+
+        RecordingListener listener = new RecordingListener();
+        new ImageScanner(resolver, 256).scan(treeUri, listener);
+
+        assertTrue(listener.pages.size() > 2);
+        assertTrue(listener.pages.get(0).size() < 256);
+        int seen = 0;
+        for (List<ScannedImage> page : listener.pages) {
+            assertEquals("img" + seen, page.get(0).getDocumentId());
+            seen += page.size();
+        }
+        assertEquals(600, seen);
+    }
+
+    @Test
+    public void cancelledScanStopsEarly() {
+        provider.addImages(1000);
+
+        ImageScanner scanner = new ImageScanner(resolver, 16);
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void onPage(List<ScannedImage> page) {
+                super.onPage(page);
+                scanner.cancel();
+            }
+        };
+        List<ScannedImage> images = scanner.scan(treeUri, listener);
+
+        assertTrue(images.size() < 1000);
+    }
+
+    @Test
+    public void recursiveScanReleasesFoldersInPreOrder() {
+        provider.addRow("root", "r0", "IMG_0.jpg", "image/jpeg");
+        provider.addFolder("root", "a.1", "a.1");
+        provider.addFolder("root", "a", "a");
+        provider.addFolder("root", "a-b", "a-b");
+        provider.addFolder("root", "hidden", ".thumbnails");
+        provider.addFolder("root", "export", TreeExportTarget.FOLDER_NAME);
+        provider.addFolder("a", "a/x", "x");
+        for (String folder : new String[]{"a", "a/x", "a-b", "a.1", "hidden", "export"}) {
+            provider.addRow(folder, folder + "/0", "IMG_0.jpg", "image/jpeg");
+        }
+
+        RecordingListener listener = new RecordingListener();
+        List<ScannedImage> images = new ImageScanner(resolver).scanRecursive(treeUri, listener);
+
+        assertEquals(Arrays.asList("r0", "a/0", "a/x/0", "a-b/0", "a.1/0"), documentIds(images));
+        assertEquals(documentIds(images), documentIds(listener.released()));
+        assertEquals(5, listener.total);
+        assertEquals(5, provider.queries.get());  // Hidden and export folders are never listed
+        assertEquals("a/x", images.get(2).getFolderPath());
+        assertEquals(5, listener.lastScanned);
+        assertEquals(5, listener.lastFound);
+    }
+
+    @Test
+    public void recursiveScanCapsQueriesInFlight() {
+        for (int i = 0; i < 12; i++) {
+            provider.addFolder("root", "f" + i, "folder " + i);
+            provider.addRow("f" + i, "f" + i + "/0", "IMG_0.jpg", "image/jpeg");
+        }
+        provider.queryMillis = 50;
+        ExecutorService folders = Executors.newFixedThreadPool(8);
+        try {
+            List<ScannedImage> images = new ImageScanner(resolver).scanRecursive(
+                    treeUri, new RecordingListener(), folders, 2);
+
+            assertEquals(12, images.size());
+            assertEquals(13, provider.queries.get());
+            assertTrue(provider.maxInFlight.get() <= 2);
+        } finally {
+            folders.shutdown();
+        }
+    }
+
+    @Test
+    public void recursiveScanReleasesEarlyFoldersWhileLaterOnesAreListed() {
+        provider.addFolder("root", "a", "a");
+        provider.addFolder("root", "b", "b");
+        provider.addRow("a", "a/0", "IMG_0.jpg", "image/jpeg");
+        provider.addRow("b", "b/0", "IMG_0.jpg", "image/jpeg");
+        provider.gated = "b";  // Listed only once "a" has been handed out
+
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void onPage(List<ScannedImage> page) {
+                super.onPage(page);
+                if (page.get(0).getDocumentId().equals("a/0")) {
+                    provider.gate.countDown();
+                }
+            }
+        };
+        List<ScannedImage> images = new ImageScanner(resolver).scanRecursive(treeUri, listener);
+
+        assertTrue(provider.gateOpened);
+        assertEquals(Arrays.asList("a/0", "b/0"), documentIds(images));
+    }
+
+    @Test(timeout = 10_000)
+    public void recursiveScanEndsWhenAFolderOrTheListenerThrows() {
+        provider.addFolder("root", "bad", "bad");
+        provider.addFolder("root", "good", "good");
+        provider.addRow("bad", "bad/0", "IMG_0.jpg", "image/jpeg");
+        provider.addRow("good", "good/0", "IMG_0.jpg", "image/jpeg");
+        provider.failing = "bad";
+        List<Throwable> thrown = new CopyOnWriteArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        // Catches what escapes a folder task, as the uncaught handler would otherwise end the process
+        Executor folders = task -> pool.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                thrown.add(e);
+            }
+        });
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void onProgress(int foldersScanned, int foldersFound) {
+                super.onProgress(foldersScanned, foldersFound);
+                if (foldersScanned == 1) {
+                    throw new IllegalStateException("Listener failed");
+                }
+            }
+        };
+        try {
+            List<ScannedImage> images = new ImageScanner(resolver).scanRecursive(treeUri, listener, folders, 2);
+
+            assertEquals(Arrays.asList("good/0"), documentIds(images));
+            assertEquals(1, thrown.size());
+            assertEquals(1, listener.total);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<String> documentIds(List<ScannedImage> images) {
+        List<String> ids = new ArrayList<>();
+        for (ScannedImage image : images) {
+            ids.add(image.getDocumentId());
+        }
+        return ids;
+    }
+
+    private static class RecordingListener implements ImageScanner.Listener {
+        final List<List<ScannedImage>> pages = new CopyOnWriteArrayList<>();
+        volatile int total = -1;
+        volatile int lastScanned;
+        volatile int lastFound;
+
+        @Override
+        public void onPage(List<ScannedImage> page) {
+            pages.add(new ArrayList<>(page));
+        }
+
+        @Override
+        public void onComplete(int totalImages) {
+            total = totalImages;
+        }
+
+        @Override
+        public void onProgress(int foldersScanned, int foldersFound) {
+            lastScanned = foldersScanned;
+            lastFound = foldersFound;
+        }
+
+        List<ScannedImage> released() {
+            List<ScannedImage> released = new ArrayList<>();
+            for (List<ScannedImage> page : pages) {
+                released.addAll(page);
+            }
+            return released;
+        }
+    }
+
+    /** Children of each folder, by folder document id; set up before a scan and only read during it. */
+    private static class FakeDocumentsProvider extends ContentProvider {
+        private final Map<String, List<Object[]>> children = new HashMap<>();
+        final AtomicInteger queries = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        final CountDownLatch gate = new CountDownLatch(1);
+        volatile long queryMillis;
+        volatile String failing;  // Folder whose query throws
+        volatile String gated;  // Folder whose query waits for the gate
+        volatile boolean gateOpened;
+
+        void addImages(int count) {
+            for (int i = 0; i < count; i++) {
+                addRow("img" + i, "IMG_" + i + ".jpg", "image/jpeg");
+            }
+        }
+
+        void addRow(String documentId, String name, String mimeType) {
+            addRow("root", documentId, name, mimeType);
+        }
+
+        void addRow(String folder, String documentId, String name, String mimeType) {
+            children.computeIfAbsent(folder, f -> new ArrayList<>())
+                    .add(new Object[]{documentId, name, mimeType, 1000L, 1700000000000L});
+        }
+
+        void addFolder(String parent, String documentId, String name) {
+            addRow(parent, documentId, name, DocumentsContract.Document.MIME_TYPE_DIR);
+        }
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                            String sortOrder) {
+            queries.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                String folder = DocumentsContract.getDocumentId(uri);
+                if (folder.equals(failing)) {
+                    throw new IllegalStateException("Cannot list " + folder);
+                }
+                if (folder.equals(gated)) {
+                    gateOpened = gate.await(10, TimeUnit.SECONDS);
+                }
+                if (queryMillis > 0) {
+                    Thread.sleep(queryMillis);
+                }
+                MatrixCursor cursor = new MatrixCursor(ImageScanner.PROJECTION);
+                List<Object[]> rows = children.get(folder);
+                if (rows != null) {
+                    for (Object[] row : rows) {
+                        cursor.addRow(row);
+                    }
+                }
+                return cursor;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.blue.curator;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link MetadataIndex} against a real SQLite database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MetadataIndexTest {
+
+    private static final String TREE = "content://test/tree/root";
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private Context context;
+    private MetadataIndex index;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase("metadata.db");
+        index = new MetadataIndex(context);
+    }
+
+    @After
+    public void tearDown() {
+        index.close();
+        context.deleteDatabase("metadata.db");
+    }
+
+    @Test
+    public void filtersByDecisionAndCameraInCaptureOrder() {
+        List<ScannedImage> images = images("a", "b", "c", "d");
+        index.syncScan(TREE, images, new int[]{0, 3, 0, 3}, UTC);
+        Map<String, ExifInfo> exif = new HashMap<>();
+        exif.put("a", new ExifInfo(4000, 1, "Canon EOS R6", 6000, 4000));
+        exif.put("b", new ExifInfo(3000, 1, "Canon EOS R6", 6000, 4000));
+        exif.put("c", new ExifInfo(2000, 1, "Pixel 8", 4000, 3000));
+        exif.put("d", new ExifInfo(1000, 1, "Pixel 8", 4000, 3000));
+        index.updateExif(TREE, images, exif, UTC);
+
+        assertEquals(Arrays.asList("d", "c", "b", "a"), ids(index.query(ImageQuery.in(TREE))));
+        assertEquals(Arrays.asList("c", "a"), ids(index.query(ImageQuery.in(TREE).withDecision(CategoryIndex.UNDECIDED))));
+        assertEquals(Collections.singletonList("b"),
+                ids(index.query(ImageQuery.in(TREE).withDecision(3).fromCamera("Canon EOS R6"))));
+        assertEquals(Arrays.asList("Canon EOS R6", "Pixel 8"), index.cameras(TREE));
+
+        index.setDecision(TREE, "c", 1);
+        assertEquals(Collections.singletonList("a"),
+                ids(index.query(ImageQuery.in(TREE).withDecision(CategoryIndex.UNDECIDED))));
+
+        index.setDecisions(TREE, Arrays.asList("a", "b"), 2);
+        assertEquals(Arrays.asList("b", "a"), ids(index.query(ImageQuery.in(TREE).withDecision(2))));
+        assertEquals(Collections.emptyList(),
+                ids(index.query(ImageQuery.in(TREE).withDecision(CategoryIndex.UNDECIDED))));
+    }
+
+    @Test
+    public void rescansDropVanishedImagesAndStaleHashes() {
+        index.syncScan(TREE, images("a", "b"), new int[]{0, 0}, UTC);
+        Map<String, Long> hashes = new HashMap<>();
+        hashes.put("a", 1L);
+        hashes.put("b", 2L);
+        index.updateHashes(TREE, hashes);
+
+        List<ScannedImage> rescanned = new ArrayList<>();
+        rescanned.add(new ScannedImage("a", "a.jpg", "image/jpeg", 10, 99));  // Edited
+        rescanned.add(new ScannedImage("c", "c.jpg", "image/jpeg", 10, 3));
+        index.syncScan(TREE, rescanned, new int[]{0, 0}, UTC);
+        index.syncScan("content://test/tree/other", images("x"), new int[]{0}, UTC);
+
+        ImageSequence all = index.query(ImageQuery.in(TREE).orderedBy(ImageQuery.Order.NAME));
+        assertEquals(Arrays.asList("a", "c"), ids(all));
+        try (android.database.Cursor cursor = index.getReadableDatabase().rawQuery(
+                "SELECT dhash FROM images WHERE tree = ? AND document_id = 'a'", new String[]{TREE})) {
+            assertTrue(cursor.moveToFirst());
+            assertTrue(cursor.isNull(0));
+        }
+    }
+
+    @Test
+    public void sequenceReadsRowsOnDemand() {
+        int count = 5000;
+        List<ScannedImage> images = new ArrayList<>(count);
+        int[] decisions = new int[count];
+        for (int i = 0; i < count; i++) {
+            images.add(new ScannedImage(String.format("img%05d", i), "DCIM", "img" + i + ".jpg", "image/jpeg", i, i));
+        }
+        index.syncScan(TREE, images, decisions, UTC);
+        ImageSequence sequence = index.query(ImageQuery.in(TREE));
+        try {
+            assertEquals(count, sequence.size());
+            assertEquals("img04999", sequence.get(count - 1).getDocumentId());
+            assertEquals("img00000", sequence.get(0).getDocumentId());
+            assertEquals("DCIM", sequence.get(0).getFolderPath());
+        } finally {
+            sequence.close();
+        }
+    }
+
+    private static List<ScannedImage> images(String... ids) {
+        List<ScannedImage> images = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            images.add(new ScannedImage(ids[i], ids[i] + ".jpg", "image/jpeg", 10, i + 1));
+        }
+        return images;
+    }
+
+    private static List<String> ids(ImageSequence sequence) {
+        List<String> ids = new ArrayList<>();
+        try {
+            for (int i = 0; i < sequence.size(); i++) {
+                ids.add(sequence.get(i).getDocumentId());
+            }
+        } finally {
+            sequence.close();
+        }
+        return ids;
+    }
+}
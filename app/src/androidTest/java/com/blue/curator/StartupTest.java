@@ -0,0 +1,94 @@
+package com.blue.curator;
+
+import android.content.Context;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Launches {@link MainActivity} and holds its start to the budgets below.
+ * The snapshot written here names a folder the app has no grant for, so the
+ * restore reads and checks it in full and then falls back to the start dialog.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupTest {
+
+    private static final String TREE = "content://test/tree/root";
+    private static final long RESTORE_BUDGET_MILLIS = 16;  // One frame
+    private static final long CREATE_TO_READY_BUDGET_MILLIS = 1500;
+    private static final long WARM_BUDGET_MILLIS = 1000;
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private Context context;
+    private File snapshotFile;
+
+    @Before
+    public void setUp() throws IOException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        snapshotFile = new File(context.getFilesDir(), MainActivity.SESSION_SNAPSHOT_FILE);
+        ScannedImage image = new ScannedImage("root/IMG_1.jpg", "IMG_1.jpg", "image/jpeg", 1000, 1);
+        new SessionSnapshot(TREE, image, 0, 1, new int[]{0, 0, 0}).write(snapshotFile);
+        context.getSharedPreferences("MyAppPreferences", Context.MODE_PRIVATE).edit()
+                .putString("directoryUri", TREE).commit();
+    }
+
+    @After
+    public void tearDown() {
+        snapshotFile.delete();
+        context.getSharedPreferences("MyAppPreferences", Context.MODE_PRIVATE).edit()
+                .remove("directoryUri").commit();
+    }
+
+    @Test
+    public void startsWithinBudget() throws InterruptedException {
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            StartupTiming first = awaitReady(scenario);
+            assertTrue(first.toString(), millis(first.sinceCreateNanos()) < CREATE_TO_READY_BUDGET_MILLIS);
+            AtomicReference<Histogram> restore = new AtomicReference<>();
+            scenario.onActivity(activity ->
+                    restore.set(activity.metrics().histogram(Metrics.SESSION_RESTORE_NANOS)));
+            assertEquals(1, restore.get().count());
+            assertTrue("restore took " + millis(restore.get().max()) + " ms",
+                    millis(restore.get().max()) < RESTORE_BUDGET_MILLIS);
+
+            scenario.recreate();  // A new activity in the same process
+            StartupTiming warm = awaitReady(scenario);
+            assertEquals(StartupTiming.Kind.WARM, warm.kind());
+            assertTrue(warm.toString(), millis(warm.startupNanos()) < WARM_BUDGET_MILLIS);
+        }
+    }
+
+    private static StartupTiming awaitReady(ActivityScenario<MainActivity> scenario) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        AtomicReference<StartupTiming> ready = new AtomicReference<>();
+        while (System.nanoTime() < deadline) {
+            scenario.onActivity(activity -> {
+                if (activity.startupTiming().isReady()) {
+                    ready.set(activity.startupTiming());
+                }
+            });
+            if (ready.get() != null) {
+                return ready.get();
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Not ready within " + TIMEOUT_MILLIS + " ms");
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,102 @@
+package com.blue.curator;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Trace;
+import android.provider.DocumentsContract;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Hashes images in the picked tree from the smallest decode that will do.
+ *
+ * The embedded EXIF preview is tried first: it sits in the first few
+ * kilobytes and is already only about 160x120. Images without one are decoded
+ * with the largest power-of-two subsampling that keeps them at least
+ * {@code MIN_DECODE_SIZE} pixels on the short side, in RGB_565. Either way
+ * the result is scaled to 9x8 for {@link PerceptualHash#dHash}.
+ */
+public class BitmapHasher implements SimilarityAnalyzer.Hasher {
+
+    private static final int MIN_DECODE_SIZE = 64;
+
+    private final ContentResolver contentResolver;
+    private final Uri treeUri;
+
+    public BitmapHasher(ContentResolver contentResolver, Uri treeUri) {
+        this.contentResolver = contentResolver;
+        this.treeUri = treeUri;
+    }
+
+    @Override
+    public long hash(ScannedImage image) throws IOException {
+        Trace.beginSection("dHash");
+        try {
+            Uri uri = DocumentsContract.buildDocumentUriUsingTree(treeUri, image.getDocumentId());
+            Bitmap bitmap = decodePreview(uri);
+            if (bitmap == null) {
+                bitmap = decodeSubsampled(uri);
+            }
+            if (bitmap == null) {
+                throw new IOException("Cannot decode " + uri);
+            }
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, PerceptualHash.WIDTH, PerceptualHash.HEIGHT, true);
+            int[] pixels = new int[PerceptualHash.WIDTH * PerceptualHash.HEIGHT];
+            scaled.getPixels(pixels, 0, PerceptualHash.WIDTH, 0, 0, PerceptualHash.WIDTH, PerceptualHash.HEIGHT);
+            if (scaled != bitmap) {
+                scaled.recycle();
+            }
+            bitmap.recycle();
+            return PerceptualHash.dHash(pixels);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private Bitmap decodePreview(Uri uri) throws IOException {
+        byte[] preview;
+        try (InputStream in = open(uri)) {
+            preview = ExifThumbnailReader.read(in);
+        }
+        if (preview == null) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeByteArray(preview, 0, preview.length, options);
+    }
+
+    private Bitmap decodeSubsampled(Uri uri) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = open(uri)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        int shortSide = Math.min(options.outWidth, options.outHeight);
+        if (shortSide <= 0) {
+            return null;
+        }
+        int sampleSize = 1;
+        while (shortSide / (sampleSize * 2) >= MIN_DECODE_SIZE) {
+            sampleSize *= 2;
+        }
+        options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        try (InputStream in = open(uri)) {
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+    }
+
+    private InputStream open(Uri uri) throws IOException {
+        InputStream in = contentResolver.openInputStream(uri);
+        if (in == null) {
+            throw new FileNotFoundException("No stream for " + uri);
+        }
+        return in;
+    }
+}
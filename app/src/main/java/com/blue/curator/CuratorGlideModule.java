@@ -0,0 +1,69 @@
+package com.blue.curator;
+
+import android.content.Context;
+import android.os.Build;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.module.AppGlideModule;
+import com.bumptech.glide.request.RequestOptions;
+
+import java.io.InputStream;
+
+/**
+ * Sizes Glide's memory cache and bitmap pool from the {@link DecodeBudget}
+ * and picks the cheapest safe bitmap format.
+ *
+ * Glide reads each image's bounds first and subsamples it to the size of the
+ * target, so requests made at the view's size never decode the original.
+ * From Android O bitmaps may be hardware bitmaps, which Glide uses by default
+ * and which keep the pixels out of the app heap; before that, RGB_565 halves
+ * the size of opaque images (Glide keeps ARGB_8888 for images with alpha).
+ * It also registers {@link ExifThumbnailLoader} for instant previews.
+ */
+@GlideModule
+public final class CuratorGlideModule extends AppGlideModule {
+
+    /** Optional override of the budget, in bytes; 0 uses the default share of the heap. */
+    static final String PREF_BITMAP_BUDGET_BYTES = "bitmapBudgetBytes";
+
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        DecodeBudget budget = budget(context);
+        builder.setMemoryCache(new LruResourceCache(budget.memoryCacheBytes()));
+        builder.setBitmapPool(new LruBitmapPool(budget.bitmapPoolBytes()));
+        builder.setDefaultRequestOptions(new RequestOptions().format(usesRgb565()
+                ? DecodeFormat.PREFER_RGB_565 : DecodeFormat.PREFER_ARGB_8888));
+    }
+
+    @Override
+    public void registerComponents(Context context, Glide glide, Registry registry) {
+        registry.prepend(ExifThumbnailLoader.Thumbnail.class, InputStream.class,
+                new ExifThumbnailLoader.Factory(context.getContentResolver()));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+
+    static DecodeBudget budget(Context context) {
+        long configured = context.getSharedPreferences("MyAppPreferences", Context.MODE_PRIVATE)
+                .getLong(PREF_BITMAP_BUDGET_BYTES, 0);
+        return DecodeBudget.forHeap(Runtime.getRuntime().maxMemory(), configured);
+    }
+
+    static boolean usesRgb565() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.O;
+    }
+
+    /** Bytes per pixel of the bitmaps this module asks for, for budgeting. */
+    static int bytesPerPixel() {
+        return usesRgb565() ? 2 : 4;
+    }
+}
@@ -0,0 +1,54 @@
+package com.blue.curator;
+
+import android.database.Cursor;
+
+/**
+ * An {@link ImageSequence} over the rows of a {@link MetadataIndex} query.
+ * The cursor keeps one window of rows in memory and refills it as positions
+ * move, so only the images actually visited are built. Read it from one
+ * thread.
+ */
+class CursorImageSequence implements ImageSequence {
+
+    private final Cursor cursor;
+    private final int size;
+    private final int documentIdColumn;
+    private final int folderColumn;
+    private final int displayNameColumn;
+    private final int mimeTypeColumn;
+    private final int sizeColumn;
+    private final int lastModifiedColumn;
+
+    /** Counting the rows runs the query, so construct it off the UI thread. */
+    CursorImageSequence(Cursor cursor) {
+        this.cursor = cursor;
+        this.size = cursor.getCount();
+        documentIdColumn = cursor.getColumnIndexOrThrow(MetadataIndex.COLUMN_DOCUMENT_ID);
+        folderColumn = cursor.getColumnIndexOrThrow(MetadataIndex.COLUMN_FOLDER);
+        displayNameColumn = cursor.getColumnIndexOrThrow(MetadataIndex.COLUMN_DISPLAY_NAME);
+        mimeTypeColumn = cursor.getColumnIndexOrThrow(MetadataIndex.COLUMN_MIME_TYPE);
+        sizeColumn = cursor.getColumnIndexOrThrow(MetadataIndex.COLUMN_SIZE);
+        lastModifiedColumn = cursor.getColumnIndexOrThrow(MetadataIndex.COLUMN_LAST_MODIFIED);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public ScannedImage get(int position) {
+        if (!cursor.moveToPosition(position)) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size);
+        }
+        String folder = cursor.getString(folderColumn);
+        return new ScannedImage(cursor.getString(documentIdColumn), folder == null ? "" : folder,
+                cursor.getString(displayNameColumn), cursor.getString(mimeTypeColumn),
+                cursor.getLong(sizeColumn), cursor.getLong(lastModifiedColumn));
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+}
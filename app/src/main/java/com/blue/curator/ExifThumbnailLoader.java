@@ -0,0 +1,140 @@
+package com.blue.curator;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Trace;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Lets Glide load the embedded EXIF preview of an image: load a
+ * {@link Thumbnail} instead of the image's URI. The fetcher opens the
+ * document, reads only up to its APP1 segment with
+ * {@link ExifThumbnailReader}, and hands the preview to Glide's normal JPEG
+ * decoding. An image without a preview fails the load, so a thumbnail
+ * request built on it simply shows nothing and the full image follows.
+ */
+public class ExifThumbnailLoader implements ModelLoader<ExifThumbnailLoader.Thumbnail, InputStream> {
+
+    /** The embedded preview of the image at {@code uri}. */
+    public static final class Thumbnail {
+        private final Uri uri;
+
+        public Thumbnail(Uri uri) {
+            this.uri = uri;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Thumbnail && ((Thumbnail) o).uri.equals(uri);
+        }
+
+        @Override
+        public int hashCode() {
+            return uri.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "Thumbnail(" + uri + ")";
+        }
+    }
+
+    private final ContentResolver contentResolver;
+
+    ExifThumbnailLoader(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    @Override
+    public LoadData<InputStream> buildLoadData(Thumbnail model, int width, int height, Options options) {
+        return new LoadData<>(new ObjectKey(model), new Fetcher(contentResolver, model.uri));
+    }
+
+    @Override
+    public boolean handles(Thumbnail model) {
+        return true;
+    }
+
+    private static final class Fetcher implements DataFetcher<InputStream> {
+        private final ContentResolver contentResolver;
+        private final Uri uri;
+
+        Fetcher(ContentResolver contentResolver, Uri uri) {
+            this.contentResolver = contentResolver;
+            this.uri = uri;
+        }
+
+        @Override
+        public void loadData(Priority priority, DataCallback<? super InputStream> callback) {
+            byte[] preview;
+            Trace.beginSection("read EXIF preview");
+            try (InputStream in = contentResolver.openInputStream(uri)) {
+                if (in == null) {
+                    throw new FileNotFoundException("No stream for " + uri);
+                }
+                preview = ExifThumbnailReader.read(in);
+            } catch (IOException | RuntimeException e) {
+                callback.onLoadFailed(e);
+                return;
+            } finally {
+                Trace.endSection();
+            }
+            if (preview == null) {
+                callback.onLoadFailed(new IOException("No embedded preview in " + uri));
+            } else {
+                callback.onDataReady(new ByteArrayInputStream(preview));
+            }
+        }
+
+        @Override
+        public void cleanup() {
+            // The stream is closed as soon as the preview has been read
+        }
+
+        @Override
+        public void cancel() {
+            // Reading a few kilobytes is not worth interrupting
+        }
+
+        @Override
+        public Class<InputStream> getDataClass() {
+            return InputStream.class;
+        }
+
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.LOCAL;
+        }
+    }
+
+    /** Registered by {@link CuratorGlideModule}. */
+    public static final class Factory implements ModelLoaderFactory<Thumbnail, InputStream> {
+        private final ContentResolver contentResolver;
+
+        public Factory(ContentResolver contentResolver) {
+            this.contentResolver = contentResolver;
+        }
+
+        @Override
+        public ModelLoader<Thumbnail, InputStream> build(MultiModelLoaderFactory multiFactory) {
+            return new ExifThumbnailLoader(contentResolver);
+        }
+
+        @Override
+        public void teardown() {
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.blue.curator;
+
+import android.graphics.drawable.Drawable;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Prefetches images into Glide's memory cache for a {@link PrefetchScheduler}.
+ * Requests come from the same builder the screen uses, at low priority and
+ * at the size the screen will ask for, so a prefetched image is a memory
+ * cache hit when it is shown. Cancelling clears the request.
+ */
+public class GlidePrefetchLoader implements PrefetchScheduler.Loader {
+
+    /** Size the screen loads images at, known once the view is laid out. */
+    public interface SizeProvider {
+        int width();
+
+        int height();
+    }
+
+    private final RequestManager requestManager;
+    private final IntFunction<RequestBuilder<Drawable>> requests;
+    private final SizeProvider size;
+    private final Map<Integer, Target<Drawable>> targets = new HashMap<>();
+
+    public GlidePrefetchLoader(RequestManager requestManager, IntFunction<RequestBuilder<Drawable>> requests,
+                               SizeProvider size) {
+        this.requestManager = requestManager;
+        this.requests = requests;
+        this.size = size;
+    }
+
+    @Override
+    public void prefetch(int position, Runnable whenReady, Runnable whenFailed) {
+        boolean[] finished = new boolean[1];  // A memory cache hit finishes inside preload()
+        Target<Drawable> target = requests.apply(position)
+                .priority(Priority.LOW)
+                .listener(new RequestListener<Drawable>() {
+                    @Override
+                    public boolean onLoadFailed(GlideException e, Object model, Target<Drawable> target,
+                                                boolean isFirstResource) {
+                        finished[0] = true;
+                        targets.remove(position, target);
+                        whenFailed.run();  // Frees the scheduler's slot for another image
+                        return false;
+                    }
+
+                    @Override
+                    public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target,
+                                                   DataSource dataSource, boolean isFirstResource) {
+                        finished[0] = true;
+                        targets.remove(position, target);
+                        whenReady.run();
+                        return false;
+                    }
+                })
+                .preload(size.width(), size.height());
+        if (!finished[0]) {
+            targets.put(position, target);
+        }
+    }
+
+    @Override
+    public void cancel(int position) {
+        Target<Drawable> target = targets.remove(position);
+        if (target != null) {
+            requestManager.clear(target);
+        }
+    }
+}
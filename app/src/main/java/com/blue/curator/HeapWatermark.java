@@ -0,0 +1,33 @@
+package com.blue.curator;
+
+import android.os.Debug;
+
+/**
+ * Tracks the highest memory use seen while images are decoded: the Java heap
+ * plus the native heap, where bitmap pixels live from Android O on. Sampled
+ * whenever an image finishes loading.
+ */
+public class HeapWatermark {
+
+    private long peakJavaBytes;
+    private long peakNativeBytes;
+
+    public void sample() {
+        Runtime runtime = Runtime.getRuntime();
+        peakJavaBytes = Math.max(peakJavaBytes, runtime.totalMemory() - runtime.freeMemory());
+        peakNativeBytes = Math.max(peakNativeBytes, Debug.getNativeHeapAllocatedSize());
+    }
+
+    public long peakJavaBytes() {
+        return peakJavaBytes;
+    }
+
+    public long peakNativeBytes() {
+        return peakNativeBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "peak heap: " + (peakJavaBytes >> 20) + " MiB java, " + (peakNativeBytes >> 20) + " MiB native";
+    }
+}
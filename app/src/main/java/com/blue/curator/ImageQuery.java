@@ -0,0 +1,91 @@
+package com.blue.curator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A filtered, sorted view of one tree's images in the {@link MetadataIndex},
+ * such as "undecided, by capture time" or "Not Sure from one camera". Each
+ * narrowing returns a new query. The SQL it produces is matched by the
+ * index's compound indexes, so the rows come out in order without a sort.
+ */
+public final class ImageQuery {
+
+    /** Sort orders. */
+    public enum Order {
+        CAPTURE_TIME(MetadataIndex.COLUMN_CAPTURE_TIME + ", " + MetadataIndex.COLUMN_DISPLAY_NAME),
+        NAME(MetadataIndex.COLUMN_DISPLAY_NAME);
+
+        final String orderBy;
+
+        Order(String orderBy) {
+            this.orderBy = orderBy;
+        }
+    }
+
+    private final String tree;
+    private final Integer decision;
+    private final String camera;
+    private final Order order;
+
+    private ImageQuery(String tree, Integer decision, String camera, Order order) {
+        this.tree = tree;
+        this.decision = decision;
+        this.camera = camera;
+        this.order = order;
+    }
+
+    /** Every image of {@code tree}, by capture time. */
+    public static ImageQuery in(String tree) {
+        return new ImageQuery(tree, null, null, Order.CAPTURE_TIME);
+    }
+
+    /** Only images in {@code bucket}; {@link CategoryIndex#UNDECIDED} for the undecided ones. */
+    public ImageQuery withDecision(int bucket) {
+        return new ImageQuery(tree, bucket, camera, order);
+    }
+
+    public ImageQuery fromCamera(String camera) {
+        return new ImageQuery(tree, decision, camera, order);
+    }
+
+    public ImageQuery orderedBy(Order order) {
+        return new ImageQuery(tree, decision, camera, order);
+    }
+
+    public String getTree() {
+        return tree;
+    }
+
+    String selection() {
+        StringBuilder selection = new StringBuilder(MetadataIndex.COLUMN_TREE + " = ?");
+        if (decision != null) {
+            selection.append(" AND ").append(MetadataIndex.COLUMN_DECISION).append(" = ?");
+        }
+        if (camera != null) {
+            selection.append(" AND ").append(MetadataIndex.COLUMN_CAMERA).append(" = ?");
+        }
+        return selection.toString();
+    }
+
+    String[] selectionArgs() {
+        List<String> args = new ArrayList<>(3);
+        args.add(tree);
+        if (decision != null) {
+            args.add(Integer.toString(decision));
+        }
+        if (camera != null) {
+            args.add(camera);
+        }
+        return args.toArray(new String[0]);
+    }
+
+    String orderBy() {
+        return order.orderBy;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageQuery(" + selection() + " " + String.join(", ", selectionArgs()) + " ORDER BY " + orderBy() + ")";
+    }
+}
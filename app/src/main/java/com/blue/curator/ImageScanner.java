@@ -0,0 +1,285 @@
+package com.blue.curator;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.Trace;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lists the images directly inside a picked document tree.
+ *
+ * The whole listing is one {@code ContentResolver.query} on the tree's
+ * children URI with only the columns the curator needs, instead of one
+ * query per child the way {@code DocumentFile.listFiles()} plus
+ * {@code isFile()}/{@code getType()} works. Rows are filtered to
+ * {@code image/*} while the cursor is walked and handed to the listener in
+ * pages: the first page is small so the first image can be shown right
+ * away, later pages are larger to keep hand-offs to the UI thread rare.
+ *
+ * {@link #scanRecursive} walks nested folders too, listing several folders
+ * at once while capping how many provider queries are in flight. The folders
+ * of every scan in the process are listed on one small shared pool, so roots
+ * scanning side by side do not each add threads of their own. Its results
+ * are released in a deterministic pre-order (see {@link FolderScanOrder}) as
+ * soon as each folder and everything before it is done.
+ */
+public class ImageScanner {
+
+    private static final String TAG = "ImageScanner";
+    private static final int FIRST_PAGE_SIZE = 16;
+    private static final int DEFAULT_PAGE_SIZE = 256;
+    private static final int DEFAULT_MAX_IN_FLIGHT_QUERIES = 4;
+    private static final int FOLDER_THREADS = 4;  // Shared by the recursive scans of all roots
+    private static final long IDLE_SECONDS = 30;
+
+    private static final Executor FOLDER_POOL = folderPool();
+
+    static final String[] PROJECTION = {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_MIME_TYPE,
+            DocumentsContract.Document.COLUMN_SIZE,
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED,
+    };
+
+    /** Receives scan results; called on the scanning thread. */
+    public interface Listener {
+        void onPage(List<ScannedImage> page);
+
+        void onComplete(int totalImages);
+
+        /** Recursive scans only: folders listed so far out of folders discovered so far. */
+        default void onProgress(int foldersScanned, int foldersFound) {
+        }
+    }
+
+    private final ContentResolver contentResolver;
+    private final int pageSize;
+    private final CancellationSignal cancellationSignal = new CancellationSignal();
+
+    public ImageScanner(ContentResolver contentResolver) {
+        this(contentResolver, DEFAULT_PAGE_SIZE);
+    }
+
+    public ImageScanner(ContentResolver contentResolver, int pageSize) {
+        this.contentResolver = contentResolver;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Scans the top level of {@code treeUri}, blocking until the cursor is
+     * exhausted or the scan is cancelled. Returns every image found.
+     */
+    public List<ScannedImage> scan(Uri treeUri, Listener listener) {
+        Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(
+                treeUri, DocumentsContract.getTreeDocumentId(treeUri));
+        List<ScannedImage> images = new ArrayList<>();
+        List<ScannedImage> page = new ArrayList<>(FIRST_PAGE_SIZE);
+        int pageLimit = Math.min(FIRST_PAGE_SIZE, pageSize);
+
+        try (Cursor cursor = contentResolver.query(childrenUri, PROJECTION, null, null, null, cancellationSignal)) {
+            if (cursor == null) {
+                Log.e(TAG, "Provider returned no cursor for " + childrenUri);
+                listener.onComplete(0);
+                return images;
+            }
+            while (cursor.moveToNext() && !cancellationSignal.isCanceled()) {
+                String mimeType = cursor.getString(2);
+                if (!ScannedImage.isImageType(mimeType)) {
+                    continue;
+                }
+                ScannedImage image = readImage(cursor, "");
+                images.add(image);
+                page.add(image);
+                if (page.size() >= pageLimit) {
+                    listener.onPage(page);
+                    page = new ArrayList<>(pageSize);
+                    pageLimit = pageSize;
+                }
+            }
+        } catch (OperationCanceledException e) {
+            Log.d(TAG, "Scan cancelled after " + images.size() + " images");
+            return images;
+        }
+        if (!page.isEmpty()) {
+            listener.onPage(page);
+        }
+        listener.onComplete(images.size());
+        return images;
+    }
+
+    public List<ScannedImage> scanRecursive(Uri treeUri, Listener listener) {
+        return scanRecursive(treeUri, listener, FOLDER_POOL, DEFAULT_MAX_IN_FLIGHT_QUERIES);
+    }
+
+    /**
+     * Scans {@code treeUri} and every folder below it, skipping hidden folders
+     * and the export folder.
+     * Blocks until the walk is finished or cancelled and returns all images in
+     * release order. Folders are listed on {@code folders}, which may be
+     * shared with other scans, and {@code maxInFlightQueries} bounds this
+     * scan's concurrent provider queries.
+     */
+    public List<ScannedImage> scanRecursive(Uri treeUri, Listener listener, Executor folders,
+                                            int maxInFlightQueries) {
+        FolderScanOrder order = new FolderScanOrder(DocumentsContract.getTreeDocumentId(treeUri));
+        Semaphore querySlots = new Semaphore(maxInFlightQueries);
+        AtomicInteger outstanding = new AtomicInteger(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        List<ScannedImage> released = new ArrayList<>();
+
+        class FolderTask implements Runnable {
+            private final FolderScanOrder.Folder folder;
+
+            FolderTask(FolderScanOrder.Folder folder) {
+                this.folder = folder;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    scanFolder();
+                } finally {
+                    // Counted down whatever the provider throws, so the walk always ends
+                    if (outstanding.decrementAndGet() == 0) {
+                        finished.countDown();
+                    }
+                }
+            }
+
+            private void scanFolder() {
+                List<ScannedImage> images = new ArrayList<>();
+                List<FolderScanOrder.Folder> subfolders = new ArrayList<>();
+                try {
+                    querySlots.acquire();
+                    try {
+                        listFolder(treeUri, folder, images, subfolders);
+                    } finally {
+                        querySlots.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancel();
+                } catch (RuntimeException e) {
+                    // One unreadable folder should not end the whole walk
+                    Log.e(TAG, "Cannot list folder " + folder.getPath(), e);
+                    images.clear();
+                    subfolders.clear();
+                }
+                for (FolderScanOrder.Folder subfolder : subfolders) {
+                    outstanding.incrementAndGet();
+                    folders.execute(new FolderTask(subfolder));
+                }
+                synchronized (order) {
+                    for (FolderScanOrder.Folder ready : order.completed(folder, images, subfolders)) {
+                        released.addAll(ready.getImages());
+                        publishInPages(ready.getImages(), listener);
+                    }
+                    listener.onProgress(order.foldersScanned(), order.foldersFound());
+                }
+            }
+        }
+
+        folders.execute(new FolderTask(order.root()));
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();  // Tasks still queued find the scan cancelled and end without querying
+        }
+        synchronized (order) {
+            listener.onComplete(released.size());
+            return new ArrayList<>(released);
+        }
+    }
+
+    private void listFolder(Uri treeUri, FolderScanOrder.Folder folder,
+                            List<ScannedImage> images, List<FolderScanOrder.Folder> subfolders) {
+        Trace.beginSection("list folder");
+        try {
+            if (cancellationSignal.isCanceled()) {
+                return;
+            }
+            Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, folder.getDocumentId());
+            try (Cursor cursor = contentResolver.query(childrenUri, PROJECTION, null, null, null, cancellationSignal)) {
+                if (cursor == null) {
+                    Log.e(TAG, "Provider returned no cursor for " + childrenUri);
+                    return;
+                }
+                while (cursor.moveToNext() && !cancellationSignal.isCanceled()) {
+                    String mimeType = cursor.getString(2);
+                    if (DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType)) {
+                        String name = cursor.getString(1);
+                        if (name != null && !name.startsWith(".") && !isExportFolder(folder, name)) {
+                            subfolders.add(FolderScanOrder.child(folder, cursor.getString(0), name));
+                        }
+                    } else if (ScannedImage.isImageType(mimeType)) {
+                        images.add(readImage(cursor, folder.getPath()));
+                    }
+                }
+            } catch (OperationCanceledException e) {
+                images.clear();
+                subfolders.clear();
+            }
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private static Executor folderPool() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(FOLDER_THREADS, FOLDER_THREADS, IDLE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+                    Thread thread = new Thread(task, "ImageScanner-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);  // Behind the UI
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /** The folder a {@link TreeExportTarget} exports into holds copies, not images to curate. */
+    private static boolean isExportFolder(FolderScanOrder.Folder parent, String name) {
+        return parent.getPath().isEmpty() && TreeExportTarget.FOLDER_NAME.equals(name);
+    }
+
+    private void publishInPages(List<ScannedImage> images, Listener listener) {
+        for (int start = 0; start < images.size(); start += pageSize) {
+            listener.onPage(new ArrayList<>(images.subList(start, Math.min(images.size(), start + pageSize))));
+        }
+    }
+
+    private static ScannedImage readImage(Cursor cursor, String folderPath) {
+        return new ScannedImage(
+                cursor.getString(0),
+                folderPath,
+                cursor.getString(1),
+                cursor.getString(2),
+                cursor.isNull(3) ? -1 : cursor.getLong(3),
+                cursor.isNull(4) ? 0 : cursor.getLong(4));
+    }
+
+    /** Stops a running scan; the provider query is cancelled if it supports it. */
+    public void cancel() {
+        cancellationSignal.cancel();
+    }
+
+    public boolean isCancelled() {
+        return cancellationSignal.isCanceled();
+    }
+}
@@ -1,24 +1,34 @@
 package com.blue.curator;
 
 import android.Manifest;
+import android.content.ContentResolver;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.UriPermission;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
-import android.speech.RecognitionListener;
-import android.speech.RecognizerIntent;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.provider.DocumentsContract;
 import android.speech.SpeechRecognizer;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.GestureDetector;
 import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.LinearLayout;
 import android.widget.ProgressBar;
+import android.widget.Spinner;
 import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -28,53 +38,139 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
-import androidx.documentfile.provider.DocumentFile;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.GlideException;
 import com.bumptech.glide.load.resource.drawable.DrawableTransitionOptions;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MainActivity extends AppCompatActivity {
 
     ExecutorService executorService = Executors.newSingleThreadExecutor();
     private static final int REQUEST_CODE_OPEN_DIRECTORY = 1;
     private static final String PREF_DIRECTORY_URI = "directoryUri";
-    private static final String PREF_LAST_IMAGE_INDEX = "lastImageIndex";
+    // Resume points from before the library; each root's is now kept in the RootLibrary
+    private static final String PREF_LAST_VIEWED_DOCUMENT = "lastViewedDocument";
+    private static final String PREF_LAST_DECIDED_DOCUMENT = "lastDecidedDocument";
+    private static final String PREF_INCLUDE_SUBFOLDERS = "includeSubfolders";
+    private static final String PREF_EXPORT_INTO_FOLDER = "exportIntoFolder";
+    private static final String PREF_MOVE_ORIGINALS = "moveOriginals";
     private static final String TAG = "MainActivity";
+    static final String SESSION_SNAPSHOT_FILE = "session.snapshot";
+    private static final long FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+    private static final long LOG_FILE_BYTES = 1024 * 1024;
+    private static final int LOG_HISTORY = 4;  // Rolled-over log files kept next to the current one
+    private static final int SELECTED_WINDOW_RADIUS = 32;  // Selected images whose ids are held around the one shown
+    private static final int MAX_OPEN_ROOTS = 3;  // Sessions kept open for instant switching
+    private static final int ROOT_THREADS = 3;  // Scans and export copies of all roots share these
+    private static final String ZIP_LANE_PREFIX = "zip:";  // Lane of a root's ZIP exports, apart from its journal
+    // Per-root files that used to sit directly in the app's files directory
+    private static final String[] LEGACY_ROOT_FILES = {"decisions.journal", "decisions.snapshot",
+            "selected.txt", "not_selected.txt", "not_sure.txt", "CategorizedImagesLog.txt", "export.manifest",
+            "Yes", "No", "NotSure", "Yes.zip", "No.zip", "NotSure.zip"};
+    // Curation buckets; the export folder and legacy text file of a bucket sit at the same position
+    private static final String[] BUCKET_NAMES = {"Yes", "No", "Not Sure"};
+    private static final String[] BUCKET_EXPORT_DIRS = {"Yes", "No", "NotSure"};
+    private static final String[] BUCKET_LEGACY_FILES = {"selected.txt", "not_selected.txt", "not_sure.txt"};
+    private static final int BUCKET_YES = 1;
+    private static final int BUCKET_NO = 2;
+    private static final int GRID_CELL_DP = 120;
+    private static final int GRID_MIN_COLUMNS = 3;
+    private static final int GRID_PAGE_ROWS = 3;  // Rows loaded ahead of the scroll
+    // Choices of the "Show" filter and the decision each one selects
+    private static final String[] FILTER_NAMES = {"All images", "Undecided", "Yes", "No", "Not Sure"};
+    private static final int[] FILTER_DECISIONS = {-1, CategoryIndex.UNDECIDED, 1, 2, 3};
+    private static final int FILTER_ALL = -1;
 
     private Uri directoryUri;
-    private List<DocumentFile> imageFiles = new ArrayList<>();
-    private List<String> categorizedYes = new ArrayList<>();
-    private List<String> categorizedNo = new ArrayList<>();
-    private List<String> categorizedNotSure = new ArrayList<>();
+    // The images and buckets of the root on screen; each open root has its own, see activateRoot
+    private ImageCatalog imageFiles = new ImageCatalog();
+    private CategoryIndex categoryIndex = new CategoryIndex(BUCKET_NAMES);
     private int currentIndex = 0;
+    private String lastViewedDocumentId;
+    private String lastDecidedDocumentId;
+    private boolean imageShown;
+    private String scanProgress = "";
 
     private ImageView imageView;
     private TextView toastMessage;
     private ProgressBar voiceProgressBar;
     private GestureDetector gestureDetector;
-    private SpeechRecognizer speechRecognizer;
+    private VoiceSession voiceSession;
     private TextView progressTextView;
 //    private ImageButton micButton;
 
-    private File selectedFile;
-    private File notSelectedFile;
-    private File notSureFile;
+    private RootLibrary rootLibrary;
+    // Background work of every open root. One per process, like the log: a recreated activity's work for a
+    // root queues behind the old one's, so a root's journal is closed before it is opened again.
+    private static RootScheduler rootScheduler;
+    // Export engines by manifest, one per process, so two never export against the same manifest. UI thread only.
+    private static final Map<String, ExportEngine> exportEngines = new HashMap<>();
+    private RootSession session;  // The root on screen, or null before one is picked
+    private final LinkedHashMap<String, RootSession> sessions = new LinkedHashMap<>();  // Least recently shown first
+    private String legacyRootUri;  // The folder picked before there was a library, whose files move into it
+    private PrefetchScheduler prefetchScheduler;
+    private BucketWindow selectedWindow;  // Set while the selected images are being browsed
+    private PrefetchScheduler selectedPrefetch;
+    private int selectedIndex;
+    private GlidePrefetchLoader.SizeProvider screenSize;
+    private DecodeBudget decodeBudget;
+    private final HeapWatermark heapWatermark = new HeapWatermark();
+    private final Metrics metrics = new Metrics();
+    private static boolean processStarted;  // False until the first activity of this process is created
+    private static EventLog log;  // One per process, so activities never write the file concurrently
+    private StartupTiming startupTiming;
+    private boolean micPermissionRequested;
+    private boolean loadAfterStartup;  // A restored session loads its folder once its image is up
+    private int firstPixelToken = -1;
+    private long decidedNanos = -1;  // When the last decision was taken, until the next image paints
+    private final SimilarityAnalyzer similarityAnalyzer = new SimilarityAnalyzer();
+    private SimilarityClusters similarityClusters = SimilarityClusters.empty();
+    private final DuplicateFinder duplicateFinder = new DuplicateFinder();
+    private DuplicateGroups duplicateGroups = DuplicateGroups.empty();
+    private ExifScanner exifScanner;
+    private CaptureOrder captureOrder;  // Null until the folder's EXIF has been read
+    private MetadataIndex metadataIndex;
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor();
+    private ImageSequence filter;  // Null when the whole folder is shown
+    private int filterDecision = FILTER_ALL;
+    private String filterCamera;
+    private List<String> cameras = new ArrayList<>();
     private Handler handler = new Handler();
+    private DecisionInput decisionInput;
     private Button yesButton;
     private Button noButton;
     private Button notSureButton;
+    private Button similarButton;
 
     private TextView selectedCountTextView;
 
@@ -82,21 +178,60 @@ public class MainActivity extends AppCompatActivity {
     private TextView exportProgressText;
     private Button successButton;
     private boolean isVoiceRecognitionEnabled = true; // Default to enabled
+    private boolean includeSubfolders;
+    private boolean exportIntoFolder;
+    private boolean moveOriginals;
     private ImageButton gearButton;
+    private View gridPanel;
+    private RecyclerView thumbnailGrid;
+    private TextView gridSelectionText;
+    private GridLayoutManager gridLayout;
+    private ThumbnailGridAdapter gridAdapter;
+    private final GridSelection gridSelection = new GridSelection();
+    private GlidePrefetchLoader thumbnailLoader;
+    private ThumbnailPager thumbnailPager;
+    private int gridCellSize;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        startupTiming = processStarted
+                ? new StartupTiming(StartupTiming.Kind.WARM, System.nanoTime(), System::nanoTime)
+                : new StartupTiming(StartupTiming.Kind.COLD, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(
+                        SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime()), System::nanoTime);
+        processStarted = true;
+        if (log == null) {
+            log = openLog();
+        }
         super.onCreate(savedInstanceState);
         getSupportActionBar().hide();
         setContentView(R.layout.activity_main);
-
-        // Check for microphone permission
-        if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO)
-                != PackageManager.PERMISSION_GRANTED) {
-            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.RECORD_AUDIO}, 1);
-        }
+        startupTiming.mark("content view");
 
         imageView = findViewById(R.id.imageView);
+        screenSize = new GlidePrefetchLoader.SizeProvider() {
+            // The size Glide picks for imageView: its width, and the screen for the wrap_content height
+            @Override
+            public int width() {
+                int width = imageView.getWidth() - imageView.getPaddingLeft() - imageView.getPaddingRight();
+                return width > 0 ? width : maxDisplayLength();
+            }
+
+            @Override
+            public int height() {
+                return maxDisplayLength();
+            }
+        };
+        decodeBudget = CuratorGlideModule.budget(this);
+        metadataIndex = new MetadataIndex(this);
+        exifScanner = new ExifScanner();
+        metrics.gauge(Metrics.PREFETCH_HIT_PERCENT, () -> {
+            PrefetchScheduler prefetchScheduler = this.prefetchScheduler;
+            if (prefetchScheduler == null) {
+                return 0;
+            }
+            long shown = prefetchScheduler.hits() + prefetchScheduler.lateHits() + prefetchScheduler.misses();
+            return shown == 0 ? 0 : 100 * prefetchScheduler.hits() / shown;
+        });
         toastMessage = findViewById(R.id.toastMessage);
         voiceProgressBar = findViewById(R.id.voiceProgressBar);
         progressTextView = findViewById(R.id.progressTextView);
@@ -106,17 +241,178 @@ public class MainActivity extends AppCompatActivity {
         yesButton = findViewById(R.id.yesButton);
         noButton = findViewById(R.id.noButton);
         notSureButton = findViewById(R.id.notSureButton);
+        similarButton = findViewById(R.id.similarButton);
         selectedCountTextView = findViewById(R.id.selectedCountTextView);
 
         // Initialize success button and hide it by default
         exportProgressBar = findViewById(R.id.exportProgressBar);
         exportProgressText = findViewById(R.id.exportProgressText);
+        setupGrid();
+
+        SharedPreferences preferences = getSharedPreferences("MyAppPreferences", MODE_PRIVATE);
+        includeSubfolders = preferences.getBoolean(PREF_INCLUDE_SUBFOLDERS, false);
+        exportIntoFolder = preferences.getBoolean(PREF_EXPORT_INTO_FOLDER, false);
+        moveOriginals = preferences.getBoolean(PREF_MOVE_ORIGINALS, false);
+        if (rootScheduler == null) {
+            rootScheduler = new RootScheduler(ROOT_THREADS);
+        }
+        rootLibrary = RootLibrary.open(new File(getExternalFilesDir(null), "roots"));  // A few hundred bytes
+        if (rootLibrary.size() == 0) {
+            legacyRootUri = preferences.getString(PREF_DIRECTORY_URI, null);
+        }
+
+        decisionInput = new DecisionInput(new DecisionInput.Actions() {
+            @Override
+            public void showControls() {
+                showButtons();
+            }
+
+            @Override
+            public void hideControls() {
+                hideButtons();
+            }
+
+            @Override
+            public void startListening(int token) {
+                if (!isGridShown()) {
+                    setupVoiceRecognition();  // Voice is first needed now
+                }
+                if (voiceSession != null && voiceSession.isRunning() && !isGridShown()) {
+                    voiceSession.arm(token);
+                    voiceProgressBar.setVisibility(View.VISIBLE);
+                }
+            }
+
+            @Override
+            public void stopListening() {
+                if (voiceSession != null) {
+                    voiceSession.disarm();  // The recognizer stays warm for the next image
+                }
+                voiceProgressBar.setVisibility(View.GONE);
+            }
+        }, handlerTimer());
+        decisionInput.setVoiceEnabled(isVoiceRecognitionEnabled);
 
         // Set up gear button listener
         gearButton.setOnClickListener(v -> showVoiceRecognitionToggle());
 
-        // Display the selection dialog on app start
-        showSelectionDialog();
+        // Pick up the last session where it stopped; ask what to do only when there is none
+        if (!restoreSession()) {
+            showSelectionDialog();
+            imageView.post(this::onStartupReady);
+        }
+    }
+
+    /**
+     * Paints the image the last session stopped on, straight from its
+     * {@link SessionSnapshot}. Once it is up, the journal, the scan manifest
+     * and the rescan load in the background as after picking the folder, and
+     * take over when they reach that image. Returns
+     * false if there is no snapshot of the saved folder or the folder can no
+     * longer be read.
+     */
+    private boolean restoreSession() {
+        long start = System.nanoTime();
+        SessionSnapshot snapshot = SessionSnapshot.read(new File(getFilesDir(), SESSION_SNAPSHOT_FILE));
+        String savedUri = getSharedPreferences("MyAppPreferences", MODE_PRIVATE).getString(PREF_DIRECTORY_URI, null);
+        if (snapshot == null || !snapshot.getTreeUri().equals(savedUri) || !canRead(Uri.parse(savedUri))) {
+            metrics.record(Metrics.SESSION_RESTORE_NANOS, System.nanoTime() - start);
+            return false;
+        }
+        loadSavedState();
+        progressTextView.setText("Image " + (snapshot.getPosition() + 1) + " of " + snapshot.getImageCount());
+        selectedCountTextView.setText(snapshot.count(BUCKET_YES) + "/300");
+        long restoreNanos = System.nanoTime() - start;
+        metrics.record(Metrics.SESSION_RESTORE_NANOS, restoreNanos);
+        startupTiming.mark("session restored");
+        if (restoreNanos > FRAME_BUDGET_NANOS) {
+            log.w(TAG, "Session restore took {} ms, over one frame", restoreNanos / 1_000_000);
+        }
+
+        Uri uri = imageUri(snapshot.getImage());
+        imageRequest(uri)
+                .thumbnail(Glide.with(this)
+                        .load(new ExifThumbnailLoader.Thumbnail(uri))
+                        .priority(Priority.IMMEDIATE)
+                        .listener(restoredImageListener("embedded preview", false)))
+                .priority(Priority.IMMEDIATE)
+                .listener(restoredImageListener("full image", true))
+                .into(imageView);
+        loadAfterStartup = true;  // The journal and the scan would compete with this image for the disk
+        setupControls();
+        return true;
+    }
+
+    /** Ends the startup measurement when the restored image paints; a missing preview just waits for the full image. */
+    private RequestListener<Drawable> restoredImageListener(String what, boolean last) {
+        return new RequestListener<Drawable>() {
+            @Override
+            public boolean onLoadFailed(GlideException e, Object model, Target<Drawable> target,
+                                        boolean isFirstResource) {
+                if (last) {
+                    onStartupReady();  // The image is gone; the scan shows another
+                }
+                return false;
+            }
+
+            @Override
+            public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target,
+                                           DataSource dataSource, boolean isFirstResource) {
+                startupTiming.mark("restored " + what);
+                onStartupReady();
+                return false;
+            }
+        };
+    }
+
+    /**
+     * The process's log: ErrorLog.txt next to the legacy text files, rolled
+     * over at 1 MB, and echoed to logcat. Debug entries are only recorded in
+     * debuggable builds.
+     */
+    private EventLog openLog() {
+        File directory = getExternalFilesDir(null);
+        File file = new File(directory != null ? directory : getFilesDir(), "ErrorLog.txt");
+        boolean debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        return new EventLog(new RotatingLogFile(file, LOG_FILE_BYTES, LOG_HISTORY), MainActivity::echoToLogcat,
+                debuggable ? EventLog.Level.DEBUG : EventLog.Level.INFO);
+    }
+
+    private static void echoToLogcat(EventLog.Level level, String tag, String message, Throwable thrown) {
+        int priority = level == EventLog.Level.ERROR ? Log.ERROR
+                : level == EventLog.Level.WARN ? Log.WARN
+                : level == EventLog.Level.INFO ? Log.INFO : Log.DEBUG;
+        Log.println(priority, tag, thrown == null ? message : message + "\n" + Log.getStackTraceString(thrown));
+    }
+
+    /** Whether the app still holds the persisted read grant for {@code treeUri}. */
+    private boolean canRead(Uri treeUri) {
+        for (UriPermission permission : getContentResolver().getPersistedUriPermissions()) {
+            if (permission.isReadPermission() && permission.getUri().equals(treeUri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The app can be used; records how long it took to get here, once. */
+    private void onStartupReady() {
+        if (startupTiming.ready(metrics)) {
+            log.i(TAG, startupTiming.toString());
+            reportFullyDrawn();
+            if (loadAfterStartup) {
+                loadAfterStartup = false;
+                continueInDirectory();
+            }
+        }
+    }
+
+    StartupTiming startupTiming() {
+        return startupTiming;
+    }
+
+    Metrics metrics() {
+        return metrics;
     }
 
     private void showSelectionDialog() {
@@ -134,16 +430,52 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void viewSelectedImages() {
-        initializeTextFiles();  // Ensure selectedFile is initialized
-        loadImagesFromCategory(selectedFile);
+        loadSavedState();  // The journal stores document ids; the tree URI turns them back into URIs
+        RootSession root = session;
+        if (root == null) {
+            showToast("No selected images to display.");
+            return;
+        }
+        rootScheduler.submit(root.key, () -> {
+            initializeTextFiles(root);  // Replays the journal unless curation already has
+            runOnUiThread(() -> {
+                if (root == session) {
+                    openSelectedViewer();
+                }
+            });
+        });
+    }
 
-        if (!categorizedYes.isEmpty()) {
-            currentIndex = 0;  // Start from the first image in the list
-            displaySelectedImage(currentIndex);  // Display the first selected image
-            setupImageNavigationForSelected();  // Setup previous/next navigation for selected images
-        } else {
+    /**
+     * Browses the selected images with their own window, position and
+     * prefetcher, so the curation list and the place in it are left alone.
+     */
+    private void openSelectedViewer() {
+        closeSelectedViewer();
+        if (session == null || categoryIndex.count(BUCKET_YES) == 0) {
             showToast("No selected images to display.");
+            return;
         }
+        selectedWindow = new BucketWindow(categoryIndex, BUCKET_YES, SELECTED_WINDOW_RADIUS);
+        selectedPrefetch = new PrefetchScheduler(new GlidePrefetchLoader(Glide.with(this),
+                position -> imageRequest(selectedImageUri(position)), screenSize));
+        selectedIndex = 0;
+        displaySelectedImage(selectedIndex);
+        setupImageNavigationForSelected();
+    }
+
+    /** Drops the selected images' window and cancels their prefetches. */
+    private void closeSelectedViewer() {
+        if (selectedPrefetch != null) {
+            selectedPrefetch.reset();
+            selectedPrefetch = null;
+        }
+        selectedWindow = null;
+    }
+
+    private Uri selectedImageUri(int position) {
+        String documentId = selectedWindow.imageAt(position);
+        return documentId == null ? null : DocumentsContract.buildDocumentUriUsingTree(directoryUri, documentId);
     }
 
     private void setupImageNavigationForSelected() {
@@ -156,44 +488,69 @@ public class MainActivity extends AppCompatActivity {
 
 
     private void displaySelectedImage(int index) {
-        Log.d(TAG, "displaySelectedImage called: index=" + index);
-        if (index >= 0 && index < categorizedYes.size()) {
-            Uri imageUri = Uri.parse(categorizedYes.get(index));
-            Glide.with(this)
-                    .load(imageUri)
-                    .thumbnail(0.1f)
+        log.d(TAG, "displaySelectedImage called: index={}", index);
+        Uri imageUri = index >= 0 ? selectedImageUri(index) : null;
+        if (imageUri != null) {
+            PrefetchScheduler prefetch = selectedPrefetch;
+            prefetch.setCount(selectedWindow.size());
+            prefetch.setCapacity(decodeBudget.prefetchCapacity(
+                    screenSize.width(), screenSize.height(), CuratorGlideModule.bytesPerPixel()));
+            prefetch.onNavigate(index);
+            imageRequest(imageUri)
+                    .priority(Priority.IMMEDIATE)
                     .transition(DrawableTransitionOptions.withCrossFade())
+                    .listener(new RequestListener<Drawable>() {
+                        @Override
+                        public boolean onLoadFailed(GlideException e, Object model, Target<Drawable> target,
+                                                    boolean isFirstResource) {
+                            onSelectedShown(prefetch, index);
+                            return false;
+                        }
+
+                        @Override
+                        public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target,
+                                                       DataSource dataSource, boolean isFirstResource) {
+                            onSelectedShown(prefetch, index);
+                            return false;
+                        }
+                    })
                     .into(imageView);
 
-            showToast("Image " + (index + 1) + " of " + categorizedYes.size());
+            showToast("Image " + (index + 1) + " of " + selectedWindow.size());
             updateProgressTextViewForSelected();
         }
     }
 
+    private void onSelectedShown(PrefetchScheduler prefetch, int index) {
+        if (prefetch == selectedPrefetch) {  // Not closed or reopened since
+            prefetch.onCurrentShown(index);
+        }
+    }
+
     private void nextSelectedImage() {
-        Log.d(TAG, "Next selected image requested");
-        if (currentIndex < categorizedYes.size() - 1) {
-            currentIndex++;
-            displaySelectedImage(currentIndex);
+        log.d(TAG, "Next selected image requested");
+        if (selectedIndex < selectedWindow.size() - 1) {
+            selectedIndex++;
+            displaySelectedImage(selectedIndex);
         } else {
-            Log.d(TAG, "No more selected images");
+            log.d(TAG, "No more selected images");
             showToast("No more images.");
         }
     }
 
     private void previousSelectedImage() {
-        Log.d(TAG, "Previous selected image requested");
-        if (currentIndex > 0) {
-            currentIndex--;
-            displaySelectedImage(currentIndex);
+        log.d(TAG, "Previous selected image requested");
+        if (selectedIndex > 0) {
+            selectedIndex--;
+            displaySelectedImage(selectedIndex);
         } else {
-            Log.d(TAG, "Already at the first selected image");
+            log.d(TAG, "Already at the first selected image");
             showToast("Already at the first image.");
         }
     }
 
     private void updateProgressTextViewForSelected() {
-        progressTextView.setText("Image " + (currentIndex + 1) + " of " + categorizedYes.size());
+        progressTextView.setText("Selected image " + (selectedIndex + 1) + " of " + selectedWindow.size());
     }
 
 
@@ -201,36 +558,22 @@ public class MainActivity extends AppCompatActivity {
         if (directoryUri == null) {
             openDirectoryPicker();
         } else {
-            executorService.submit(() -> {
-                loadImagesFromDirectory(directoryUri);
-                runOnUiThread(() -> {
-                    displayImage(currentIndex);
-                });
-            });
+            continueInDirectory();
         }
-        setupGestureDetection();
-        setupVoiceRecognition();
-        setupButtonListeners();
+        setupControls();
     }
 
-    private void loadImagesFromCategory(File categoryFile) {
-        if (categoryFile == null || !categoryFile.exists()) {
-            Log.e(TAG, "Category file is null or does not exist");
-            return;
-        }
-        categorizedYes.clear();  // Assuming you want to show only the "Yes" images
-        try {
-            List<String> lines = null;
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-                lines = java.nio.file.Files.readAllLines(categoryFile.toPath());
-            }
-            for (String line : lines) {
-                categorizedYes.add(line);
-            }
-            updateProgressTextView();  // Update UI to reflect the number of images loaded
-        } catch (IOException e) {
-            logErrorToFile(e);
-        }
+    private void continueInDirectory() {
+        RootSession root = session;
+        rootScheduler.submit(root.key, () -> initializeTextFiles(root));
+        loadImagesFromDirectory(directoryUri);
+    }
+
+    /** Gestures and buttons. The speech recognizer is left until voice input is first wanted. */
+    private void setupControls() {
+        closeSelectedViewer();
+        setupGestureDetection();
+        setupButtonListeners();
     }
 
     private void showVoiceRecognitionToggle() {
@@ -242,203 +585,1316 @@ public class MainActivity extends AppCompatActivity {
         toggleSwitch.setChecked(isVoiceRecognitionEnabled);
         toggleSwitch.setText("  Enable Voice Recognition");
 
-        builder.setView(toggleSwitch);
+        final Switch subfoldersSwitch = new Switch(this);
+        subfoldersSwitch.setChecked(includeSubfolders);
+        subfoldersSwitch.setText("  Include Subfolders");
+
+        final Switch exportIntoFolderSwitch = new Switch(this);
+        exportIntoFolderSwitch.setChecked(exportIntoFolder);
+        exportIntoFolderSwitch.setText("  Export Into Picked Folder");
+
+        final Switch moveOriginalsSwitch = new Switch(this);
+        moveOriginalsSwitch.setChecked(moveOriginals);
+        moveOriginalsSwitch.setEnabled(exportIntoFolder);
+        moveOriginalsSwitch.setText("  Move Originals Instead of Copying");
+        exportIntoFolderSwitch.setOnCheckedChangeListener((button, checked) -> moveOriginalsSwitch.setEnabled(checked));
+
+        final Spinner filterSpinner = new Spinner(this);
+        filterSpinner.setAdapter(spinnerAdapter(Arrays.asList(FILTER_NAMES)));
+        for (int i = 0; i < FILTER_DECISIONS.length; i++) {
+            if (FILTER_DECISIONS[i] == filterDecision) {
+                filterSpinner.setSelection(i);
+            }
+        }
+        final List<String> cameraChoices = new ArrayList<>();
+        cameraChoices.add("Any camera");
+        cameraChoices.addAll(cameras);
+        final Spinner cameraSpinner = new Spinner(this);
+        cameraSpinner.setAdapter(spinnerAdapter(cameraChoices));
+        cameraSpinner.setSelection(Math.max(0, cameraChoices.indexOf(filterCamera)));
+
+        LinearLayout settingsLayout = new LinearLayout(this);
+        settingsLayout.setOrientation(LinearLayout.VERTICAL);
+        settingsLayout.addView(toggleSwitch);
+        settingsLayout.addView(subfoldersSwitch);
+        settingsLayout.addView(exportIntoFolderSwitch);
+        settingsLayout.addView(moveOriginalsSwitch);
+        settingsLayout.addView(filterSpinner);
+        settingsLayout.addView(cameraSpinner);
+        Button metricsButton = new Button(this);
+        metricsButton.setText("Performance");
+        metricsButton.setOnClickListener(v -> showMetrics());
+        settingsLayout.addView(metricsButton);
+        // A resumed session skips the start dialog, so its choices are offered here too
+        Button folderButton = new Button(this);
+        folderButton.setText("Library");
+        settingsLayout.addView(folderButton);
+        Button selectedButton = new Button(this);
+        selectedButton.setText("View Selected Images");
+        settingsLayout.addView(selectedButton);
+        builder.setView(settingsLayout);
 
         builder.setPositiveButton("OK", (dialog, which) -> {
             isVoiceRecognitionEnabled = toggleSwitch.isChecked();
+            if (voiceSession != null) {
+                if (isVoiceRecognitionEnabled) {
+                    voiceSession.start();
+                } else {
+                    voiceSession.stop();
+                }
+            }
+            decisionInput.setVoiceEnabled(isVoiceRecognitionEnabled);
             Toast.makeText(MainActivity.this, "Voice Recognition " + (isVoiceRecognitionEnabled ? "Enabled" : "Disabled"), Toast.LENGTH_SHORT).show();
+            if (subfoldersSwitch.isChecked() != includeSubfolders) {
+                includeSubfolders = subfoldersSwitch.isChecked();
+                getSharedPreferences("MyAppPreferences", MODE_PRIVATE).edit()
+                        .putBoolean(PREF_INCLUDE_SUBFOLDERS, includeSubfolders).apply();
+                if (directoryUri != null && imageShown) {
+                    loadImagesFromDirectory(directoryUri);  // Rescan with the new setting
+                }
+            }
+            exportIntoFolder = exportIntoFolderSwitch.isChecked();
+            moveOriginals = exportIntoFolder && moveOriginalsSwitch.isChecked();
+            getSharedPreferences("MyAppPreferences", MODE_PRIVATE).edit()
+                    .putBoolean(PREF_EXPORT_INTO_FOLDER, exportIntoFolder)
+                    .putBoolean(PREF_MOVE_ORIGINALS, moveOriginals).apply();
+            int decision = FILTER_DECISIONS[filterSpinner.getSelectedItemPosition()];
+            int cameraPosition = cameraSpinner.getSelectedItemPosition();
+            String camera = cameraPosition > 0 ? cameraChoices.get(cameraPosition) : null;
+            if (decision != filterDecision || !Objects.equals(camera, filterCamera)) {
+                applyFilter(decision, camera);
+            }
         });
 
         builder.setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss());
+        builder.setNeutralButton("Export ZIPs", (dialog, which) -> exportZipArchives());
+
+        AlertDialog settingsDialog = builder.create();
+        folderButton.setOnClickListener(v -> {
+            settingsDialog.dismiss();
+            showLibraryDialog();
+        });
+        selectedButton.setOnClickListener(v -> {
+            settingsDialog.dismiss();
+            viewSelectedImages();
+        });
+        settingsDialog.show();
+    }
+
+    private ArrayAdapter<String> spinnerAdapter(List<String> items) {
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, items);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        return adapter;
+    }
+
+    /** The images being paged through: the active filter's, else the whole folder. */
+    private ImageSequence images() {
+        return filter != null ? filter : imageFiles;
+    }
+
+    /**
+     * Shows only the images with {@code decision} ({@link #FILTER_ALL} for any)
+     * from {@code camera} (null for any), in capture order. The query runs
+     * against the {@link MetadataIndex}, after any index writes still queued,
+     * and its rows are read as the user pages through them.
+     */
+    private void applyFilter(int decision, String camera) {
+        if (decision == FILTER_ALL && camera == null) {
+            boolean filtered = filter != null;
+            clearFilter();
+            if (filtered && !imageFiles.isEmpty()) {
+                displayImage(currentIndex);
+            }
+            return;
+        }
+        if (directoryUri == null) {
+            return;
+        }
+        ImageQuery query = ImageQuery.in(directoryUri.toString());
+        if (decision != FILTER_ALL) {
+            query = query.withDecision(decision);
+        }
+        if (camera != null) {
+            query = query.fromCamera(camera);
+        }
+        ImageQuery filterQuery = query;
+        indexExecutor.submit(() -> {
+            ImageSequence result;
+            try {
+                result = metadataIndex.query(filterQuery);
+            } catch (RuntimeException e) {
+                logErrorToFile(e);
+                return;
+            }
+            log.d(TAG, "{}: {} images", filterQuery, result.size());
+            runOnUiThread(() -> {
+                if (isDestroyed() || directoryUri == null || !filterQuery.getTree().equals(directoryUri.toString())
+                        || result.size() == 0) {
+                    result.close();
+                    if (!isDestroyed()) {
+                        showToast("No images match.");
+                    }
+                    return;
+                }
+                clearFilter();
+                filter = result;
+                filterDecision = decision;
+                filterCamera = camera;
+                currentIndex = 0;
+                refreshGrid(true);
+                prefetchScheduler().reset();  // Prefetches were keyed by positions in the folder
+                displayImage(currentIndex);
+            });
+        });
+    }
+
+    /** Back to the whole folder, on the image that was on screen if it is still there. */
+    private void clearFilter() {
+        if (filter == null) {
+            return;
+        }
+        String shownDocumentId = currentIndex < filter.size() ? filter.get(currentIndex).getDocumentId() : null;
+        filter.close();
+        filter = null;
+        filterDecision = FILTER_ALL;
+        filterCamera = null;
+        currentIndex = Math.max(0, imageFiles.positionOf(shownDocumentId));
+        prefetchScheduler().reset();
+    }
+
+    /** Runs an index write on the index's thread; a failed write only costs filter accuracy. */
+    private void updateIndex(Runnable write) {
+        indexExecutor.submit(() -> {
+            try {
+                write.run();
+            } catch (RuntimeException e) {
+                logErrorToFile(e);
+            }
+        });
+    }
 
-        builder.create().show();
+    /** Writes one ZIP archive per category, streamed straight from the picked folder. */
+    private void exportZipArchives() {
+        if (directoryUri == null || imageFiles.isEmpty()) {
+            showToast("No images to export.");
+            return;
+        }
+        Map<String, List<ExportItem>> archives = new LinkedHashMap<>();
+        for (int bucket = 1; bucket <= categoryIndex.bucketCount(); bucket++) {
+            List<ExportItem> items = new ArrayList<>();
+            int originals = 0;
+            for (String documentId : categoryIndex.imagesIn(bucket)) {
+                int position = imageFiles.positionOf(documentId);
+                if (position < 0) {
+                    continue;  // Decisions restored from the journal may name images no longer here
+                }
+                // A copy shares its original's bucket; the exporter leaves it out, so each photo is archived once
+                if (duplicateGroups.isCopy(documentId)) {
+                    items.add(ExportItem.ofCopy(imageFiles.get(position), BUCKET_EXPORT_DIRS[bucket - 1]));
+                } else {
+                    items.add(ExportItem.of(imageFiles.get(position), BUCKET_EXPORT_DIRS[bucket - 1]));
+                    originals++;
+                }
+            }
+            if (originals > 0) {
+                archives.put(BUCKET_EXPORT_DIRS[bucket - 1], items);
+            }
+        }
+        Uri treeUri = directoryUri;
+        RootSession root = session;
+        File exportRoot = root.directory;
+        int job = root.zipExports.incrementAndGet();
+        showToast("Exporting ZIP archives...");
+        // Off the root's lane, so its journal work does not wait behind the archive; one archive job per root
+        rootScheduler.submit(ZIP_LANE_PREFIX + root.key, () -> {
+            ZipExporter exporter = new ZipExporter(documentId -> getContentResolver().openInputStream(
+                    DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId)));
+            AtomicLong bytes = new AtomicLong();
+            long start = System.nanoTime();
+            try {
+                for (Map.Entry<String, List<ExportItem>> archive : archives.entrySet()) {
+                    exporter.writeTo(archive.getValue(), new File(exportRoot, archive.getKey() + ".zip"),
+                            new ExportTarget.Transfer() {
+                                @Override
+                                public boolean isCancelled() {
+                                    return root.closed || root.zipExports.get() != job;
+                                }
+
+                                @Override
+                                public void addBytes(long count) {
+                                    bytes.addAndGet(count);
+                                }
+                            });
+                }
+                long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+                log.i(TAG, "ZIP export: {} bytes in {} ms", bytes.get(), millis);
+                metrics.record(Metrics.EXPORT_BYTES_PER_SECOND, bytes.get() * 1000 / millis);
+                runOnUiThread(() -> showToast("Exported " + archives.size() + " ZIP archives."));
+            } catch (CancellationException e) {
+                log.i(TAG, "ZIP export cancelled after {} bytes", bytes.get());
+            } catch (IOException | RuntimeException e) {
+                logErrorToFile(e);
+                runOnUiThread(() -> showToast("Error exporting ZIP archives. See log for details."));
+            } finally {
+                exporter.shutdown();
+            }
+        });
     }
 
     private void updateSelectedCount() {
-        int selectedCount = categorizedYes.size();
+        int selectedCount = categoryIndex.count(BUCKET_YES);
         selectedCountTextView.setText(selectedCount + "/300");
     }
 
     private void setupButtonListeners() {
         yesButton.setOnClickListener(v -> {
-            Log.d("Button", "Yes button clicked");
-            categorizeImage("Yes");
-            showAcknowledgmentToast("Selected: Yes");
+            log.d("Button", "Yes button clicked");
+            onDecisionInput("Yes", DecisionInput.Source.BUTTON, decisionInput.token());
         });
 
         noButton.setOnClickListener(v -> {
-            Log.d("Button", "No button clicked");
-            categorizeImage("No");
-            showAcknowledgmentToast("Selected: No");
+            log.d("Button", "No button clicked");
+            onDecisionInput("No", DecisionInput.Source.BUTTON, decisionInput.token());
         });
 
         notSureButton.setOnClickListener(v -> {
-            Log.d("Button", "Not Sure button clicked");
-            categorizeImage("Not Sure");
-            showAcknowledgmentToast("Selected: Not Sure");
+            log.d("Button", "Not Sure button clicked");
+            onDecisionInput("Not Sure", DecisionInput.Source.BUTTON, decisionInput.token());
         });
+
+        similarButton.setOnClickListener(v -> {
+            log.d("Button", "Keep this, reject similar clicked");
+            keepAndRejectSimilar();
+        });
+
+        findViewById(R.id.gridButton).setOnClickListener(v -> showGrid());
+        findViewById(R.id.gridCloseButton).setOnClickListener(v -> hideGrid());
+        findViewById(R.id.gridYesButton).setOnClickListener(v -> decideSelected("Yes"));
+        findViewById(R.id.gridNoButton).setOnClickListener(v -> decideSelected("No"));
+        findViewById(R.id.gridNotSureButton).setOnClickListener(v -> decideSelected("Not Sure"));
     }
 
-    private void initializeTextFiles() {
+    private void setupGrid() {
+        gridPanel = findViewById(R.id.gridPanel);
+        thumbnailGrid = findViewById(R.id.thumbnailGrid);
+        gridSelectionText = findViewById(R.id.gridSelectionText);
+        gridAdapter = new ThumbnailGridAdapter(Glide.with(this),
+                position -> thumbnailRequest(imageUri(images().get(position))), this::gridBadge, gridSelection,
+                this::updateGridSelectionText);
+        thumbnailGrid.setHasFixedSize(true);
+        thumbnailGrid.setItemAnimator(null);  // Rebinding a cell should not cross-fade it
+        thumbnailGrid.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                thumbnailPager.onVisibleRange(gridLayout.findFirstVisibleItemPosition(),
+                        gridLayout.findLastVisibleItemPosition());
+            }
+        });
+        GlidePrefetchLoader.SizeProvider cellSize = new GlidePrefetchLoader.SizeProvider() {
+            @Override
+            public int width() {
+                return gridCellSize;
+            }
+
+            @Override
+            public int height() {
+                return gridCellSize;
+            }
+        };
+        thumbnailLoader = new GlidePrefetchLoader(Glide.with(this),
+                position -> thumbnailRequest(imageUri(images().get(position))), cellSize);
+    }
+
+    /**
+     * Shows every image of the current view as a grid of thumbnails for
+     * picking many at once. Cells are decoded at their own size, from the
+     * embedded preview where there is one.
+     */
+    private void showGrid() {
+        if (images().size() == 0) {
+            showToast("No images to show.");
+            return;
+        }
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        int columns = Math.max(GRID_MIN_COLUMNS, Math.round(metrics.widthPixels / (GRID_CELL_DP * metrics.density)));
+        gridCellSize = metrics.widthPixels / columns;
+        gridLayout = new GridLayoutManager(this, columns);
+        thumbnailGrid.setLayoutManager(gridLayout);
+        // A whole row binds at once while scrolling; keep a few rows of views to rebind instead of inflating
+        thumbnailGrid.getRecycledViewPool().setMaxRecycledViews(0, columns * 3);
+        thumbnailGrid.setItemViewCacheSize(columns);
+        thumbnailPager = new ThumbnailPager(thumbnailLoader, columns * GRID_PAGE_ROWS);
+        thumbnailPager.setCount(images().size());
+        gridSelection.clear();
+        thumbnailGrid.setAdapter(gridAdapter);
+        gridAdapter.setImages(images().size(), gridCellSize);
+        gridLayout.scrollToPositionWithOffset(currentIndex, 0);
+        updateGridSelectionText(0);
+        if (voiceSession != null) {
+            voiceSession.disarm();  // Voice decides on a single image, not on the grid
+        }
+        gridPanel.setVisibility(View.VISIBLE);
+    }
+
+    private void hideGrid() {
+        int first = gridLayout.findFirstVisibleItemPosition();
+        thumbnailPager.cancelAll();
+        log.d(TAG, thumbnailPager.toString());
+        thumbnailGrid.setAdapter(null);  // Recycles the cells, releasing their bitmaps
+        gridPanel.setVisibility(View.GONE);
+        gridSelection.clear();
+        if (first >= 0 && first < images().size()) {
+            currentIndex = first;  // Carry on from where the grid was scrolled to
+        }
+        updateSelectedCount();
+        displayImage(currentIndex);
+    }
+
+    private boolean isGridShown() {
+        return gridPanel.getVisibility() == View.VISIBLE;
+    }
+
+    /** Follows a change to {@link #images()} while the grid is up; moved positions drop the selection. */
+    private void refreshGrid(boolean positionsMoved) {
+        if (!isGridShown()) {
+            return;
+        }
+        if (positionsMoved) {
+            gridSelection.clear();
+            updateGridSelectionText(0);
+        }
+        thumbnailPager.setCount(images().size());
+        gridAdapter.setImages(images().size(), gridCellSize);
+    }
+
+    /** Gives every selected image {@code category} in one batch. */
+    private void decideSelected(String category) {
+        int[] positions = gridSelection.positions();
+        if (positions.length == 0) {
+            showToast("Select images first.");
+            return;
+        }
+        ImageSequence sequence = images();
+        List<String> documentIds = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            documentIds.add(sequence.get(position).getDocumentId());
+        }
+        Trace.beginSection("decide selected");
+        try {
+            recordDecisions(documentIds, categoryIndex.bucketNamed(category));
+        } finally {
+            Trace.endSection();
+        }
+        metrics.meter(Metrics.DECISIONS).mark(documentIds.size());
+        gridSelection.clear();
+        gridAdapter.notifyStateChanged();
+        updateGridSelectionText(0);
+        updateSelectedCount();
+        showAcknowledgmentToast(category + ": " + positions.length + " images");
+    }
+
+    private String gridBadge(int position) {
+        int id = categoryIndex.idOf(images().get(position).getDocumentId());
+        int bucket = id < 0 ? CategoryIndex.UNDECIDED : categoryIndex.bucketOf(id);
+        return bucket == CategoryIndex.UNDECIDED ? null : categoryIndex.bucketName(bucket);
+    }
+
+    private void updateGridSelectionText(int selected) {
+        gridSelectionText.setText(selected == 0 ? images().size() + " images; tap to select, long-press for a range"
+                : selected + " selected");
+    }
+
+    /** Sets up {@code root}'s own files and replays its journal. Runs on the root's lane. */
+    private void initializeTextFiles(RootSession root) {
+        adoptLegacyFiles(root);
         // Initialize the file objects
-        selectedFile = new File(getExternalFilesDir(null), "selected.txt");
-        notSelectedFile = new File(getExternalFilesDir(null), "not_selected.txt");
-        notSureFile = new File(getExternalFilesDir(null), "not_sure.txt");
+        File selectedFile = new File(root.directory, "selected.txt");
+        File notSelectedFile = new File(root.directory, "not_selected.txt");
+        File notSureFile = new File(root.directory, "not_sure.txt");
+
+        try {
+            if (!root.directory.exists() && !root.directory.mkdirs()) {
+                throw new IOException("Cannot create " + root.directory);
+            }
+            // Create the files if they don't exist
+            if (!selectedFile.exists()) {
+                selectedFile.createNewFile();
+            }
+            if (!notSelectedFile.exists()) {
+                notSelectedFile.createNewFile();
+            }
+            if (!notSureFile.exists()) {
+                notSureFile.createNewFile();
+            }
+            log.d(TAG, "Text files created or already exist");
+        } catch (IOException e) {
+            logErrorToFile(e);
+        }
+        openDecisionJournal(root);
+    }
+
+    /**
+     * Moves the journal, text files and private exports kept from before
+     * there was a library into the folder they belonged to, once.
+     */
+    private void adoptLegacyFiles(RootSession root) {
+        if (!root.key.equals(legacyRootUri)) {
+            return;
+        }
+        try {
+            int moved = rootLibrary.adopt(root.key, getExternalFilesDir(null), LEGACY_ROOT_FILES);
+            log.i(TAG, "Moved {} files into the library for {}", moved, root.key);
+        } catch (IOException e) {
+            logErrorToFile(e);
+        }
+    }
+
+    private void openDecisionJournal(RootSession root) {
+        if (root.journal != null) {
+            return;
+        }
+        DecisionJournal journal;
+        try {
+            journal = DecisionJournal.open(root.directory);
+            log.i(TAG, "Decision journal replayed: {} decisions", journal.size());
+        } catch (IOException e) {
+            logErrorToFile(e);
+            runOnUiThread(() -> {
+                root.decisionsRestored = true;  // Decided on without a journal, as before it was opened
+                root.pendingDecisions.clear();
+            });
+            return;
+        }
+        List<Decision> replayed = journal.decisions();
+        root.journal = journal;
+        runOnUiThread(() -> {
+            restoreDecisionsFromJournal(root, replayed);  // The index is only touched on the UI thread
+            root.decisionsRestored = true;
+            for (RootSession.PendingDecision decision : root.pendingDecisions) {
+                for (String documentId : decision.documentIds) {
+                    root.categoryIndex.assign(root.categoryIndex.register(documentId), decision.bucket);
+                }
+                journal.recordAll(decision.documentIds, decision.bucket, decision.timestamp);
+            }
+            root.pendingDecisions.clear();
+            if (root == session) {
+                updateSelectedCount();  // Replaces the count shown from the session snapshot
+            }
+        });
+    }
+
+    private void restoreDecisionsFromJournal(RootSession root, List<Decision> replayed) {
+        CategoryIndex index = root.categoryIndex;
+        for (Decision decision : replayed) {
+            if (decision.getBucket() <= index.bucketCount()) {
+                index.assign(index.register(decision.getImageId()), decision.getBucket());
+            }
+        }
+    }
+
+    private String documentUri(String documentId) {
+        return documentUri(directoryUri, documentId);
+    }
+
+    private static String documentUri(Uri treeUri, String documentId) {
+        return DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId).toString();
+    }
+
+    private List<String> documentUris(List<String> documentIds) {
+        List<String> uris = new ArrayList<>(documentIds.size());
+        for (String documentId : documentIds) {
+            uris.add(documentUri(documentId));
+        }
+        return uris;
+    }
+
+    /** Rewrites {@code root}'s text files from its journal. Runs on the root's lane. */
+    private void writeLegacyTextFiles(RootSession root) {
+        DecisionJournal journal = root.journal;
+        if (journal == null) {
+            return;
+        }
+        Map<Integer, File> files = new HashMap<>();
+        for (int bucket = 1; bucket <= BUCKET_LEGACY_FILES.length; bucket++) {
+            files.put(bucket, new File(root.directory, BUCKET_LEGACY_FILES[bucket - 1]));
+        }
+        try {
+            journal.writeLegacyFiles(files, documentId -> documentUri(root.treeUri, documentId));
+            log.d(TAG, "Legacy text files written from journal");
+        } catch (IOException e) {
+            logErrorToFile(e);
+        }
+    }
+
+
+    private void showButtons() {
+        yesButton.setVisibility(View.VISIBLE);
+        noButton.setVisibility(View.VISIBLE);
+        notSureButton.setVisibility(View.VISIBLE);
+        updateSimilarButton();
+    }
+
+    private void hideButtons() {
+        yesButton.setVisibility(View.GONE);
+        noButton.setVisibility(View.GONE);
+        notSureButton.setVisibility(View.GONE);
+        similarButton.setVisibility(View.GONE);
+    }
+
+    private void loadSavedState() {
+        log.d(TAG, "loadSavedState called");
+        SharedPreferences preferences = getSharedPreferences("MyAppPreferences", MODE_PRIVATE);
+        String savedUri = preferences.getString(PREF_DIRECTORY_URI, null);
+        if (savedUri != null) {
+            activateRoot(Uri.parse(savedUri));
+            log.d(TAG, "Saved state loaded: URI={}, Last viewed={}", savedUri, lastViewedDocumentId);
+        }
+    }
+
+    /**
+     * Where {@code root} should pick up: the image last on screen, else the last one decided.
+     * The journal covers sessions that ended before their state was saved. Runs on the root's lane.
+     */
+    private static String resumeDocumentId(RootSession root, String lastViewed, String lastDecided) {
+        String documentId = lastViewed != null ? lastViewed : lastDecided;
+        DecisionJournal journal = root.journal;
+        if (documentId == null && journal != null && journal.lastDecision() != null) {
+            documentId = journal.lastDecision().getImageId();
+        }
+        return documentId;
+    }
+
+    /**
+     * Makes {@code treeUri} the root on screen, opening a session for it
+     * unless one is still open. The root that was on screen keeps its images,
+     * its place and its scan. Returns whether the session was already open;
+     * nothing is read or scanned here.
+     */
+    private boolean activateRoot(Uri treeUri) {
+        String key = treeUri.toString();
+        if (session != null && session.key.equals(key)) {
+            return true;
+        }
+        if (session != null) {
+            stashSession();
+        }
+        RootSession root = sessions.remove(key);
+        boolean open = root != null;
+        if (root == null) {
+            root = new RootSession(treeUri, rootLibrary.directoryFor(key), BUCKET_NAMES);
+            RootLibrary.Root saved = rootLibrary.get(key);
+            if (saved != null) {
+                root.lastViewedDocumentId = saved.getLastViewedDocumentId();
+                root.lastDecidedDocumentId = saved.getLastDecidedDocumentId();
+            } else if (key.equals(legacyRootUri)) {
+                // Resume points were kept in the preferences before there was a library
+                SharedPreferences preferences = getSharedPreferences("MyAppPreferences", MODE_PRIVATE);
+                root.lastViewedDocumentId = preferences.getString(PREF_LAST_VIEWED_DOCUMENT, null);
+                root.lastDecidedDocumentId = preferences.getString(PREF_LAST_DECIDED_DOCUMENT, null);
+                preferences.edit().remove(PREF_LAST_VIEWED_DOCUMENT).remove(PREF_LAST_DECIDED_DOCUMENT).apply();
+            }
+        }
+        sessions.put(key, root);
+        session = root;
+        closeIdleSessions();
+        rootLibrary.use(key, rootName(treeUri), System.currentTimeMillis());
+        rootLibrary.setResumePoint(key, root.lastViewedDocumentId, root.lastDecidedDocumentId);
+        saveLibrary();
+        directoryUri = treeUri;
+        imageFiles = root.images;
+        categoryIndex = root.categoryIndex;
+        currentIndex = Math.min(root.position, Math.max(0, root.images.size() - 1));
+        lastViewedDocumentId = root.lastViewedDocumentId;
+        lastDecidedDocumentId = root.lastDecidedDocumentId;
+        captureOrder = root.captureOrder;
+        similarityClusters = root.similarityClusters;
+        duplicateGroups = root.duplicateGroups;
+        return open;
+    }
+
+    /** Keeps the place of the root leaving the screen in its session and drops what only the screen used. */
+    private void stashSession() {
+        clearFilter();
+        closeSelectedViewer();
+        RootSession root = session;
+        root.position = currentIndex;
+        root.lastViewedDocumentId = lastViewedDocumentId;
+        root.lastDecidedDocumentId = lastDecidedDocumentId;
+        root.captureOrder = captureOrder;  // Null if its capture pass is cut short below; it reruns on return
+        root.similarityClusters = similarityClusters;
+        root.duplicateGroups = duplicateGroups;
+        rootLibrary.setResumePoint(root.key, lastViewedDocumentId, lastDecidedDocumentId);
+        exifScanner.cancel();
+        similarityAnalyzer.cancel();
+        duplicateFinder.cancel();
+        if (prefetchScheduler != null) {
+            prefetchScheduler.reset();  // Its positions are the old root's
+        }
+        imageShown = false;
+        scanProgress = "";
+        session = null;
+    }
+
+    /** Closes the least recently shown sessions beyond {@link #MAX_OPEN_ROOTS}. */
+    private void closeIdleSessions() {
+        Iterator<RootSession> open = sessions.values().iterator();
+        while (sessions.size() > MAX_OPEN_ROOTS && open.hasNext()) {
+            RootSession root = open.next();
+            if (root != session) {
+                open.remove();
+                closeSession(root);
+            }
+        }
+    }
+
+    /**
+     * Stops {@code root}'s scan and ZIP export and, after its queued work,
+     * closes its journal. A folder export finishes.
+     */
+    private void closeSession(RootSession root) {
+        log.d(TAG, "Closing session {}", root);
+        root.cancelScan();
+        root.closed = true;  // Stops a running ZIP export at its next buffer
+        // The export engine belongs to the process: a running export finishes, and a new session reuses it
+        root.pendingDecisions.clear();  // Its journal is closed before they could be recorded
+        rootScheduler.submit(root.key, () -> {
+            DecisionJournal journal = root.journal;
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    logErrorToFile(e);
+                }
+            }
+        });
+    }
 
-        // Check if the file objects are properly initialized
-        if (selectedFile != null && notSelectedFile != null && notSureFile != null) {
+    /**
+     * Shows {@code treeUri}. A root whose session is still open comes back
+     * at once, as it was left; any other loads from its manifest and rescans.
+     */
+    private void switchToRoot(Uri treeUri) {
+        log.d(TAG, "switchToRoot called: {}", treeUri);
+        boolean open = activateRoot(treeUri);
+        saveDirectoryUri(treeUri);
+        RootSession root = session;
+        refreshGrid(true);
+        updateSelectedCount();
+        if (!open) {
+            rootScheduler.submit(root.key, () -> initializeTextFiles(root));
+            loadImagesFromDirectory(treeUri);  // Displays the first image as soon as it is scanned
+            return;
+        }
+        if (!imageFiles.isEmpty()) {
+            displayImage(currentIndex);
+        }
+        if (root.scanComplete && captureOrder == null) {
+            orderByCaptureTime(root.scanner, manifestFor(root));
+        }
+        updateProgressTextView();
+    }
+
+    /** Lists the library; picking a root switches to it, and another folder can be added. */
+    private void showLibraryDialog() {
+        List<RootLibrary.Root> roots = rootLibrary.roots();
+        String[] names = new String[roots.size()];
+        for (int i = 0; i < names.length; i++) {
+            RootSession open = sessions.get(roots.get(i).getTreeUri());
+            names[i] = roots.get(i).getName() + (open == null ? "" : open == session ? " (shown)"
+                    : open.scanComplete ? " (open)" : " (scanning)");
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Library")
+                .setItems(names, (dialog, which) -> {
+                    Uri treeUri = Uri.parse(roots.get(which).getTreeUri());
+                    if (!canRead(treeUri)) {
+                        showToast("Access to this folder was lost. Pick it again.");
+                        openDirectoryPicker();
+                        return;
+                    }
+                    if (selectedWindow != null) {
+                        setupControls();  // Leaves the selected images for the root
+                    }
+                    switchToRoot(treeUri);
+                })
+                .setPositiveButton("Add Folder", (dialog, which) -> openDirectoryPicker())
+                .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss())
+                .show();
+    }
+
+    /** The last segment of the tree's document id, such as "Camera" for "primary:DCIM/Camera". */
+    private static String rootName(Uri treeUri) {
+        String documentId = DocumentsContract.getTreeDocumentId(treeUri);
+        if (documentId == null) {
+            return treeUri.toString();
+        }
+        String name = documentId.substring(Math.max(documentId.lastIndexOf('/'), documentId.lastIndexOf(':')) + 1);
+        return name.isEmpty() ? documentId : name;
+    }
+
+    private void saveLibrary() {
+        executorService.submit(() -> {
             try {
-                // Create the files if they don't exist
-                if (!selectedFile.exists()) {
-                    selectedFile.createNewFile();
+                rootLibrary.save();
+            } catch (IOException e) {
+                logErrorToFile(e);
+            }
+        });
+    }
+
+    private void openDirectoryPicker() {
+        log.d(TAG, "openDirectoryPicker called");
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION
+                | Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION);
+        startActivityForResult(intent, REQUEST_CODE_OPEN_DIRECTORY);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        log.d(TAG, "onActivityResult called: requestCode={}, resultCode={}", requestCode, resultCode);
+
+        if (requestCode == REQUEST_CODE_OPEN_DIRECTORY && resultCode == RESULT_OK) {
+            if (data != null) {
+                Uri treeUri = data.getData();
+                persistPermission(treeUri, data.getFlags());
+                if (selectedWindow != null) {
+                    setupControls();  // Leaves the selected images for the new folder
+                }
+                switchToRoot(treeUri);  // Joins the library; a folder picked before comes back where it was left
+                log.i(TAG, "Directory selected: {}", treeUri);
+            }
+        }
+    }
+
+    /** Keeps access to the picked tree across restarts, so the next start can resume in it without the picker. */
+    private void persistPermission(Uri treeUri, int grantedFlags) {
+        try {
+            getContentResolver().takePersistableUriPermission(treeUri, grantedFlags
+                    & (Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION));
+        } catch (SecurityException e) {
+            logErrorToFile(e);  // Works for this session; the next one asks for the folder again
+        }
+    }
+
+    /** Remembers the root on screen; each root's resume point is kept in the library. */
+    private void saveDirectoryUri(Uri uri) {
+        log.d(TAG, "saveDirectoryUri called: {}", uri);
+        getSharedPreferences("MyAppPreferences", MODE_PRIVATE).edit()
+                .putString(PREF_DIRECTORY_URI, uri.toString())
+                .apply();
+    }
+
+    /**
+     * Lists the root on screen again: its manifest at once, then a rescan.
+     * The scan runs on the root's lane and carries on if another root is
+     * switched to; its images then go into the root's session without
+     * touching the screen.
+     */
+    private void loadImagesFromDirectory(Uri directoryUri) {
+        log.d(TAG, "loadImagesFromDirectory called: {}", directoryUri);
+        RootSession root = session;
+        root.cancelScan();
+        ImageScanner scanner = new ImageScanner(getContentResolver());
+        root.scanner = scanner;
+        root.scanComplete = false;
+        long scanStart = System.nanoTime();
+        imageFiles.clear();
+        clearFilter();
+        refreshGrid(true);
+        prefetchScheduler().reset();
+        similarityAnalyzer.cancel();
+        similarityClusters = SimilarityClusters.empty();
+        duplicateFinder.cancel();
+        duplicateGroups = DuplicateGroups.empty();
+        exifScanner.cancel();
+        captureOrder = null;
+        imageShown = false;
+        ScanManifest manifest = manifestFor(root);
+        String lastViewed = lastViewedDocumentId;
+        String lastDecided = lastDecidedDocumentId;
+        rootScheduler.submit(root.key, () -> {
+            String resumeDocumentId = resumeDocumentId(root, lastViewed, lastDecided);
+
+            // Show the last session's listing right away; the rescan below only patches it
+            List<ScannedImage> cached = manifest.load();
+            if (!cached.isEmpty()) {
+                log.d(TAG, "Scan manifest loaded: {} images", cached.size());
+                // Copies found last time stay copies until this scan's pass, so they are not exported twice
+                DuplicateGroups saved = DuplicateGroups.read(new File(root.directory, DuplicateGroups.FILE), cached);
+                runOnUiThread(() -> {
+                    if (scanner != root.scanner) {
+                        return;
+                    }
+                    if (root != session) {
+                        root.duplicateGroups = saved;
+                        root.addPage(cached);
+                        return;
+                    }
+                    duplicateGroups = saved;
+                    addScannedPage(cached, resumeDocumentId);
+                    if (!imageShown) {
+                        currentIndex = 0;
+                        displayImage(currentIndex);
+                    }
+                });
+            }
+            ImageScanner.Listener listener = new ImageScanner.Listener() {
+                @Override
+                public void onPage(List<ScannedImage> page) {
+                    if (!cached.isEmpty()) {
+                        return;
+                    }
+                    runOnUiThread(() -> {
+                        if (scanner != root.scanner) {
+                            return;
+                        }
+                        if (root == session) {
+                            addScannedPage(page, resumeDocumentId);
+                        } else {
+                            root.addPage(page);
+                        }
+                    });
                 }
-                if (!notSelectedFile.exists()) {
-                    notSelectedFile.createNewFile();
+
+                @Override
+                public void onComplete(int totalImages) {
+                    runOnUiThread(() -> {
+                        if (scanner != root.scanner) {
+                            return;
+                        }
+                        log.i(TAG, "Scan complete: {} images", totalImages);
+                        long scanNanos = Math.max(1, System.nanoTime() - scanStart);
+                        metrics.record(Metrics.SCAN_NANOS, scanNanos);
+                        metrics.record(Metrics.SCAN_ITEMS_PER_SECOND, totalImages * 1_000_000_000L / scanNanos);
+                        if (root != session) {
+                            return;
+                        }
+                        scanProgress = "";
+                        if (!imageShown) {
+                            // The resume image is gone; start from the beginning
+                            currentIndex = 0;
+                            displayImage(currentIndex);
+                        }
+                        updateProgressTextView();
+                    });
                 }
-                if (!notSureFile.exists()) {
-                    notSureFile.createNewFile();
+
+                @Override
+                public void onProgress(int foldersScanned, int foldersFound) {
+                    runOnUiThread(() -> {
+                        if (scanner == root.scanner && root == session) {
+                            scanProgress = " (scanning folder " + foldersScanned + " of " + foldersFound + ")";
+                            updateProgressTextView();
+                        }
+                    });
                 }
-                Log.d(TAG, "Text files created or already exist");
-            } catch (IOException e) {
+            };
+            List<ScannedImage> scanned = includeSubfolders
+                    ? scanner.scanRecursive(directoryUri, listener)
+                    : scanner.scan(directoryUri, listener);
+            if (scanner.isCancelled()) {
+                return;  // A partial scan must not be mistaken for deletions
+            }
+            if (cached.isEmpty()) {
+                saveScanManifest(manifest, scanned);
+            }
+            runOnUiThread(() -> {
+                if (scanner != root.scanner) {
+                    return;
+                }
+                root.scanComplete = true;
+                if (root != session) {
+                    // Put in capture order when the root is shown again
+                    if (!cached.isEmpty() && !root.applyRescan(scanned).isEmpty()) {
+                        List<ScannedImage> snapshot = new ArrayList<>(root.images.asList());
+                        rootScheduler.submit(root.key, () -> {
+                            saveScanManifest(manifest, snapshot);
+                            DuplicateGroups saved = DuplicateGroups.read(
+                                    new File(root.directory, DuplicateGroups.FILE), snapshot);
+                            runOnUiThread(() -> {
+                                if (scanner == root.scanner && root != session) {
+                                    root.duplicateGroups = saved;
+                                }
+                            });
+                        });
+                    }
+                    return;
+                }
+                if (!cached.isEmpty()) {
+                    applyRescan(manifest, scanned);
+                }
+                orderByCaptureTime(scanner, manifest);
+            });
+        });
+    }
+
+    private ScanManifest manifestFor(RootSession root) {
+        return new ScanManifest(ScanManifest.fileFor(new File(getFilesDir(), "manifests"), root.key));
+    }
+
+    /**
+     * Reads the capture time of every image and puts the folder in capture
+     * order, split into bursts. The image on screen stays on screen. The
+     * order is saved with the scan manifest, so the next session starts in
+     * it; near-duplicates and exact copies are looked for once it is settled.
+     * EXIF already in the {@link MetadataIndex} is used as it is; only new and
+     * edited images have their heads read.
+     */
+    private void orderByCaptureTime(ImageScanner scanner, ScanManifest manifest) {
+        List<ScannedImage> images = new ArrayList<>(imageFiles.asList());
+        Uri treeUri = directoryUri;
+        String tree = treeUri.toString();
+        indexExecutor.execute(() -> {
+            Map<String, ExifInfo> stored;
+            try {
+                stored = metadataIndex.storedExif(tree);
+            } catch (RuntimeException e) {
                 logErrorToFile(e);
+                stored = Collections.emptyMap();
             }
-        } else {
-            Log.e(TAG, "Error initializing text files: One or more File objects are null");
+            List<ScannedImage> unread = new ArrayList<>();
+            for (ScannedImage image : images) {
+                if (!stored.containsKey(image.getDocumentId())) {
+                    unread.add(image);
+                }
+            }
+            Map<String, ExifInfo> known = stored;
+            exifScanner.scan(unread, documentId -> getContentResolver().openInputStream(
+                    DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId)), (exif, elapsedNanos) -> {
+                Map<String, ExifInfo> all = new HashMap<>(known);
+                all.putAll(exif);
+                applyCaptureOrder(scanner, manifest, images, all, unread, exif, elapsedNanos);
+            });
+        });
+    }
+
+    /** Puts the folder in the capture order of {@code exif}, which holds what {@code read} was just read to have. */
+    private void applyCaptureOrder(ImageScanner scanner, ScanManifest manifest, List<ScannedImage> images,
+                                   Map<String, ExifInfo> exif, List<ScannedImage> read,
+                                   Map<String, ExifInfo> readExif, long elapsedNanos) {
+        CaptureOrder order = CaptureOrder.of(images, exif, CaptureOrder.DEFAULT_BURST_GAP_MILLIS,
+                TimeZone.getDefault());
+        if (log.isLoggable(EventLog.Level.DEBUG)) {
+            log.d(TAG, "EXIF read for " + readExif.size() + " of " + read.size() + " new or changed images ("
+                    + images.size() + " in all) in " + elapsedNanos / 1_000_000 + " ms; " + order);
+        }
+        runOnUiThread(() -> {
+            if (session == null || scanner != session.scanner) {
+                return;  // Rescanned, or another root is on screen; this root is ordered when shown again
+            }
+            clearFilter();  // The index is about to change under it
+            String shownDocumentId = imageShown ? imageFiles.get(currentIndex).getDocumentId() : null;
+            imageFiles.replaceAll(order.images());
+            refreshGrid(true);
+            captureOrder = order;
+            if (shownDocumentId != null) {
+                currentIndex = imageFiles.positionOf(shownDocumentId);
+                prefetchScheduler().reset();  // Prefetches were keyed by the old positions
+                prefetchScheduler().setCount(imageFiles.size());
+                prefetchScheduler().onNavigate(currentIndex);
+                prefetchScheduler().onCurrentShown(currentIndex);
+            }
+            updateProgressTextView();
+            List<ScannedImage> ordered = order.images();
+            rootScheduler.submit(session.key, () -> saveScanManifest(manifest, ordered));
+            indexScan(ordered, read, readExif);
+            findSimilarImages(ordered);
+            findDuplicates(ordered);
+        });
+    }
+
+    /**
+     * Refreshes the folder's rows in the {@link MetadataIndex} and the list of
+     * cameras to filter by; {@code exif} is what {@code read} were just read to have.
+     */
+    private void indexScan(List<ScannedImage> images, List<ScannedImage> read, Map<String, ExifInfo> exif) {
+        String tree = directoryUri.toString();
+        int[] decisions = new int[images.size()];
+        for (int i = 0; i < decisions.length; i++) {
+            int id = categoryIndex.idOf(images.get(i).getDocumentId());
+            decisions[i] = id < 0 ? CategoryIndex.UNDECIDED : categoryIndex.bucketOf(id);
         }
+        updateIndex(() -> {
+            long start = System.nanoTime();
+            TimeZone zone = TimeZone.getDefault();
+            Trace.beginSection("index scan");
+            List<String> found;
+            try {
+                metadataIndex.syncScan(tree, images, decisions, zone);
+                metadataIndex.updateExif(tree, read, exif, zone);
+                found = metadataIndex.cameras(tree);
+            } finally {
+                Trace.endSection();
+            }
+            log.d(TAG, "Indexed {} images in {} ms", images.size(), (System.nanoTime() - start) / 1_000_000);
+            runOnUiThread(() -> {
+                if (directoryUri != null && tree.equals(directoryUri.toString())) {
+                    cameras = found;
+                }
+            });
+        });
     }
 
+    /**
+     * Hashes the scanned images in the background and groups near-duplicates,
+     * so a burst can be settled with one decision; see {@link SimilarityAnalyzer}.
+     * Hashes are kept per folder, so only new or edited images are decoded again.
+     */
+    private void findSimilarImages(List<ScannedImage> images) {
+        Uri treeUri = directoryUri;
+        HashStore store = new HashStore(new File(new File(getFilesDir(), "manifests"),
+                ScanManifest.keyOf(treeUri.toString()) + ".hashes"));
+        similarityAnalyzer.analyze(images, new BitmapHasher(getContentResolver(), treeUri), store,
+                SimilarityClusters.DEFAULT_MAX_DISTANCE, (clusters, stats) -> {
+                    if (log.isLoggable(EventLog.Level.DEBUG)) {
+                        log.d(TAG, "Similarity pass: " + stats + "; " + clusters);
+                    }
+                    Map<String, Long> hashes = new HashMap<>(images.size() * 2);
+                    for (ScannedImage image : images) {
+                        Long hash = store.get(image.getDocumentId(), image.getLastModified());
+                        if (hash != null) {
+                            hashes.put(image.getDocumentId(), hash);
+                        }
+                    }
+                    updateIndex(() -> metadataIndex.updateHashes(treeUri.toString(), hashes));
+                    runOnUiThread(() -> {
+                        if (treeUri.equals(directoryUri)) {
+                            similarityClusters = clusters;
+                            updateSimilarButton();
+                        }
+                    });
+                });
+    }
 
-    private void setStartingIndexFromTextFiles() {
-        // Assume the latest file modified determines the last action
-        File latestFile = selectedFile;
-
-        if (notSelectedFile.lastModified() > latestFile.lastModified()) {
-            latestFile = notSelectedFile;
-        }
-        if (notSureFile.lastModified() > latestFile.lastModified()) {
-            latestFile = notSureFile;
-        }
-
-        // Determine the starting index based on the content of the latest file
-        try {
-            List<String> lines = null;
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-                lines = java.nio.file.Files.readAllLines(latestFile.toPath());
-            }
-            if (!lines.isEmpty()) {
-                String lastUri = lines.get(lines.size() - 1);
-                for (int i = 0; i < imageFiles.size(); i++) {
-                    if (imageFiles.get(i).getUri().toString().equals(lastUri)) {
-                        currentIndex = i;
-                        break;
+    /**
+     * Looks for images copied more than once into the folder; see
+     * {@link DuplicateFinder}. Copies found are given the decision already
+     * taken on any image of their group, and follow it from then on.
+     */
+    private void findDuplicates(List<ScannedImage> images) {
+        Uri treeUri = directoryUri;
+        RootSession root = session;
+        duplicateFinder.find(images, documentId -> getContentResolver().openInputStream(
+                DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId)), (groups, stats) -> {
+                    if (log.isLoggable(EventLog.Level.DEBUG)) {
+                        log.d(TAG, "Duplicate pass: " + stats + "; " + groups);
                     }
+                    rootScheduler.submit(root.key, () -> {
+                        try {
+                            groups.write(new File(root.directory, DuplicateGroups.FILE), images);
+                        } catch (IOException e) {
+                            logErrorToFile(e);
+                        }
+                    });
+                    runOnUiThread(() -> {
+                        if (treeUri.equals(directoryUri)) {
+                            duplicateGroups = groups;
+                            linkDuplicateDecisions();
+                        }
+                    });
+                });
+    }
+
+    /** Gives undecided copies the decision of the first decided image of their group. */
+    private void linkDuplicateDecisions() {
+        String lastDecided = lastDecidedDocumentId;
+        for (ScannedImage image : imageFiles.asList()) {
+            List<String> group = duplicateGroups.groupOf(image.getDocumentId());
+            if (group.isEmpty() || !group.get(0).equals(image.getDocumentId())) {
+                continue;  // Unique, or its group was seen at its original
+            }
+            int bucket = CategoryIndex.UNDECIDED;
+            List<String> undecided = new ArrayList<>();
+            for (String documentId : group) {
+                int memberBucket = bucketOf(documentId);
+                if (memberBucket == CategoryIndex.UNDECIDED) {
+                    undecided.add(documentId);
+                } else if (bucket == CategoryIndex.UNDECIDED) {
+                    bucket = memberBucket;
                 }
             }
-        } catch (IOException e) {
-            logErrorToFile(e);
+            if (bucket != CategoryIndex.UNDECIDED && !undecided.isEmpty()) {
+                recordDecisions(undecided, bucket);
+            }
         }
+        lastDecidedDocumentId = lastDecided;  // Linking is not where the user left off
+        updateSelectedCount();
     }
 
-    private void showButtons() {
-        yesButton.setVisibility(View.VISIBLE);
-        noButton.setVisibility(View.VISIBLE);
-        notSureButton.setVisibility(View.VISIBLE);
+    private int bucketOf(String documentId) {
+        int id = categoryIndex.idOf(documentId);
+        return id < 0 ? CategoryIndex.UNDECIDED : categoryIndex.bucketOf(id);
     }
 
-    private void hideButtons() {
-        yesButton.setVisibility(View.GONE);
-        noButton.setVisibility(View.GONE);
-        notSureButton.setVisibility(View.GONE);
+    /** Near-duplicates of {@code documentId} that are still undecided. */
+    private List<String> undecidedSimilar(String documentId) {
+        List<String> undecided = new ArrayList<>();
+        for (String similar : similarityClusters.clusterOf(documentId)) {
+            // Exact copies are left out; they take the decision of the image they copy
+            if (!duplicateGroups.originalOf(similar).equals(duplicateGroups.originalOf(documentId))
+                    && bucketOf(similar) == CategoryIndex.UNDECIDED) {
+                undecided.add(similar);
+            }
+        }
+        return undecided;
     }
 
-    private void startVoiceRecognition() {
-        Log.d(TAG, "startVoiceRecognition called");
-        hideButtons();
-        Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
-        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
-        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, Locale.getDefault());
-        speechRecognizer.startListening(intent);
-
-        handler.postDelayed(this::showButtons, 10000);  // 10 seconds listening duration
+    private void updateSimilarButton() {
+        int similar = images().size() == 0 || yesButton.getVisibility() != View.VISIBLE
+                ? 0 : undecidedSimilar(images().get(currentIndex).getDocumentId()).size();
+        if (similar == 0) {
+            similarButton.setVisibility(View.GONE);
+        } else {
+            similarButton.setText("Keep This, Reject " + similar + " Similar");
+            similarButton.setVisibility(View.VISIBLE);
+        }
     }
 
-    private void loadSavedState() {
-        Log.d(TAG, "loadSavedState called");
-        SharedPreferences preferences = getSharedPreferences("MyAppPreferences", MODE_PRIVATE);
-        String savedUri = preferences.getString(PREF_DIRECTORY_URI, null);
-        if (savedUri != null) {
-            directoryUri = Uri.parse(savedUri);
-            currentIndex = preferences.getInt(PREF_LAST_IMAGE_INDEX, 0);
-            Log.d(TAG, "Saved state loaded: URI=" + savedUri + ", Index=" + currentIndex);
+    /**
+     * Settles a cluster of near-duplicates in one go: the image on screen is
+     * kept and its undecided near-duplicates rejected. Images already decided
+     * keep their decision. Moves on to the first image past the cluster.
+     */
+    private void keepAndRejectSimilar() {
+        if (!decisionInput.decide(decisionInput.token(), BUCKET_YES, DecisionInput.Source.BUTTON)) {
+            return;
+        }
+        String documentId = images().get(currentIndex).getDocumentId();
+        List<String> rejected = undecidedSimilar(documentId);
+        recordDecisions(rejected, BUCKET_NO);
+        recordDecision(documentId, BUCKET_YES);
+        updateSelectedCount();
+        showAcknowledgmentToast("Kept 1, rejected " + rejected.size() + " similar");
+
+        List<String> cluster = similarityClusters.clusterOf(documentId);
+        int next = currentIndex + 1;
+        while (next < images().size() && cluster.contains(images().get(next).getDocumentId())) {
+            next++;
+        }
+        if (next < images().size()) {
+            currentIndex = next;
+            displayImage(currentIndex);
+        } else {
+            showToast("No more images.");
         }
     }
 
-    private void openDirectoryPicker() {
-        Log.d(TAG, "openDirectoryPicker called");
-        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
-        startActivityForResult(intent, REQUEST_CODE_OPEN_DIRECTORY);
+    private void applyRescan(ScanManifest manifest, List<ScannedImage> scanned) {
+        ScanDiff diff = ScanDiff.apply(imageFiles.asList(), scanned);
+        log.d(TAG, "Rescan diff: {}", diff);
+        if (diff.isEmpty()) {
+            return;
+        }
+        clearFilter();  // Its rows are refreshed once the capture pass has run
+        String shownDocumentId = imageFiles.isEmpty() ? null : imageFiles.get(currentIndex).getDocumentId();
+        currentIndex = diff.positionOf(currentIndex);
+        imageFiles.replaceAll(diff.images());
+        refreshGrid(true);
+        captureOrder = null;  // Positions moved; the capture pass that follows sorts the new images in
+        for (ScannedImage image : diff.images()) {
+            categoryIndex.register(image.getDocumentId());
+        }
+        prefetchScheduler().reset();  // Prefetches were keyed by the old positions
+        prefetchScheduler().setCount(imageFiles.size());
+        if (imageFiles.isEmpty()) {
+            imageShown = false;
+        } else if (!imageFiles.get(currentIndex).getDocumentId().equals(shownDocumentId)) {
+            displayImage(currentIndex);  // The image on screen was deleted
+        } else {
+            prefetchScheduler().onNavigate(currentIndex);
+            prefetchScheduler().onCurrentShown(currentIndex);
+        }
+        updateProgressTextView();
+        List<ScannedImage> snapshot = new ArrayList<>(diff.images());
+        rootScheduler.submit(session.key, () -> saveScanManifest(manifest, snapshot));
     }
 
-    @Override
-    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
-        super.onActivityResult(requestCode, resultCode, data);
-        Log.d(TAG, "onActivityResult called: requestCode=" + requestCode + ", resultCode=" + resultCode);
-
-        if (requestCode == REQUEST_CODE_OPEN_DIRECTORY && resultCode == RESULT_OK) {
-            if (data != null) {
-                directoryUri = data.getData();
-                saveDirectoryUri(directoryUri);
-                initializeTextFiles(); // Create text files when the directory is first selected
-                loadImagesFromDirectory(directoryUri);
-                setStartingIndexFromTextFiles();
-                displayImage(currentIndex);
-                Log.d(TAG, "Directory selected: " + directoryUri);
-            }
+    private void saveScanManifest(ScanManifest manifest, List<ScannedImage> images) {
+        try {
+            manifest.save(images);
+        } catch (IOException e) {
+            logErrorToFile(e);
         }
     }
 
-    private void saveDirectoryUri(Uri uri) {
-        Log.d(TAG, "saveDirectoryUri called: " + uri);
-        SharedPreferences preferences = getSharedPreferences("MyAppPreferences", MODE_PRIVATE);
-        preferences.edit().putString(PREF_DIRECTORY_URI, uri.toString()).apply();
+    private void addScannedPage(List<ScannedImage> page, String resumeDocumentId) {
+        int offset = imageFiles.size();
+        imageFiles.addAll(page);
+        refreshGrid(false);
+        for (ScannedImage image : page) {
+            categoryIndex.register(image.getDocumentId());
+        }
+        prefetchScheduler().setCount(imageFiles.size());
+        int resumeIndex = resumeDocumentId == null ? offset : imageFiles.positionOf(resumeDocumentId);
+        if (!imageShown && resumeIndex >= 0 && filter == null) {
+            currentIndex = resumeIndex;
+            displayImage(currentIndex);
+        }
+        updateProgressTextView();
     }
 
-    private void loadImagesFromDirectory(Uri directoryUri) {
-        Log.d(TAG, "loadImagesFromDirectory called: " + directoryUri);
-        DocumentFile directory = DocumentFile.fromTreeUri(this, directoryUri);
-        if (directory != null && directory.isDirectory()) {
-            imageFiles.clear();
-            for (DocumentFile file : directory.listFiles()) {
-                if (file.isFile() && file.getType().startsWith("image/")) {
-                    imageFiles.add(file);
-                    Log.d(TAG, "Image added: " + file.getUri());
-                }
-            }
-            updateProgressTextView();
+    /** Created on first use, so Glide is not set up before there is an image to show. */
+    private PrefetchScheduler prefetchScheduler() {
+        if (prefetchScheduler == null) {
+            prefetchScheduler = new PrefetchScheduler(new GlidePrefetchLoader(Glide.with(this),
+                    position -> imageRequest(imageUri(images().get(position))), screenSize));
         }
+        return prefetchScheduler;
+    }
+
+    private Uri imageUri(ScannedImage image) {
+        return DocumentsContract.buildDocumentUriUsingTree(directoryUri, image.getDocumentId());
     }
 
     private void displayImage(int index) {
-        Log.d(TAG, "displayImage called: index=" + index);
-        if (index >= 0 && index < imageFiles.size()) {
-            DocumentFile file = imageFiles.get(index);
-            Glide.with(this)
-                    .load(file.getUri())
-                    .thumbnail(0.1f)
+        log.d(TAG, "displayImage called: index={}", index);
+        if (index >= 0 && index < images().size()) {
+            Trace.beginSection("displayImage");
+            ScannedImage image = images().get(index);
+            imageShown = true;
+            lastViewedDocumentId = image.getDocumentId();
+            prefetchScheduler().setCount(images().size());
+            prefetchScheduler().setCapacity(decodeBudget.prefetchCapacity(
+                    screenSize.width(), screenSize.height(), CuratorGlideModule.bytesPerPixel()));
+            prefetchScheduler().onNavigate(index);
+            long requestedNanos = System.nanoTime();
+            int token = decisionInput.onImageRequested(image.getDocumentId());  // Hides the controls until the image is up
+            beginAsyncTrace("first pixel", token);
+            Uri uri = imageUri(image);
+            imageRequest(uri)
+                    .thumbnail(Glide.with(this)
+                            .load(new ExifThumbnailLoader.Thumbnail(uri))
+                            .priority(Priority.IMMEDIATE)
+                            .listener(firstPixelListener(requestedNanos, "embedded preview", token)))
+                    .priority(Priority.IMMEDIATE)
                     .transition(DrawableTransitionOptions.withCrossFade())
-                    .into(imageView);
-
-            hideButtons(); // Hide buttons when displaying a new image
+                    .listener(new RequestListener<Drawable>() {
+                        @Override
+                        public boolean onLoadFailed(GlideException e, Object model, Target<Drawable> target,
+                                                    boolean isFirstResource) {
+                            decisionInput.onImageShown(token);  // Lets the user decide on a broken image too
+                            prefetchScheduler().onCurrentShown(index);
+                            return false;
+                        }
 
-            if (isVoiceRecognitionEnabled) {
-                handler.postDelayed(this::startVoiceRecognition, 3000);  // Delay 3 seconds before starting voice recognition
-            } else {
-                handler.postDelayed(this::showButtons, 3000);  // Delay 3 seconds before showing buttons
-            }
+                        @Override
+                        public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target,
+                                                       DataSource dataSource, boolean isFirstResource) {
+                            metrics.record(Metrics.FULL_DECODE_NANOS, System.nanoTime() - requestedNanos);
+                            onPainted(token, requestedNanos, "full image from " + dataSource);
+                            heapWatermark.sample();
+                            prefetchScheduler().onCurrentShown(index);  // Neighbours wait for the image on screen
+                            return false;
+                        }
+                    })
+                    .into(imageView);
 
-            preloadAdjacentImages(index);
-            showToast("Image " + (index + 1) + " of " + imageFiles.size());
+            showToast("Image " + (index + 1) + " of " + images().size());
             updateProgressTextView();
+            updateSelectedCount();
+            Trace.endSection();
         }
     }
 
@@ -449,40 +1905,127 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void updateProgressTextView() {
-        Log.d(TAG, "updateProgressTextView called");
-        progressTextView.setText("Image " + (currentIndex + 1) + " of " + imageFiles.size());
+        log.d(TAG, "updateProgressTextView called");
+        String burst = "";
+        if (filter != null) {
+            burst = "\nShowing " + (filterDecision == FILTER_ALL ? "all" : categoryName(filterDecision))
+                    + (filterCamera == null ? "" : " from " + filterCamera);
+        } else if (captureOrder != null && currentIndex < imageFiles.size()) {
+            int b = captureOrder.burstOf(currentIndex);
+            if (captureOrder.burstSize(b) > 1) {
+                burst = "\nBurst " + (b + 1) + " of " + captureOrder.burstCount() + ": frame "
+                        + (currentIndex - captureOrder.burstStart(b) + 1) + " of " + captureOrder.burstSize(b);
+            }
+        }
+        progressTextView.setText("Image " + (currentIndex + 1) + " of " + images().size() + scanProgress + burst);
+    }
+
+    /**
+     * The grid cell for {@code uri}: the embedded preview where there is one,
+     * else the image itself, decoded at the cell size in RGB_565.
+     */
+    private RequestBuilder<Drawable> thumbnailRequest(Uri uri) {
+        return Glide.with(this)
+                .load(new ExifThumbnailLoader.Thumbnail(uri))
+                .error(Glide.with(this)
+                        .load(uri)
+                        .override(gridCellSize)
+                        .centerCrop()
+                        .format(DecodeFormat.PREFER_RGB_565))
+                .override(gridCellSize)
+                .centerCrop()
+                .format(DecodeFormat.PREFER_RGB_565)
+                .dontAnimate();
+    }
+
+    /**
+     * The request for a full image, shared by the screen and the prefetcher so
+     * prefetches hit the cache. Glide decodes it subsampled to the view's size;
+     * see {@link CuratorGlideModule}.
+     */
+    private RequestBuilder<Drawable> imageRequest(Uri uri) {
+        return Glide.with(this)
+                .load(uri)
+                .optionalFitCenter();  // What into(imageView) adds for fitCenter
+    }
+
+    /**
+     * Logs when the embedded preview lands and opens input for the image; a
+     * missing preview just means the full image paints first.
+     */
+    private RequestListener<Drawable> firstPixelListener(long requestedNanos, String what, int token) {
+        return new RequestListener<Drawable>() {
+            @Override
+            public boolean onLoadFailed(GlideException e, Object model, Target<Drawable> target,
+                                        boolean isFirstResource) {
+                return false;
+            }
+
+            @Override
+            public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target,
+                                           DataSource dataSource, boolean isFirstResource) {
+                onPainted(token, requestedNanos, what);
+                return false;
+            }
+        };
     }
 
-    private void preloadAdjacentImages(int index) {
-        Log.d(TAG, "preloadAdjacentImages called: index=" + index);
-        if (index > 0) {
-            Glide.with(this).load(imageFiles.get(index - 1).getUri()).preload();
+    /**
+     * Something of the image with {@code token} is on screen. The first paint
+     * opens input for it and counts as its first pixel, and as the end of
+     * the wait after the decision that brought it up.
+     */
+    private void onPainted(int token, long requestedNanos, String what) {
+        long now = System.nanoTime();
+        log.d(TAG, "Painted {} after {} ms", what, (now - requestedNanos) / 1_000_000);
+        decisionInput.onImageShown(token);
+        if (token == firstPixelToken) {
+            return;
+        }
+        firstPixelToken = token;
+        endAsyncTrace("first pixel", token);
+        onStartupReady();
+        metrics.record(Metrics.FIRST_PIXEL_NANOS, now - requestedNanos);
+        if (decidedNanos >= 0) {
+            metrics.record(Metrics.DECISION_TO_NEXT_IMAGE_NANOS, now - decidedNanos);
+            decidedNanos = -1;
         }
-        if (index < imageFiles.size() - 1) {
-            Glide.with(this).load(imageFiles.get(index + 1).getUri()).preload(); // Preload next image
+    }
+
+    // Async sections span threads and callbacks; they need API 29
+    private static void beginAsyncTrace(String name, int cookie) {
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(name, cookie);
         }
-        if (index < imageFiles.size() - 2) {
-            Glide.with(this).load(imageFiles.get(index + 2).getUri()).preload(); // Preload image after next
+    }
+
+    private static void endAsyncTrace(String name, int cookie) {
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(name, cookie);
         }
     }
 
+    private int maxDisplayLength() {
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        return Math.max(metrics.widthPixels, metrics.heightPixels);
+    }
 
     private void showToast(String message) {
-        Log.d(TAG, "showToast called: " + message);
+        log.d(TAG, "showToast called: {}", message);
         Toast toast = Toast.makeText(this, message, Toast.LENGTH_SHORT);
         toast.setGravity(Gravity.TOP | Gravity.CENTER_HORIZONTAL, 0, 100);
         toast.show();
     }
 
     private void setupGestureDetection() {
-        Log.d(TAG, "setupGestureDetection called");
+        log.d(TAG, "setupGestureDetection called");
         gestureDetector = new GestureDetector(this, new GestureDetector.SimpleOnGestureListener() {
             private int tapCount = 0;
             private long lastTapTime = 0;
 
             @Override
             public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
-                Log.d("Gesture", "onFling detected");
+                log.d("Gesture", "onFling detected");
                 final int SWIPE_THRESHOLD = 100;
                 final int SWIPE_VELOCITY_THRESHOLD = 100;
 
@@ -492,22 +2035,30 @@ public class MainActivity extends AppCompatActivity {
                 if (Math.abs(diffX) > Math.abs(diffY)) {
                     if (Math.abs(diffX) > SWIPE_THRESHOLD && Math.abs(velocityX) > SWIPE_VELOCITY_THRESHOLD) {
                         if (diffX > 0) {
-                            Log.d("Gesture", "Swipe right detected");
-                            previousImage();
+                            log.d("Gesture", "Swipe right detected");
+                            if (selectedWindow != null) {
+                                previousSelectedImage();
+                            } else {
+                                previousImage();
+                            }
                         } else {
-                            Log.d("Gesture", "Swipe left detected");
-                            nextImage();
+                            log.d("Gesture", "Swipe left detected");
+                            if (selectedWindow != null) {
+                                nextSelectedImage();
+                            } else {
+                                nextImage();
+                            }
                         }
                         return true;
                     }
                 } else {
                     if (Math.abs(diffY) > SWIPE_THRESHOLD && Math.abs(velocityY) > SWIPE_VELOCITY_THRESHOLD) {
                         if (diffY > 0) {
-                            Log.d("Gesture", "Swipe down detected");
-                            categorizeImage("No");
+                            log.d("Gesture", "Swipe down detected");
+                            onDecisionInput("No", DecisionInput.Source.GESTURE, decisionInput.token());
                         } else {
-                            Log.d("Gesture", "Swipe up detected");
-                            categorizeImage("Yes");
+                            log.d("Gesture", "Swipe up detected");
+                            onDecisionInput("Yes", DecisionInput.Source.GESTURE, decisionInput.token());
                         }
                         return true;
                     }
@@ -517,26 +2068,26 @@ public class MainActivity extends AppCompatActivity {
 
             @Override
             public boolean onDoubleTap(MotionEvent e) {
-                Log.d("Gesture", "Double tap detected");
-                categorizeImage("Not Sure");
+                log.d("Gesture", "Double tap detected");
+                onDecisionInput("Not Sure", DecisionInput.Source.GESTURE, decisionInput.token());
                 return true;
             }
 
             @Override
             public boolean onSingleTapConfirmed(MotionEvent e) {
-                Log.d("Gesture", "Single tap detected");
+                log.d("Gesture", "Single tap detected");
                 handleTripleTap();
                 return false;
             }
 
             private void handleTripleTap() {
                 long currentTime = System.currentTimeMillis();
-                Log.d("Gesture", "Triple tap detected");
+                log.d("Gesture", "Triple tap detected");
 
                 if (currentTime - lastTapTime < 300) {
                     tapCount++;
                     if (tapCount == 3) {
-                        Log.d("Gesture", "Exiting app after triple tap");
+                        log.d("Gesture", "Exiting app after triple tap");
                         exitApp();
                         tapCount = 0;  // Reset after exiting
                     }
@@ -549,295 +2100,360 @@ public class MainActivity extends AppCompatActivity {
         });
 
         imageView.setOnTouchListener((v, event) -> gestureDetector.onTouchEvent(event));
-        Log.d("Gesture", "Gesture detection setup complete");
+        log.d("Gesture", "Gesture detection setup complete");
     }
 
+    /**
+     * Creates the voice session the first time voice input is wanted, asking
+     * for the microphone first if need be; a granted request comes back here.
+     */
     private void setupVoiceRecognition() {
-        Log.d(TAG, "setupVoiceRecognition called");
-        speechRecognizer = SpeechRecognizer.createSpeechRecognizer(this);
-        speechRecognizer.setRecognitionListener(new RecognitionListener() {
-            @Override
-            public void onReadyForSpeech(Bundle params) {
-                Log.d(TAG, "Voice recognition ready for speech");
-                voiceProgressBar.setVisibility(View.VISIBLE);
-                showToast("Listening...");
-            }
-
-            @Override
-            public void onResults(Bundle results) {
-                Log.d(TAG, "Voice recognition results received");
-                voiceProgressBar.setVisibility(View.GONE);
-                ArrayList<String> matches = results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
-                if (matches != null && !matches.isEmpty()) {
-                    String command = matches.get(0).toLowerCase(Locale.getDefault());
-                    Log.d("The command received is: ", command);
-                    processVoiceCommand(command);
-                }
-            }
-
-            @Override
-            public void onError(int error) {
-                Log.d(TAG, "Voice recognition error: " + error);
-                voiceProgressBar.setVisibility(View.GONE);
-                String message;
-                switch (error) {
-                    case SpeechRecognizer.ERROR_NETWORK:
-                        message = "Network error. Please check your connection.";
-                        break;
-                    case SpeechRecognizer.ERROR_AUDIO:
-                        message = "Audio error. Please check your microphone.";
-                        break;
-                    case SpeechRecognizer.ERROR_NO_MATCH:
-                        message = "No match found. Please try again.";
-                        break;
-                    case SpeechRecognizer.ERROR_INSUFFICIENT_PERMISSIONS:
-                        message = "Insufficient permissions. Please allow microphone access.";
-                        break;
-                    case SpeechRecognizer.ERROR_RECOGNIZER_BUSY:
-                        message = "Recognition service busy. Please try again.";
-                        break;
-                    case SpeechRecognizer.ERROR_SERVER:
-                        message = "Server error. Please try again later.";
-                        break;
-                    case SpeechRecognizer.ERROR_SPEECH_TIMEOUT:
-                        message = "No speech input detected. Please try again.";
-                        break;
-                    default:
-                        message = "Error recognizing speech. Try again.";
-                        break;
-                }
-                showToast(message);
-                logErrorToFile(new Exception("SpeechRecognizer error: " + message + " (Error code: " + error + ")"));
+        log.d(TAG, "setupVoiceRecognition called");
+        if (voiceSession != null) {
+            return;
+        }
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO)
+                != PackageManager.PERMISSION_GRANTED) {
+            if (!micPermissionRequested) {
+                micPermissionRequested = true;
+                ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.RECORD_AUDIO}, 1);
             }
+            return;
+        }
+        voiceSession = new VoiceSession(new SpeechVoiceRecognizer(this), new VoiceCommands(), handlerTimer(),
+                new VoiceSession.Listener() {
+                    @Override
+                    public void onCommand(VoiceCommands.Command command, int token) {
+                        processVoiceCommand(command, token);
+                    }
 
+                    @Override
+                    public void onUnavailable(int code) {
+                        log.w(TAG, "Voice recognition unavailable: {}", code);
+                        voiceProgressBar.setVisibility(View.GONE);
+                        String message = voiceErrorMessage(code);
+                        showToast(message);
+                        logErrorToFile(new Exception("SpeechRecognizer error: " + message + " (Error code: " + code + ")"));
+                    }
+                });
+        if (isVoiceRecognitionEnabled) {
+            voiceSession.start();
+        }
+    }
 
-            // Other RecognitionListener methods can be implemented as needed
-            @Override
-            public void onBeginningOfSpeech() {}
-
-            @Override
-            public void onBufferReceived(byte[] buffer) {}
-
-            @Override
-            public void onEndOfSpeech() {}
-
-            @Override
-            public void onEvent(int eventType, Bundle params) {}
+    private static String voiceErrorMessage(int error) {
+        switch (error) {
+            case SpeechRecognizer.ERROR_NETWORK:
+                return "Network error. Please check your connection.";
+            case SpeechRecognizer.ERROR_AUDIO:
+                return "Audio error. Please check your microphone.";
+            case SpeechRecognizer.ERROR_NO_MATCH:
+                return "No match found. Please try again.";
+            case SpeechRecognizer.ERROR_INSUFFICIENT_PERMISSIONS:
+                return "Insufficient permissions. Please allow microphone access.";
+            case SpeechRecognizer.ERROR_RECOGNIZER_BUSY:
+                return "Recognition service busy. Please try again.";
+            case SpeechRecognizer.ERROR_SERVER:
+                return "Server error. Please try again later.";
+            case SpeechRecognizer.ERROR_SPEECH_TIMEOUT:
+                return "No speech input detected. Please try again.";
+            default:
+                return "Error recognizing speech. Try again.";
+        }
+    }
 
+    /** Runs {@link DecisionInput} and {@link VoiceSession} callbacks on the UI thread. */
+    private DecisionInput.Timer handlerTimer() {
+        return new DecisionInput.Timer() {
             @Override
-            public void onPartialResults(Bundle partialResults) {}
+            public void schedule(Runnable task, long delayMillis) {
+                handler.postDelayed(task, delayMillis);
+            }
 
             @Override
-            public void onRmsChanged(float rmsdB) {}
-        });
+            public void cancel(Runnable task) {
+                handler.removeCallbacks(task);
+            }
+        };
     }
 
-    private void processVoiceCommand(String command) {
-        Log.d(TAG, "Processing voice command: " + command);
+    private void processVoiceCommand(VoiceCommands.Command command, int token) {
+        log.d(TAG, "Processing voice command: {}", command);
         switch (command) {
-            case "yes":
-                categorizeImage("Yes");
+            case YES:
+                onDecisionInput("Yes", DecisionInput.Source.VOICE, token);
                 break;
-            case "no":
-                categorizeImage("No");
+            case NO:
+                onDecisionInput("No", DecisionInput.Source.VOICE, token);
                 break;
-            case "not sure":
-                categorizeImage("Not Sure");
+            case NOT_SURE:
+                onDecisionInput("Not Sure", DecisionInput.Source.VOICE, token);
                 break;
-            case "exit":
+            case EXIT:
                 exitApp();
                 break;
-            default:
-                showToast("Command not recognized.");
-                break;
         }
     }
 
     private void nextImage() {
-        Log.d(TAG, "Next image requested");
-        if (currentIndex < imageFiles.size() - 1) {
+        log.d(TAG, "Next image requested");
+        if (currentIndex < images().size() - 1) {
             currentIndex++;
             displayImage(currentIndex);
         } else {
-            Log.d(TAG, "No more images");
+            log.d(TAG, "No more images");
             showToast("No more images.");
         }
     }
 
     private void previousImage() {
-        Log.d(TAG, "Previous image requested");
+        log.d(TAG, "Previous image requested");
         if (currentIndex > 0) {
             currentIndex--;
             displayImage(currentIndex);
         } else {
-            Log.d(TAG, "Already at the first image");
+            log.d(TAG, "Already at the first image");
             showToast("Already at the first image.");
         }
     }
 
+    /** Records {@code category} for the image with {@code token} if {@link DecisionInput} accepts it. */
+    private void onDecisionInput(String category, DecisionInput.Source source, int token) {
+        if (!decisionInput.decide(token, categoryIndex.bucketNamed(category), source)) {
+            if (log.isLoggable(EventLog.Level.DEBUG)) {
+                log.d(TAG, "Ignored " + source + " input " + category + "; " + decisionInput);
+            }
+            return;
+        }
+        decidedNanos = System.nanoTime();
+        metrics.mark(Metrics.DECISIONS);
+        if (source == DecisionInput.Source.BUTTON) {
+            showAcknowledgmentToast("Selected: " + category);
+        }
+        Trace.beginSection("decide");
+        try {
+            categorizeImage(category);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
     private void categorizeImage(String category) {
-        Log.d(TAG, "Categorizing image as: " + category);
-        DocumentFile file = imageFiles.get(currentIndex);
+        log.d(TAG, "Categorizing image as: {}", category);
+        String documentId = images().get(currentIndex).getDocumentId();
+        recordDecision(documentId, categoryIndex.bucketNamed(category));
         updateSelectedCount();  // Update count whenever an image is categorized
-        removePreviousSelection(file.getUri().toString());  // Remove previous selection
-        switch (category) {
-            case "Yes":
-                categorizedYes.add(file.getUri().toString());
-                writeToFile(selectedFile, file.getUri().toString());
-                break;
-            case "No":
-                categorizedNo.add(file.getUri().toString());
-                writeToFile(notSelectedFile, file.getUri().toString());
-                break;
-            case "Not Sure":
-                categorizedNotSure.add(file.getUri().toString());
-                writeToFile(notSureFile, file.getUri().toString());
-                break;
-        }
         showToast("Image categorized as " + category);
-        nextImage();
+        int next = currentIndex + 1;
+        while (next < images().size() && duplicateGroups.isCopy(images().get(next).getDocumentId())
+                && bucketOf(images().get(next).getDocumentId()) != CategoryIndex.UNDECIDED) {
+            next++;  // Its decision follows its original's; no swipe needed
+        }
+        if (next < images().size()) {
+            currentIndex = next;
+            displayImage(currentIndex);
+        } else {
+            showToast("No more images.");
+        }
     }
 
-    private void writeToFile(File file, String data) {
-        try {
-            FileWriter writer = new FileWriter(file, true);
-            writer.append(data).append("\n");
-            writer.close();
-            Log.d(TAG, "Data written to file: " + file.getName());
-        } catch (IOException e) {
-            logErrorToFile(e);
+    private void recordDecision(String documentId, int bucket) {
+        if (!duplicateGroups.groupOf(documentId).isEmpty()) {
+            recordDecisions(Collections.singletonList(documentId), bucket);  // Takes its copies along
+            return;
+        }
+        categoryIndex.assign(categoryIndex.register(documentId), bucket);  // Replaces any previous selection
+        journalDecisions(Collections.singletonList(documentId), bucket);
+        lastDecidedDocumentId = documentId;
+        if (directoryUri != null) {
+            String tree = directoryUri.toString();
+            updateIndex(() -> metadataIndex.setDecision(tree, documentId, bucket));
         }
     }
 
-    private void removeFromFile(File file, String data) {
-        try {
-            List<String> lines = null;
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-                lines = new ArrayList<>(java.nio.file.Files.readAllLines(file.toPath()));
-                lines.remove(data);
-                java.nio.file.Files.write(file.toPath(), lines);
-            }
-            Log.d(TAG, "Data removed from file: " + file.getName());
-        } catch (IOException e) {
-            logErrorToFile(e);
+    /**
+     * Records one decision for many images, and for every exact copy of
+     * them: one journal batch and one index transaction.
+     */
+    private void recordDecisions(List<String> decided, int bucket) {
+        if (decided.isEmpty()) {
+            return;
+        }
+        List<String> documentIds = withCopies(decided);
+        for (String documentId : documentIds) {
+            categoryIndex.assign(categoryIndex.register(documentId), bucket);
+        }
+        journalDecisions(documentIds, bucket);
+        lastDecidedDocumentId = decided.get(decided.size() - 1);
+        if (directoryUri != null) {
+            String tree = directoryUri.toString();
+            List<String> batch = new ArrayList<>(documentIds);
+            updateIndex(() -> metadataIndex.setDecisions(tree, batch, bucket));
+        }
+    }
+
+    /**
+     * Queues a decision for the journal's writer thread; nothing is written on
+     * the UI thread. Until the journal has been replayed into the index the
+     * decision is held, and recorded after the replay so it is not undone.
+     */
+    private void journalDecisions(List<String> documentIds, int bucket) {
+        RootSession root = session;
+        if (root == null) {
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        if (!root.decisionsRestored) {
+            root.pendingDecisions.add(new RootSession.PendingDecision(new ArrayList<>(documentIds), bucket, timestamp));
+            return;
+        }
+        DecisionJournal journal = root.journal;
+        if (journal == null) {
+            return;
+        }
+        if (documentIds.size() == 1) {
+            journal.record(documentIds.get(0), bucket, timestamp);
+        } else {
+            journal.recordAll(documentIds, bucket, timestamp);
         }
     }
 
-    private void removePreviousSelection(String uri) {
-        Log.d(TAG, "Removing previous selection for URI: " + uri);
-        categorizedYes.remove(uri);
-        categorizedNo.remove(uri);
-        categorizedNotSure.remove(uri);
+    /** {@code documentIds} followed by their copies not already among them. */
+    private List<String> withCopies(List<String> documentIds) {
+        if (duplicateGroups.groupCount() == 0) {
+            return documentIds;
+        }
+        Set<String> all = new LinkedHashSet<>(documentIds);
+        for (String documentId : documentIds) {
+            all.addAll(duplicateGroups.groupOf(documentId));
+        }
+        return all.size() == documentIds.size() ? documentIds : new ArrayList<>(all);
+    }
 
-        // Remove from files
-        removeFromFile(selectedFile, uri);
-        removeFromFile(notSelectedFile, uri);
-        removeFromFile(notSureFile, uri);
+    private String categoryName(int bucket) {
+        return bucket == CategoryIndex.UNDECIDED ? "undecided" : categoryIndex.bucketName(bucket);
     }
 
     private void exitApp() {
-        Log.d(TAG, "Exiting app");
-        exportCategorizedImages();
-        finish();
+        log.i(TAG, "Exiting app");
+        finish();  // onPause starts the export
     }
 
+    /**
+     * Starts a background export of everything decided in this folder. Only images whose
+     * bucket changed since the last export are copied; see {@link ExportEngine}. Exact
+     * copies of an image are left out, so each photo is exported once.
+     */
     private void exportCategorizedImages() {
-        try {
-            List<String> allUris = new ArrayList<>();
-            allUris.addAll(categorizedYes);
-            allUris.addAll(categorizedNo);
-            allUris.addAll(categorizedNotSure);
-
-            int totalFiles = allUris.size();
-            showProgress(totalFiles);
-
-            moveFilesToDirectory(categorizedYes, new File(getExternalFilesDir(null), "Yes"), totalFiles);
-            moveFilesToDirectory(categorizedNo, new File(getExternalFilesDir(null), "No"), totalFiles);
-            moveFilesToDirectory(categorizedNotSure, new File(getExternalFilesDir(null), "NotSure"), totalFiles);
-
-            logCategorizedImages();  // Log the current categorization to the text files
-
-            hideProgress();
+        if (directoryUri == null || imageFiles.isEmpty()) {
+            return;
+        }
+        List<ExportItem> items = new ArrayList<>(imageFiles.size());
+        for (ScannedImage image : imageFiles.asList()) {
+            int bucket = bucketOf(image.getDocumentId());
+            String folder = bucket == CategoryIndex.UNDECIDED ? null : BUCKET_EXPORT_DIRS[bucket - 1];
+            // A copy is exported once, as its original; one exported before it was found to be a copy stays
+            items.add(duplicateGroups.isCopy(image.getDocumentId()) ? ExportItem.ofCopy(image, folder)
+                    : ExportItem.of(image, folder));
+        }
+        List<String> categorizedLog = categorizedImagesLog();
+        RootSession root = session;
+        rootScheduler.submit(root.key, () -> {
+            logCategorizedImages(root, categorizedLog);  // Log the current categorization to the text files
+            writeLegacyTextFiles(root);
+        });
 
-        } catch (Exception e) {
-            logErrorToFile(e);
-            showToast("Error exporting images. See log for details.");
-        }
-    }
-
-
-//    private void moveFilesToDirectory(List<String> uris, File directory) {
-//        Log.d(TAG, "Moving files to directory: " + directory.getAbsolutePath());
-//        if (!directory.exists()) {
-//            directory.mkdirs();
-//        }
-//
-//        for (String uriString : uris) {
-//            Uri uri = Uri.parse(uriString);
-//            DocumentFile file = DocumentFile.fromSingleUri(this, uri);
-//            if (file != null) {
-//                File destination = new File(directory, file.getName());
-//                // Implement the actual file moving/copying logic here
-//                Log.d(TAG, "File moved to: " + destination.getAbsolutePath());
-//                // You might need to use InputStream/OutputStream to copy the files.
-//            }
-//        }
-//    }
-
-    private void moveFilesToDirectory(List<String> uris, File directory, int totalFiles) {
-        Log.d(TAG, "Moving files to directory: " + directory.getAbsolutePath());
-        if (!directory.exists()) {
-            directory.mkdirs(); // Ensure the directory exists
-        }
-
-        int currentFile = 0;
-        for (String uriString : uris) {
-            currentFile++;
-            updateProgress(currentFile, totalFiles);
-
-            Uri uri = Uri.parse(uriString);
-            DocumentFile file = DocumentFile.fromSingleUri(this, uri);
-            if (file != null) {
-                File destination = new File(directory, file.getName());
-                try (InputStream in = getContentResolver().openInputStream(uri);
-                     OutputStream out = new FileOutputStream(destination)) {
-
-                    // Copy the file content from source to destination
-                    byte[] buffer = new byte[1024];
-                    int length;
-                    while ((length = in.read(buffer)) > 0) {
-                        out.write(buffer, 0, length);
+        ExportEngine engine = exportEngine();
+        boolean movesOriginals = exportIntoFolder && moveOriginals;
+        engine.start(items, new ExportEngine.Listener() {
+            @Override
+            public void onProgress(ExportEngine.Progress progress) {
+                runOnUiThread(() -> {
+                    if (progress.getFilesTotal() > 0) {
+                        showProgress(progress.getFilesTotal());
+                        updateProgress(progress);
                     }
+                });
+            }
 
-                    Log.d(TAG, "File moved to: " + destination.getAbsolutePath());
-
-                    // Optionally, delete the source file after copying
-//                    if (file.delete()) {
-//                        Log.d(TAG, "Source file deleted: " + uriString);
-//                    } else {
-//                        Log.e(TAG, "Failed to delete source file: " + uriString);
-//                    }
-
-                } catch (IOException e) {
-                    logErrorToFile(e);
-                    Log.e(TAG, "Error moving file: " + uriString, e);
+            @Override
+            public void onFinished(ExportEngine.Progress progress) {
+                log.i(TAG, "Export finished: {}", progress);
+                if (progress.getBytesCopied() > 0) {
+                    metrics.record(Metrics.EXPORT_BYTES_PER_SECOND, (long) progress.bytesPerSecond());
+                }
+                runOnUiThread(() -> {
+                    hideProgress();
+                    if (progress.getFailures() > 0) {
+                        showToast("Error exporting " + progress.getFailures() + " images. See log for details.");
+                    }
+                });
+                if (progress.getFailures() > 0) {
+                    logErrorToFile(new Exception("Export failed for " + progress.getFailures() + " images"));
+                }
+                if (movesOriginals && progress.getFilesDone() > 0) {
+                    // Moved images have left the picked folder; pick up what is still there
+                    runOnUiThread(() -> {
+                        if (!isFinishing() && root == session) {
+                            loadImagesFromDirectory(directoryUri);
+                        }
+                    });
                 }
-            } else {
-                Log.e(TAG, "DocumentFile is null for URI: " + uriString);
             }
+        });
+    }
+
+    /**
+     * The engine for the folder on screen and the export mode. Exporting into
+     * the picked folder goes through the document provider; otherwise images
+     * are copied into the folder's own directory in the app's storage. Each
+     * mode and folder has its own export manifest. Every folder keeps its
+     * engine, so exports of several folders run at once, their copies on the
+     * shared root threads.
+     */
+    private ExportEngine exportEngine() {
+        RootSession root = session;
+        String key = exportIntoFolder ? (moveOriginals ? "moved:" : "copied:") + directoryUri : "private";
+        if (root.exportEngine != null && key.equals(root.exportEngineKey)) {
+            return root.exportEngine;
+        }
+        File manifestFile = exportIntoFolder
+                ? new File(getExternalFilesDir(null), ScanManifest.keyOf(key) + ".export")
+                : new File(root.directory, "export.manifest");
+        ExportEngine engine = exportEngines.get(manifestFile.getPath());
+        if (engine == null) {
+            // Kept after this activity is gone, so it must not hold on to it
+            ContentResolver resolver = getApplicationContext().getContentResolver();
+            Uri treeUri = directoryUri;
+            ExportTarget target = exportIntoFolder ? new TreeExportTarget(resolver, treeUri, moveOriginals)
+                    : new FileExportTarget(documentId -> resolver.openInputStream(
+                            DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId)), root.directory);
+            engine = new ExportEngine(target, new ExportManifest(manifestFile), rootScheduler);
+            exportEngines.put(manifestFile.getPath(), engine);
         }
+        root.exportEngine = engine;
+        root.exportEngineKey = key;
+        return engine;
     }
 
-    private void logCategorizedImages() {
-        Log.d(TAG, "Logging categorized images");
+    private List<String> categorizedImagesLog() {
+        List<String> lines = new ArrayList<>();
+        for (int bucket = 1; bucket <= categoryIndex.bucketCount(); bucket++) {
+            lines.add(categoryIndex.bucketName(bucket) + ": " + documentUris(categoryIndex.imagesIn(bucket)));
+        }
+        return lines;
+    }
+
+    private void logCategorizedImages(RootSession root, List<String> lines) {
+        log.d(TAG, "Logging categorized images");
         try {
-            File logFile = new File(getExternalFilesDir(null), "CategorizedImagesLog.txt");
+            File logFile = new File(root.directory, "CategorizedImagesLog.txt");
             FileWriter writer = new FileWriter(logFile);
-            writer.append("Yes: ").append(categorizedYes.toString()).append("\n");
-            writer.append("No: ").append(categorizedNo.toString()).append("\n");
-            writer.append("Not Sure: ").append(categorizedNotSure.toString()).append("\n");
+            for (String line : lines) {
+                writer.append(line).append("\n");
+            }
             writer.close();
-            Log.d(TAG, "Categorized images logged successfully");
+            log.d(TAG, "Categorized images logged successfully");
         } catch (IOException e) {
             logErrorToFile(e);
         }
@@ -850,9 +2466,10 @@ public class MainActivity extends AppCompatActivity {
         exportProgressText.setVisibility(View.VISIBLE);
     }
 
-    private void updateProgress(int currentFile, int totalFiles) {
-        exportProgressBar.setProgress(currentFile);
-        exportProgressText.setText(currentFile + "/" + totalFiles);
+    private void updateProgress(ExportEngine.Progress progress) {
+        exportProgressBar.setProgress(progress.getFilesDone());
+        exportProgressText.setText(progress.getFilesDone() + "/" + progress.getFilesTotal()
+                + String.format(Locale.US, " (%.1f MB/s)", progress.bytesPerSecond() / (1024 * 1024)));
     }
 
     private void hideProgress() {
@@ -860,66 +2477,124 @@ public class MainActivity extends AppCompatActivity {
         exportProgressText.setVisibility(View.GONE);
     }
 
+    /** Queues {@code e} for the log file; the write happens on the log's own thread. */
     private void logErrorToFile(Exception e) {
-        Log.e(TAG, "Error logged: " + e.getMessage(), e);
-        try {
-            File logDir = getExternalFilesDir(null);
-            if (logDir != null && !logDir.exists()) {
-                logDir.mkdirs(); // Ensure the directory exists
-            }
-
-            File logFile = new File(logDir, "ErrorLog.txt");
-
-            // Limit log file size (e.g., 1MB)
-            if (logFile.length() > 1024 * 1024) {
-                logFile.delete(); // Delete if it exceeds 1MB
-                logFile.createNewFile(); // Create a new log file
-            }
+        log.e(TAG, "Error logged: " + e.getMessage(), e);
+    }
 
-            FileWriter writer = new FileWriter(logFile, true);
-            writer.append(e.getMessage()).append("\n");
-            for (StackTraceElement element : e.getStackTrace()) {
-                writer.append(element.toString()).append("\n");
-            }
-            writer.close();
-            Log.d(TAG, "Error logged to file successfully");
-        } catch (IOException ioException) {
-            Log.e(TAG, "Failed to log error to file", ioException);
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (voiceSession != null && isVoiceRecognitionEnabled) {
+            voiceSession.start();
         }
     }
 
-
     @Override
     protected void onPause() {
         super.onPause();
-        Log.d(TAG, "onPause called");
+        log.d(TAG, "onPause called");
+        if (log.isLoggable(EventLog.Level.DEBUG)) {
+            log.d(TAG, String.valueOf(prefetchScheduler));
+            log.d(TAG, decisionInput.toString());
+            log.d(TAG, String.valueOf(voiceSession));
+            log.d(TAG, heapWatermark + " within a budget of " + (decodeBudget.budgetBytes() >> 20) + " MiB");
+        }
+        if (voiceSession != null) {
+            voiceSession.stop();  // Releases the microphone while in the background
+        }
+        saveMetrics();
         saveState();
         exportCategorizedImages();
+        log.flushAsync();  // The process may be killed once in the background
+    }
+
+    /** Writes the metrics report to {@code metrics.txt}, next to the error log. */
+    private void saveMetrics() {
+        String report = metrics.report();
+        log.i(TAG, "Metrics:\n{}", report);
+        File file = new File(getExternalFilesDir(null), "metrics.txt");
+        executorService.submit(() -> {
+            try {
+                Metrics.writeTo(file, report);
+            } catch (IOException e) {
+                logErrorToFile(e);
+            }
+        });
+    }
+
+    /** The debug screen: the metrics report and the prefetch and heap summaries. */
+    private void showMetrics() {
+        String report = metrics.report() + "\n" + startupTiming + "\n" + prefetchScheduler + "\n" + heapWatermark + "\n" + decisionInput
+                + (voiceSession == null ? "" : "\n" + voiceSession);
+        new AlertDialog.Builder(this)
+                .setTitle("Performance")
+                .setMessage(report)
+                .setPositiveButton("OK", (dialog, which) -> dialog.dismiss())
+                .setNeutralButton("Save", (dialog, which) -> saveMetrics())
+                .show();
     }
 
     private void saveState() {
-        Log.d(TAG, "saveState called");
+        log.d(TAG, "saveState called");
+        saveSessionSnapshot();
         SharedPreferences preferences = getSharedPreferences("MyAppPreferences", MODE_PRIVATE);
         if (directoryUri != null) {
             preferences.edit()
                     .putString(PREF_DIRECTORY_URI, directoryUri.toString())
-                    .putInt(PREF_LAST_IMAGE_INDEX, currentIndex)
                     .apply();
+            rootLibrary.setResumePoint(directoryUri.toString(), lastViewedDocumentId, lastDecidedDocumentId);
+            saveLibrary();
         } else {
-            Log.w(TAG, "Directory URI is null. Skipping state save.");
+            log.w(TAG, "Directory URI is null. Skipping state save.");
             logErrorToFile(new Exception("Directory URI is null in saveState"));
         }
     }
 
+    /** Saves where the session is, for {@link #restoreSession} on the next start. */
+    private void saveSessionSnapshot() {
+        if (directoryUri == null || !imageShown || currentIndex >= images().size()) {
+            return;
+        }
+        ScannedImage image = images().get(currentIndex);
+        int[] bucketCounts = new int[categoryIndex.bucketCount()];
+        for (int bucket = 1; bucket <= bucketCounts.length; bucket++) {
+            bucketCounts[bucket - 1] = categoryIndex.count(bucket);
+        }
+        SessionSnapshot snapshot = new SessionSnapshot(directoryUri.toString(), image,
+                Math.max(0, imageFiles.positionOf(image.getDocumentId())), imageFiles.size(), bucketCounts);
+        File file = new File(getFilesDir(), SESSION_SNAPSHOT_FILE);
+        executorService.submit(() -> {
+            try {
+                snapshot.write(file);
+            } catch (IOException e) {
+                logErrorToFile(e);
+            }
+        });
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        exportCategorizedImages();  // Ensure files are saved when the app is destroyed
         // Check if activity is finishing or destroyed before trying to clear Glide
-        Log.d(TAG, "onDestroy called");
-        if (speechRecognizer != null) {
-            speechRecognizer.destroy();
+        log.d(TAG, "onDestroy called");
+        handler.removeCallbacksAndMessages(null);
+        if (voiceSession != null) {
+            voiceSession.destroy();
+        }
+        for (RootSession root : sessions.values()) {
+            closeSession(root);  // A running export finishes in the background
         }
+        sessions.clear();
+        // The root threads end once idle, so the exports and journal closes above are not cut off
+        similarityAnalyzer.shutdown();
+        duplicateFinder.shutdown();
+        exifScanner.shutdown();
+        if (filter != null) {
+            filter.close();
+        }
+        indexExecutor.execute(metadataIndex::close);  // After the writes still queued
+        indexExecutor.shutdown();
         if (!executorService.isShutdown()) {
             executorService.shutdown();
         }
@@ -933,7 +2608,10 @@ public class MainActivity extends AppCompatActivity {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == 1) {
             if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-                // Permission granted, proceed with voice recognition
+                setupVoiceRecognition();
+                if (voiceSession != null && voiceSession.isRunning() && imageShown && !isGridShown()) {
+                    voiceSession.arm(decisionInput.token());  // For the image already on screen
+                }
             } else {
                 // Permission denied, notify the user
                 showToast("Microphone permission is required for voice recognition");
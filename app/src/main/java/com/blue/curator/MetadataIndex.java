@@ -0,0 +1,292 @@
+package com.blue.curator;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Everything known about each image, in SQLite, keyed by tree URI and
+ * document id: what the scan saw, what its EXIF says, its perceptual hash and
+ * its current decision. It lets the curator filter and sort without going
+ * back to the provider; see {@link ImageQuery}.
+ *
+ * The index is derived data. The decision journal stays the record of
+ * decisions, and the index is refilled from scans, so it is simply dropped
+ * when its schema changes. Writes block; call them off the UI thread.
+ */
+public class MetadataIndex extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "metadata.db";
+    private static final int DATABASE_VERSION = 2;
+
+    static final String TABLE_IMAGES = "images";
+    static final String COLUMN_TREE = "tree";
+    static final String COLUMN_DOCUMENT_ID = "document_id";
+    static final String COLUMN_FOLDER = "folder";
+    static final String COLUMN_DISPLAY_NAME = "display_name";
+    static final String COLUMN_MIME_TYPE = "mime_type";
+    static final String COLUMN_SIZE = "size";
+    static final String COLUMN_LAST_MODIFIED = "last_modified";
+    static final String COLUMN_CAPTURE_TIME = "capture_time";
+    static final String COLUMN_ORIENTATION = "orientation";
+    static final String COLUMN_CAMERA = "camera";
+    static final String COLUMN_WIDTH = "width";
+    static final String COLUMN_HEIGHT = "height";
+    static final String COLUMN_EXIF_READ = "exif_read";
+    static final String COLUMN_DHASH = "dhash";
+    static final String COLUMN_DECISION = "decision";
+    private static final String COLUMN_GENERATION = "generation";
+
+    /** The columns a {@link CursorImageSequence} reads. */
+    static final String[] IMAGE_COLUMNS = {
+            COLUMN_DOCUMENT_ID, COLUMN_FOLDER, COLUMN_DISPLAY_NAME, COLUMN_MIME_TYPE, COLUMN_SIZE, COLUMN_LAST_MODIFIED,
+    };
+
+    public MetadataIndex(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);  // Queries on the UI thread do not wait for index writes
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_IMAGES + " ("
+                + COLUMN_TREE + " TEXT NOT NULL, "
+                + COLUMN_DOCUMENT_ID + " TEXT NOT NULL, "
+                + COLUMN_FOLDER + " TEXT, "
+                + COLUMN_DISPLAY_NAME + " TEXT, "
+                + COLUMN_MIME_TYPE + " TEXT, "
+                + COLUMN_SIZE + " INTEGER, "
+                + COLUMN_LAST_MODIFIED + " INTEGER, "
+                + COLUMN_CAPTURE_TIME + " INTEGER, "  // EXIF capture time, else local last-modified time
+                + COLUMN_ORIENTATION + " INTEGER, "
+                + COLUMN_CAMERA + " TEXT, "
+                + COLUMN_WIDTH + " INTEGER, "
+                + COLUMN_HEIGHT + " INTEGER, "
+                + COLUMN_EXIF_READ + " INTEGER, "  // Last-modified time of the version whose EXIF was read
+                + COLUMN_DHASH + " INTEGER, "
+                + COLUMN_DECISION + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_GENERATION + " INTEGER NOT NULL DEFAULT 0, "
+                + "PRIMARY KEY (" + COLUMN_TREE + ", " + COLUMN_DOCUMENT_ID + ")) WITHOUT ROWID");
+        // One index per query shape, ending in the sort columns so rows come out in order
+        db.execSQL("CREATE INDEX images_by_time ON " + TABLE_IMAGES + " ("
+                + COLUMN_TREE + ", " + COLUMN_CAPTURE_TIME + ", " + COLUMN_DISPLAY_NAME + ")");
+        db.execSQL("CREATE INDEX images_by_decision ON " + TABLE_IMAGES + " ("
+                + COLUMN_TREE + ", " + COLUMN_DECISION + ", " + COLUMN_CAPTURE_TIME + ", " + COLUMN_DISPLAY_NAME + ")");
+        db.execSQL("CREATE INDEX images_by_camera ON " + TABLE_IMAGES + " ("
+                + COLUMN_TREE + ", " + COLUMN_CAMERA + ", " + COLUMN_DECISION + ", " + COLUMN_CAPTURE_TIME + ", "
+                + COLUMN_DISPLAY_NAME + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_IMAGES);
+        onCreate(db);
+    }
+
+    /**
+     * Brings {@code tree}'s rows in line with a finished scan: new images are
+     * added, vanished ones removed, and decisions (at the same positions in
+     * {@code decisions}) refreshed. An image whose last-modified time changed
+     * loses its hash until it is hashed again.
+     */
+    public void syncScan(String tree, List<ScannedImage> images, int[] decisions, TimeZone localZone) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try (SQLiteStatement nextGeneration = db.compileStatement("SELECT IFNULL(MAX(" + COLUMN_GENERATION
+                + "), 0) + 1 FROM " + TABLE_IMAGES + " WHERE " + COLUMN_TREE + " = ?1");
+             SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_IMAGES + " SET "
+                     + COLUMN_FOLDER + " = ?1, " + COLUMN_DISPLAY_NAME + " = ?2, " + COLUMN_MIME_TYPE + " = ?3, "
+                     + COLUMN_SIZE + " = ?4, " + COLUMN_DECISION + " = ?5, " + COLUMN_GENERATION + " = ?6, "
+                     + COLUMN_DHASH + " = CASE WHEN " + COLUMN_LAST_MODIFIED + " = ?7 THEN " + COLUMN_DHASH
+                     + " ELSE NULL END, "
+                     + COLUMN_LAST_MODIFIED + " = ?7 WHERE " + COLUMN_TREE + " = ?8 AND " + COLUMN_DOCUMENT_ID + " = ?9");
+             SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_IMAGES + " ("
+                     + COLUMN_FOLDER + ", " + COLUMN_DISPLAY_NAME + ", " + COLUMN_MIME_TYPE + ", " + COLUMN_SIZE + ", "
+                     + COLUMN_DECISION + ", " + COLUMN_GENERATION + ", " + COLUMN_LAST_MODIFIED + ", "
+                     + COLUMN_TREE + ", " + COLUMN_DOCUMENT_ID + ", " + COLUMN_CAPTURE_TIME
+                     + ") VALUES (?1, ?2, ?3, ?4, ?5, ?6, ?7, ?8, ?9, ?10)");
+             SQLiteStatement sweep = db.compileStatement("DELETE FROM " + TABLE_IMAGES
+                     + " WHERE " + COLUMN_TREE + " = ?1 AND " + COLUMN_GENERATION + " <> ?2")) {
+            nextGeneration.bindString(1, tree);
+            long generation = nextGeneration.simpleQueryForLong();
+            for (int i = 0; i < images.size(); i++) {
+                ScannedImage image = images.get(i);
+                update.clearBindings();
+                bindScanned(update, image, decisions[i], generation, tree);
+                if (update.executeUpdateDelete() == 0) {
+                    insert.clearBindings();
+                    bindScanned(insert, image, decisions[i], generation, tree);
+                    insert.bindLong(10, CaptureOrder.timeOf(image, null, localZone));
+                    insert.executeInsert();
+                }
+            }
+            sweep.bindString(1, tree);
+            sweep.bindLong(2, generation);
+            sweep.executeUpdateDelete();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void bindScanned(SQLiteStatement statement, ScannedImage image, int decision, long generation,
+                                    String tree) {
+        statement.bindString(1, image.getFolderPath());
+        bindNullable(statement, 2, image.getDisplayName());
+        bindNullable(statement, 3, image.getMimeType());
+        statement.bindLong(4, image.getSize());
+        statement.bindLong(5, decision);
+        statement.bindLong(6, generation);
+        statement.bindLong(7, image.getLastModified());
+        statement.bindString(8, tree);
+        statement.bindString(9, image.getDocumentId());
+    }
+
+    /**
+     * Stores what {@link ExifScanner} found for {@code images}; those missing
+     * from {@code exif} are ordered by last-modified time. Either way the
+     * images count as read until they change; see {@link #storedExif}.
+     */
+    public void updateExif(String tree, List<ScannedImage> images, Map<String, ExifInfo> exif, TimeZone localZone) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try (SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_IMAGES + " SET "
+                + COLUMN_CAPTURE_TIME + " = ?1, " + COLUMN_ORIENTATION + " = ?2, " + COLUMN_CAMERA + " = ?3, "
+                + COLUMN_WIDTH + " = ?4, " + COLUMN_HEIGHT + " = ?5, " + COLUMN_EXIF_READ + " = ?8 WHERE "
+                + COLUMN_TREE + " = ?6 AND " + COLUMN_DOCUMENT_ID + " = ?7")) {
+            for (ScannedImage image : images) {
+                ExifInfo info = exif.get(image.getDocumentId());
+                update.clearBindings();
+                update.bindLong(1, CaptureOrder.timeOf(image, info, localZone));
+                if (info != null) {
+                    update.bindLong(2, info.getOrientation());
+                    bindNullable(update, 3, info.getCamera());
+                    bindPositive(update, 4, info.getWidth());
+                    bindPositive(update, 5, info.getHeight());
+                }
+                update.bindString(6, tree);
+                update.bindString(7, image.getDocumentId());
+                update.bindLong(8, image.getLastModified());
+                update.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * The EXIF stored for those of {@code tree}'s images that were read at
+     * their current last-modified time, so only new and edited images need
+     * reading again. An image read without finding EXIF maps to null. The
+     * capture time given back is the one the image is ordered by, which for
+     * an image without one is its last-modified time in the zone of the read.
+     */
+    public Map<String, ExifInfo> storedExif(String tree) {
+        Map<String, ExifInfo> exif = new HashMap<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT " + COLUMN_DOCUMENT_ID + ", "
+                + COLUMN_CAPTURE_TIME + ", " + COLUMN_ORIENTATION + ", " + COLUMN_CAMERA + ", " + COLUMN_WIDTH + ", "
+                + COLUMN_HEIGHT + " FROM " + TABLE_IMAGES + " WHERE " + COLUMN_TREE + " = ? AND "
+                + COLUMN_EXIF_READ + " = " + COLUMN_LAST_MODIFIED, new String[]{tree})) {
+            while (cursor.moveToNext()) {
+                exif.put(cursor.getString(0), cursor.isNull(2) ? null : new ExifInfo(cursor.getLong(1),
+                        cursor.getInt(2), cursor.isNull(3) ? null : cursor.getString(3),
+                        cursor.isNull(4) ? -1 : cursor.getInt(4), cursor.isNull(5) ? -1 : cursor.getInt(5)));
+            }
+        }
+        return exif;
+    }
+
+    /** Stores perceptual hashes by document id. */
+    public void updateHashes(String tree, Map<String, Long> hashes) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try (SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_IMAGES + " SET " + COLUMN_DHASH
+                + " = ?1 WHERE " + COLUMN_TREE + " = ?2 AND " + COLUMN_DOCUMENT_ID + " = ?3")) {
+            for (Map.Entry<String, Long> hash : hashes.entrySet()) {
+                update.bindLong(1, hash.getValue());
+                update.bindString(2, tree);
+                update.bindString(3, hash.getKey());
+                update.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void setDecision(String tree, String documentId, int decision) {
+        try (SQLiteStatement update = getWritableDatabase().compileStatement("UPDATE " + TABLE_IMAGES + " SET "
+                + COLUMN_DECISION + " = ?1 WHERE " + COLUMN_TREE + " = ?2 AND " + COLUMN_DOCUMENT_ID + " = ?3")) {
+            update.bindLong(1, decision);
+            update.bindString(2, tree);
+            update.bindString(3, documentId);
+            update.executeUpdateDelete();
+        }
+    }
+
+    /** Sets one decision on many images in a single transaction, as the grid's bulk actions do. */
+    public void setDecisions(String tree, Collection<String> documentIds, int decision) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try (SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_IMAGES + " SET "
+                + COLUMN_DECISION + " = ?1 WHERE " + COLUMN_TREE + " = ?2 AND " + COLUMN_DOCUMENT_ID + " = ?3")) {
+            update.bindLong(1, decision);
+            update.bindString(2, tree);
+            for (String documentId : documentIds) {
+                update.bindString(3, documentId);
+                update.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** The cameras seen in {@code tree}, alphabetically. */
+    public List<String> cameras(String tree) {
+        List<String> cameras = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT DISTINCT " + COLUMN_CAMERA + " FROM "
+                + TABLE_IMAGES + " WHERE " + COLUMN_TREE + " = ? AND " + COLUMN_CAMERA + " IS NOT NULL ORDER BY "
+                + COLUMN_CAMERA, new String[]{tree})) {
+            while (cursor.moveToNext()) {
+                cameras.add(cursor.getString(0));
+            }
+        }
+        return cameras;
+    }
+
+    /**
+     * Runs {@code query}. Rows are read from the database only as positions
+     * are visited, a window at a time, so the result can be far larger than
+     * what fits in memory. Close it when done.
+     */
+    public ImageSequence query(ImageQuery query) {
+        Cursor cursor = getReadableDatabase().query(TABLE_IMAGES, IMAGE_COLUMNS, query.selection(),
+                query.selectionArgs(), null, null, query.orderBy());
+        return new CursorImageSequence(cursor);
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static void bindPositive(SQLiteStatement statement, int index, int value) {
+        if (value > 0) {
+            statement.bindLong(index, value);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.blue.curator;
+
+import android.net.Uri;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One open root: its images, their buckets and decision journal, where the
+ * user was in it and its scan. Sessions stay open while the user moves
+ * between roots, so going back to one shows it as it was left, and its scan
+ * carries on while another root is on screen. Used on the UI thread, apart
+ * from the journal, which is opened on the root's {@link RootScheduler}
+ * lane; its decisions are put in the category index on the UI thread.
+ */
+final class RootSession {
+
+    final Uri treeUri;
+    final String key;  // Lane of the root's background work
+    final File directory;  // The root's own files; see RootLibrary
+    final ImageCatalog images = new ImageCatalog();
+    final CategoryIndex categoryIndex;
+    volatile DecisionJournal journal;
+    boolean decisionsRestored;  // The journal's decisions are in the category index
+    final List<PendingDecision> pendingDecisions = new ArrayList<>();  // Made before then, in order
+    ImageScanner scanner;
+    boolean scanComplete;  // Scanned since the session opened
+    CaptureOrder captureOrder;  // Null until the images are in capture order after the last scan
+    SimilarityClusters similarityClusters = SimilarityClusters.empty();
+    DuplicateGroups duplicateGroups = DuplicateGroups.empty();
+    int position;
+    String lastViewedDocumentId;
+    String lastDecidedDocumentId;
+    ExportEngine exportEngine;
+    String exportEngineKey;
+    volatile boolean closed;  // Long background jobs, such as ZIP exports, stop once it is set
+    final AtomicInteger zipExports = new AtomicInteger();  // A newer ZIP export supersedes a running one
+
+    /** A decision waiting for the journal to be replayed, so the replay cannot undo it. */
+    static final class PendingDecision {
+        final List<String> documentIds;
+        final int bucket;
+        final long timestamp;
+
+        PendingDecision(List<String> documentIds, int bucket, long timestamp) {
+            this.documentIds = documentIds;
+            this.bucket = bucket;
+            this.timestamp = timestamp;
+        }
+    }
+
+    RootSession(Uri treeUri, File directory, String... bucketNames) {
+        this.treeUri = treeUri;
+        this.key = treeUri.toString();
+        this.directory = directory;
+        this.categoryIndex = new CategoryIndex(bucketNames);
+    }
+
+    /** Takes in scanned images while the root is not on screen. */
+    void addPage(List<ScannedImage> page) {
+        images.addAll(page);
+        for (ScannedImage image : page) {
+            categoryIndex.register(image.getDocumentId());
+        }
+    }
+
+    /** Brings the images up to date with a rescan done while the root was not on screen. */
+    ScanDiff applyRescan(List<ScannedImage> scanned) {
+        ScanDiff diff = ScanDiff.apply(images.asList(), scanned);
+        if (!diff.isEmpty()) {
+            position = Math.max(0, diff.positionOf(position));
+            images.replaceAll(diff.images());
+            for (ScannedImage image : diff.images()) {
+                categoryIndex.register(image.getDocumentId());
+            }
+            captureOrder = null;
+            duplicateGroups = DuplicateGroups.empty();  // Read again from the saved groups by the caller
+        }
+        return diff;
+    }
+
+    /** Stops the scan; the journal and export are closed by the caller on the root's lane. */
+    void cancelScan() {
+        if (scanner != null) {
+            scanner.cancel();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return key + ": " + images.size() + " images" + (scanComplete ? "" : ", scanning");
+    }
+}
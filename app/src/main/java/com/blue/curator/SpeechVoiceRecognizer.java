@@ -0,0 +1,109 @@
+package com.blue.curator;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.speech.RecognitionListener;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/** A {@link VoiceRecognizer} on the platform {@link SpeechRecognizer}, with partial results on. */
+public class SpeechVoiceRecognizer implements VoiceRecognizer {
+
+    // Commands are single words, so the utterance can end on a short pause
+    private static final long COMPLETE_SILENCE_MILLIS = 500;
+
+    private final SpeechRecognizer recognizer;
+    private final Intent intent;
+    private Listener listener;
+
+    public SpeechVoiceRecognizer(Context context) {
+        recognizer = SpeechRecognizer.createSpeechRecognizer(context);
+        intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
+        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, Locale.getDefault().toLanguageTag());
+        intent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
+        intent.putExtra(RecognizerIntent.EXTRA_PREFER_OFFLINE, true);
+        intent.putExtra(RecognizerIntent.EXTRA_CALLING_PACKAGE, context.getPackageName());
+        intent.putExtra(RecognizerIntent.EXTRA_SPEECH_INPUT_COMPLETE_SILENCE_LENGTH_MILLIS, COMPLETE_SILENCE_MILLIS);
+        recognizer.setRecognitionListener(new RecognitionListener() {
+            @Override
+            public void onReadyForSpeech(Bundle params) {}
+
+            @Override
+            public void onBeginningOfSpeech() {
+                listener.onSpeechStart();
+            }
+
+            @Override
+            public void onRmsChanged(float rmsdB) {}
+
+            @Override
+            public void onBufferReceived(byte[] buffer) {}
+
+            @Override
+            public void onEndOfSpeech() {}
+
+            @Override
+            public void onError(int error) {
+                listener.onFailure(failureOf(error), error);
+            }
+
+            @Override
+            public void onResults(Bundle results) {
+                listener.onFinal(best(results));
+            }
+
+            @Override
+            public void onPartialResults(Bundle partialResults) {
+                String hypothesis = best(partialResults);
+                if (!hypothesis.isEmpty()) {
+                    listener.onPartial(hypothesis);
+                }
+            }
+
+            @Override
+            public void onEvent(int eventType, Bundle params) {}
+        });
+    }
+
+    static Failure failureOf(int error) {
+        switch (error) {
+            case SpeechRecognizer.ERROR_NO_MATCH:
+            case SpeechRecognizer.ERROR_SPEECH_TIMEOUT:
+                return Failure.NO_SPEECH;
+            case SpeechRecognizer.ERROR_INSUFFICIENT_PERMISSIONS:
+                return Failure.FATAL;
+            default:
+                return Failure.TRANSIENT;
+        }
+    }
+
+    private static String best(Bundle results) {
+        ArrayList<String> matches = results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
+        return matches == null || matches.isEmpty() ? "" : matches.get(0);
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void start() {
+        recognizer.startListening(intent);
+    }
+
+    @Override
+    public void cancel() {
+        recognizer.cancel();
+    }
+
+    @Override
+    public void destroy() {
+        recognizer.destroy();
+    }
+}
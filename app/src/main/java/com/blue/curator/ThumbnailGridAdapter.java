@@ -0,0 +1,134 @@
+package com.blue.curator;
+
+import android.graphics.drawable.Drawable;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Square thumbnail cells for the batch-triage grid. A tap toggles a cell in
+ * the {@link GridSelection}, a long press selects a range. Selection and
+ * decision changes rebind with a payload, so only the overlay and badge are
+ * touched and the thumbnail is not reloaded. Recycled cells clear their
+ * Glide request so off-screen bitmaps go back to the pool.
+ */
+public class ThumbnailGridAdapter extends RecyclerView.Adapter<ThumbnailGridAdapter.Holder> {
+
+    private static final Object STATE_CHANGED = new Object();
+
+    static final class Holder extends RecyclerView.ViewHolder {
+        final ImageView thumbnail;
+        final View selectionOverlay;
+        final TextView decisionBadge;
+
+        Holder(View view) {
+            super(view);
+            thumbnail = view.findViewById(R.id.thumbnail);
+            selectionOverlay = view.findViewById(R.id.selectionOverlay);
+            decisionBadge = view.findViewById(R.id.decisionBadge);
+        }
+    }
+
+    private final RequestManager requestManager;
+    private final IntFunction<RequestBuilder<Drawable>> thumbnails;
+    private final IntFunction<String> badges;
+    private final GridSelection selection;
+    private final IntConsumer selectionListener;
+    private int count;
+    private int cellSize;
+
+    /**
+     * {@code thumbnails} builds the request for a position at the cell size,
+     * {@code badges} names its decision (null when undecided) and
+     * {@code selectionListener} hears the selection count after every change.
+     */
+    public ThumbnailGridAdapter(RequestManager requestManager, IntFunction<RequestBuilder<Drawable>> thumbnails,
+                                IntFunction<String> badges, GridSelection selection, IntConsumer selectionListener) {
+        this.requestManager = requestManager;
+        this.thumbnails = thumbnails;
+        this.badges = badges;
+        this.selection = selection;
+        this.selectionListener = selectionListener;
+    }
+
+    /** Shows {@code count} images in cells {@code cellSize} pixels square. */
+    public void setImages(int count, int cellSize) {
+        this.count = count;
+        this.cellSize = cellSize;
+        notifyDataSetChanged();
+    }
+
+    /** Rebinds the overlays and badges after a bulk decision, without reloading thumbnails. */
+    public void notifyStateChanged() {
+        notifyItemRangeChanged(0, count, STATE_CHANGED);
+    }
+
+    @Override
+    public Holder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_thumbnail, parent, false);
+        view.getLayoutParams().height = cellSize;
+        Holder holder = new Holder(view);
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                selection.toggle(position);
+                notifyItemChanged(position, STATE_CHANGED);
+                selectionListener.accept(selection.count());
+            }
+        });
+        view.setOnLongClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return false;
+            }
+            selection.extendTo(position);
+            notifyStateChanged();
+            selectionListener.accept(selection.count());
+            return true;
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(Holder holder, int position) {
+        thumbnails.apply(position).into(holder.thumbnail);
+        bindState(holder, position);
+    }
+
+    @Override
+    public void onBindViewHolder(Holder holder, int position, List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+        } else {
+            bindState(holder, position);
+        }
+    }
+
+    private void bindState(Holder holder, int position) {
+        holder.selectionOverlay.setVisibility(selection.isSelected(position) ? View.VISIBLE : View.GONE);
+        String badge = badges.apply(position);
+        holder.decisionBadge.setText(badge == null ? "" : badge);
+        holder.decisionBadge.setVisibility(badge == null ? View.GONE : View.VISIBLE);
+    }
+
+    @Override
+    public void onViewRecycled(Holder holder) {
+        requestManager.clear(holder.thumbnail);
+    }
+
+    @Override
+    public int getItemCount() {
+        return count;
+    }
+}
@@ -0,0 +1,450 @@
+package com.blue.curator;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.os.Trace;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Exports into {@code Curated/<bucket>} folders inside the picked document
+ * tree and lets the document provider do the work.
+ *
+ * Images are exported with {@code DocumentsContract.copyDocument} (or
+ * {@code moveDocument} when originals are moved rather than copied), so a
+ * local-storage provider copies or renames the file itself and no bytes pass
+ * through the app. Moving an export between buckets is a
+ * {@code moveDocument} between the two bucket folders. When the provider does
+ * not support an operation, the bytes are transferred between the two
+ * documents' file descriptors with {@link FileChannel#transferTo}.
+ *
+ * In move mode an export is the original, so taking it back moves it to the
+ * top of the picked tree instead of deleting it. When the provider cannot
+ * move it, the original is copied, the copy read back and checked against
+ * the original's CRC32 and size, and only then is the original deleted.
+ */
+public class TreeExportTarget implements ExportTarget {
+
+    private static final String TAG = "TreeExportTarget";
+
+    /** Name of the folder holding the bucket folders; scans skip it. */
+    public static final String FOLDER_NAME = "Curated";
+
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+    private static final int PIPE_BUFFER_SIZE = 256 * 1024;
+    private static final String[] CHILD_PROJECTION = {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+    };
+
+    private final ContentResolver contentResolver;
+    private final Uri treeUri;
+    private final boolean moveOriginals;
+    private final Uri rootUri;
+    /** Bucket folder name to document id, for bucket folders that exist. */
+    private final Map<String, String> bucketFolders = new ConcurrentHashMap<>();
+    /** Bucket folder name to its listing (display name to document id), read once per job. */
+    private final Map<String, Map<String, String>> listings = new ConcurrentHashMap<>();
+    private volatile String curatedFolderId;
+    private volatile boolean providerCopies = true;
+    private volatile boolean providerMoves = true;
+
+    public TreeExportTarget(ContentResolver contentResolver, Uri treeUri, boolean moveOriginals) {
+        this.contentResolver = contentResolver;
+        this.treeUri = treeUri;
+        this.moveOriginals = moveOriginals;
+        this.rootUri = DocumentsContract.buildDocumentUriUsingTree(treeUri, DocumentsContract.getTreeDocumentId(treeUri));
+    }
+
+    @Override
+    public void begin() throws IOException {
+        bucketFolders.clear();
+        listings.clear();
+        curatedFolderId = childFolder(DocumentsContract.getTreeDocumentId(treeUri), FOLDER_NAME);
+        bucketFolders.putAll(list(curatedFolderId));
+    }
+
+    @Override
+    public boolean exists(ExportManifest.Entry entry) {
+        return exportedId(entry) != null;
+    }
+
+    @Override
+    public boolean withdraw(ExportManifest.Entry entry) {
+        String documentId = exportedId(entry);
+        if (documentId == null) {
+            return true;
+        }
+        Uri exported = documentUri(documentId);
+        try {
+            boolean done;
+            if (moveOriginals) {
+                // The export is the only copy: put it back rather than delete it
+                done = DocumentsContract.moveDocument(contentResolver, exported,
+                        documentUri(bucketFolders.get(entry.getFolder())), rootUri) != null;
+            } else {
+                done = DocumentsContract.deleteDocument(contentResolver, exported);
+            }
+            if (done) {
+                listing(entry.getFolder()).remove(entry.getFileName());
+            }
+            return done;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Cannot take back " + exported, e);
+            return false;
+        }
+    }
+
+    @Override
+    public ExportManifest.Entry export(ExportItem item, String fileName, Transfer transfer) throws IOException {
+        Trace.beginSection("export image");
+        try {
+            if (transfer.isCancelled()) {
+                throw new CancellationException();
+            }
+            String folderId = bucketFolder(item.getTargetFolder());
+            Uri source = documentUri(item.getDocumentId());
+            Uri folder = documentUri(folderId);
+
+            Uri exported = moveOriginals ? providerMove(source, folder) : null;
+            long checksum = 0;  // Only known for bytes that passed through the app
+            if (exported == null && moveOriginals) {
+                // Copied rather than moved: the original goes only once the copy is known to match it
+                Copy copy = verifiedCopy(item, fileName, source, folder, transfer);
+                exported = copy.document;
+                checksum = copy.checksum;
+                try {
+                    DocumentsContract.deleteDocument(contentResolver, source);
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Exported " + source + " but cannot remove the original", e);
+                }
+            } else if (exported == null) {
+                exported = providerCopy(source, folder);
+                if (exported == null) {
+                    exported = transfer(item, fileName, source, folder, transfer);
+                }
+            }
+            String exportedName = displayName(exported, fileName);
+            listing(item.getTargetFolder()).put(exportedName, DocumentsContract.getDocumentId(exported));
+            return new ExportManifest.Entry(item.getTargetFolder(), exportedName, item.getSize(),
+                    item.getLastModified(), checksum);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    @Override
+    public ExportManifest.Entry relocate(ExportManifest.Entry entry, ExportItem item, String fileName)
+            throws IOException {
+        String documentId = exportedId(entry);
+        if (documentId == null || !providerMoves) {
+            return null;
+        }
+        Uri from = documentUri(bucketFolders.get(entry.getFolder()));
+        Uri to = documentUri(bucketFolder(item.getTargetFolder()));
+        Uri moved = move(documentUri(documentId), from, to);
+        if (moved == null) {
+            return null;
+        }
+        listing(entry.getFolder()).remove(entry.getFileName());
+        String movedName = displayName(moved, entry.getFileName());
+        listing(item.getTargetFolder()).put(movedName, DocumentsContract.getDocumentId(moved));
+        return new ExportManifest.Entry(item.getTargetFolder(), movedName, item.getSize(),
+                item.getLastModified(), entry.getChecksum());
+    }
+
+    private Uri providerCopy(Uri source, Uri folder) {
+        if (!providerCopies) {
+            return null;
+        }
+        try {
+            return DocumentsContract.copyDocument(contentResolver, source, folder);
+        } catch (UnsupportedOperationException e) {
+            providerCopies = false;  // Don't ask again for every file
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Provider copy of " + source + " failed, transferring instead", e);
+        }
+        return null;
+    }
+
+    private Uri providerMove(Uri source, Uri folder) {
+        if (!providerMoves || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return null;  // The source's parent can only be looked up from API 26 on
+        }
+        try {
+            DocumentsContract.Path path = DocumentsContract.findDocumentPath(contentResolver, source);
+            List<String> ids = path == null ? null : path.getPath();
+            if (ids == null || ids.size() < 2) {
+                return null;
+            }
+            return move(source, documentUri(ids.get(ids.size() - 2)), folder);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Uri move(Uri document, Uri fromFolder, Uri toFolder) {
+        try {
+            return DocumentsContract.moveDocument(contentResolver, document, fromFolder, toFolder);
+        } catch (UnsupportedOperationException e) {
+            providerMoves = false;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Provider move of " + document + " failed", e);
+        }
+        return null;
+    }
+
+    /** A copy of an original, with the CRC32 and size the original was read to have. */
+    private static final class Copy {
+        final Uri document;
+        final long checksum;
+        final long size;
+
+        Copy(Uri document, long checksum, long size) {
+            this.document = document;
+            this.checksum = checksum;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Copies {@code source} into {@code folder} and reads the copy back, as
+     * {@link FileExportTarget} does before its rename. A provider copy is
+     * checked against the original read afresh; otherwise the bytes are
+     * streamed through a CRC32 on their way. A copy that differs in checksum
+     * or size is deleted and the export fails, so the original is kept.
+     */
+    private Copy verifiedCopy(ExportItem item, String fileName, Uri source, Uri folder, Transfer transfer)
+            throws IOException {
+        byte[] buffer = new byte[PIPE_BUFFER_SIZE];
+        Copy copy;
+        Uri copied = providerCopy(source, folder);
+        if (copied != null) {
+            try {
+                CRC32 sourceChecksum = new CRC32();
+                long size = checksumOf(source, sourceChecksum, buffer, transfer);
+                copy = new Copy(copied, sourceChecksum.getValue(), size);
+            } catch (IOException | RuntimeException e) {
+                deleteQuietly(copied);
+                throw e;
+            }
+        } else {
+            copy = streamedCopy(item, fileName, source, folder, buffer, transfer);
+        }
+        try {
+            CRC32 copyChecksum = new CRC32();
+            long copySize = checksumOf(copy.document, copyChecksum, buffer, transfer);
+            if (copySize != copy.size || (item.getSize() > 0 && copySize != item.getSize())
+                    || copyChecksum.getValue() != copy.checksum) {
+                throw new IOException("Copy of " + source + " does not match it: " + copySize + " of "
+                        + copy.size + " bytes");
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(copy.document);
+            throw e;
+        }
+        return copy;
+    }
+
+    /** Creates {@code fileName} in {@code folder} and streams {@code source} into it through a CRC32. */
+    private Copy streamedCopy(ExportItem item, String fileName, Uri source, Uri folder, byte[] buffer,
+                              Transfer transfer) throws IOException {
+        Uri target = createDocument(item, fileName, folder);
+        CRC32 checksum = new CRC32();
+        long size = 0;
+        try (InputStream in = contentResolver.openInputStream(source);
+             OutputStream out = contentResolver.openOutputStream(target, "w")) {
+            if (in == null || out == null) {
+                throw new FileNotFoundException("Cannot open " + source + " or " + target);
+            }
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                if (transfer.isCancelled()) {
+                    throw new CancellationException();
+                }
+                out.write(buffer, 0, count);
+                checksum.update(buffer, 0, count);
+                size += count;
+                transfer.addBytes(count);
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(target);
+            throw e;
+        }
+        return new Copy(target, checksum.getValue(), size);
+    }
+
+    /** Reads all of {@code document} into {@code checksum}; returns its length. */
+    private long checksumOf(Uri document, CRC32 checksum, byte[] buffer, Transfer transfer) throws IOException {
+        long size = 0;
+        try (InputStream in = contentResolver.openInputStream(document)) {
+            if (in == null) {
+                throw new FileNotFoundException("Cannot open " + document);
+            }
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                if (transfer.isCancelled()) {
+                    throw new CancellationException();
+                }
+                checksum.update(buffer, 0, count);
+                size += count;
+            }
+        }
+        return size;
+    }
+
+    private Uri createDocument(ExportItem item, String fileName, Uri folder) throws IOException {
+        String mimeType = item.getMimeType() == null ? "application/octet-stream" : item.getMimeType();
+        Uri target = DocumentsContract.createDocument(contentResolver, folder, mimeType, fileName);
+        if (target == null) {
+            throw new IOException("Cannot create " + fileName + " in " + folder);
+        }
+        return target;
+    }
+
+    private void deleteQuietly(Uri document) {
+        try {
+            DocumentsContract.deleteDocument(contentResolver, document);
+        } catch (IOException | RuntimeException ignored) {
+            // Leave the partial document; the manifest never points at it
+        }
+    }
+
+    /** Creates {@code fileName} in {@code folder} and transfers the bytes of {@code source} into it. */
+    private Uri transfer(ExportItem item, String fileName, Uri source, Uri folder, Transfer transfer)
+            throws IOException {
+        Uri target = createDocument(item, fileName, folder);
+        try {
+            ParcelFileDescriptor in = openFileDescriptor(source, "r");
+            ParcelFileDescriptor out = openFileDescriptor(target, "w");
+            try (FileChannel from = new ParcelFileDescriptor.AutoCloseInputStream(in).getChannel();
+                 FileChannel to = new ParcelFileDescriptor.AutoCloseOutputStream(out).getChannel()) {
+                long size = in.getStatSize();
+                if (size >= 0) {
+                    for (long position = 0; position < size; ) {
+                        if (transfer.isCancelled()) {
+                            throw new CancellationException();
+                        }
+                        long count = from.transferTo(position, Math.min(TRANSFER_CHUNK, size - position), to);
+                        if (count <= 0) {
+                            throw new IOException("Short transfer from " + source);
+                        }
+                        position += count;
+                        transfer.addBytes(count);
+                    }
+                } else {
+                    // A pipe has no size and cannot be positioned: copy through a buffer instead
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(PIPE_BUFFER_SIZE);
+                    int count;
+                    while ((count = from.read(buffer)) > 0) {
+                        if (transfer.isCancelled()) {
+                            throw new CancellationException();
+                        }
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            to.write(buffer);
+                        }
+                        buffer.clear();
+                        transfer.addBytes(count);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(target);
+            throw e;
+        }
+        return target;
+    }
+
+    private ParcelFileDescriptor openFileDescriptor(Uri uri, String mode) throws IOException {
+        ParcelFileDescriptor descriptor = contentResolver.openFileDescriptor(uri, mode);
+        if (descriptor == null) {
+            throw new FileNotFoundException("No file descriptor for " + uri);
+        }
+        return descriptor;
+    }
+
+    private String bucketFolder(String name) throws IOException {
+        String documentId = bucketFolders.get(name);
+        if (documentId == null) {
+            synchronized (this) {
+                documentId = bucketFolders.get(name);
+                if (documentId == null) {
+                    documentId = childFolder(curatedFolderId, name);
+                    bucketFolders.put(name, documentId);
+                }
+            }
+        }
+        return documentId;
+    }
+
+    /** Document id of the folder {@code name} inside {@code parentId}, created if missing. */
+    private String childFolder(String parentId, String name) throws IOException {
+        String documentId = list(parentId).get(name);
+        if (documentId != null) {
+            return documentId;
+        }
+        Uri created = DocumentsContract.createDocument(contentResolver, documentUri(parentId),
+                DocumentsContract.Document.MIME_TYPE_DIR, name);
+        if (created == null) {
+            throw new IOException("Cannot create folder " + name);
+        }
+        return DocumentsContract.getDocumentId(created);
+    }
+
+    private String exportedId(ExportManifest.Entry entry) {
+        return bucketFolders.containsKey(entry.getFolder())
+                ? listing(entry.getFolder()).get(entry.getFileName()) : null;
+    }
+
+    private Map<String, String> listing(String folder) {
+        return listings.computeIfAbsent(folder, name -> {
+            String documentId = bucketFolders.get(name);
+            return documentId == null ? new ConcurrentHashMap<>() : list(documentId);
+        });
+    }
+
+    /** Children of a folder, display name to document id, in one query. */
+    private Map<String, String> list(String folderId) {
+        Map<String, String> children = new ConcurrentHashMap<>();
+        Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, folderId);
+        try (Cursor cursor = contentResolver.query(childrenUri, CHILD_PROJECTION, null, null, null)) {
+            while (cursor != null && cursor.moveToNext()) {
+                String name = cursor.getString(1);
+                if (name != null) {
+                    children.put(name, cursor.getString(0));
+                }
+            }
+        }
+        return children;
+    }
+
+    private String displayName(Uri document, String fallback) {
+        try (Cursor cursor = contentResolver.query(document,
+                new String[]{DocumentsContract.Document.COLUMN_DISPLAY_NAME}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getString(0);
+            }
+        }
+        return fallback;
+    }
+
+    private Uri documentUri(String documentId) {
+        return DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId);
+    }
+}
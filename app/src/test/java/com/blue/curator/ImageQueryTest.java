@@ -0,0 +1,28 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ImageQueryTest {
+
+    @Test
+    public void narrowsByDecisionAndCamera() {
+        ImageQuery all = ImageQuery.in("tree");
+        assertEquals("tree = ?", all.selection());
+        assertArrayEquals(new String[]{"tree"}, all.selectionArgs());
+        assertEquals("capture_time, display_name", all.orderBy());
+
+        ImageQuery notSureFromCamera = all.withDecision(3).fromCamera("Canon EOS R6");
+        assertEquals("tree = ? AND decision = ? AND camera = ?", notSureFromCamera.selection());
+        assertArrayEquals(new String[]{"tree", "3", "Canon EOS R6"}, notSureFromCamera.selectionArgs());
+        assertEquals("tree = ?", all.selection());  // Queries are values
+    }
+
+    @Test
+    public void ordersByName() {
+        ImageQuery undecided = ImageQuery.in("tree").withDecision(CategoryIndex.UNDECIDED).orderedBy(ImageQuery.Order.NAME);
+        assertEquals("display_name", undecided.orderBy());
+        assertArrayEquals(new String[]{"tree", "0"}, undecided.selectionArgs());
+    }
+}
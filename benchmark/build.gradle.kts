@@ -0,0 +1,29 @@
+plugins {
+    id("java")
+    id("me.champeau.jmh")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    jmh(project(":core"))
+}
+
+// ./gradlew :benchmark:jmh runs every benchmark with fixed settings and writes
+// build/results/jmh/results.json; -PjmhInclude=<regex> narrows it to some of them.
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(2)
+    warmupIterations.set(3)
+    warmup.set("2s")
+    iterations.set(5)
+    timeOnIteration.set("2s")
+    jvmArgs.set(listOf("-Xms1g", "-Xmx1g"))
+    resultFormat.set("JSON")
+    humanOutputFile.set(layout.buildDirectory.file("results/jmh/human.txt"))
+    failOnError.set(true)
+    (project.findProperty("jmhInclude") as String?)?.let { includes.add(it) }
+}
@@ -0,0 +1,42 @@
+package com.blue.curator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Deterministic inputs shared by the benchmarks, so runs on different machines see the same data. */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static String imageId(int i) {
+        return "primary:DCIM/Camera/IMG_" + i + ".jpg";
+    }
+
+    /** {@code count} images, in a realistic order, with ids from {@link #imageId}. */
+    static List<ScannedImage> images(int count) {
+        List<ScannedImage> images = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            images.add(new ScannedImage(imageId(i), "DCIM/Camera", "IMG_" + i + ".jpg", "image/jpeg",
+                    2_000_000L + (i * 7919L) % 3_000_000L, 1_700_000_000_000L + i * 1000L));
+        }
+        return images;
+    }
+
+    static File temporaryDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory("curator-" + prefix).toFile();
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
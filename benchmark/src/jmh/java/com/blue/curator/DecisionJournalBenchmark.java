@@ -0,0 +1,64 @@
+package com.blue.curator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording a decision into a journal that already holds
+ * {@code priorDecisions}. Each operation re-decides one of those images, so
+ * the journal stays the same size and compaction runs at its normal rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecisionJournalBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int priorDecisions;
+
+    private File directory;
+    private DecisionJournal journal;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = BenchmarkData.temporaryDirectory("journal");
+        journal = DecisionJournal.open(directory);
+        for (int i = 0; i < priorDecisions; i++) {
+            journal.record(BenchmarkData.imageId(i), 1 + i % 3, i);
+        }
+        journal.flush();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    /** What the UI thread pays: the in-memory update and the hand-off to the writer. */
+    @Benchmark
+    public void record() {
+        int i = next++;
+        journal.record(BenchmarkData.imageId(i % priorDecisions), 1 + i % 3, i);
+    }
+
+    /** A decision that is on disk when the call returns. */
+    @Benchmark
+    public void recordAndFlush() throws IOException {
+        int i = next++;
+        journal.record(BenchmarkData.imageId(i % priorDecisions), 1 + i % 3, i);
+        journal.flush();
+    }
+}
@@ -0,0 +1,156 @@
+package com.blue.curator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Export copy throughput. Every operation exports the same {@value #FILES}
+ * files of {@value #FILE_SIZE} bytes from scratch, so bytes per second is
+ * {@code FILES * FILE_SIZE} divided by the reported time.
+ *
+ * {@link #folders} copies through {@link ExportEngine} into per-bucket
+ * folders, varying the copy buffer and how many files are copied at once;
+ * {@link #zip} writes the same files into one archive with {@link ZipExporter}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExportBenchmark {
+
+    static final int FILES = 16;
+    static final int FILE_SIZE = 4 * 1024 * 1024;
+
+    private static final ExportEngine.Listener IGNORE_PROGRESS = new ExportEngine.Listener() {
+        @Override
+        public void onProgress(ExportEngine.Progress progress) {
+        }
+
+        @Override
+        public void onFinished(ExportEngine.Progress progress) {
+        }
+    };
+
+    /** The source images, written once per trial. */
+    @State(Scope.Benchmark)
+    public static class Sources {
+        File directory;
+        File sources;
+        List<ExportItem> items;
+        FileExportTarget.Source source;
+
+        @Setup
+        public void setUp() throws IOException {
+            directory = BenchmarkData.temporaryDirectory("export");
+            sources = new File(directory, "sources");
+            sources.mkdirs();
+            Random random = new Random(42);
+            byte[] bytes = new byte[FILE_SIZE];
+            items = new ArrayList<>(FILES);
+            for (int i = 0; i < FILES; i++) {
+                random.nextBytes(bytes);  // Incompressible, like JPEG
+                String name = "IMG_" + i + ".jpg";
+                try (OutputStream out = new FileOutputStream(new File(sources, name))) {
+                    out.write(bytes);
+                }
+                items.add(new ExportItem(name, name, "image/jpeg", FILE_SIZE, 1_700_000_000_000L + i,
+                        i % 2 == 0 ? "yes" : "not_sure"));
+            }
+            source = documentId -> new FileInputStream(new File(sources, documentId));
+        }
+
+        @TearDown
+        public void tearDown() {
+            BenchmarkData.deleteRecursively(directory);
+        }
+    }
+
+    /** A fresh folder export for every operation. */
+    @State(Scope.Thread)
+    public static class FolderExport {
+        @Param({"8192", "65536", "262144", "1048576"})
+        public int bufferSize;
+
+        @Param({"1", "3"})
+        public int concurrency;
+
+        File exportRoot;
+        ExportEngine engine;
+
+        @Setup(Level.Invocation)
+        public void setUp(Sources sources) {
+            exportRoot = new File(sources.directory, "export");
+            BenchmarkData.deleteRecursively(exportRoot);
+            File manifest = new File(sources.directory, "export.manifest");
+            manifest.delete();
+            engine = new ExportEngine(new FileExportTarget(sources.source, exportRoot, bufferSize),
+                    new ExportManifest(manifest), concurrency);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            engine.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ZipExport {
+        File zipFile;
+        ZipExporter exporter;
+
+        @Setup(Level.Invocation)
+        public void setUp(Sources sources) {
+            zipFile = new File(sources.directory, "export.zip");
+            zipFile.delete();
+            exporter = new ZipExporter(sources.source);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            exporter.shutdown();
+        }
+    }
+
+    @Benchmark
+    public long folders(Sources sources, FolderExport export) throws InterruptedException {
+        ExportEngine.Progress progress = export.engine.start(sources.items, IGNORE_PROGRESS).await();
+        if (progress.getFailures() > 0 || progress.getFilesDone() != FILES) {
+            throw new IllegalStateException("Export failed: " + progress);
+        }
+        return progress.getBytesCopied();
+    }
+
+    @Benchmark
+    public long zip(Sources sources, ZipExport export) throws IOException {
+        AtomicLong bytes = new AtomicLong();
+        export.exporter.writeTo(sources.items, export.zipFile, new ExportTarget.Transfer() {
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+
+            @Override
+            public void addBytes(long count) {
+                bytes.addAndGet(count);
+            }
+        });
+        return bytes.get();
+    }
+}
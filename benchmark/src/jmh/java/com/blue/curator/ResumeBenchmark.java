@@ -0,0 +1,63 @@
+package com.blue.curator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding where to resume: the image decided last and its position in the
+ * scanned folder. {@link #reopen} includes replaying the journal from disk,
+ * as on a cold start; {@link #lookup} is the part done once it is open.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResumeBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int priorDecisions;
+
+    private File directory;
+    private DecisionJournal journal;
+    private final ImageCatalog catalog = new ImageCatalog();
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = BenchmarkData.temporaryDirectory("resume");
+        try (DecisionJournal writer = DecisionJournal.open(directory)) {
+            for (int i = 0; i < priorDecisions; i++) {
+                writer.record(BenchmarkData.imageId(i), 1 + i % 3, i);
+            }
+        }
+        journal = DecisionJournal.open(directory);
+        catalog.addAll(BenchmarkData.images(priorDecisions));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public int lookup() {
+        return catalog.positionOf(journal.lastDecision().getImageId());
+    }
+
+    @Benchmark
+    public int reopen() throws IOException {
+        try (DecisionJournal reopened = DecisionJournal.open(directory)) {
+            return catalog.positionOf(reopened.lastDecision().getImageId());
+        }
+    }
+}
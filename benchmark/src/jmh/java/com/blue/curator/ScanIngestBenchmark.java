@@ -0,0 +1,88 @@
+package com.blue.curator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Taking in the result of a folder scan: paging it into the catalog, diffing
+ * a rescan against what was shown, and the manifest that makes the next cold
+ * start instant. The rescan differs from the first scan in about 1% of its
+ * images, a few added, removed and changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ScanIngestBenchmark {
+
+    /** The scanner's page size. */
+    private static final int PAGE_SIZE = 256;
+
+    @Param({"1000", "10000", "100000"})
+    public int images;
+
+    private List<ScannedImage> scanned;
+    private List<ScannedImage> rescanned;
+    private File directory;
+    private ScanManifest manifest;
+
+    @Setup
+    public void setUp() throws IOException {
+        scanned = BenchmarkData.images(images);
+        rescanned = new ArrayList<>(images);
+        for (int i = 0; i < images; i++) {
+            ScannedImage image = scanned.get(i);
+            if (i % 300 == 1) {
+                continue;  // Deleted
+            }
+            if (i % 300 == 2) {
+                image = new ScannedImage(image.getDocumentId(), image.getFolderPath(), image.getDisplayName(),
+                        image.getMimeType(), image.getSize() + 1, image.getLastModified() + 1);
+            }
+            rescanned.add(image);
+            if (i % 300 == 3) {
+                rescanned.add(new ScannedImage(BenchmarkData.imageId(images + i), "IMG_new_" + i + ".jpg",
+                        "image/jpeg", 2_500_000L, image.getLastModified()));
+            }
+        }
+        directory = BenchmarkData.temporaryDirectory("scan");
+        manifest = new ScanManifest(new File(directory, "scan.manifest"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public ImageCatalog addPages() {
+        ImageCatalog catalog = new ImageCatalog();
+        for (int from = 0; from < images; from += PAGE_SIZE) {
+            catalog.addAll(scanned.subList(from, Math.min(images, from + PAGE_SIZE)));
+        }
+        return catalog;
+    }
+
+    @Benchmark
+    public ScanDiff diff() {
+        return ScanDiff.apply(scanned, rescanned);
+    }
+
+    @Benchmark
+    public List<ScannedImage> manifestRoundTrip() throws IOException {
+        manifest.save(scanned);
+        return manifest.load();
+    }
+}
@@ -0,0 +1,13 @@
+plugins {
+    id("java-library")
+}
+
+// Curation logic with no Android dependencies, so it can be unit tested and benchmarked on a plain JVM
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    testImplementation("junit:junit:4.13.2")
+}
@@ -0,0 +1,109 @@
+package com.blue.curator;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Burkhard-Keller tree over 64-bit hashes under Hamming distance.
+ *
+ * Each child hangs off its parent at the distance between the two, so a
+ * search for everything within {@code d} of a hash only descends into
+ * children at distances {@code [k - d, k + d]} from a node at distance
+ * {@code k}. For the small radii used for near-duplicates this visits a small
+ * fraction of the tree. Items are ints, typically positions in a list.
+ */
+public class BkTree {
+
+    private static final class Node {
+        final long hash;
+        int[] items = new int[1];
+        int itemCount;
+        // Sparse children: few of the 65 possible distances are used
+        byte[] childDistances = new byte[0];
+        Node[] children = new Node[0];
+
+        Node(long hash) {
+            this.hash = hash;
+        }
+
+        void addItem(int item) {
+            if (itemCount == items.length) {
+                items = Arrays.copyOf(items, itemCount * 2);
+            }
+            items[itemCount++] = item;
+        }
+
+        Node child(int distance) {
+            for (int i = 0; i < childDistances.length; i++) {
+                if (childDistances[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void addChild(int distance, Node child) {
+            childDistances = Arrays.copyOf(childDistances, childDistances.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            childDistances[childDistances.length - 1] = (byte) distance;
+            children[children.length - 1] = child;
+        }
+    }
+
+    private Node root;
+    private int size;
+
+    public void add(long hash, int item) {
+        size++;
+        if (root == null) {
+            root = new Node(hash);
+            root.addItem(item);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = PerceptualHash.distance(hash, node.hash);
+            if (distance == 0) {
+                node.addItem(item);
+                return;
+            }
+            Node child = node.child(distance);
+            if (child == null) {
+                child = new Node(hash);
+                child.addItem(item);
+                node.addChild(distance, child);
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /** Passes every item whose hash is within {@code maxDistance} bits of {@code hash} to {@code found}. */
+    public void search(long hash, int maxDistance, IntConsumer found) {
+        if (root == null) {
+            return;
+        }
+        ArrayDeque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = PerceptualHash.distance(hash, node.hash);
+            if (distance <= maxDistance) {
+                for (int i = 0; i < node.itemCount; i++) {
+                    found.accept(node.items[i]);
+                }
+            }
+            for (int i = 0; i < node.childDistances.length; i++) {
+                if (Math.abs(node.childDistances[i] - distance) <= maxDistance) {
+                    pending.push(node.children[i]);
+                }
+            }
+        }
+    }
+
+    /** Number of items added. */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,103 @@
+package com.blue.curator;
+
+/**
+ * Browses the images in one bucket of a {@link CategoryIndex} without
+ * listing them.
+ *
+ * Positions count the bucket's images in id order. Only the ids within
+ * {@code radius} positions of the last one asked for are held, so the
+ * window's own memory does not grow with the bucket. The index it reads
+ * still holds every image, at one byte per image plus the id tables, and
+ * keeps no per-bucket lists: a refill walks the index's byte array from
+ * the nearest known position, so stepping through the bucket costs a short
+ * walk, while a jump, or a refill after images have moved in or out of the
+ * bucket (which starts over from the first id), costs a scan of up to every
+ * id. That scan reads one byte per image, which keeps it cheap at the sizes
+ * of a card dump. Not thread-safe; use it on the thread that owns the index.
+ */
+public class BucketWindow {
+
+    private final CategoryIndex index;
+    private final int bucket;
+    private final int radius;
+    private final int[] ids;  // ids[i] is the image at position start + i
+    private int start;
+    private int length;
+    private int filledAt = -1;  // The index's change count when the window was filled
+
+    public BucketWindow(CategoryIndex index, int bucket, int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Negative radius: " + radius);
+        }
+        this.index = index;
+        this.bucket = bucket;
+        this.radius = radius;
+        this.ids = new int[2 * radius + 1];
+    }
+
+    public int size() {
+        return index.count(bucket);
+    }
+
+    /** Image id at {@code position} in the bucket, or null if the bucket is not that large. */
+    public String imageAt(int position) {
+        if (position < 0 || position >= size()) {
+            return null;
+        }
+        int offset = position - start;
+        if (!isCurrent() || offset < 0 || offset >= length) {
+            fill(position);
+            offset = position - start;
+            if (offset >= length) {
+                return null;
+            }
+        }
+        return index.imageId(ids[offset]);
+    }
+
+    /** First position the window holds; for tests and tuning. */
+    int windowStart() {
+        return start;
+    }
+
+    int windowLength() {
+        return length;
+    }
+
+    private boolean isCurrent() {
+        return filledAt == index.changeCount();
+    }
+
+    /** Loads the ids from {@code radius} before {@code position} onwards. */
+    private void fill(int position) {
+        int from = Math.max(0, position - radius);
+        int at;
+        int id;
+        boolean anchored = length > 0 && isCurrent();
+        if (anchored && from >= start) {
+            at = Math.min(from, start + length - 1);  // Forward from inside the window
+            id = ids[at - start];
+        } else if (anchored && start - from < from) {
+            at = start;  // Back from the window, nearer than the start of the index
+            id = ids[0];
+            while (at > from && id >= 0) {
+                id = index.previousIn(bucket, id - 1);
+                at--;
+            }
+        } else {
+            at = 0;
+            id = index.nextIn(bucket, 0);
+        }
+        while (at < from && id >= 0) {
+            id = index.nextIn(bucket, id + 1);
+            at++;
+        }
+        start = from;
+        length = 0;
+        while (length < ids.length && id >= 0) {
+            ids[length++] = id;
+            id = index.nextIn(bucket, id + 1);
+        }
+        filledAt = index.changeCount();
+    }
+}
@@ -0,0 +1,117 @@
+package com.blue.curator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Images sorted by when they were taken, split into bursts.
+ *
+ * The capture time comes from EXIF where there is one. Other images fall back
+ * to their last-modified time, shifted into local wall-clock time so it sorts
+ * against EXIF times, which are wall-clock too. Ties keep file-name order. A
+ * new burst starts wherever two consecutive images are more than the burst gap
+ * apart.
+ */
+public final class CaptureOrder {
+
+    /** Longest pause between frames of one burst. */
+    public static final long DEFAULT_BURST_GAP_MILLIS = 2000;
+
+    private final List<ScannedImage> images;
+    private final int[] burstOf;
+    private final int[] burstStarts;
+
+    private CaptureOrder(List<ScannedImage> images, int[] burstOf, int[] burstStarts) {
+        this.images = images;
+        this.burstOf = burstOf;
+        this.burstStarts = burstStarts;
+    }
+
+    public static CaptureOrder of(List<ScannedImage> images, Map<String, ExifInfo> exif, long burstGapMillis,
+                                  TimeZone localZone) {
+        int count = images.size();
+        long[] times = new long[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            ScannedImage image = images.get(i);
+            times[i] = timeOf(image, exif.get(image.getDocumentId()), localZone);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byTime = Long.compare(times[a], times[b]);
+            if (byTime != 0) {
+                return byTime;
+            }
+            int byName = compareNames(images.get(a).getDisplayName(), images.get(b).getDisplayName());
+            return byName != 0 ? byName : Integer.compare(a, b);
+        });
+
+        List<ScannedImage> sorted = new ArrayList<>(count);
+        int[] burstOf = new int[count];
+        int[] burstStarts = new int[count];
+        int bursts = 0;
+        for (int position = 0; position < count; position++) {
+            int i = order[position];
+            sorted.add(images.get(i));
+            if (position == 0 || times[i] - times[order[position - 1]] > burstGapMillis) {
+                burstStarts[bursts++] = position;
+            }
+            burstOf[position] = bursts - 1;
+        }
+        return new CaptureOrder(Collections.unmodifiableList(sorted), burstOf, Arrays.copyOf(burstStarts, bursts));
+    }
+
+    /** The time {@code image} is ordered by: its EXIF capture time, else its local last-modified time. */
+    public static long timeOf(ScannedImage image, ExifInfo info, TimeZone localZone) {
+        if (info != null && info.hasCaptureTime()) {
+            return info.getCaptureTime();
+        }
+        long modified = image.getLastModified();
+        return modified + localZone.getOffset(modified);
+    }
+
+    private static int compareNames(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    /** The images in capture order. */
+    public List<ScannedImage> images() {
+        return images;
+    }
+
+    public int burstCount() {
+        return burstStarts.length;
+    }
+
+    /** Index of the burst holding the image at {@code position}. */
+    public int burstOf(int position) {
+        return burstOf[position];
+    }
+
+    /** Position of the first image of {@code burst}. */
+    public int burstStart(int burst) {
+        return burstStarts[burst];
+    }
+
+    public int burstSize(int burst) {
+        int end = burst + 1 < burstStarts.length ? burstStarts[burst + 1] : images.size();
+        return end - burstStarts[burst];
+    }
+
+    /** True if the image at {@code position} opens a burst. */
+    public boolean isBurstStart(int position) {
+        return burstStarts[burstOf[position]] == position;
+    }
+
+    @Override
+    public String toString() {
+        return images.size() + " images in " + burstStarts.length + " bursts";
+    }
+}
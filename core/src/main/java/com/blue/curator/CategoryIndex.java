@@ -0,0 +1,162 @@
+package com.blue.curator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Which bucket every scanned image is in.
+ *
+ * Each image gets a dense int id the first time it is registered; the bucket
+ * of image {@code id} is the byte at {@code buckets[id]}, and per-bucket
+ * counts are kept up to date on every change. Membership, re-categorization
+ * and counts are therefore O(1) and cost one byte per image on top of the
+ * id lookup table.
+ *
+ * Bucket 0 is {@link #UNDECIDED}; named buckets are numbered from 1 in the
+ * order they are passed to the constructor. The index is not thread-safe;
+ * callers confine it to one thread at a time.
+ */
+public class CategoryIndex {
+
+    public static final int UNDECIDED = 0;
+    private static final int MAX_BUCKETS = 255;
+
+    private final List<String> bucketNames;
+    private final HashMap<String, Integer> idsByImage = new HashMap<>();
+    private final ArrayList<String> imagesById = new ArrayList<>();
+    private final int[] counts;
+    private byte[] buckets = new byte[64];
+    private int changes;
+
+    public CategoryIndex(String... bucketNames) {
+        if (bucketNames.length > MAX_BUCKETS) {
+            throw new IllegalArgumentException("At most " + MAX_BUCKETS + " buckets are supported");
+        }
+        List<String> names = new ArrayList<>();
+        names.add("Undecided");
+        names.addAll(Arrays.asList(bucketNames));
+        this.bucketNames = Collections.unmodifiableList(names);
+        this.counts = new int[names.size()];
+    }
+
+    /** Number of named buckets, not counting {@link #UNDECIDED}. */
+    public int bucketCount() {
+        return bucketNames.size() - 1;
+    }
+
+    public String bucketName(int bucket) {
+        return bucketNames.get(bucket);
+    }
+
+    /** The bucket with the given name, or -1 if there is none. */
+    public int bucketNamed(String name) {
+        return bucketNames.indexOf(name);
+    }
+
+    /** Returns the id of {@code imageId}, assigning the next free id if it is new. */
+    public int register(String imageId) {
+        Integer id = idsByImage.get(imageId);
+        if (id != null) {
+            return id;
+        }
+        int newId = imagesById.size();
+        idsByImage.put(imageId, newId);
+        imagesById.add(imageId);
+        if (newId == buckets.length) {
+            buckets = Arrays.copyOf(buckets, buckets.length * 2);
+        }
+        counts[UNDECIDED]++;
+        return newId;
+    }
+
+    /** The id of {@code imageId}, or -1 if it was never registered. */
+    public int idOf(String imageId) {
+        Integer id = idsByImage.get(imageId);
+        return id == null ? -1 : id;
+    }
+
+    public String imageId(int id) {
+        return imagesById.get(id);
+    }
+
+    public int size() {
+        return imagesById.size();
+    }
+
+    public int bucketOf(int id) {
+        return buckets[id] & 0xff;
+    }
+
+    public boolean isIn(int id, int bucket) {
+        return bucketOf(id) == bucket;
+    }
+
+    /** Moves image {@code id} into {@code bucket} and returns the bucket it was in before. */
+    public int assign(int id, int bucket) {
+        if (bucket < 0 || bucket >= bucketNames.size()) {
+            throw new IllegalArgumentException("Unknown bucket: " + bucket);
+        }
+        int previous = bucketOf(id);
+        if (previous != bucket) {
+            counts[previous]--;
+            counts[bucket]++;
+            buckets[id] = (byte) bucket;
+            changes++;
+        }
+        return previous;
+    }
+
+    /** Goes up whenever an image changes bucket, so views of a bucket can tell they are stale. */
+    public int changeCount() {
+        return changes;
+    }
+
+    public int count(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * The first id from {@code id} on whose image is in {@code bucket}, or -1
+     * if there is none. Walks the ids one byte at a time: O(distance to it).
+     */
+    public int nextIn(int bucket, int id) {
+        for (int i = Math.max(id, 0); i < imagesById.size(); i++) {
+            if ((buckets[i] & 0xff) == bucket) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** The last id up to {@code id} whose image is in {@code bucket}, or -1 if there is none; O(distance). */
+    public int previousIn(int bucket, int id) {
+        for (int i = Math.min(id, imagesById.size() - 1); i >= 0; i--) {
+            if ((buckets[i] & 0xff) == bucket) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Image ids in {@code bucket}, in id order. Walks the whole index, so keep it off hot paths. */
+    public List<String> imagesIn(int bucket) {
+        List<String> images = new ArrayList<>(counts[bucket]);
+        for (int id = 0; id < imagesById.size(); id++) {
+            if (bucketOf(id) == bucket) {
+                images.add(imagesById.get(id));
+            }
+        }
+        return images;
+    }
+
+    public void clear() {
+        idsByImage.clear();
+        imagesById.clear();
+        Arrays.fill(buckets, (byte) 0);
+        Arrays.fill(counts, 0);
+        changes++;
+    }
+}
@@ -0,0 +1,34 @@
+package com.blue.curator;
+
+/**
+ * One curation decision: which bucket an image was put in, and when.
+ */
+public final class Decision {
+
+    private final String imageId;
+    private final int bucket;
+    private final long timestamp;
+
+    public Decision(String imageId, int bucket, long timestamp) {
+        this.imageId = imageId;
+        this.bucket = bucket;
+        this.timestamp = timestamp;
+    }
+
+    public String getImageId() {
+        return imageId;
+    }
+
+    public int getBucket() {
+        return bucket;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return imageId + "=" + bucket + "@" + timestamp;
+    }
+}
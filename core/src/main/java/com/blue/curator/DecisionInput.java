@@ -0,0 +1,228 @@
+package com.blue.curator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides when a decision for the image on screen is accepted, from
+ * whichever input it comes: a button, a gesture or voice.
+ *
+ * Every image gets a token when it is requested. Input is accepted as soon as
+ * the image (or its preview) is on screen, with no fixed delay, and at most
+ * one decision is taken per token, so a button press and a voice result for
+ * the same image do not both count. Anything tied to an older token is stale:
+ * callbacks scheduled for it are cancelled on navigation, and late voice
+ * results carry the token they were started under and are dropped. A decision
+ * for the same image and bucket within {@code DEBOUNCE_NANOS} of the last one
+ * is taken as a double fire, in case that image was requested again in the
+ * meantime; quick decisions on different images all count.
+ *
+ * Not thread-safe: use it from the UI thread.
+ */
+public class DecisionInput {
+
+    /** Where an input came from. */
+    public enum Source {
+        BUTTON, GESTURE, VOICE
+    }
+
+    /** The states of the image on screen. */
+    public enum State {
+        /** No image requested yet. */
+        IDLE,
+        /** Requested, not on screen yet; input is ignored. */
+        LOADING,
+        /** On screen and waiting for a decision. */
+        READY,
+        /** Decided; further input for it is ignored until the next image. */
+        DECIDED
+    }
+
+    /** What the curator screen does as the state changes. */
+    public interface Actions {
+        void showControls();
+
+        void hideControls();
+
+        /** Starts listening for a spoken decision for the image with {@code token}. */
+        void startListening(int token);
+
+        void stopListening();
+    }
+
+    /** Runs callbacks later; on Android a {@code Handler}. */
+    public interface Timer {
+        void schedule(Runnable task, long delayMillis);
+
+        void cancel(Runnable task);
+    }
+
+    static final long DEBOUNCE_NANOS = TimeUnit.MILLISECONDS.toNanos(300);
+    // Input opens anyway if the image never reports in, e.g. when its load is cleared
+    static final long SHOWN_FALLBACK_MILLIS = 1500;
+
+    private final Actions actions;
+    private final Timer timer;
+    private final LongSupplier clock;
+    private final List<Runnable> pending = new ArrayList<>();
+    private State state = State.IDLE;
+    private int token;
+    private boolean voiceEnabled;
+    private String imageId;
+    private String lastImageId;
+    private int lastBucket = -1;
+    private long lastDecisionNanos;
+    private int accepted;
+    private int stale;
+    private int duplicates;
+    private int early;
+
+    public DecisionInput(Actions actions, Timer timer) {
+        this(actions, timer, System::nanoTime);
+    }
+
+    public DecisionInput(Actions actions, Timer timer, LongSupplier clock) {
+        this.actions = actions;
+        this.timer = timer;
+        this.clock = clock;
+    }
+
+    public void setVoiceEnabled(boolean enabled) {
+        if (voiceEnabled == enabled) {
+            return;
+        }
+        voiceEnabled = enabled;
+        if (!enabled) {
+            actions.stopListening();
+        } else if (state == State.READY) {
+            actions.startListening(token);
+        }
+    }
+
+    /** An image that is never debounced has been requested; see {@link #onImageRequested(String)}. */
+    public int onImageRequested() {
+        return onImageRequested(null);
+    }
+
+    /**
+     * The image {@code requestedImageId} has been requested; returns its
+     * token. Cancels everything pending for the previous one.
+     */
+    public int onImageRequested(String requestedImageId) {
+        cancelPending();
+        if (state == State.READY && voiceEnabled) {
+            actions.stopListening();
+        }
+        token++;
+        imageId = requestedImageId;
+        state = State.LOADING;
+        actions.hideControls();
+        int requested = token;
+        schedule(() -> onImageShown(requested), SHOWN_FALLBACK_MILLIS);
+        return token;
+    }
+
+    /** The image with {@code token}, or its preview, is on screen. Later calls for it do nothing. */
+    public void onImageShown(int shownToken) {
+        if (shownToken != token || state != State.LOADING) {
+            return;
+        }
+        cancelPending();
+        state = State.READY;
+        actions.showControls();
+        if (voiceEnabled) {
+            actions.startListening(token);
+        }
+    }
+
+    /**
+     * Offers a decision for the image with {@code forToken}; buttons and
+     * gestures pass {@link #token()}, voice the token it started listening
+     * under. Returns true if it was accepted, in which case the caller
+     * records it and moves on.
+     */
+    public boolean decide(int forToken, int bucket, Source source) {
+        if (forToken != token) {
+            stale++;
+            return false;
+        }
+        if (state != State.READY) {
+            if (state == State.DECIDED) {
+                duplicates++;
+            } else {
+                early++;
+            }
+            return false;
+        }
+        long now = clock.getAsLong();
+        if (imageId != null && imageId.equals(lastImageId) && bucket == lastBucket
+                && now - lastDecisionNanos < DEBOUNCE_NANOS) {
+            duplicates++;
+            return false;
+        }
+        cancelPending();
+        state = State.DECIDED;
+        lastImageId = imageId;
+        lastBucket = bucket;
+        lastDecisionNanos = now;
+        accepted++;
+        if (voiceEnabled && source != Source.VOICE) {
+            actions.stopListening();
+        }
+        return true;
+    }
+
+    public int token() {
+        return token;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    public int accepted() {
+        return accepted;
+    }
+
+    /** Inputs for an image no longer on screen. */
+    public int stale() {
+        return stale;
+    }
+
+    /** Second inputs for an image already decided, and double fires. */
+    public int duplicates() {
+        return duplicates;
+    }
+
+    /** Inputs before the image was on screen. */
+    public int early() {
+        return early;
+    }
+
+    private void schedule(Runnable task, long delayMillis) {
+        Runnable once = new Runnable() {
+            @Override
+            public void run() {
+                pending.remove(this);
+                task.run();
+            }
+        };
+        pending.add(once);
+        timer.schedule(once, delayMillis);
+    }
+
+    private void cancelPending() {
+        for (Runnable task : pending) {
+            timer.cancel(task);
+        }
+        pending.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "input: " + accepted + " decisions, ignored " + stale + " stale, " + duplicates + " duplicate, "
+                + early + " early";
+    }
+}
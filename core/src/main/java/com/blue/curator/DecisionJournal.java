@@ -0,0 +1,431 @@
+package com.blue.curator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary log of curation decisions.
+ *
+ * Every decision is kept in memory and queued for a background writer, so
+ * {@link #record} never touches the disk on the calling thread. The writer
+ * appends records to {@code decisions.journal}; once enough records pile up
+ * it folds the current state into {@code decisions.snapshot} and starts a
+ * fresh journal. Opening a journal replays snapshot + journal to rebuild the
+ * latest decision per image.
+ */
+public class DecisionJournal implements Closeable {
+
+    /** Bucket value meaning "no decision"; recording it clears an image. */
+    public static final int BUCKET_NONE = 0;
+
+    static final String JOURNAL_FILE = "decisions.journal";
+    static final String SNAPSHOT_FILE = "decisions.snapshot";
+
+    private static final int JOURNAL_MAGIC = 0x43444a31;  // "CDJ1"
+    private static final int SNAPSHOT_MAGIC = 0x43445331; // "CDS1"
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 4096;
+    private static final int RECORD_HEADER = 1 + 8 + 2;  // Bucket, timestamp, length of the image id
+    private static final Decision DAMAGED = new Decision("", BUCKET_NONE, 0);
+
+    private final File journalFile;
+    private final File snapshotFile;
+    private final int compactionThreshold;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    // Latest decision per image, in the order images were last decided. Guarded by "this".
+    private final LinkedHashMap<String, Decision> decisions = new LinkedHashMap<>();
+    private final ArrayDeque<Decision> pending = new ArrayDeque<>();
+    private Decision lastDecision;
+    private boolean flushScheduled;
+
+    // Writer thread only.
+    private DataOutputStream out;
+    private int journalRecords;
+
+    private DecisionJournal(File directory, int compactionThreshold) {
+        this.journalFile = new File(directory, JOURNAL_FILE);
+        this.snapshotFile = new File(directory, SNAPSHOT_FILE);
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Opens the journal stored in {@code directory} and replays it. Does disk I/O,
+     * so call it off the main thread.
+     */
+    public static DecisionJournal open(File directory) throws IOException {
+        return open(directory, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    static DecisionJournal open(File directory, int compactionThreshold) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        DecisionJournal journal = new DecisionJournal(directory, compactionThreshold);
+        journal.replay();
+        return journal;
+    }
+
+    /** Records a decision. Returns immediately; the write happens in the background. */
+    public void record(String imageId, int bucket, long timestamp) {
+        if (bucket < 0 || bucket > 0xff) {
+            throw new IllegalArgumentException("Bucket out of range: " + bucket);
+        }
+        Decision decision = new Decision(imageId, bucket, timestamp);
+        synchronized (this) {
+            apply(decision);
+            pending.add(decision);
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        writer.execute(this::drainPending);
+    }
+
+    /**
+     * Records the same decision for many images at once. They reach the
+     * writer together and are appended with a single flush.
+     */
+    public void recordAll(Collection<String> imageIds, int bucket, long timestamp) {
+        if (bucket < 0 || bucket > 0xff) {
+            throw new IllegalArgumentException("Bucket out of range: " + bucket);
+        }
+        if (imageIds.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (String imageId : imageIds) {
+                Decision decision = new Decision(imageId, bucket, timestamp);
+                apply(decision);
+                pending.add(decision);
+            }
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        writer.execute(this::drainPending);
+    }
+
+    public synchronized int bucketOf(String imageId) {
+        Decision decision = decisions.get(imageId);
+        return decision == null ? BUCKET_NONE : decision.getBucket();
+    }
+
+    /** The most recent decision, or null if nothing has been decided yet. */
+    public synchronized Decision lastDecision() {
+        return lastDecision;
+    }
+
+    /** Copy of the current decisions, oldest first. */
+    public synchronized List<Decision> decisions() {
+        return new ArrayList<>(decisions.values());
+    }
+
+    public synchronized int size() {
+        return decisions.size();
+    }
+
+    /** Blocks until every decision recorded so far is on disk. */
+    public void flush() throws IOException {
+        await(writer.submit(() -> {
+            drainPending();
+            return null;
+        }));
+    }
+
+    /** Folds the journal into a fresh snapshot right away. */
+    public void compact() throws IOException {
+        await(writer.submit(() -> {
+            drainPending();
+            writeSnapshot();
+            return null;
+        }));
+    }
+
+    /**
+     * Writes the pre-journal text files ({@code selected.txt} and friends), one line per
+     * decided image, oldest first. {@code files} maps a bucket to the file listing it and
+     * {@code lineForImage} turns an image id into the line written for it.
+     */
+    public void writeLegacyFiles(Map<Integer, File> files, Function<String, String> lineForImage)
+            throws IOException {
+        List<Decision> snapshot = decisions();
+        for (Map.Entry<Integer, File> entry : files.entrySet()) {
+            try (Writer legacy = new FileWriter(entry.getValue(), false)) {
+                for (Decision decision : snapshot) {
+                    if (decision.getBucket() == entry.getKey()) {
+                        legacy.append(lineForImage.apply(decision.getImageId())).append("\n");
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        }
+    }
+
+    private void apply(Decision decision) {
+        decisions.remove(decision.getImageId());
+        if (decision.getBucket() != BUCKET_NONE) {
+            decisions.put(decision.getImageId(), decision);
+            lastDecision = decision;
+        } else if (lastDecision != null && lastDecision.getImageId().equals(decision.getImageId())) {
+            // Clearing the newest decision is rare; find the one before it the slow way
+            lastDecision = null;
+            for (Decision remaining : decisions.values()) {
+                lastDecision = remaining;
+            }
+        }
+    }
+
+    private void drainPending() {
+        List<Decision> batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+        try {
+            DataOutputStream stream = journalStream();
+            for (Decision decision : batch) {
+                writeRecord(stream, decision);
+            }
+            stream.flush();
+            journalRecords += batch.size();
+            if (journalRecords >= compactionThreshold) {
+                writeSnapshot();
+            }
+        } catch (IOException e) {
+            // Keep the batch so the next flush retries it instead of losing decisions.
+            synchronized (this) {
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    pending.addFirst(batch.get(i));
+                }
+            }
+            closeQuietly();
+            throw new JournalWriteException(e);
+        }
+    }
+
+    private DataOutputStream journalStream() throws IOException {
+        if (out == null) {
+            boolean fresh = !journalFile.exists() || journalFile.length() == 0;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+            if (fresh) {
+                out.writeInt(JOURNAL_MAGIC);
+            }
+        }
+        return out;
+    }
+
+    private void writeSnapshot() throws IOException {
+        List<Decision> state;
+        synchronized (this) {
+            // Only snapshot state that is fully on disk; otherwise try again after the next drain.
+            if (!pending.isEmpty()) {
+                return;
+            }
+            state = new ArrayList<>(decisions.values());
+        }
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp);
+             DataOutputStream snapshot = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            snapshot.writeInt(SNAPSHOT_MAGIC);
+            snapshot.writeInt(state.size());
+            for (Decision decision : state) {
+                snapshot.writeUTF(decision.getImageId());
+                snapshot.writeByte(decision.getBucket());
+                snapshot.writeLong(decision.getTimestamp());
+            }
+            snapshot.flush();
+            fileOut.getFD().sync();
+        }
+        if (!tmp.renameTo(snapshotFile)) {
+            throw new IOException("Cannot replace " + snapshotFile);
+        }
+        // The snapshot now covers every journal record, so start the journal over.
+        closeQuietly();
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, false)));
+        out.writeInt(JOURNAL_MAGIC);
+        out.flush();
+        journalRecords = 0;
+    }
+
+    private void replay() throws IOException {
+        if (snapshotFile.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Not a decision snapshot: " + snapshotFile);
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String imageId = in.readUTF();
+                    int bucket = in.readUnsignedByte();
+                    apply(new Decision(imageId, bucket, in.readLong()));
+                }
+            }
+        }
+        if (!journalFile.exists()) {
+            return;
+        }
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(journalFile)))) {
+            if (journalFile.length() >= 4) {
+                if (in.readInt() != JOURNAL_MAGIC) {
+                    throw new IOException("Not a decision journal: " + journalFile);
+                }
+                validLength = 4;
+                long[] length = new long[1];
+                Decision decision;
+                while ((decision = readRecord(in, length)) != null) {
+                    if (decision != DAMAGED) {  // A damaged record is skipped; the ones after it still count
+                        apply(decision);
+                        journalRecords++;
+                    }
+                    validLength += length[0];
+                }
+            }
+        }
+        if (validLength < journalFile.length()) {
+            // A crash mid-append left a partial record; cut it off before appending more.
+            try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+                file.setLength(validLength);
+            }
+        }
+    }
+
+    // Record layout: bucket (1 byte), timestamp (8), image id (modified UTF-8), CRC32 of all of it (4).
+    private static void writeRecord(DataOutputStream stream, Decision decision) throws IOException {
+        byte[] body = recordBody(decision);
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        stream.write(body);
+        stream.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Reads the next record and puts its length in {@code length[0]}. Returns
+     * {@link #DAMAGED} for a record whose CRC does not match, which is skipped
+     * by the length of its image id, and null at the end of the journal or of
+     * a record torn off by a crash.
+     */
+    private static Decision readRecord(DataInputStream in, long[] length) throws IOException {
+        try {
+            byte[] header = new byte[RECORD_HEADER];
+            in.readFully(header);
+            int idLength = ((header[9] & 0xff) << 8) | (header[10] & 0xff);
+            byte[] body = Arrays.copyOf(header, RECORD_HEADER + idLength);
+            in.readFully(body, RECORD_HEADER, idLength);
+            int storedCrc = in.readInt();
+            length[0] = body.length + 4;
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+            if ((int) crc.getValue() != storedCrc) {
+                return DAMAGED;
+            }
+            DataInputStream fields = new DataInputStream(new ByteArrayInputStream(body));
+            int bucket = fields.readUnsignedByte();
+            long timestamp = fields.readLong();
+            return new Decision(fields.readUTF(), bucket, timestamp);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static byte[] recordBody(Decision decision) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + decision.getImageId().length());
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeByte(decision.getBucket());
+        body.writeLong(decision.getTimestamp());
+        body.writeUTF(decision.getImageId());
+        return bytes.toByteArray();
+    }
+
+    private void closeQuietly() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // Nothing left to do with a stream we are abandoning.
+            }
+            out = null;
+        }
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the decision journal", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof JournalWriteException) {
+                throw ((JournalWriteException) cause).getCause();
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /** Carries a background write failure back to whoever waits on the writer. */
+    static final class JournalWriteException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        JournalWriteException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.blue.curator;
+
+/**
+ * The bytes decoded images may take up, and how they are shared out.
+ *
+ * One budget covers every bitmap the app keeps: the image on screen, the one
+ * fading out behind it, and whatever has been prefetched. Glide's memory
+ * cache and bitmap pool are sized from it, and the prefetcher is capped at
+ * the number of screen-sized bitmaps that fit in what is left. By default the
+ * budget is a quarter of the heap the app may use.
+ */
+public final class DecodeBudget {
+
+    static final double DEFAULT_HEAP_FRACTION = 0.25;
+    // The memory cache holds what is shown and prefetched; the pool only recycles
+    static final double MEMORY_CACHE_SHARE = 0.75;
+    /** The image on screen and the one cross-fading out. */
+    static final int ON_SCREEN = 2;
+
+    private final long budgetBytes;
+
+    public DecodeBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /** The default budget for a heap of {@code maxHeapBytes}, unless {@code configuredBytes} is positive. */
+    public static DecodeBudget forHeap(long maxHeapBytes, long configuredBytes) {
+        return new DecodeBudget(configuredBytes > 0 ? configuredBytes : (long) (maxHeapBytes * DEFAULT_HEAP_FRACTION));
+    }
+
+    public long budgetBytes() {
+        return budgetBytes;
+    }
+
+    public long memoryCacheBytes() {
+        return (long) (budgetBytes * MEMORY_CACHE_SHARE);
+    }
+
+    public long bitmapPoolBytes() {
+        return budgetBytes - memoryCacheBytes();
+    }
+
+    /** Size of a decoded {@code width} x {@code height} bitmap. */
+    public static long bitmapBytes(int width, int height, int bytesPerPixel) {
+        return (long) width * height * bytesPerPixel;
+    }
+
+    /**
+     * How many {@code width} x {@code height} bitmaps may be prefetched while
+     * the ones on screen are held, all within the memory cache.
+     */
+    public int prefetchCapacity(int width, int height, int bytesPerPixel) {
+        long perImage = Math.max(1, bitmapBytes(width, height, bytesPerPixel));
+        return (int) Math.max(0, memoryCacheBytes() / perImage - ON_SCREEN);
+    }
+}
@@ -0,0 +1,333 @@
+package com.blue.curator;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds images whose bytes are identical, reading as little as it can.
+ *
+ * Only images of the same size can be copies, so the sizes from the scan
+ * projection sort out most images without opening them. Within each size
+ * the first and last {@value #PROBE_BYTES} bytes are hashed, which tells
+ * apart nearly all different photos; only images that still match are
+ * hashed in full. A size whose probes are in moves straight on to full
+ * hashing while other sizes are still being probed. Probes and full hashes
+ * have pools of their own, so a few long reads cannot hold up the probes,
+ * and each pool bounds how many files are open at once. Starting a pass
+ * abandons the one before it.
+ */
+public class DuplicateFinder {
+
+    /** Bytes hashed at each end of a file before it is read in full. */
+    static final int PROBE_BYTES = 64 * 1024;
+
+    private static final int DEFAULT_PROBE_CONCURRENCY = 4;
+    private static final int DEFAULT_HASH_CONCURRENCY = 2;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /** Called on the finder's thread when a pass completes; not called for abandoned passes. */
+    public interface Listener {
+        void onFinished(DuplicateGroups groups, Stats stats);
+    }
+
+    /** What a pass did. */
+    public static final class Stats {
+        private final int images;
+        private final int probed;
+        private final int hashed;
+        private final int failures;
+        private final long elapsedNanos;
+
+        Stats(int images, int probed, int hashed, int failures, long elapsedNanos) {
+            this.images = images;
+            this.probed = probed;
+            this.hashed = hashed;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getImages() {
+            return images;
+        }
+
+        /** Images that shared their size with another, so had their ends hashed. */
+        public int getProbed() {
+            return probed;
+        }
+
+        /** Images whose ends matched another's, so were hashed in full. */
+        public int getHashed() {
+            return hashed;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return images + " images, " + probed + " probed, " + hashed + " hashed in full, " + failures
+                    + " failed in " + elapsedNanos / 1_000_000 + " ms";
+        }
+    }
+
+    /** Images of one size still being told apart; used on the coordinator thread only. */
+    private static final class Candidates {
+        final long size;
+        final List<Integer> images;
+        final boolean full;  // Hashed in full, or only at the ends
+        final Map<ByteBuffer, List<Integer>> byDigest = new LinkedHashMap<>();
+        int pending;
+
+        Candidates(long size, List<Integer> images, boolean full) {
+            this.size = size;
+            this.images = images;
+            this.full = full;
+            this.pending = images.size();
+        }
+    }
+
+    /** One hashed image, handed from a reader to the coordinator; a null digest means it could not be read. */
+    private static final class Digest {
+        final Candidates candidates;
+        final int image;
+        final ByteBuffer digest;
+
+        Digest(Candidates candidates, int image, ByteBuffer digest) {
+            this.candidates = candidates;
+            this.image = image;
+            this.digest = digest;
+        }
+    }
+
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor();
+    private final ExecutorService probers;
+    private final ExecutorService hashers;
+    private final AtomicInteger generation = new AtomicInteger();
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    public DuplicateFinder() {
+        this(DEFAULT_PROBE_CONCURRENCY, DEFAULT_HASH_CONCURRENCY);
+    }
+
+    /** At most {@code probeConcurrency} probes and {@code hashConcurrency} full hashes read at once. */
+    public DuplicateFinder(int probeConcurrency, int hashConcurrency) {
+        this.probers = Executors.newFixedThreadPool(Math.max(1, probeConcurrency));
+        this.hashers = Executors.newFixedThreadPool(Math.max(1, hashConcurrency));
+    }
+
+    /** Starts a pass over {@code images}, in scan order, abandoning any pass still running. */
+    public void find(List<ScannedImage> images, FileExportTarget.Source source, Listener listener) {
+        int pass = generation.incrementAndGet();
+        List<ScannedImage> snapshot = new ArrayList<>(images);
+        coordinator.execute(() -> run(pass, snapshot, source, listener));
+    }
+
+    /** Abandons the running pass; reads under way stop at their next buffer. */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    public void shutdown() {
+        cancel();
+        coordinator.execute(() -> {
+            probers.shutdown();
+            hashers.shutdown();
+        });
+        coordinator.shutdown();
+    }
+
+    private boolean isCurrent(int pass) {
+        return generation.get() == pass;
+    }
+
+    private void run(int pass, List<ScannedImage> images, FileExportTarget.Source source, Listener listener) {
+        if (!isCurrent(pass)) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<Long, List<Integer>> bySize = new LinkedHashMap<>();
+        for (int i = 0; i < images.size(); i++) {
+            long size = images.get(i).getSize();
+            if (size > 0) {  // Empty files, and providers that do not know the size, are left alone
+                bySize.computeIfAbsent(size, s -> new ArrayList<>(2)).add(i);
+            }
+        }
+
+        BlockingQueue<Digest> digests = new LinkedBlockingQueue<>();
+        int pending = 0;
+        int probed = 0;
+        for (Map.Entry<Long, List<Integer>> size : bySize.entrySet()) {
+            if (size.getValue().size() > 1) {
+                pending += submit(pass, new Candidates(size.getKey(), size.getValue(), false), images, source,
+                        digests);
+                probed += size.getValue().size();
+            }
+        }
+
+        List<List<Integer>> groups = new ArrayList<>();
+        int hashed = 0;
+        int failures = 0;
+        try {
+            while (pending > 0) {
+                Digest done = digests.take();
+                pending--;
+                if (!isCurrent(pass)) {
+                    return;  // The readers still finish; they stop at their next buffer
+                }
+                Candidates candidates = done.candidates;
+                if (done.digest == null) {
+                    failures++;  // Unreadable; treated as unique
+                } else {
+                    candidates.byDigest.computeIfAbsent(done.digest, d -> new ArrayList<>(2)).add(done.image);
+                }
+                if (--candidates.pending > 0) {
+                    continue;
+                }
+                for (List<Integer> same : candidates.byDigest.values()) {
+                    if (same.size() < 2) {
+                        continue;
+                    }
+                    if (candidates.full || candidates.size <= 2L * PROBE_BYTES) {
+                        groups.add(same);  // The probe covered every byte
+                    } else {
+                        pending += submit(pass, new Candidates(candidates.size, same, true), images, source,
+                                digests);
+                        hashed += same.size();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (!isCurrent(pass)) {
+            return;
+        }
+
+        List<List<String>> documentGroups = new ArrayList<>(groups.size());
+        for (List<Integer> group : groups) {
+            Collections.sort(group);
+        }
+        Collections.sort(groups, Comparator.comparingInt(group -> group.get(0)));
+        for (List<Integer> group : groups) {
+            List<String> documentIds = new ArrayList<>(group.size());
+            for (int image : group) {
+                documentIds.add(images.get(image).getDocumentId());
+            }
+            documentGroups.add(documentIds);
+        }
+        listener.onFinished(DuplicateGroups.of(documentGroups),
+                new Stats(images.size(), probed, hashed, failures, System.nanoTime() - start));
+    }
+
+    /** Queues a read of each of {@code candidates}' images; returns how many digests will come back. */
+    private int submit(int pass, Candidates candidates, List<ScannedImage> images, FileExportTarget.Source source,
+                       BlockingQueue<Digest> digests) {
+        ExecutorService readers = candidates.full ? hashers : probers;
+        for (int image : candidates.images) {
+            ScannedImage scanned = images.get(image);
+            readers.execute(() -> {
+                ByteBuffer digest = null;
+                try {
+                    if (isCurrent(pass)) {
+                        digest = candidates.full ? hash(pass, scanned, source) : probe(scanned, source);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Reported as a failure; the image is kept apart from the others
+                } finally {
+                    digests.add(new Digest(candidates, image, digest));
+                }
+            });
+        }
+        return candidates.images.size();
+    }
+
+    /** Hashes the first and last {@link #PROBE_BYTES} of {@code image}, or all of it if it is no longer. */
+    private ByteBuffer probe(ScannedImage image, FileExportTarget.Source source) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = buffers.get();
+        long size = image.getSize();
+        try (InputStream in = source.open(image.getDocumentId())) {
+            if (size <= 2L * PROBE_BYTES) {
+                update(digest, in, buffer, size);
+            } else {
+                update(digest, in, buffer, PROBE_BYTES);
+                skipFully(in, size - 2L * PROBE_BYTES);  // A seek on file-backed streams
+                update(digest, in, buffer, PROBE_BYTES);
+            }
+        }
+        return ByteBuffer.wrap(digest.digest());
+    }
+
+    /** Hashes all of {@code image}; returns null if the pass was abandoned part way. */
+    private ByteBuffer hash(int pass, ScannedImage image, FileExportTarget.Source source) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = buffers.get();
+        try (InputStream in = source.open(image.getDocumentId())) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                if (!isCurrent(pass)) {
+                    return null;
+                }
+                digest.update(buffer, 0, read);
+            }
+        }
+        return ByteBuffer.wrap(digest.digest());
+    }
+
+    /** Hashes exactly {@code length} bytes of {@code in}. */
+    private static void update(MessageDigest digest, InputStream in, byte[] buffer, long length)
+            throws IOException {
+        long left = length;
+        while (left > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+            if (read < 0) {
+                throw new EOFException("Shorter than its scanned size");
+            }
+            digest.update(buffer, 0, read);
+            left -= read;
+        }
+    }
+
+    private static void skipFully(InputStream in, long length) throws IOException {
+        long left = length;
+        while (left > 0) {
+            long skipped = in.skip(left);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Shorter than its scanned size");
+                }
+                skipped = 1;
+            }
+            left -= skipped;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
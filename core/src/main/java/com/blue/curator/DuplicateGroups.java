@@ -0,0 +1,158 @@
+package com.blue.curator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups of byte-identical images, found by {@link DuplicateFinder}. The
+ * first image of a group, in scan order, is its original; the others are
+ * copies, which share its decision and are not exported. Groups are saved
+ * with the size and last-modified time of every image, so a saved group is
+ * only trusted for images that have not changed since.
+ */
+public final class DuplicateGroups {
+
+    private static final int MAGIC = 0x43444731; // "CDG1"
+    /** File the groups of a root are saved in, in the root's directory. */
+    public static final String FILE = "duplicates";
+
+    private static final DuplicateGroups EMPTY = new DuplicateGroups(Collections.emptyMap(), 0);
+
+    private final Map<String, List<String>> groupOf;
+    private final int groupCount;
+
+    private DuplicateGroups(Map<String, List<String>> groupOf, int groupCount) {
+        this.groupOf = groupOf;
+        this.groupCount = groupCount;
+    }
+
+    public static DuplicateGroups empty() {
+        return EMPTY;
+    }
+
+    /** Groups of document ids, each in scan order; groups of fewer than two are left out. */
+    public static DuplicateGroups of(List<List<String>> groups) {
+        Map<String, List<String>> groupOf = new HashMap<>();
+        int groupCount = 0;
+        for (List<String> group : groups) {
+            if (group.size() < 2) {
+                continue;
+            }
+            List<String> members = Collections.unmodifiableList(new ArrayList<>(group));
+            for (String documentId : members) {
+                groupOf.put(documentId, members);
+            }
+            groupCount++;
+        }
+        return new DuplicateGroups(groupOf, groupCount);
+    }
+
+    /** The group holding {@code documentId}, in scan order, or an empty list if it has no copies. */
+    public List<String> groupOf(String documentId) {
+        List<String> group = groupOf.get(documentId);
+        return group == null ? Collections.emptyList() : group;
+    }
+
+    /** The first image with the same bytes as {@code documentId}; itself if it is unique or the original. */
+    public String originalOf(String documentId) {
+        List<String> group = groupOf.get(documentId);
+        return group == null ? documentId : group.get(0);
+    }
+
+    /** True if an earlier image has the same bytes. */
+    public boolean isCopy(String documentId) {
+        return !originalOf(documentId).equals(documentId);
+    }
+
+    public int groupCount() {
+        return groupCount;
+    }
+
+    /** Images that are copies of an earlier one. */
+    public int copyCount() {
+        return groupOf.size() - groupCount;
+    }
+
+    /** Replaces {@code file} with the groups, atomically; {@code images} are those the groups were found in. */
+    public void write(File file, List<ScannedImage> images) throws IOException {
+        Map<String, ScannedImage> byId = byDocumentId(images);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(groupCount);
+            for (List<String> group : new LinkedHashSet<>(groupOf.values())) {
+                out.writeInt(group.size());
+                for (String documentId : group) {
+                    ScannedImage image = byId.get(documentId);
+                    out.writeUTF(documentId);
+                    out.writeLong(image == null ? -1 : image.getSize());
+                    out.writeLong(image == null ? -1 : image.getLastModified());
+                }
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /**
+     * Reads the groups saved in {@code file}, keeping only the images of
+     * {@code images} with the size and last-modified time they were saved
+     * with. A missing or damaged file reads as no groups.
+     */
+    public static DuplicateGroups read(File file, List<ScannedImage> images) {
+        if (!file.exists()) {
+            return EMPTY;
+        }
+        Map<String, ScannedImage> byId = byDocumentId(images);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return EMPTY;
+            }
+            int count = in.readInt();
+            List<List<String>> groups = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int size = in.readInt();
+                List<String> group = new ArrayList<>(size);
+                for (int j = 0; j < size; j++) {
+                    String documentId = in.readUTF();
+                    long length = in.readLong();
+                    long lastModified = in.readLong();
+                    ScannedImage image = byId.get(documentId);
+                    if (image != null && image.getSize() == length && image.getLastModified() == lastModified) {
+                        group.add(documentId);
+                    }
+                }
+                groups.add(group);
+            }
+            return of(groups);
+        } catch (IOException e) {
+            return EMPTY;  // Found again by the next pass
+        }
+    }
+
+    private static Map<String, ScannedImage> byDocumentId(List<ScannedImage> images) {
+        Map<String, ScannedImage> byId = new HashMap<>(images.size() * 2);
+        for (ScannedImage image : images) {
+            byId.put(image.getDocumentId(), image);
+        }
+        return byId;
+    }
+
+    @Override
+    public String toString() {
+        return groupCount + " groups with " + copyCount() + " exact copies";
+    }
+}
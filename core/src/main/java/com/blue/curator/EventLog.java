@@ -0,0 +1,261 @@
+package com.blue.curator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The app's log. Recording an entry only fills a slot in a {@link LogRing};
+ * a background thread drains the ring in batches, appends each batch to a
+ * {@link RotatingLogFile} with one write, and echoes the entries to an
+ * {@link Echo} such as logcat. So logging never does I/O on the calling
+ * thread, which is often the UI thread.
+ *
+ * Entries below the minimum level return before doing anything. Messages
+ * are templates whose {@code {}} placeholders are filled in on the writer
+ * thread, so a guarded call does not build strings either; arguments must be
+ * safe to read from another thread, which strings, numbers and immutable
+ * values are. Pass anything else already converted, behind
+ * {@link #isLoggable}.
+ */
+public final class EventLog implements Closeable {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    /** Receives every entry as it is written, on the writer thread. */
+    public interface Echo {
+        void echo(Level level, String tag, String message, Throwable thrown);
+    }
+
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final long DEFAULT_FLUSH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_BATCH = 512;
+    private static final Object NO_ARG = new Object();
+    private static final Object LONG_ARG = new Object();
+
+    private final LogRing ring;
+    private final RotatingLogFile file;
+    private final Echo echo;
+    private final Level minLevel;
+    private final long flushNanos;
+    private final Thread writer;
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+    private volatile long written;
+    private volatile boolean closed;
+    private long droppedReported;
+
+    public EventLog(RotatingLogFile file, Echo echo, Level minLevel) {
+        this(file, echo, minLevel, DEFAULT_CAPACITY, DEFAULT_FLUSH_NANOS);
+    }
+
+    EventLog(RotatingLogFile file, Echo echo, Level minLevel, int capacity, long flushNanos) {
+        this.ring = new LogRing(capacity);
+        this.file = file;
+        this.echo = echo;
+        this.minLevel = minLevel;
+        this.flushNanos = flushNanos;
+        this.writer = new Thread(this::run, "EventLog");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public boolean isLoggable(Level level) {
+        return level.compareTo(minLevel) >= 0;
+    }
+
+    public void d(String tag, String message) {
+        record(Level.DEBUG, tag, message, NO_ARG, NO_ARG, 0, null);
+    }
+
+    public void d(String tag, String template, long value) {
+        record(Level.DEBUG, tag, template, LONG_ARG, NO_ARG, value, null);
+    }
+
+    public void d(String tag, String template, Object arg) {
+        record(Level.DEBUG, tag, template, arg, NO_ARG, 0, null);
+    }
+
+    public void d(String tag, String template, Object arg1, Object arg2) {
+        record(Level.DEBUG, tag, template, arg1, arg2, 0, null);
+    }
+
+    public void i(String tag, String message) {
+        record(Level.INFO, tag, message, NO_ARG, NO_ARG, 0, null);
+    }
+
+    public void i(String tag, String template, Object arg) {
+        record(Level.INFO, tag, template, arg, NO_ARG, 0, null);
+    }
+
+    public void i(String tag, String template, Object arg1, Object arg2) {
+        record(Level.INFO, tag, template, arg1, arg2, 0, null);
+    }
+
+    public void w(String tag, String message) {
+        record(Level.WARN, tag, message, NO_ARG, NO_ARG, 0, null);
+    }
+
+    public void w(String tag, String template, long value) {
+        record(Level.WARN, tag, template, LONG_ARG, NO_ARG, value, null);
+    }
+
+    public void e(String tag, String message, Throwable thrown) {
+        record(Level.ERROR, tag, message, NO_ARG, NO_ARG, 0, thrown);
+    }
+
+    private void record(Level level, String tag, String template, Object arg1, Object arg2, long value,
+                        Throwable thrown) {
+        if (level.compareTo(minLevel) < 0 || closed) {
+            return;
+        }
+        long sequence = ring.claim();
+        if (sequence < 0) {
+            return;  // Counted; the writer reports it
+        }
+        LogRing.Slot slot = ring.slot(sequence);
+        slot.timeMillis = System.currentTimeMillis();
+        slot.level = level;
+        slot.tag = tag;
+        slot.template = template;
+        slot.arg1 = arg1;
+        slot.arg2 = arg2;
+        slot.value = value;
+        slot.thrown = thrown;
+        slot.thread = Thread.currentThread().getName();
+        ring.publish(sequence);
+        if (level.compareTo(Level.WARN) >= 0 || ring.size() > ring.capacity() / 2) {
+            LockSupport.unpark(writer);  // Errors should reach the disk before a crash can take them
+        }
+    }
+
+    /** Asks the writer to write what is queued now, without waiting for it. */
+    public void flushAsync() {
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Waits until everything recorded before the call is written, or for
+     * {@code timeoutMillis}; returns whether it was.
+     */
+    public boolean flush(long timeoutMillis) {
+        long target = ring.head();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (written < target) {
+            if (System.nanoTime() > deadline || !writer.isAlive()) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    /** Entries dropped because the ring was full. */
+    public long dropped() {
+        return ring.dropped();
+    }
+
+    /** Writes what is queued and stops the writer; later entries are ignored. */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        StringBuilder batch = new StringBuilder(16 * 1024);
+        while (true) {
+            boolean stopping = closed;
+            int drained = drain(batch);
+            if (batch.length() > 0) {
+                write(batch.toString());
+                batch.setLength(0);
+            }
+            written = ring.tail();
+            if (drained == 0) {
+                if (stopping) {
+                    break;
+                }
+                LockSupport.parkNanos(this, flushNanos);
+            }
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            echo.echo(Level.ERROR, "EventLog", "Cannot close the log file", e);
+        }
+    }
+
+    /** Formats up to a batch of published entries into {@code batch}; returns how many. */
+    private int drain(StringBuilder batch) {
+        long dropped = ring.dropped();
+        if (dropped > droppedReported) {
+            String message = (dropped - droppedReported) + " entries dropped, the log was full";
+            droppedReported = dropped;
+            appendLine(batch, System.currentTimeMillis(), Level.WARN, "EventLog", "EventLog", message, null);
+            echo.echo(Level.WARN, "EventLog", message, null);
+        }
+        int count = 0;
+        LogRing.Slot slot;
+        while (count < MAX_BATCH && (slot = ring.peek()) != null) {
+            String message = format(slot.template, slot.arg1, slot.arg2, slot.value);
+            appendLine(batch, slot.timeMillis, slot.level, slot.tag, slot.thread, message, slot.thrown);
+            echo.echo(slot.level, slot.tag, message, slot.thrown);
+            ring.release(slot);
+            count++;
+        }
+        return count;
+    }
+
+    private void write(String text) {
+        try {
+            file.append(text);
+        } catch (IOException e) {
+            echo.echo(Level.ERROR, "EventLog", "Cannot write the log file", e);  // The batch is lost
+        }
+    }
+
+    private void appendLine(StringBuilder batch, long timeMillis, Level level, String tag, String thread,
+                            String message, Throwable thrown) {
+        batch.append(timeFormat.format(new Date(timeMillis))).append(' ').append(level.name().charAt(0))
+                .append(' ').append(tag).append(" [").append(thread).append("] ").append(message).append('\n');
+        if (thrown != null) {
+            StringWriter trace = new StringWriter();
+            thrown.printStackTrace(new PrintWriter(trace));
+            batch.append(trace);
+        }
+    }
+
+    /** Fills {@code template}'s {@code {}} placeholders in order; unused arguments are appended. */
+    static String format(String template, Object arg1, Object arg2, long value) {
+        if (arg1 == NO_ARG) {
+            return template;
+        }
+        StringBuilder message = new StringBuilder(template.length() + 32);
+        int from = 0;
+        int used = 0;
+        Object[] args = {arg1 == LONG_ARG ? (Object) value : arg1, arg2};
+        int count = arg2 == NO_ARG ? 1 : 2;
+        int at;
+        while (used < count && (at = template.indexOf("{}", from)) >= 0) {
+            message.append(template, from, at).append(args[used++]);
+            from = at + 2;
+        }
+        message.append(template, from, template.length());
+        while (used < count) {
+            message.append(' ').append(args[used++]);
+        }
+        return message.toString();
+    }
+}
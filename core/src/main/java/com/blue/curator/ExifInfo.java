@@ -0,0 +1,59 @@
+package com.blue.curator;
+
+/**
+ * What {@link ExifReader} found in the head of an image. The capture time is
+ * the camera's wall-clock time (DateTimeOriginal plus SubSecTimeOriginal)
+ * counted as if it were UTC, since EXIF rarely says which time zone the
+ * camera was set to; it is meant for ordering, not for display in other
+ * zones. Fields the image does not carry are -1, or null for text.
+ */
+public final class ExifInfo {
+
+    private final long captureTime;
+    private final int orientation;
+    private final String camera;
+    private final int width;
+    private final int height;
+
+    public ExifInfo(long captureTime, int orientation, String camera, int width, int height) {
+        this.captureTime = captureTime;
+        this.orientation = orientation;
+        this.camera = camera;
+        this.width = width;
+        this.height = height;
+    }
+
+    /** Wall-clock capture time in milliseconds, or -1 if unknown. */
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    public boolean hasCaptureTime() {
+        return captureTime >= 0;
+    }
+
+    /** EXIF orientation, 1 (upright) to 8; 1 if not recorded. */
+    public int getOrientation() {
+        return orientation;
+    }
+
+    /** Make and model, e.g. "Canon EOS R6", or null. */
+    public String getCamera() {
+        return camera;
+    }
+
+    /** Width of the stored image in pixels, or -1. */
+    public int getWidth() {
+        return width;
+    }
+
+    /** Height of the stored image in pixels, or -1. */
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public String toString() {
+        return "ExifInfo(" + captureTime + ", " + orientation + ", " + camera + ", " + width + "x" + height + ")";
+    }
+}
@@ -0,0 +1,181 @@
+package com.blue.curator;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads capture metadata from the head of a JPEG without touching the image
+ * data.
+ *
+ * The marker segments are walked in order: the EXIF APP1 segment is read and
+ * parsed, everything else is skipped, and reading stops at the frame header
+ * (SOF), which carries the real dimensions and comes before any compressed
+ * data. Typically that is the first 10-70 KB of a multi-megabyte file.
+ */
+public final class ExifReader {
+
+    private static final int MARKER_SOI = 0xd8;
+    private static final int MARKER_APP1 = 0xe1;
+    private static final int MARKER_SOS = 0xda;
+    private static final int TAG_MAKE = 0x010f;
+    private static final int TAG_MODEL = 0x0110;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_SUB_SEC_TIME_ORIGINAL = 0x9291;
+    private static final int TAG_PIXEL_X_DIMENSION = 0xa002;
+    private static final int TAG_PIXEL_Y_DIMENSION = 0xa003;
+    private static final int MAX_HEADER_BYTES = 256 * 1024;
+
+    private ExifReader() {
+    }
+
+    /** Reads the head of a JPEG from {@code in}; null if it is not a JPEG or has neither EXIF nor a frame header. */
+    public static ExifInfo read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] exif = null;
+        int frameWidth = -1;
+        int frameHeight = -1;
+        try {
+            if (data.readUnsignedByte() != 0xff || data.readUnsignedByte() != MARKER_SOI) {
+                return null;
+            }
+            int consumed = 2;
+            while (consumed < MAX_HEADER_BYTES) {
+                if (data.readUnsignedByte() != 0xff) {
+                    break;
+                }
+                int marker = data.readUnsignedByte();
+                while (marker == 0xff) {
+                    marker = data.readUnsignedByte();  // Fill bytes
+                }
+                if (marker == MARKER_SOS || marker == 0xd9 || (marker >= 0xd0 && marker <= 0xd7)) {
+                    break;
+                }
+                int length = data.readUnsignedShort() - 2;
+                if (length < 0) {
+                    break;
+                }
+                if (isFrameHeader(marker) && length >= 5) {
+                    data.readUnsignedByte();  // Sample precision
+                    frameHeight = data.readUnsignedShort();
+                    frameWidth = data.readUnsignedShort();
+                    break;
+                }
+                if (marker == MARKER_APP1 && exif == null) {
+                    byte[] segment = new byte[length];
+                    data.readFully(segment);
+                    if (ExifThumbnailReader.isExif(segment)) {
+                        exif = segment;
+                    }
+                } else {
+                    ExifThumbnailReader.skipFully(data, length);
+                }
+                consumed += 4 + length;
+            }
+        } catch (EOFException e) {
+            // Use whatever was found before the end
+        }
+        if (exif == null && frameWidth < 0) {
+            return null;
+        }
+        return parse(exif, frameWidth, frameHeight);
+    }
+
+    /** SOF0-SOF15, except DHT (c4), JPG (c8) and DAC (cc), which share the range. */
+    private static boolean isFrameHeader(int marker) {
+        return marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc;
+    }
+
+    private static ExifInfo parse(byte[] exif, int frameWidth, int frameHeight) {
+        long captureTime = -1;
+        int orientation = 1;
+        String camera = null;
+        int width = frameWidth;
+        int height = frameHeight;
+        ExifThumbnailReader.Tiff tiff = exif == null ? null : new ExifThumbnailReader.Tiff(exif, 6);
+        if (tiff != null && tiff.valid()) {
+            int ifd0 = tiff.u32(4);
+            orientation = tiff.findShort(ifd0, TAG_ORIENTATION, 1);
+            camera = camera(tiff.findAscii(ifd0, TAG_MAKE), tiff.findAscii(ifd0, TAG_MODEL));
+            long exifIfd = tiff.findLong(ifd0, TAG_EXIF_IFD);
+            if (exifIfd > 0 && exifIfd < Integer.MAX_VALUE) {
+                int ifd = (int) exifIfd;
+                captureTime = captureTime(tiff.findAscii(ifd, TAG_DATE_TIME_ORIGINAL),
+                        tiff.findAscii(ifd, TAG_SUB_SEC_TIME_ORIGINAL));
+                if (width < 0) {
+                    width = (int) tiff.findLong(ifd, TAG_PIXEL_X_DIMENSION);
+                    height = (int) tiff.findLong(ifd, TAG_PIXEL_Y_DIMENSION);
+                }
+            }
+        }
+        return new ExifInfo(captureTime, orientation, camera, width, height);
+    }
+
+    /** "Make Model", without repeating the make when the model already starts with it. */
+    static String camera(String make, String model) {
+        if (model == null) {
+            return make;
+        }
+        if (make == null || model.regionMatches(true, 0, make, 0, make.length())) {
+            return model;
+        }
+        return make + " " + model;
+    }
+
+    /**
+     * Parses "YYYY:MM:DD HH:MM:SS" plus optional fractional-second digits into
+     * milliseconds, as if UTC; -1 for missing or blank ("    :  :  ") values.
+     */
+    static long captureTime(String dateTime, String subSec) {
+        if (dateTime == null || dateTime.length() < 19) {
+            return -1;
+        }
+        int year = digits(dateTime, 0, 4);
+        int month = digits(dateTime, 5, 2);
+        int day = digits(dateTime, 8, 2);
+        int hour = digits(dateTime, 11, 2);
+        int minute = digits(dateTime, 14, 2);
+        int second = digits(dateTime, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return -1;
+        }
+        long seconds = daysFromCivil(year, month, day) * 86400L + hour * 3600L + minute * 60L + second;
+        int millis = 0;
+        if (subSec != null) {
+            for (int i = 0, scale = 100; i < subSec.length() && scale > 0; i++, scale /= 10) {
+                char c = subSec.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                millis += (c - '0') * scale;
+            }
+        }
+        return seconds * 1000 + millis;
+    }
+
+    private static int digits(String s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /** Days since 1970-01-01 in the proleptic Gregorian calendar. */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,104 @@
+package com.blue.curator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the EXIF of a folder's images in parallel with {@link ExifReader}.
+ * Only the head of each file is read, and the work is mostly waiting on the
+ * document provider, so several files are read at once. Starting a pass
+ * abandons the one before it.
+ */
+public class ExifScanner {
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    /** Called on the scanner's thread when a pass completes; not called for abandoned passes. */
+    public interface Listener {
+        void onFinished(Map<String, ExifInfo> exif, long elapsedNanos);
+    }
+
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor();
+    private final ExecutorService readers;
+    private final AtomicInteger generation = new AtomicInteger();
+
+    public ExifScanner() {
+        this(DEFAULT_CONCURRENCY);
+    }
+
+    public ExifScanner(int concurrency) {
+        this.readers = Executors.newFixedThreadPool(concurrency);
+    }
+
+    /**
+     * Starts reading {@code images} from {@code source}, abandoning any pass
+     * still running; those without readable EXIF are left out of the result.
+     */
+    public void scan(List<ScannedImage> images, FileExportTarget.Source source, Listener listener) {
+        int pass = generation.incrementAndGet();
+        List<ScannedImage> snapshot = new ArrayList<>(images);
+        coordinator.execute(() -> run(pass, snapshot, source, listener));
+    }
+
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    public void shutdown() {
+        cancel();
+        coordinator.execute(readers::shutdown);
+        coordinator.shutdown();
+    }
+
+    private void run(int pass, List<ScannedImage> images, FileExportTarget.Source source, Listener listener) {
+        if (generation.get() != pass) {
+            return;
+        }
+        long start = System.nanoTime();
+        CompletionService<ExifInfo> completions = new ExecutorCompletionService<>(readers);
+        Map<Future<ExifInfo>, String> documentIds = new HashMap<>();
+        for (ScannedImage image : images) {
+            documentIds.put(completions.submit(() -> read(pass, image, source)), image.getDocumentId());
+        }
+        Map<String, ExifInfo> exif = new HashMap<>(images.size() * 2);
+        try {
+            for (int i = 0; i < images.size(); i++) {
+                Future<ExifInfo> done = completions.take();
+                try {
+                    ExifInfo info = done.get();
+                    if (info != null) {
+                        exif.put(documentIds.get(done), info);
+                    }
+                } catch (ExecutionException e) {
+                    // Unreadable; ordered by its last-modified time instead
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (generation.get() == pass) {
+            listener.onFinished(exif, System.nanoTime() - start);
+        }
+    }
+
+    private ExifInfo read(int pass, ScannedImage image, FileExportTarget.Source source) throws IOException {
+        if (generation.get() != pass || !"image/jpeg".equals(image.getMimeType())) {
+            return null;
+        }
+        try (InputStream in = source.open(image.getDocumentId())) {
+            return ExifReader.read(in);
+        }
+    }
+}
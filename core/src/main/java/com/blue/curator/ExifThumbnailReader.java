@@ -0,0 +1,248 @@
+package com.blue.curator;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pulls the embedded preview out of a JPEG's EXIF block.
+ *
+ * Camera JPEGs carry a small JPEG thumbnail (typically 160x120) in IFD1 of
+ * the APP1 segment, within the first few kilobytes of the file. This reader
+ * walks the marker segments at the head of the stream and stops as soon as
+ * APP1 has been read, so it never touches the compressed image data. The
+ * preview does not carry the orientation of the main image, so it is copied
+ * into a minimal EXIF segment in front of the preview for the decoder to
+ * honour.
+ */
+public final class ExifThumbnailReader {
+
+    private static final int MARKER_SOI = 0xd8;
+    private static final int MARKER_APP1 = 0xe1;
+    private static final int MARKER_SOS = 0xda;
+    private static final int TAG_COMPRESSION = 0x0103;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+    private static final int COMPRESSION_JPEG = 6;
+    // Headers before APP1 are small; give up rather than scan a whole file
+    private static final int MAX_HEADER_BYTES = 256 * 1024;
+
+    private ExifThumbnailReader() {
+    }
+
+    /**
+     * Reads the head of a JPEG from {@code in} and returns the embedded
+     * preview as a JPEG, or null if there is none. Reads no further than the
+     * APP1 segment.
+     */
+    public static byte[] read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        try {
+            if (data.readUnsignedByte() != 0xff || data.readUnsignedByte() != MARKER_SOI) {
+                return null;
+            }
+            int consumed = 2;
+            while (consumed < MAX_HEADER_BYTES) {
+                if (data.readUnsignedByte() != 0xff) {
+                    return null;
+                }
+                int marker = data.readUnsignedByte();
+                while (marker == 0xff) {
+                    marker = data.readUnsignedByte();  // Fill bytes
+                }
+                if (marker == MARKER_SOS || marker == 0xd9 || (marker >= 0xd0 && marker <= 0xd7)) {
+                    return null;  // Image data reached without EXIF
+                }
+                int length = data.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return null;
+                }
+                if (marker == MARKER_APP1) {
+                    byte[] segment = new byte[length];
+                    data.readFully(segment);
+                    if (isExif(segment)) {
+                        return thumbnailOf(segment);
+                    }
+                } else {
+                    skipFully(data, length);
+                }
+                consumed += 4 + length;
+            }
+            return null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    static boolean isExif(byte[] segment) {
+        return segment.length > 14 && segment[0] == 'E' && segment[1] == 'x' && segment[2] == 'i'
+                && segment[3] == 'f' && segment[4] == 0 && segment[5] == 0;
+    }
+
+    /** Finds IFD1's JPEG preview inside an APP1 segment; offsets are relative to the TIFF header at 6. */
+    private static byte[] thumbnailOf(byte[] segment) {
+        Tiff tiff = new Tiff(segment, 6);
+        if (!tiff.valid()) {
+            return null;
+        }
+        int ifd0 = tiff.u32(4);
+        int orientation = tiff.findShort(ifd0, TAG_ORIENTATION, 1);
+        int ifd1 = tiff.nextIfd(ifd0);
+        if (ifd1 <= 0) {
+            return null;
+        }
+        int compression = tiff.findShort(ifd1, TAG_COMPRESSION, COMPRESSION_JPEG);
+        long offset = tiff.findLong(ifd1, TAG_THUMBNAIL_OFFSET);
+        long length = tiff.findLong(ifd1, TAG_THUMBNAIL_LENGTH);
+        if (compression != COMPRESSION_JPEG || offset <= 0 || length <= 2
+                || 6 + offset + length > segment.length) {
+            return null;
+        }
+        int start = (int) (6 + offset);
+        if ((segment[start] & 0xff) != 0xff || (segment[start + 1] & 0xff) != MARKER_SOI) {
+            return null;
+        }
+        return withOrientation(segment, start, (int) length, orientation);
+    }
+
+    /** Copies the preview, inserting an APP1 segment that carries {@code orientation} if it is not upright. */
+    static byte[] withOrientation(byte[] source, int start, int length, int orientation) {
+        if (orientation <= 1 || orientation > 8) {
+            byte[] jpeg = new byte[length];
+            System.arraycopy(source, start, jpeg, 0, length);
+            return jpeg;
+        }
+        byte[] app1 = {
+                (byte) 0xff, (byte) MARKER_APP1, 0, 34,
+                'E', 'x', 'i', 'f', 0, 0,
+                'M', 'M', 0, 42, 0, 0, 0, 8,                 // Big-endian TIFF header, IFD0 at 8
+                0, 1,                                       // One entry
+                0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+                0, 0, 0, 0,                                 // No next IFD
+        };
+        byte[] jpeg = new byte[length + app1.length];
+        jpeg[0] = (byte) 0xff;
+        jpeg[1] = (byte) MARKER_SOI;
+        System.arraycopy(app1, 0, jpeg, 2, app1.length);
+        System.arraycopy(source, start + 2, jpeg, 2 + app1.length, length - 2);
+        return jpeg;
+    }
+
+    static void skipFully(DataInputStream in, int count) throws IOException {
+        while (count > 0) {
+            int skipped = (int) in.skip(count);
+            if (skipped <= 0) {
+                in.readUnsignedByte();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /** Bounds-checked reads from a TIFF structure embedded in a byte array. */
+    static final class Tiff {
+        private static final int TYPE_ASCII = 2;
+        private static final int TYPE_SHORT = 3;
+        private static final int TYPE_LONG = 4;
+
+        private final byte[] bytes;
+        private final int base;
+        private final boolean littleEndian;
+
+        Tiff(byte[] bytes, int base) {
+            this.bytes = bytes;
+            this.base = base;
+            this.littleEndian = bytes.length > base + 1 && bytes[base] == 'I' && bytes[base + 1] == 'I';
+        }
+
+        boolean valid() {
+            boolean marked = littleEndian || (bytes.length > base + 1 && bytes[base] == 'M' && bytes[base + 1] == 'M');
+            return marked && u16(2) == 42;
+        }
+
+        int u16(int offset) {
+            int at = base + offset;
+            if (offset < 0 || at + 2 > bytes.length) {
+                return -1;
+            }
+            int b0 = bytes[at] & 0xff;
+            int b1 = bytes[at + 1] & 0xff;
+            return littleEndian ? b0 | (b1 << 8) : (b0 << 8) | b1;
+        }
+
+        int u32(int offset) {
+            int high = littleEndian ? u16(offset + 2) : u16(offset);
+            int low = littleEndian ? u16(offset) : u16(offset + 2);
+            if (high < 0 || low < 0) {
+                return -1;
+            }
+            return (high << 16) | low;
+        }
+
+        int entryCount(int ifd) {
+            return ifd <= 0 ? -1 : u16(ifd);
+        }
+
+        /** Offset of the IFD following {@code ifd}, or -1. */
+        int nextIfd(int ifd) {
+            int count = entryCount(ifd);
+            return count < 0 ? -1 : u32(ifd + 2 + count * 12);
+        }
+
+        /** Offset of the 12-byte entry for {@code tag} in {@code ifd}, or -1. */
+        int entry(int ifd, int tag) {
+            int count = entryCount(ifd);
+            for (int i = 0; i < count; i++) {
+                int entry = ifd + 2 + i * 12;
+                int entryTag = u16(entry);
+                if (entryTag < 0) {
+                    return -1;
+                }
+                if (entryTag == tag) {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+
+        int findShort(int ifd, int tag, int fallback) {
+            int entry = entry(ifd, tag);
+            if (entry < 0) {
+                return fallback;
+            }
+            int value = u16(entry + 2) == TYPE_LONG ? u32(entry + 8) : u16(entry + 8);
+            return value < 0 ? fallback : value;
+        }
+
+        long findLong(int ifd, int tag) {
+            int entry = entry(ifd, tag);
+            if (entry < 0) {
+                return -1;
+            }
+            return u16(entry + 2) == TYPE_SHORT ? u16(entry + 8) : u32(entry + 8) & 0xffffffffL;
+        }
+
+        /** The ASCII value of {@code tag} in {@code ifd} up to its first NUL, trimmed, or null. */
+        String findAscii(int ifd, int tag) {
+            int entry = entry(ifd, tag);
+            if (entry < 0 || u16(entry + 2) != TYPE_ASCII) {
+                return null;
+            }
+            int count = u32(entry + 4);
+            int offset = count <= 4 ? entry + 8 : u32(entry + 8);
+            if (count <= 0 || offset < 0 || base + offset + count > bytes.length) {
+                return null;
+            }
+            int start = base + offset;
+            int end = start;
+            while (end < start + count && bytes[end] != 0) {
+                end++;
+            }
+            String value = new String(bytes, start, end - start, StandardCharsets.US_ASCII).trim();
+            return value.isEmpty() ? null : value;
+        }
+    }
+}
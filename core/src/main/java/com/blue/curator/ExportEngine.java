@@ -0,0 +1,344 @@
+package com.blue.curator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exports categorized images into per-bucket folders in the background.
+ *
+ * A job compares the current decisions with the {@link ExportManifest} and
+ * only touches images whose bucket (or source file) changed since the last
+ * export: new or changed images are exported, images that moved bucket have
+ * their earlier export moved across, and undecided images have theirs taken
+ * back. How an image gets into a folder is up to the {@link ExportTarget}.
+ * Exports run several at a time. The manifest is saved every few files, so a
+ * job that is cancelled or killed resumes from its last checkpoint the next
+ * time it runs.
+ */
+public class ExportEngine {
+
+    private static final int DEFAULT_CONCURRENCY = 3;
+    private static final int CHECKPOINT_FILES = 16;
+    private static final long CHECKPOINT_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long IDLE_SECONDS = 30;
+
+    /** Job callbacks; called on the engine's threads. */
+    public interface Listener {
+        void onProgress(Progress progress);
+
+        void onFinished(Progress progress);
+    }
+
+    /** Counters of a running or finished job. */
+    public static final class Progress {
+        private final int filesDone;
+        private final int filesTotal;
+        private final int failures;
+        private final long bytesCopied;
+        private final long elapsedNanos;
+        private final boolean cancelled;
+
+        Progress(int filesDone, int filesTotal, int failures, long bytesCopied, long elapsedNanos, boolean cancelled) {
+            this.filesDone = filesDone;
+            this.filesTotal = filesTotal;
+            this.failures = failures;
+            this.bytesCopied = bytesCopied;
+            this.elapsedNanos = elapsedNanos;
+            this.cancelled = cancelled;
+        }
+
+        public int getFilesDone() {
+            return filesDone;
+        }
+
+        public int getFilesTotal() {
+            return filesTotal;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public long getBytesCopied() {
+            return bytesCopied;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public double bytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytesCopied * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return filesDone + "/" + filesTotal + " files, " + failures + " failed, "
+                    + bytesCopied + " bytes at " + Math.round(bytesPerSecond() / 1024) + " KiB/s"
+                    + (cancelled ? " (cancelled)" : "");
+        }
+    }
+
+    /** A submitted export. */
+    public static final class Job implements ExportTarget.Transfer {
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicInteger filesDone = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicLong bytesCopied = new AtomicLong();
+        private volatile int filesTotal;
+        private volatile long startNanos;
+        private volatile Progress result;
+
+        /** Stops the job at the next buffer boundary; finished files stay exported. */
+        public void cancel() {
+            cancelled.set(true);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        @Override
+        public void addBytes(long count) {
+            bytesCopied.addAndGet(count);
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /** Waits for the job to end and returns its final counters. */
+        public Progress await() throws InterruptedException {
+            done.await();
+            return result;
+        }
+
+        Progress progress() {
+            long elapsed = startNanos == 0 ? 0 : System.nanoTime() - startNanos;
+            return new Progress(filesDone.get(), filesTotal, failures.get(), bytesCopied.get(), elapsed,
+                    cancelled.get());
+        }
+    }
+
+    private final ExportTarget target;
+    private final ExportManifest manifest;
+    private final ExecutorService coordinator = coordinator();
+    private final Executor copiers;
+    private final ExecutorService ownCopiers;  // Null when the copiers are shared
+    private Job currentJob;
+
+    public ExportEngine(ExportTarget target, ExportManifest manifest) {
+        this(target, manifest, DEFAULT_CONCURRENCY);
+    }
+
+    public ExportEngine(ExportTarget target, ExportManifest manifest, int concurrency) {
+        this.target = target;
+        this.manifest = manifest;
+        this.ownCopiers = Executors.newFixedThreadPool(concurrency);
+        this.copiers = ownCopiers;
+    }
+
+    /**
+     * An engine whose copies run on {@code copiers}, shared with other work,
+     * so several engines together stay within its threads. The engine never
+     * shuts {@code copiers} down.
+     */
+    public ExportEngine(ExportTarget target, ExportManifest manifest, Executor copiers) {
+        this.target = target;
+        this.manifest = manifest;
+        this.ownCopiers = null;
+        this.copiers = copiers;
+    }
+
+    /**
+     * Starts exporting {@code items}. A job that is still running is cancelled
+     * first; whatever it finished is kept, so the new job only does the rest.
+     */
+    public synchronized Job start(List<ExportItem> items, Listener listener) {
+        if (currentJob != null) {
+            currentJob.cancel();
+        }
+        Job job = new Job();
+        currentJob = job;
+        List<ExportItem> snapshot = new ArrayList<>(items);
+        coordinator.execute(() -> run(job, snapshot, listener));
+        return job;
+    }
+
+    /** Lets a running job finish, then releases the engine's threads. */
+    public void shutdown() {
+        if (ownCopiers != null) {
+            coordinator.execute(ownCopiers::shutdown);
+        }
+        coordinator.shutdown();
+    }
+
+    /** Runs jobs one at a time; its thread ends while the engine is idle, so a kept engine costs no thread. */
+    private static ExecutorService coordinator() {
+        ThreadPoolExecutor coordinator = new ThreadPoolExecutor(1, 1, IDLE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        coordinator.allowCoreThreadTimeOut(true);
+        return coordinator;
+    }
+
+    private void run(Job job, List<ExportItem> items, Listener listener) {
+        job.startNanos = System.nanoTime();
+        try {
+            manifest.load();
+            target.begin();
+            List<Copy> copies = plan(items);
+            job.filesTotal = copies.size();
+            listener.onProgress(job.progress());
+
+            CompletionService<Copy> completions = new ExecutorCompletionService<>(copiers);
+            for (Copy copy : copies) {
+                completions.submit(() -> {
+                    copy.entry = export(job, copy);
+                    return copy;
+                });
+            }
+            int sinceCheckpoint = 0;
+            long lastCheckpoint = System.nanoTime();
+            for (int i = 0; i < copies.size(); i++) {
+                try {
+                    Copy copy = completions.take().get();
+                    manifest.put(copy.item.getDocumentId(), copy.entry);
+                    job.filesDone.incrementAndGet();
+                    sinceCheckpoint++;
+                } catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof CancellationException)) {
+                        job.failures.incrementAndGet();
+                    }
+                }
+                if (sinceCheckpoint >= CHECKPOINT_FILES || System.nanoTime() - lastCheckpoint > CHECKPOINT_NANOS) {
+                    saveManifest();
+                    sinceCheckpoint = 0;
+                    lastCheckpoint = System.nanoTime();
+                }
+                listener.onProgress(job.progress());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.cancel();
+        } catch (IOException e) {
+            job.failures.incrementAndGet();  // The target could not be prepared; nothing was exported
+        } finally {
+            saveManifest();
+            job.result = job.progress();
+            job.done.countDown();
+            listener.onFinished(job.result);
+        }
+    }
+
+    /** Takes back stale exports and returns the work still needed, with collision-free file names. */
+    private List<Copy> plan(List<ExportItem> items) {
+        Map<String, String> claimedNames = new HashMap<>();
+        for (Map.Entry<String, ExportManifest.Entry> e : manifest.entries().entrySet()) {
+            claimedNames.put(e.getValue().getFolder() + "/" + e.getValue().getFileName(), e.getKey());
+        }
+        List<Copy> copies = new ArrayList<>();
+        for (ExportItem item : items) {
+            ExportManifest.Entry exported = manifest.get(item.getDocumentId());
+            ExportManifest.Entry previous = null;
+            if (item.isCopy() && exported == null) {
+                continue;  // Exported once, as the image it copies
+            }
+            if (exported != null) {
+                boolean present = target.exists(exported);
+                if (present && exported.matches(item)) {
+                    continue;
+                }
+                if (present && item.getTargetFolder() != null && exported.sameSource(item)) {
+                    previous = exported;  // Only the bucket changed: move the export instead of redoing it
+                } else if (present && !target.withdraw(exported)) {
+                    continue;  // Leave the entry so the next export retries
+                } else {
+                    manifest.remove(item.getDocumentId());
+                }
+                claimedNames.remove(exported.getFolder() + "/" + exported.getFileName());
+            }
+            if (item.getTargetFolder() == null) {
+                continue;
+            }
+            String fileName = uniqueName(item, claimedNames);
+            claimedNames.put(item.getTargetFolder() + "/" + fileName, item.getDocumentId());
+            copies.add(new Copy(item, fileName, previous));
+        }
+        return copies;
+    }
+
+    /** A file name for {@code item} not yet in {@code claimedNames} (keyed "folder/name"), suffixed "_n" if needed. */
+    static String uniqueName(ExportItem item, Map<String, String> claimedNames) {
+        String name = item.getDisplayName() == null || item.getDisplayName().isEmpty()
+                ? item.getDocumentId() : item.getDisplayName();
+        name = name.replace('/', '_');
+        String candidate = name;
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int n = 1; claimedNames.containsKey(item.getTargetFolder() + "/" + candidate); n++) {
+            candidate = base + "_" + n + extension;
+        }
+        return candidate;
+    }
+
+    private ExportManifest.Entry export(Job job, Copy copy) throws IOException {
+        if (job.isCancelled()) {
+            throw new CancellationException();
+        }
+        if (copy.previous != null) {
+            ExportManifest.Entry moved = target.relocate(copy.previous, copy.item, copy.fileName);
+            if (moved != null) {
+                return moved;
+            }
+            if (!target.withdraw(copy.previous)) {
+                throw new IOException("Cannot take back the earlier export of " + copy.item.getDocumentId());
+            }
+        }
+        return target.export(copy.item, copy.fileName, job);
+    }
+
+    private void saveManifest() {
+        try {
+            manifest.save();
+        } catch (IOException e) {
+            // The next checkpoint tries again; at worst some files are copied twice
+        }
+    }
+
+    private static final class Copy {
+        final ExportItem item;
+        final String fileName;
+        final ExportManifest.Entry previous;
+        ExportManifest.Entry entry;
+
+        Copy(ExportItem item, String fileName, ExportManifest.Entry previous) {
+            this.item = item;
+            this.fileName = fileName;
+            this.previous = previous;
+        }
+    }
+}
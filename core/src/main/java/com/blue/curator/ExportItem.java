@@ -0,0 +1,75 @@
+package com.blue.curator;
+
+/**
+ * An image handed to the {@link ExportEngine}, with the folder its bucket
+ * exports to. A null target folder means the image is undecided and should
+ * not be exported (any earlier export of it is removed). An exact copy of
+ * another image is not exported either, but an export made before it was
+ * known to be a copy is kept, and follows its bucket.
+ */
+public final class ExportItem {
+
+    private final String documentId;
+    private final String displayName;
+    private final String mimeType;
+    private final long size;
+    private final long lastModified;
+    private final String targetFolder;
+    private final boolean copy;
+
+    public ExportItem(String documentId, String displayName, String mimeType, long size, long lastModified,
+                      String targetFolder) {
+        this(documentId, displayName, mimeType, size, lastModified, targetFolder, false);
+    }
+
+    private ExportItem(String documentId, String displayName, String mimeType, long size, long lastModified,
+                       String targetFolder, boolean copy) {
+        this.documentId = documentId;
+        this.displayName = displayName;
+        this.mimeType = mimeType;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.targetFolder = targetFolder;
+        this.copy = copy;
+    }
+
+    public static ExportItem of(ScannedImage image, String targetFolder) {
+        return new ExportItem(image.getDocumentId(), image.getDisplayName(), image.getMimeType(),
+                image.getSize(), image.getLastModified(), targetFolder);
+    }
+
+    /** An exact copy of another image, in the bucket that exports to {@code targetFolder}. */
+    public static ExportItem ofCopy(ScannedImage image, String targetFolder) {
+        return new ExportItem(image.getDocumentId(), image.getDisplayName(), image.getMimeType(),
+                image.getSize(), image.getLastModified(), targetFolder, true);
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getTargetFolder() {
+        return targetFolder;
+    }
+
+    /** True for an exact copy of another image; see {@link #ofCopy}. */
+    public boolean isCopy() {
+        return copy;
+    }
+}
@@ -0,0 +1,155 @@
+package com.blue.curator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What has already been exported: for every exported image, the folder and
+ * file name it was written to, the size and last-modified time of the source
+ * at the time, and the checksum of the copy. The export engine compares
+ * this against the current decisions to find the files that need work, and
+ * saves it at checkpoints so an interrupted export picks up where it stopped.
+ */
+public class ExportManifest {
+
+    private static final int MAGIC = 0x43454d31; // "CEM1"
+
+    /** One exported image. */
+    public static final class Entry {
+        private final String folder;
+        private final String fileName;
+        private final long size;
+        private final long lastModified;
+        private final long checksum;
+
+        public Entry(String folder, String fileName, long size, long lastModified, long checksum) {
+            this.folder = folder;
+            this.fileName = fileName;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+
+        public String getFolder() {
+            return folder;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /** CRC32 of the copy, or 0 if the copy was made by the document provider. */
+        public long getChecksum() {
+            return checksum;
+        }
+
+        /** True if this export is still current for {@code item}. */
+        public boolean matches(ExportItem item) {
+            return folder.equals(item.getTargetFolder()) && sameSource(item);
+        }
+
+        /** True if the source file has not changed since it was exported. */
+        public boolean sameSource(ExportItem item) {
+            return size == item.getSize() && lastModified == item.getLastModified();
+        }
+    }
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean loaded;
+
+    public ExportManifest(File file) {
+        this.file = file;
+    }
+
+    public synchronized Entry get(String documentId) {
+        return entries.get(documentId);
+    }
+
+    public synchronized void put(String documentId, Entry entry) {
+        entries.put(documentId, entry);
+    }
+
+    public synchronized void remove(String documentId) {
+        entries.remove(documentId);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Copy of all entries, keyed by document id. */
+    public synchronized Map<String, Entry> entries() {
+        return new HashMap<>(entries);
+    }
+
+    /** Reads the saved manifest once; later calls do nothing. A missing or damaged file reads as empty. */
+    public synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String documentId = in.readUTF();
+                entries.put(documentId, new Entry(in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), in.readLong()));
+            }
+        } catch (IOException e) {
+            // Worst case everything is exported again
+            entries.clear();
+        }
+    }
+
+    /** Writes the manifest atomically. */
+    public void save() throws IOException {
+        List<Map.Entry<String, Entry>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.entrySet());
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(MAGIC);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> e : snapshot) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeUTF(entry.folder);
+                out.writeUTF(entry.fileName);
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeLong(entry.checksum);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.blue.curator;
+
+import java.io.IOException;
+
+/**
+ * Where the {@link ExportEngine} puts exported images. The engine decides
+ * what needs doing from the {@link ExportManifest}; a target only knows how
+ * to put one image into a bucket folder, move an earlier export to another
+ * folder, and take an export back. Methods other than {@link #begin} may be
+ * called from several copy threads at once.
+ */
+public interface ExportTarget {
+
+    /** Cancellation and byte counting of the job an export runs in. */
+    interface Transfer {
+        boolean isCancelled();
+
+        void addBytes(long count);
+    }
+
+    /** Called at the start of every job, before any other method. */
+    default void begin() throws IOException {
+    }
+
+    /** Whether the export recorded in {@code entry} is still there. */
+    boolean exists(ExportManifest.Entry entry);
+
+    /**
+     * Takes back an export whose image is undecided again or needs exporting
+     * afresh. Returns false if it could not be taken back.
+     */
+    boolean withdraw(ExportManifest.Entry entry);
+
+    /**
+     * Exports {@code item} into its target folder, named {@code fileName} where
+     * the target can choose, and returns what was written. Throws
+     * {@link java.util.concurrent.CancellationException} if the job is cancelled
+     * part way; nothing is left behind in that case.
+     */
+    ExportManifest.Entry export(ExportItem item, String fileName, Transfer transfer) throws IOException;
+
+    /**
+     * Moves the earlier export in {@code entry} into the new target folder of
+     * {@code item}. Returns null if this target cannot move it, in which case
+     * the engine withdraws it and exports the image again.
+     */
+    ExportManifest.Entry relocate(ExportManifest.Entry entry, ExportItem item, String fileName) throws IOException;
+}
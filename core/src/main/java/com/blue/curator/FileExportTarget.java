@@ -0,0 +1,126 @@
+package com.blue.curator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+import java.util.zip.CRC32;
+
+/**
+ * Exports into per-bucket folders below a local directory, streaming the
+ * bytes through the app. Each copy is written to a {@code .part} file, checked
+ * against the CRC32 computed while reading the source, and only then renamed
+ * into place. Moving an export between buckets is a rename.
+ */
+public class FileExportTarget implements ExportTarget {
+
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    private static final String PART_SUFFIX = ".part";
+
+    /** Opens the bytes of an image by document id. */
+    public interface Source {
+        InputStream open(String documentId) throws IOException;
+    }
+
+    private final Source source;
+    private final File exportRoot;
+    private final ThreadLocal<byte[]> buffers;
+
+    public FileExportTarget(Source source, File exportRoot) {
+        this(source, exportRoot, DEFAULT_BUFFER_SIZE);
+    }
+
+    public FileExportTarget(Source source, File exportRoot, int bufferSize) {
+        this.source = source;
+        this.exportRoot = exportRoot;
+        this.buffers = ThreadLocal.withInitial(() -> new byte[bufferSize]);
+    }
+
+    @Override
+    public boolean exists(ExportManifest.Entry entry) {
+        return exportedFile(entry).exists();
+    }
+
+    @Override
+    public boolean withdraw(ExportManifest.Entry entry) {
+        File file = exportedFile(entry);
+        return !file.exists() || file.delete();
+    }
+
+    @Override
+    public ExportManifest.Entry export(ExportItem item, String fileName, Transfer transfer) throws IOException {
+        if (transfer.isCancelled()) {
+            throw new CancellationException();
+        }
+        File folder = folder(item.getTargetFolder());
+        File part = new File(folder, fileName + PART_SUFFIX);
+        byte[] buffer = buffers.get();
+        CRC32 sourceChecksum = new CRC32();
+        try {
+            try (InputStream in = source.open(item.getDocumentId());
+                 FileOutputStream out = new FileOutputStream(part)) {
+                if (in == null) {
+                    throw new IOException("No stream for " + item.getDocumentId());
+                }
+                int length;
+                while ((length = in.read(buffer)) > 0) {
+                    if (transfer.isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    out.write(buffer, 0, length);
+                    sourceChecksum.update(buffer, 0, length);
+                    transfer.addBytes(length);
+                }
+                out.getFD().sync();
+            }
+            if (checksumOf(part, buffer) != sourceChecksum.getValue()) {
+                throw new IOException("Checksum mismatch exporting " + item.getDocumentId());
+            }
+            File target = new File(folder, fileName);
+            if (!part.renameTo(target)) {
+                throw new IOException("Cannot rename " + part + " to " + target);
+            }
+        } catch (IOException | RuntimeException e) {
+            part.delete();
+            throw e;
+        }
+        return new ExportManifest.Entry(item.getTargetFolder(), fileName, item.getSize(),
+                item.getLastModified(), sourceChecksum.getValue());
+    }
+
+    @Override
+    public ExportManifest.Entry relocate(ExportManifest.Entry entry, ExportItem item, String fileName)
+            throws IOException {
+        File target = new File(folder(item.getTargetFolder()), fileName);
+        if (!exportedFile(entry).renameTo(target)) {
+            return null;
+        }
+        return new ExportManifest.Entry(item.getTargetFolder(), fileName, item.getSize(),
+                item.getLastModified(), entry.getChecksum());
+    }
+
+    private File folder(String name) throws IOException {
+        File folder = new File(exportRoot, name);
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Cannot create " + folder);
+        }
+        return folder;
+    }
+
+    private static long checksumOf(File file, byte[] buffer) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (InputStream in = new FileInputStream(file)) {
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                checksum.update(buffer, 0, length);
+            }
+        }
+        return checksum.getValue();
+    }
+
+    private File exportedFile(ExportManifest.Entry entry) {
+        return new File(new File(exportRoot, entry.getFolder()), entry.getFileName());
+    }
+}
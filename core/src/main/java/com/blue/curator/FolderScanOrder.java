@@ -0,0 +1,117 @@
+package com.blue.curator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Releases the results of a concurrent folder walk in a fixed order.
+ *
+ * Folders finish scanning in whatever order the worker threads get to them,
+ * but results are handed out in a deterministic pre-order: a folder's own
+ * images (sorted by name) come before its subfolders, and subfolders follow
+ * in name order, each with everything below it. Paths are compared folder
+ * name by folder name, so "a/x" comes before "a-b" even though '-' sorts
+ * below '/'. The final list never depends on thread timing, and the first
+ * folders can be curated while deeper ones are still being scanned.
+ */
+public class FolderScanOrder {
+
+    static final Comparator<ScannedImage> BY_NAME = (a, b) -> {
+        int byName = compareNullable(a.getDisplayName(), b.getDisplayName());
+        return byName != 0 ? byName : a.getDocumentId().compareTo(b.getDocumentId());
+    };
+
+    /** A folder of the walk. Its images and subfolders are set when it has been scanned. */
+    public static final class Folder {
+        private final String documentId;
+        private final String path;
+        private List<ScannedImage> images;
+        private List<Folder> subfolders;
+
+        Folder(String documentId, String path) {
+            this.documentId = documentId;
+            this.path = path;
+        }
+
+        public String getDocumentId() {
+            return documentId;
+        }
+
+        /** Path relative to the tree root, "" for the root itself. */
+        public String getPath() {
+            return path;
+        }
+
+        public List<ScannedImage> getImages() {
+            return images;
+        }
+    }
+
+    private final Folder root;
+    private final Deque<Folder> frontier = new ArrayDeque<>();
+    private int foldersFound = 1;
+    private int foldersScanned;
+
+    public FolderScanOrder(String rootDocumentId) {
+        root = new Folder(rootDocumentId, "");
+        frontier.add(root);
+    }
+
+    public Folder root() {
+        return root;
+    }
+
+    /** Creates the descriptor for a subfolder named {@code name} inside {@code parent}. */
+    public static Folder child(Folder parent, String documentId, String name) {
+        return new Folder(documentId, parent.path.isEmpty() ? name : parent.path + "/" + name);
+    }
+
+    /**
+     * Records that {@code folder} has been scanned and returns every folder whose
+     * results can now be released, in order. Folders are returned at most once.
+     */
+    public synchronized List<Folder> completed(Folder folder, List<ScannedImage> images, List<Folder> subfolders) {
+        List<ScannedImage> sortedImages = new ArrayList<>(images);
+        Collections.sort(sortedImages, BY_NAME);
+        List<Folder> sortedSubfolders = new ArrayList<>(subfolders);
+        Collections.sort(sortedSubfolders, (a, b) -> a.path.compareTo(b.path));  // Siblings: by name
+        folder.images = sortedImages;
+        folder.subfolders = sortedSubfolders;
+        foldersFound += subfolders.size();
+        foldersScanned++;
+
+        List<Folder> ready = new ArrayList<>();
+        while (!frontier.isEmpty() && frontier.peekFirst().subfolders != null) {
+            Folder next = frontier.pollFirst();
+            ready.add(next);
+            List<Folder> children = next.subfolders;
+            for (int i = children.size() - 1; i >= 0; i--) {
+                frontier.addFirst(children.get(i));
+            }
+        }
+        return ready;
+    }
+
+    public synchronized int foldersFound() {
+        return foldersFound;
+    }
+
+    public synchronized int foldersScanned() {
+        return foldersScanned;
+    }
+
+    public synchronized boolean isDone() {
+        return frontier.isEmpty();
+    }
+
+    private static int compareNullable(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+}
@@ -0,0 +1,48 @@
+package com.blue.curator;
+
+import java.util.BitSet;
+
+/**
+ * The positions picked in the thumbnail grid. A tap toggles one position and
+ * makes it the anchor; a long press selects everything between the anchor
+ * and the pressed position, the way shift-click does on a desktop.
+ */
+public class GridSelection {
+
+    private final BitSet selected = new BitSet();
+    private int anchor = -1;
+
+    /** Flips {@code position}; returns whether it is now selected. */
+    public boolean toggle(int position) {
+        selected.flip(position);
+        anchor = position;
+        return selected.get(position);
+    }
+
+    /** Selects from the anchor through {@code position}; with no anchor it just selects {@code position}. */
+    public void extendTo(int position) {
+        if (anchor < 0) {
+            toggle(position);
+            return;
+        }
+        selected.set(Math.min(anchor, position), Math.max(anchor, position) + 1);
+    }
+
+    public boolean isSelected(int position) {
+        return selected.get(position);
+    }
+
+    public int count() {
+        return selected.cardinality();
+    }
+
+    /** The selected positions in ascending order. */
+    public int[] positions() {
+        return selected.stream().toArray();
+    }
+
+    public void clear() {
+        selected.clear();
+        anchor = -1;
+    }
+}
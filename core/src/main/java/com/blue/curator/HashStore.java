@@ -0,0 +1,112 @@
+package com.blue.curator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Perceptual hashes computed in earlier sessions, keyed by document id and
+ * remembered with the last-modified time of the image they were computed
+ * from. A hash only counts while the image is unchanged, so an edited image
+ * is hashed again. Workers may add hashes concurrently.
+ */
+public class HashStore {
+
+    private static final int MAGIC = 0x43504831; // "CPH1"
+
+    private static final class Entry {
+        final long lastModified;
+        final long hash;
+
+        Entry(long lastModified, long hash) {
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean loaded;
+
+    public HashStore(File file) {
+        this.file = file;
+    }
+
+    /** The stored hash of {@code documentId}, or null if there is none for this version of the image. */
+    public synchronized Long get(String documentId, long lastModified) {
+        Entry entry = entries.get(documentId);
+        return entry == null || entry.lastModified != lastModified ? null : entry.hash;
+    }
+
+    public synchronized void put(String documentId, long lastModified, long hash) {
+        entries.put(documentId, new Entry(lastModified, hash));
+    }
+
+    /** Forgets images that are no longer in {@code documentIds}. */
+    public synchronized void retainAll(Collection<String> documentIds) {
+        entries.keySet().retainAll(new HashSet<>(documentIds));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Reads the saved hashes once; later calls do nothing. A missing or damaged file reads as empty. */
+    public synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String documentId = in.readUTF();
+                entries.put(documentId, new Entry(in.readLong(), in.readLong()));
+            }
+        } catch (IOException e) {
+            // Worst case everything is hashed again
+            entries.clear();
+        }
+    }
+
+    /** Writes the hashes atomically. */
+    public void save() throws IOException {
+        List<Map.Entry<String, Entry>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.entrySet());
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(MAGIC);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> e : snapshot) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().lastModified);
+                out.writeLong(e.getValue().hash);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+}
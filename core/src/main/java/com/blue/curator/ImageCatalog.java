@@ -0,0 +1,64 @@
+package com.blue.curator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The images being curated, in curation order, with a document id to position
+ * index that is kept in step as pages are added. Looking up where an image
+ * sits (to resume a session, or to follow an image across a rescan) is a
+ * hash lookup rather than a walk over the list.
+ */
+public class ImageCatalog implements ImageSequence {
+
+    private final ArrayList<ScannedImage> images = new ArrayList<>();
+    private final HashMap<String, Integer> positions = new HashMap<>();
+
+    public void addAll(List<ScannedImage> page) {
+        images.ensureCapacity(images.size() + page.size());
+        for (ScannedImage image : page) {
+            positions.put(image.getDocumentId(), images.size());
+            images.add(image);
+        }
+    }
+
+    public void replaceAll(List<ScannedImage> newImages) {
+        clear();
+        addAll(newImages);
+    }
+
+    public void clear() {
+        images.clear();
+        positions.clear();
+    }
+
+    @Override
+    public ScannedImage get(int position) {
+        return images.get(position);
+    }
+
+    @Override
+    public int size() {
+        return images.size();
+    }
+
+    public boolean isEmpty() {
+        return images.isEmpty();
+    }
+
+    /** Position of the image with {@code documentId}, or -1 if it is not in the catalog. */
+    public int positionOf(String documentId) {
+        if (documentId == null) {
+            return -1;
+        }
+        Integer position = positions.get(documentId);
+        return position == null ? -1 : position;
+    }
+
+    /** Read-only view of the images in order. */
+    public List<ScannedImage> asList() {
+        return Collections.unmodifiableList(images);
+    }
+}
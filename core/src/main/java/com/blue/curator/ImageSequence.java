@@ -0,0 +1,17 @@
+package com.blue.curator;
+
+/**
+ * Images in curation order, read by position. The whole folder is an
+ * {@link ImageCatalog} in memory; a query against the {@code MetadataIndex}
+ * is read row by row from the database as positions are visited.
+ */
+public interface ImageSequence {
+
+    int size();
+
+    ScannedImage get(int position);
+
+    /** Releases what backs the sequence; it must not be read afterwards. */
+    default void close() {
+    }
+}
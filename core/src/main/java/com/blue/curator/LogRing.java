@@ -0,0 +1,111 @@
+package com.blue.curator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded ring of log entries with many producers and one consumer.
+ *
+ * The slots are allocated up front and reused. A producer claims a sequence
+ * number with a compare-and-set on the head, fills the slot and publishes it
+ * by writing the slot's sequence, so recording takes no lock and allocates
+ * nothing. The consumer reads slots in sequence order as they are published
+ * and frees each one by moving the tail. When every slot is taken the entry
+ * is dropped and counted instead of making the caller wait.
+ */
+final class LogRing {
+
+    /** One entry; its fields are written by the producer that claimed it before it is published. */
+    static final class Slot {
+        volatile long published = -1;
+        long timeMillis;
+        EventLog.Level level;
+        String tag;
+        String template;
+        Object arg1;
+        Object arg2;
+        long value;
+        Throwable thrown;
+        String thread;
+
+        void clear() {
+            tag = null;
+            template = null;
+            arg1 = null;
+            arg2 = null;
+            thrown = null;
+            thread = null;
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long tail;
+
+    /** {@code capacity} is rounded up to a power of two. */
+    LogRing(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /** Claims the next slot and returns its sequence, or -1 if the ring is full. */
+    long claim() {
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= slots.length) {
+                dropped.incrementAndGet();
+                return -1;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+        return sequence;
+    }
+
+    Slot slot(long sequence) {
+        return slots[(int) sequence & mask];
+    }
+
+    /** Hands the filled slot of {@code sequence} to the consumer. */
+    void publish(long sequence) {
+        slot(sequence).published = sequence;
+    }
+
+    /** Consumer only: the oldest entry if it has been published, else null. */
+    Slot peek() {
+        Slot slot = slot(tail);
+        return slot.published == tail ? slot : null;
+    }
+
+    /** Consumer only: frees the slot returned by {@link #peek}. */
+    void release(Slot slot) {
+        slot.clear();
+        tail = tail + 1;
+    }
+
+    /** Sequences claimed so far; every entry recorded before a call has a lower sequence. */
+    long head() {
+        return head.get();
+    }
+
+    /** Sequences consumed so far. */
+    long tail() {
+        return tail;
+    }
+
+    int size() {
+        return (int) (head.get() - tail);
+    }
+
+    long dropped() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,138 @@
+package com.blue.curator;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Where the curation loop records how long things take. Histograms and
+ * meters are looked up by name and created on first use; recording into
+ * them is lock-free, so any thread can record. Names ending in
+ * {@code _nanos} are timings and are reported in milliseconds.
+ * {@link #report} renders everything as text for the debug dialog and
+ * {@link #writeTo} saves it next to the error log.
+ */
+public class Metrics {
+
+    public static final String SCAN_NANOS = "scan.duration_nanos";
+    public static final String SCAN_ITEMS_PER_SECOND = "scan.items_per_second";
+    public static final String FIRST_PIXEL_NANOS = "image.first_pixel_nanos";
+    public static final String FULL_DECODE_NANOS = "image.full_decode_nanos";
+    public static final String DECISION_TO_NEXT_IMAGE_NANOS = "decision.to_next_image_nanos";
+    public static final String DECISIONS = "decision";
+    public static final String PREFETCH_HIT_PERCENT = "prefetch.hit_percent";
+    public static final String EXPORT_BYTES_PER_SECOND = "export.bytes_per_second";
+    public static final String STARTUP_COLD_NANOS = "startup.cold_nanos";
+    public static final String STARTUP_WARM_NANOS = "startup.warm_nanos";
+    public static final String SESSION_RESTORE_NANOS = "startup.session_restore_nanos";
+
+    /** Counts events and their rate between the first and the latest. */
+    public static final class Meter {
+        private final LongSupplier clock;
+        private final LongAdder count = new LongAdder();
+        private final AtomicLong firstNanos = new AtomicLong(-1);
+        private final AtomicLong lastNanos = new AtomicLong(-1);
+
+        Meter(LongSupplier clock) {
+            this.clock = clock;
+        }
+
+        public void mark(long events) {
+            long now = clock.getAsLong();
+            firstNanos.compareAndSet(-1, now);
+            lastNanos.set(now);
+            count.add(events);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        /** Events per minute from the first mark to the latest; zero until two marks are apart in time. */
+        public double perMinute() {
+            long span = lastNanos.get() - firstNanos.get();
+            return span <= 0 ? 0 : count.sum() * (double) TimeUnit.MINUTES.toNanos(1) / span;
+        }
+    }
+
+    private final LongSupplier clock;
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, Meter> meters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public Metrics() {
+        this(System::nanoTime);
+    }
+
+    public Metrics(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    public void record(String name, long value) {
+        histogram(name).record(value);
+    }
+
+    public Meter meter(String name) {
+        return meters.computeIfAbsent(name, key -> new Meter(clock));
+    }
+
+    public void mark(String name) {
+        meter(name).mark(1);
+    }
+
+    /** Reports {@code value}'s current reading; it is read on the thread that asks for the report. */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /** One line per metric, sorted by name. */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            String name = entry.getKey();
+            Histogram histogram = entry.getValue();
+            report.append(name).append(": n=").append(histogram.count())
+                    .append(" mean=").append(format(name, histogram.mean()))
+                    .append(" p50=").append(format(name, histogram.percentile(50)))
+                    .append(" p90=").append(format(name, histogram.percentile(90)))
+                    .append(" p99=").append(format(name, histogram.percentile(99)))
+                    .append(" max=").append(format(name, histogram.max())).append('\n');
+        }
+        for (Map.Entry<String, Meter> entry : new TreeMap<>(meters).entrySet()) {
+            Meter meter = entry.getValue();
+            report.append(entry.getKey()).append(": n=").append(meter.count())
+                    .append(String.format(Locale.US, " %.1f/min", meter.perMinute())).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> entry : new TreeMap<>(gauges).entrySet()) {
+            report.append(entry.getKey()).append(": ").append(entry.getValue().getAsLong()).append('\n');
+        }
+        return report.toString();
+    }
+
+    private static String format(String name, long value) {
+        if (name.endsWith("_nanos")) {
+            return String.format(Locale.US, "%.1fms", value / 1e6);
+        }
+        return Long.toString(value);
+    }
+
+    /** Writes {@code report} to {@code file}, replacing it. */
+    public static void writeTo(File file, String report) throws IOException {
+        try (Writer out = new FileWriter(file, false)) {
+            out.write(report);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.blue.curator;
+
+/**
+ * 64-bit difference hash (dHash) of an image.
+ *
+ * The image is shrunk to 9x8 pixels and each bit records whether a pixel is
+ * brighter than its right-hand neighbour. Resizing, recompression and small
+ * exposure changes leave most bits alone, so near-identical frames have hashes
+ * a few bits apart, measured by {@link #distance}.
+ */
+public final class PerceptualHash {
+
+    public static final int WIDTH = 9;
+    public static final int HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    /** Hashes {@code WIDTH * HEIGHT} ARGB pixels, row by row. */
+    public static long dHash(int[] argb) {
+        if (argb.length != WIDTH * HEIGHT) {
+            throw new IllegalArgumentException("Expected " + WIDTH * HEIGHT + " pixels, got " + argb.length);
+        }
+        long hash = 0;
+        int bit = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            int row = y * WIDTH;
+            for (int x = 0; x < WIDTH - 1; x++, bit++) {
+                if (luma(argb[row + x]) > luma(argb[row + x + 1])) {
+                    hash |= 1L << bit;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /** Number of differing bits; 0 for identical hashes, 64 at most. */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /** Rec. 601 luma in 0..255, in integer arithmetic. */
+    static int luma(int argb) {
+        int r = (argb >> 16) & 0xff;
+        int g = (argb >> 8) & 0xff;
+        int b = argb & 0xff;
+        return (r * 77 + g * 150 + b * 29) >> 8;
+    }
+}
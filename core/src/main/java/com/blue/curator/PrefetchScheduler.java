@@ -0,0 +1,223 @@
+package com.blue.curator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides which images around the current one to prefetch, and when.
+ *
+ * The look-ahead window follows the user: it is sized from how long a
+ * prefetch takes compared with how long the user spends on each image (both
+ * smoothed), and it points in the direction the user is moving, with one
+ * image kept behind. Neighbours are only requested once the current image is
+ * on screen, nearest first, so they never compete with it; prefetches that
+ * fall out of the window when the user moves on are cancelled. Counters of
+ * hits (the image was prefetched before it was shown), late hits (it was
+ * still loading) and misses are kept for tuning. An optional capacity keeps
+ * the prefetched bitmaps within the memory budget.
+ *
+ * Positions index the image list; call {@link #reset} when they change
+ * meaning. Not thread-safe: use it from the UI thread.
+ */
+public class PrefetchScheduler {
+
+    /** Starts and cancels prefetches. */
+    public interface Loader {
+        /**
+         * Starts loading {@code position}; {@code whenReady} runs once it is in
+         * memory, or {@code whenFailed} if it cannot be loaded.
+         */
+        void prefetch(int position, Runnable whenReady, Runnable whenFailed);
+
+        void cancel(int position);
+    }
+
+    static final int MIN_AHEAD = 1;
+    static final int MAX_AHEAD = 6;
+    static final int BEHIND = 1;
+    private static final double SMOOTHING = 0.3;
+    private static final long INITIAL_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long INITIAL_LOAD_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    // Longer pauses say nothing about the pace of curation
+    private static final long MAX_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Loader loader;
+    private final LongSupplier clock;
+    private final Map<Integer, Long> inFlight = new HashMap<>();
+    private final Set<Integer> ready = new HashSet<>();
+    private int count;
+    private int capacity = Integer.MAX_VALUE;
+    private int current = -1;
+    private int direction = 1;
+    private long lastNavigationNanos;
+    private double intervalNanos = INITIAL_INTERVAL_NANOS;
+    private double loadNanos = INITIAL_LOAD_NANOS;
+    private int hits;
+    private int lateHits;
+    private int misses;
+    private int issued;
+    private int cancelled;
+    private int failed;
+
+    public PrefetchScheduler(Loader loader) {
+        this(loader, System::nanoTime);
+    }
+
+    public PrefetchScheduler(Loader loader, LongSupplier clock) {
+        this.loader = loader;
+        this.clock = clock;
+    }
+
+    /** Number of images that can be prefetched; grows as pages are scanned. */
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    /**
+     * Most images held prefetched or in flight at once, besides the current
+     * one; the farthest neighbours are skipped first.
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /** The user moved to {@code position}. Cancels prefetches that are no longer wanted. */
+    public void onNavigate(int position) {
+        if (position == current) {
+            return;
+        }
+        long now = clock.getAsLong();
+        if (current >= 0) {
+            direction = position > current ? 1 : -1;
+            intervalNanos = smooth(intervalNanos, Math.min(now - lastNavigationNanos, MAX_INTERVAL_NANOS));
+        }
+        if (ready.contains(position)) {
+            hits++;
+        } else if (inFlight.containsKey(position)) {
+            lateHits++;
+        } else {
+            misses++;
+        }
+        lastNavigationNanos = now;
+        current = position;
+
+        List<Integer> stale = new ArrayList<>();
+        for (int prefetching : inFlight.keySet()) {
+            if (prefetching != current && !inWindow(prefetching)) {
+                stale.add(prefetching);
+            }
+        }
+        for (int stalePosition : stale) {
+            inFlight.remove(stalePosition);
+            loader.cancel(stalePosition);
+            cancelled++;
+        }
+        ready.removeIf(readyPosition -> readyPosition != current && !inWindow(readyPosition));
+    }
+
+    /** The current image is on screen (or failed to load): the neighbours may start. */
+    public void onCurrentShown(int position) {
+        if (position != current) {
+            return;
+        }
+        int ahead = ahead();
+        for (int distance = 1; distance <= ahead; distance++) {
+            start(current + direction * distance);
+        }
+        for (int distance = 1; distance <= BEHIND; distance++) {
+            start(current - direction * distance);
+        }
+    }
+
+    /** Cancels every prefetch and forgets the navigation history, keeping the counters. */
+    public void reset() {
+        for (int position : inFlight.keySet()) {
+            loader.cancel(position);
+            cancelled++;
+        }
+        inFlight.clear();
+        ready.clear();
+        current = -1;
+    }
+
+    /** Images to prefetch in the direction of travel at the current pace. */
+    public int ahead() {
+        int ahead = (int) Math.ceil(loadNanos / intervalNanos) + 1;
+        return Math.max(MIN_AHEAD, Math.min(MAX_AHEAD, ahead));
+    }
+
+    public int hits() {
+        return hits;
+    }
+
+    public int lateHits() {
+        return lateHits;
+    }
+
+    public int misses() {
+        return misses;
+    }
+
+    public int issued() {
+        return issued;
+    }
+
+    /** Prefetches that could not load; their slots are free again. */
+    public int failed() {
+        return failed;
+    }
+
+    public int cancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public String toString() {
+        return "prefetch: " + hits + " hits, " + lateHits + " late, " + misses + " misses, "
+                + issued + " issued, " + cancelled + " cancelled, " + failed + " failed, window " + ahead() + " ahead";
+    }
+
+    private void start(int position) {
+        if (position < 0 || position >= count || inFlight.containsKey(position) || ready.contains(position)) {
+            return;
+        }
+        int held = inFlight.size() + ready.size() - (ready.contains(current) ? 1 : 0);
+        if (held >= capacity) {
+            return;
+        }
+        inFlight.put(position, clock.getAsLong());
+        issued++;
+        loader.prefetch(position, () -> onPrefetched(position), () -> onFailed(position));
+    }
+
+    private void onPrefetched(int position) {
+        Long started = inFlight.remove(position);
+        if (started == null) {
+            return;  // Cancelled in the meantime
+        }
+        loadNanos = smooth(loadNanos, clock.getAsLong() - started);
+        ready.add(position);
+    }
+
+    /** Frees the slot of a prefetch that failed; it is tried again when the user next moves. */
+    private void onFailed(int position) {
+        if (inFlight.remove(position) != null) {
+            failed++;
+        }
+    }
+
+    private boolean inWindow(int position) {
+        int offset = (position - current) * direction;
+        return offset >= -BEHIND && offset <= ahead();
+    }
+
+    private static double smooth(double average, long sample) {
+        return average + SMOOTHING * (sample - average);
+    }
+}
@@ -0,0 +1,226 @@
+package com.blue.curator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The document trees the user curates, and where each was left.
+ *
+ * Every root has a directory of its own, named after its key, for its
+ * decision journal, text files and anything else that must not mix with
+ * another root's. The list itself, with each root's name, resume point and
+ * last use, is kept in one small file next to those directories.
+ * Thread-safe.
+ */
+public class RootLibrary {
+
+    private static final int MAGIC = 0x43524c31; // "CRL1"
+    static final String LIBRARY_FILE = "library";
+
+    /** One root; a new one is made for every change. */
+    public static final class Root {
+        private final String treeUri;
+        private final String name;
+        private final String lastViewedDocumentId;
+        private final String lastDecidedDocumentId;
+        private final long lastUsedMillis;
+
+        public Root(String treeUri, String name, String lastViewedDocumentId, String lastDecidedDocumentId,
+                    long lastUsedMillis) {
+            this.treeUri = treeUri;
+            this.name = name;
+            this.lastViewedDocumentId = lastViewedDocumentId;
+            this.lastDecidedDocumentId = lastDecidedDocumentId;
+            this.lastUsedMillis = lastUsedMillis;
+        }
+
+        public String getTreeUri() {
+            return treeUri;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** The image last on screen, or null. */
+        public String getLastViewedDocumentId() {
+            return lastViewedDocumentId;
+        }
+
+        /** The image last decided on, or null. */
+        public String getLastDecidedDocumentId() {
+            return lastDecidedDocumentId;
+        }
+
+        public long getLastUsedMillis() {
+            return lastUsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + treeUri + ")";
+        }
+    }
+
+    private final File directory;
+    private final LinkedHashMap<String, Root> roots = new LinkedHashMap<>();  // Guarded by "this"
+    private final Object saveLock = new Object();
+
+    private RootLibrary(File directory) {
+        this.directory = directory;
+    }
+
+    /** Reads the library kept in {@code directory}; a missing or damaged one reads as empty. */
+    public static RootLibrary open(File directory) {
+        RootLibrary library = new RootLibrary(directory);
+        library.load();
+        return library;
+    }
+
+    /** The roots, most recently used first. */
+    public synchronized List<Root> roots() {
+        List<Root> list = new ArrayList<>(roots.values());
+        Collections.sort(list, Comparator.comparingLong(Root::getLastUsedMillis).reversed());
+        return list;
+    }
+
+    /** The root for {@code treeUri}, or null if it is not in the library. */
+    public synchronized Root get(String treeUri) {
+        return roots.get(treeUri);
+    }
+
+    public synchronized int size() {
+        return roots.size();
+    }
+
+    /** Adds {@code treeUri}, or marks it used now if it is already in; returns its entry. */
+    public synchronized Root use(String treeUri, String name, long nowMillis) {
+        Root old = roots.get(treeUri);
+        Root root = old == null ? new Root(treeUri, name, null, null, nowMillis)
+                : new Root(treeUri, old.name, old.lastViewedDocumentId, old.lastDecidedDocumentId, nowMillis);
+        roots.put(treeUri, root);
+        return root;
+    }
+
+    /** Records where {@code treeUri} was left; ignored for a root not in the library. */
+    public synchronized void setResumePoint(String treeUri, String lastViewedDocumentId,
+                                            String lastDecidedDocumentId) {
+        Root old = roots.get(treeUri);
+        if (old != null) {
+            roots.put(treeUri, new Root(treeUri, old.name, lastViewedDocumentId, lastDecidedDocumentId,
+                    old.lastUsedMillis));
+        }
+    }
+
+    /** Takes {@code treeUri} out of the list. Its directory is kept, so adding it back resumes it. */
+    public synchronized boolean remove(String treeUri) {
+        return roots.remove(treeUri) != null;
+    }
+
+    /** The directory of {@code treeUri}'s own files; created on first use by whoever writes there. */
+    public File directoryFor(String treeUri) {
+        return new File(directory, ScanManifest.keyOf(treeUri));
+    }
+
+    /**
+     * Moves the files called {@code names} from {@code from} into
+     * {@code treeUri}'s directory, for state kept from before there was a
+     * library. Nothing is moved if the root already has any of them, so a
+     * root's own state is never replaced. Returns how many files moved.
+     */
+    public int adopt(String treeUri, File from, String... names) throws IOException {
+        File to = directoryFor(treeUri);
+        for (String name : names) {
+            if (new File(to, name).exists()) {
+                return 0;
+            }
+        }
+        int moved = 0;
+        for (String name : names) {
+            File file = new File(from, name);
+            if (!file.exists()) {
+                continue;
+            }
+            if (!to.exists() && !to.mkdirs()) {
+                throw new IOException("Cannot create " + to);
+            }
+            if (!file.renameTo(new File(to, name))) {
+                throw new IOException("Cannot move " + file + " into " + to);
+            }
+            moved++;
+        }
+        return moved;
+    }
+
+    /** Writes the list, atomically. */
+    public void save() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = new File(directory, LIBRARY_FILE);
+        File tmp = new File(file.getPath() + ".tmp");
+        synchronized (saveLock) {  // One save at a time, so an older list never lands after a newer one
+            List<Root> snapshot;
+            synchronized (this) {
+                snapshot = new ArrayList<>(roots.values());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(snapshot.size());
+                for (Root root : snapshot) {
+                    out.writeUTF(root.treeUri);
+                    out.writeUTF(root.name);
+                    writeOptional(out, root.lastViewedDocumentId);
+                    writeOptional(out, root.lastDecidedDocumentId);
+                    out.writeLong(root.lastUsedMillis);
+                }
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Cannot replace " + file);
+            }
+        }
+    }
+
+    private synchronized void load() {
+        File file = new File(directory, LIBRARY_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            int count = in.readInt();
+            LinkedHashMap<String, Root> read = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                Root root = new Root(in.readUTF(), in.readUTF(), readOptional(in), readOptional(in), in.readLong());
+                read.put(root.treeUri, root);
+            }
+            roots.putAll(read);
+        } catch (IOException e) {
+            // A damaged list only forgets the roots; their directories and state are untouched
+        }
+    }
+
+    private static void writeOptional(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readOptional(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
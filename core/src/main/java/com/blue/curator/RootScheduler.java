@@ -0,0 +1,148 @@
+package com.blue.curator;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the background work of every open root on one bounded set of threads.
+ *
+ * Work submitted for a root runs one task at a time in submission order, as
+ * on a single-thread executor of its own, so a root's scan, manifest writes
+ * and journal never race each other. Different roots run side by side. Roots
+ * take turns: once a task finishes, the root's next task queues behind the
+ * other roots' work, so a long backlog in one root cannot hold up the
+ * others. Work that belongs to no root, such as export copies, shares the
+ * same threads through {@link #execute}.
+ */
+public class RootScheduler implements Executor {
+
+    private static final long IDLE_SECONDS = 30;
+
+    /** Queued work of one root. */
+    private static final class Lane {
+        final ArrayDeque<FutureTask<?>> queue = new ArrayDeque<>();
+        boolean running;
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final Map<String, Lane> lanes = new HashMap<>();  // Guarded by "this"
+
+    public RootScheduler(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                task -> {
+                    Thread thread = new Thread(task, "RootScheduler-" + count.incrementAndGet());
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);  // Behind the UI
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /** Queues {@code task} behind the work already queued for {@code root}. */
+    public <T> Future<T> submit(String root, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        Lane lane;
+        synchronized (this) {
+            lane = lanes.get(root);
+            if (lane == null) {
+                lane = new Lane();
+                lanes.put(root, lane);
+            }
+            lane.queue.add(future);
+            if (lane.running) {
+                return future;
+            }
+            lane.running = true;
+        }
+        Lane started = lane;
+        try {
+            pool.execute(() -> runNext(root, started));
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                lanes.remove(root);
+            }
+            throw e;
+        }
+        return future;
+    }
+
+    public Future<?> submit(String root, Runnable task) {
+        return submit(root, Executors.callable(task));
+    }
+
+    /** Runs work that belongs to no root on the shared threads. */
+    @Override
+    public void execute(Runnable task) {
+        pool.execute(task);
+    }
+
+    /** Drops the work queued for {@code root} that has not started; returns how many tasks were dropped. */
+    public int cancel(String root) {
+        synchronized (this) {
+            Lane lane = lanes.get(root);
+            if (lane == null) {
+                return 0;
+            }
+            int dropped = lane.queue.size();
+            for (FutureTask<?> task : lane.queue) {
+                task.cancel(false);
+            }
+            lane.queue.clear();
+            return dropped;
+        }
+    }
+
+    /** Tasks queued for {@code root} that have not started. */
+    public synchronized int pending(String root) {
+        Lane lane = lanes.get(root);
+        return lane == null ? 0 : lane.queue.size();
+    }
+
+    /** Runs what is queued, then lets the threads go. */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    private void runNext(String root, Lane lane) {
+        while (true) {
+            FutureTask<?> task;
+            synchronized (this) {
+                task = lane.queue.poll();
+                if (task == null) {
+                    lane.running = false;
+                    lanes.remove(root);
+                    return;
+                }
+            }
+            task.run();  // Failures are kept in the task's future
+            synchronized (this) {
+                if (lane.queue.isEmpty()) {
+                    lane.running = false;
+                    lanes.remove(root);
+                    return;
+                }
+            }
+            try {
+                pool.execute(() -> runNext(root, lane));  // Behind the other roots
+                return;
+            } catch (RejectedExecutionException e) {
+                // Shutting down: new turns are refused, so finish this root's queue here
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.blue.curator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An append-only text log that rolls over by size instead of starting from
+ * nothing. When a write would take {@code ErrorLog.txt} past its limit, it
+ * becomes {@code ErrorLog.1.txt}, older files move up by one, and only the
+ * newest {@code history} of them are kept. The file is opened on the first
+ * write and stays open. Use it from one thread.
+ */
+public class RotatingLogFile implements Closeable {
+
+    private final File file;
+    private final long maxBytes;
+    private final int history;
+    private OutputStream out;
+    private long size;
+
+    public RotatingLogFile(File file, long maxBytes, int history) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.history = history;
+    }
+
+    public void append(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (out == null) {
+            open();
+        }
+        if (size > 0 && size + bytes.length > maxBytes) {
+            rotate();
+        }
+        out.write(bytes);
+        out.flush();
+        size += bytes.length;
+    }
+
+    /** The {@code n}th most recent rolled-over file, {@code ErrorLog.n.txt} for {@code ErrorLog.txt}. */
+    File historyFile(int n) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String rolled = dot > 0 ? name.substring(0, dot) + "." + n + name.substring(dot) : name + "." + n;
+        return new File(file.getParentFile(), rolled);
+    }
+
+    private void open() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        out = new FileOutputStream(file, true);
+        size = file.length();
+    }
+
+    private void rotate() throws IOException {
+        close();
+        historyFile(history).delete();
+        for (int n = history - 1; n >= 1; n--) {
+            File older = historyFile(n);
+            if (older.exists() && !older.renameTo(historyFile(n + 1))) {
+                throw new IOException("Cannot roll over " + older);
+            }
+        }
+        if (history > 0 && !file.renameTo(historyFile(1))) {
+            throw new IOException("Cannot roll over " + file);
+        } else if (history == 0) {
+            file.delete();
+        }
+        open();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            OutputStream closing = out;
+            out = null;
+            closing.close();
+        }
+    }
+}
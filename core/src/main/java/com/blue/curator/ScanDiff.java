@@ -0,0 +1,138 @@
+package com.blue.curator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Brings an image list up to date with a fresh scan without reordering it.
+ *
+ * Images that are still there keep their relative order (with size and
+ * last-modified refreshed), vanished images are dropped, and new images are
+ * inserted right after the image that precedes them in the scan. Positions in
+ * the old list can be mapped onto the new one with {@link #positionOf}, so a
+ * saved index keeps pointing at the same image.
+ */
+public final class ScanDiff {
+
+    private final List<ScannedImage> images;
+    private final int[] newPositions;
+    private final int added;
+    private final int removed;
+    private final int changed;
+
+    private ScanDiff(List<ScannedImage> images, int[] newPositions, int added, int removed, int changed) {
+        this.images = images;
+        this.newPositions = newPositions;
+        this.added = added;
+        this.removed = removed;
+        this.changed = changed;
+    }
+
+    public static ScanDiff apply(List<ScannedImage> current, List<ScannedImage> scanned) {
+        Map<String, ScannedImage> scannedById = new HashMap<>(scanned.size() * 2);
+        for (ScannedImage image : scanned) {
+            scannedById.put(image.getDocumentId(), image);
+        }
+        Map<String, Integer> currentPositions = new HashMap<>(current.size() * 2);
+        for (int i = 0; i < current.size(); i++) {
+            currentPositions.put(current.get(i).getDocumentId(), i);
+        }
+
+        // New images are attached to the nearest earlier scanned image that already exists
+        Map<String, List<ScannedImage>> insertAfter = new HashMap<>();
+        List<ScannedImage> leading = new ArrayList<>();
+        String anchor = null;
+        int added = 0;
+        for (ScannedImage image : scanned) {
+            if (currentPositions.containsKey(image.getDocumentId())) {
+                anchor = image.getDocumentId();
+                continue;
+            }
+            added++;
+            if (anchor == null) {
+                leading.add(image);
+            } else {
+                List<ScannedImage> following = insertAfter.get(anchor);
+                if (following == null) {
+                    following = new ArrayList<>();
+                    insertAfter.put(anchor, following);
+                }
+                following.add(image);
+            }
+        }
+
+        List<ScannedImage> images = new ArrayList<>(scanned.size());
+        int[] newPositions = new int[current.size()];
+        images.addAll(leading);
+        int removed = 0;
+        int changed = 0;
+        for (int i = 0; i < current.size(); i++) {
+            ScannedImage old = current.get(i);
+            ScannedImage fresh = scannedById.get(old.getDocumentId());
+            if (fresh == null) {
+                newPositions[i] = -1;
+                removed++;
+                continue;
+            }
+            if (fresh.getSize() != old.getSize() || fresh.getLastModified() != old.getLastModified()) {
+                changed++;
+            }
+            newPositions[i] = images.size();
+            images.add(fresh);
+            List<ScannedImage> following = insertAfter.get(old.getDocumentId());
+            if (following != null) {
+                images.addAll(following);
+            }
+        }
+        return new ScanDiff(images, newPositions, added, removed, changed);
+    }
+
+    /** The updated image list. */
+    public List<ScannedImage> images() {
+        return images;
+    }
+
+    /**
+     * Where the image at {@code oldPosition} ended up. If it was removed, the
+     * position of the next surviving image (or the last one) is returned instead.
+     */
+    public int positionOf(int oldPosition) {
+        if (images.isEmpty()) {
+            return 0;
+        }
+        for (int i = Math.max(0, oldPosition); i < newPositions.length; i++) {
+            if (newPositions[i] >= 0) {
+                return newPositions[i];
+            }
+        }
+        for (int i = Math.min(oldPosition, newPositions.length) - 1; i >= 0; i--) {
+            if (newPositions[i] >= 0) {
+                return newPositions[i];
+            }
+        }
+        return 0;
+    }
+
+    public boolean isEmpty() {
+        return added == 0 && removed == 0 && changed == 0;
+    }
+
+    public int added() {
+        return added;
+    }
+
+    public int removed() {
+        return removed;
+    }
+
+    public int changed() {
+        return changed;
+    }
+
+    @Override
+    public String toString() {
+        return "+" + added + " -" + removed + " ~" + changed;
+    }
+}
@@ -0,0 +1,105 @@
+package com.blue.curator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of the last scan of one document tree, saved so the next
+ * session can show the images before the tree has been rescanned.
+ *
+ * Entries are stored in curation order, so an entry's position in the file
+ * is its position in the image list.
+ */
+public class ScanManifest {
+
+    private static final int MAGIC = 0x43534d31; // "CSM1"
+
+    private final File file;
+
+    public ScanManifest(File file) {
+        this.file = file;
+    }
+
+    /** The manifest file for {@code treeUri} inside {@code directory}. */
+    public static File fileFor(File directory, String treeUri) {
+        return new File(directory, keyOf(treeUri) + ".manifest");
+    }
+
+    /** A file-name-safe key for {@code treeUri}: the hex SHA-1 of the URI. */
+    public static String keyOf(String treeUri) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest(treeUri.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Loads the saved images, or an empty list if there is no usable manifest. */
+    public List<ScannedImage> load() {
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return Collections.emptyList();
+            }
+            int count = in.readInt();
+            List<ScannedImage> images = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String documentId = in.readUTF();
+                String folderPath = in.readUTF();
+                String displayName = in.readUTF();
+                String mimeType = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                images.add(new ScannedImage(documentId, folderPath, displayName, mimeType, size, lastModified));
+            }
+            return images;
+        } catch (IOException e) {
+            // A damaged manifest only costs us the fast start; the rescan rebuilds it
+            return Collections.emptyList();
+        }
+    }
+
+    /** Replaces the manifest with {@code images}, atomically. */
+    public void save(List<ScannedImage> images) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(images.size());
+            for (ScannedImage image : images) {
+                out.writeUTF(image.getDocumentId());
+                out.writeUTF(image.getFolderPath());
+                out.writeUTF(image.getDisplayName() == null ? "" : image.getDisplayName());
+                out.writeUTF(image.getMimeType());
+                out.writeLong(image.getSize());
+                out.writeLong(image.getLastModified());
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+}
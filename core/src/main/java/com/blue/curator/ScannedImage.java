@@ -0,0 +1,65 @@
+package com.blue.curator;
+
+/**
+ * An image found by a directory scan, described by the columns of the scan
+ * projection plus the folder it was found in, relative to the picked tree
+ * ({@code ""} for the top level). The content URI is rebuilt from the tree
+ * URI and document id when needed, so scanned images stay plain values.
+ */
+public final class ScannedImage {
+
+    private final String documentId;
+    private final String folderPath;
+    private final String displayName;
+    private final String mimeType;
+    private final long size;
+    private final long lastModified;
+
+    public ScannedImage(String documentId, String displayName, String mimeType, long size, long lastModified) {
+        this(documentId, "", displayName, mimeType, size, lastModified);
+    }
+
+    public ScannedImage(String documentId, String folderPath, String displayName, String mimeType,
+                        long size, long lastModified) {
+        this.documentId = documentId;
+        this.folderPath = folderPath;
+        this.displayName = displayName;
+        this.mimeType = mimeType;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public String getFolderPath() {
+        return folderPath;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /** True for MIME types the curator shows, i.e. anything under {@code image/}. */
+    public static boolean isImageType(String mimeType) {
+        return mimeType != null && mimeType.startsWith("image/");
+    }
+
+    @Override
+    public String toString() {
+        return documentId;
+    }
+}
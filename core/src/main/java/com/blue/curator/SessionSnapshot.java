@@ -0,0 +1,116 @@
+package com.blue.curator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Where the last session stopped: the folder, the image on screen and its
+ * position, and how many images each bucket held. It is a few hundred bytes,
+ * so the next start can read it on the main thread and paint that image
+ * before the journal, the scan manifest or the scanner have been touched.
+ */
+public final class SessionSnapshot {
+
+    private static final int MAGIC = 0x43535331; // "CSS1"
+
+    private final String treeUri;
+    private final ScannedImage image;
+    private final int position;
+    private final int imageCount;
+    private final int[] bucketCounts;
+
+    /** {@code bucketCounts[b - 1]} is the number of images in bucket {@code b}. */
+    public SessionSnapshot(String treeUri, ScannedImage image, int position, int imageCount, int[] bucketCounts) {
+        this.treeUri = treeUri;
+        this.image = image;
+        this.position = position;
+        this.imageCount = imageCount;
+        this.bucketCounts = bucketCounts.clone();
+    }
+
+    public String getTreeUri() {
+        return treeUri;
+    }
+
+    public ScannedImage getImage() {
+        return image;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getImageCount() {
+        return imageCount;
+    }
+
+    /** Images that were in {@code bucket}; zero for buckets the snapshot does not know. */
+    public int count(int bucket) {
+        return bucket >= 1 && bucket <= bucketCounts.length ? bucketCounts[bucket - 1] : 0;
+    }
+
+    /** Reads the snapshot in {@code file}, or null if there is none or it is damaged. */
+    public static SessionSnapshot read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            String treeUri = in.readUTF();
+            ScannedImage image = new ScannedImage(in.readUTF(), in.readUTF(), readOptional(in),
+                    readOptional(in), in.readLong(), in.readLong());
+            int position = in.readInt();
+            int imageCount = in.readInt();
+            int[] bucketCounts = new int[in.readUnsignedByte()];
+            for (int i = 0; i < bucketCounts.length; i++) {
+                bucketCounts[i] = in.readInt();
+            }
+            return new SessionSnapshot(treeUri, image, position, imageCount, bucketCounts);
+        } catch (IOException e) {
+            // Only the instant start is lost; the session is rebuilt from the journal and the manifest
+            return null;
+        }
+    }
+
+    /** Replaces {@code file} with this snapshot, atomically. */
+    public void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(treeUri);
+            out.writeUTF(image.getDocumentId());
+            out.writeUTF(image.getFolderPath());
+            writeOptional(out, image.getDisplayName());
+            writeOptional(out, image.getMimeType());
+            out.writeLong(image.getSize());
+            out.writeLong(image.getLastModified());
+            out.writeInt(position);
+            out.writeInt(imageCount);
+            out.writeByte(bucketCounts.length);
+            for (int count : bucketCounts) {
+                out.writeInt(count);
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /** Writes {@code value}, with null as {@code ""}; the provider may not report it. */
+    private static void writeOptional(DataOutputStream out, String value) throws IOException {
+        out.writeUTF(value == null ? "" : value);
+    }
+
+    private static String readOptional(DataInputStream in) throws IOException {
+        String value = in.readUTF();
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,184 @@
+package com.blue.curator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds near-duplicate images in the background.
+ *
+ * A pass looks up every image in the {@link HashStore} and hashes the ones
+ * it has no current hash for, on one thread per core, then clusters the lot
+ * with {@link SimilarityClusters}. New hashes are saved every few hundred
+ * images, so a pass cut short by a rescan or by leaving the app resumes where
+ * it stopped. Starting a pass abandons the one before it.
+ */
+public class SimilarityAnalyzer {
+
+    private static final int CHECKPOINT_HASHES = 256;
+
+    /** Computes the {@link PerceptualHash} of one image; called on the hashing threads. */
+    public interface Hasher {
+        long hash(ScannedImage image) throws IOException;
+    }
+
+    /** Called on the analyzer's thread when a pass completes; not called for abandoned passes. */
+    public interface Listener {
+        void onFinished(SimilarityClusters clusters, Stats stats);
+    }
+
+    /** What a pass did. */
+    public static final class Stats {
+        private final int images;
+        private final int hashed;
+        private final int failures;
+        private final long elapsedNanos;
+
+        Stats(int images, int hashed, int failures, long elapsedNanos) {
+            this.images = images;
+            this.hashed = hashed;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getImages() {
+            return images;
+        }
+
+        /** Images hashed in this pass; the rest came from the store. */
+        public int getHashed() {
+            return hashed;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return images + " images, " + hashed + " hashed, " + failures + " failed in "
+                    + elapsedNanos / 1_000_000 + " ms";
+        }
+    }
+
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor();
+    private final ExecutorService hashers;
+    private final AtomicInteger generation = new AtomicInteger();
+
+    public SimilarityAnalyzer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public SimilarityAnalyzer(int threads) {
+        this.hashers = Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+
+    /** Starts a pass over {@code images}, in scan order, abandoning any pass still running. */
+    public void analyze(List<ScannedImage> images, Hasher hasher, HashStore store, int maxDistance,
+                        Listener listener) {
+        int pass = generation.incrementAndGet();
+        List<ScannedImage> snapshot = new ArrayList<>(images);
+        coordinator.execute(() -> run(pass, snapshot, hasher, store, maxDistance, listener));
+    }
+
+    /** Abandons the running pass; hashes it already computed are kept. */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    public void shutdown() {
+        cancel();
+        coordinator.execute(hashers::shutdown);
+        coordinator.shutdown();
+    }
+
+    private boolean isCurrent(int pass) {
+        return generation.get() == pass;
+    }
+
+    private void run(int pass, List<ScannedImage> images, Hasher hasher, HashStore store, int maxDistance,
+                     Listener listener) {
+        if (!isCurrent(pass)) {
+            return;
+        }
+        long start = System.nanoTime();
+        store.load();
+        List<String> documentIds = new ArrayList<>(images.size());
+        for (ScannedImage image : images) {
+            documentIds.add(image.getDocumentId());
+        }
+        store.retainAll(documentIds);
+
+        CompletionService<Void> completions = new ExecutorCompletionService<>(hashers);
+        int submitted = 0;
+        for (ScannedImage image : images) {
+            if (store.get(image.getDocumentId(), image.getLastModified()) == null) {
+                completions.submit(() -> {
+                    if (isCurrent(pass)) {
+                        store.put(image.getDocumentId(), image.getLastModified(), hasher.hash(image));
+                    }
+                    return null;
+                });
+                submitted++;
+            }
+        }
+        int hashed = 0;
+        int failures = 0;
+        int sinceCheckpoint = 0;
+        try {
+            for (int i = 0; i < submitted; i++) {
+                try {
+                    completions.take().get();
+                    hashed++;
+                    sinceCheckpoint++;
+                } catch (ExecutionException e) {
+                    failures++;  // Unreadable or undecodable; left out of the clusters
+                }
+                if (sinceCheckpoint >= CHECKPOINT_HASHES) {
+                    saveStore(store);
+                    sinceCheckpoint = 0;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            if (submitted > 0) {
+                saveStore(store);
+            }
+        }
+        if (!isCurrent(pass)) {
+            return;
+        }
+
+        List<String> hashedIds = new ArrayList<>(images.size());
+        long[] hashes = new long[images.size()];
+        for (ScannedImage image : images) {
+            Long hash = store.get(image.getDocumentId(), image.getLastModified());
+            if (hash != null) {
+                hashes[hashedIds.size()] = hash;
+                hashedIds.add(image.getDocumentId());
+            }
+        }
+        SimilarityClusters clusters = SimilarityClusters.of(hashedIds, hashes, maxDistance);
+        listener.onFinished(clusters, new Stats(images.size(), hashed, failures, System.nanoTime() - start));
+    }
+
+    private void saveStore(HashStore store) {
+        try {
+            store.save();
+        } catch (IOException e) {
+            // The next checkpoint tries again; at worst some images are hashed twice
+        }
+    }
+}
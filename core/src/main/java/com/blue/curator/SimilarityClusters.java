@@ -0,0 +1,93 @@
+package com.blue.curator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups of near-identical images, found from their {@link PerceptualHash}es.
+ *
+ * Images are taken in scan order; each one not yet in a cluster claims every
+ * other unclaimed image within {@code maxDistance} bits of it, looked up in a
+ * {@link BkTree}. Measuring against that first image rather than chaining
+ * neighbours keeps a slow pan across a scene from merging into one cluster.
+ */
+public final class SimilarityClusters {
+
+    /** Bits a dHash may differ by for two frames to count as near-identical. */
+    public static final int DEFAULT_MAX_DISTANCE = 8;
+
+    private static final SimilarityClusters EMPTY = new SimilarityClusters(Collections.emptyMap(), 0);
+
+    private final Map<String, List<String>> clusterOf;
+    private final int clusterCount;
+
+    private SimilarityClusters(Map<String, List<String>> clusterOf, int clusterCount) {
+        this.clusterOf = clusterOf;
+        this.clusterCount = clusterCount;
+    }
+
+    public static SimilarityClusters empty() {
+        return EMPTY;
+    }
+
+    /** Clusters {@code documentIds}, in scan order, whose hashes are at the same positions in {@code hashes}. */
+    public static SimilarityClusters of(List<String> documentIds, long[] hashes, int maxDistance) {
+        BkTree tree = new BkTree();
+        for (int i = 0; i < documentIds.size(); i++) {
+            tree.add(hashes[i], i);
+        }
+        boolean[] claimed = new boolean[documentIds.size()];
+        Map<String, List<String>> clusterOf = new HashMap<>();
+        int clusterCount = 0;
+        List<Integer> found = new ArrayList<>();
+        for (int i = 0; i < documentIds.size(); i++) {
+            if (claimed[i]) {
+                continue;
+            }
+            found.clear();
+            tree.search(hashes[i], maxDistance, item -> {
+                if (!claimed[item]) {
+                    found.add(item);
+                }
+            });
+            if (found.size() < 2) {
+                continue;  // Only itself
+            }
+            Collections.sort(found);
+            List<String> cluster = new ArrayList<>(found.size());
+            for (int item : found) {
+                claimed[item] = true;
+                cluster.add(documentIds.get(item));
+            }
+            List<String> members = Collections.unmodifiableList(cluster);
+            for (String documentId : members) {
+                clusterOf.put(documentId, members);
+            }
+            clusterCount++;
+        }
+        return new SimilarityClusters(clusterOf, clusterCount);
+    }
+
+    /** The cluster holding {@code documentId}, in scan order, or an empty list if it has no near-duplicates. */
+    public List<String> clusterOf(String documentId) {
+        List<String> cluster = clusterOf.get(documentId);
+        return cluster == null ? Collections.emptyList() : cluster;
+    }
+
+    public int clusterCount() {
+        return clusterCount;
+    }
+
+    /** Number of images that are in some cluster. */
+    public int clusteredImages() {
+        return clusterOf.size();
+    }
+
+    @Override
+    public String toString() {
+        return clusterCount + " clusters of " + clusterOf.size() + " near-duplicate images";
+    }
+}
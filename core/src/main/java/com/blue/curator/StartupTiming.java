@@ -0,0 +1,84 @@
+package com.blue.curator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * How long the app takes to become usable. A cold start is measured from
+ * process start, a warm one (the process was still alive) from the creation
+ * of the activity; both end at {@link #ready}, when the first image has
+ * painted or, with no session to resume, the first screen is up. Phases
+ * marked on the way are kept for the log.
+ */
+public class StartupTiming {
+
+    public enum Kind { COLD, WARM }
+
+    private final Kind kind;
+    private final long startNanos;
+    private final long createdNanos;
+    private final LongSupplier clock;
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private long readyNanos = -1;
+
+    /** {@code startNanos} is on {@code clock}'s time line, and may be before now. */
+    public StartupTiming(Kind kind, long startNanos, LongSupplier clock) {
+        this.kind = kind;
+        this.startNanos = startNanos;
+        this.clock = clock;
+        this.createdNanos = clock.getAsLong();
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /** Notes that {@code phase} is done; only its first mark counts. */
+    public void mark(String phase) {
+        if (!phases.containsKey(phase)) {
+            phases.put(phase, clock.getAsLong() - startNanos);
+        }
+    }
+
+    /**
+     * Ends the measurement and records it in {@code metrics}, as a cold or a
+     * warm start. Returns false if it had already ended.
+     */
+    public boolean ready(Metrics metrics) {
+        if (readyNanos >= 0) {
+            return false;
+        }
+        readyNanos = clock.getAsLong();
+        metrics.record(kind == Kind.COLD ? Metrics.STARTUP_COLD_NANOS : Metrics.STARTUP_WARM_NANOS, startupNanos());
+        return true;
+    }
+
+    public boolean isReady() {
+        return readyNanos >= 0;
+    }
+
+    /** From the start to {@link #ready}, or -1 until then. */
+    public long startupNanos() {
+        return readyNanos < 0 ? -1 : readyNanos - startNanos;
+    }
+
+    /** From the creation of the activity to {@link #ready}, or -1 until then; what the app itself controls. */
+    public long sinceCreateNanos() {
+        return readyNanos < 0 ? -1 : readyNanos - createdNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(kind == Kind.COLD ? "cold start: " : "warm start: ");
+        text.append(readyNanos < 0 ? "not ready" : TimeUnit.NANOSECONDS.toMillis(startupNanos()) + " ms");
+        String separator = " (";
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            text.append(separator).append(phase.getKey()).append(' ')
+                    .append(TimeUnit.NANOSECONDS.toMillis(phase.getValue())).append(" ms");
+            separator = ", ";
+        }
+        return phases.isEmpty() ? text.toString() : text.append(')').toString();
+    }
+}
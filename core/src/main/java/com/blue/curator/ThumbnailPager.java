@@ -0,0 +1,112 @@
+package com.blue.curator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads grid thumbnails a page ahead of the scroll.
+ *
+ * The visible cells load themselves as they are bound; this asks its
+ * {@link PrefetchScheduler.Loader} for the page just past them in the
+ * direction of travel, so the next rows are in memory before they scroll in.
+ * Loads that have scrolled more than two pages out of view are cancelled, and
+ * positions that far out are forgotten, since the memory cache may evict them,
+ * so at most a few pages are ever in flight or remembered.
+ */
+public class ThumbnailPager {
+
+    private final PrefetchScheduler.Loader loader;
+    private final int pageSize;
+    private final Set<Integer> inFlight = new HashSet<>();
+    private final BitSet loaded = new BitSet();
+    private int count;
+    private int first = -1;
+    private int last = -1;
+    private boolean forward = true;
+    private int requested;
+    private int cancelled;
+
+    /** {@code pageSize} is the number of positions loaded ahead, a few rows' worth. */
+    public ThumbnailPager(PrefetchScheduler.Loader loader, int pageSize) {
+        this.loader = loader;
+        this.pageSize = pageSize;
+    }
+
+    /** Starts over with {@code count} positions. */
+    public void setCount(int count) {
+        cancelAll();
+        loaded.clear();
+        this.count = count;
+        first = -1;
+        last = -1;
+        forward = true;
+    }
+
+    /** The grid now shows positions {@code first} through {@code last}. */
+    public void onVisibleRange(int first, int last) {
+        if (first < 0 || last < first) {
+            return;
+        }
+        if (this.first >= 0 && first != this.first) {
+            forward = first > this.first;
+        }
+        this.first = first;
+        this.last = last;
+
+        int keepFrom = Math.max(0, first - 2 * pageSize);
+        int keepTo = Math.min(count - 1, last + 2 * pageSize);
+        for (Integer position : new ArrayList<>(inFlight)) {
+            if (position < keepFrom || position > keepTo) {
+                inFlight.remove(position);
+                loader.cancel(position);
+                cancelled++;
+            }
+        }
+        loaded.clear(0, keepFrom);
+        loaded.clear(keepTo + 1, Math.max(keepTo + 1, loaded.length()));
+
+        for (int position : page()) {
+            if (!inFlight.contains(position) && !loaded.get(position)) {
+                inFlight.add(position);
+                requested++;
+                loader.prefetch(position, () -> {
+                    inFlight.remove(position);
+                    loaded.set(position);
+                }, () -> inFlight.remove(position));
+            }
+        }
+    }
+
+    /** Positions of the page ahead, nearest first. */
+    private List<Integer> page() {
+        List<Integer> page = new ArrayList<>(pageSize);
+        for (int i = 1; i <= pageSize; i++) {
+            int position = forward ? last + i : first - i;
+            if (position < 0 || position >= count) {
+                break;
+            }
+            page.add(position);
+        }
+        return page;
+    }
+
+    public void cancelAll() {
+        for (Integer position : inFlight) {
+            loader.cancel(position);
+            cancelled++;
+        }
+        inFlight.clear();
+    }
+
+    int inFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public String toString() {
+        return "thumbnails: " + requested + " loaded ahead, " + cancelled + " cancelled";
+    }
+}
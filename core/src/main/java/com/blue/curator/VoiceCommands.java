@@ -0,0 +1,135 @@
+package com.blue.curator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Finds the curator's spoken commands in recognised text.
+ *
+ * Hypotheses are matched word by word against a small vocabulary with its
+ * common sound-alikes ("yeah", "nope", "know"). Vocabulary words of four
+ * letters or more also match with one letter added, dropped or changed, which
+ * covers most mishearings of "sure" and "exit" without letting "not" pass for
+ * "no". Sound-alikes only match exactly: they are already near ordinary words,
+ * and one edit more would take "now" or "none" for "no". At a given word the
+ * longest phrase wins, so "not sure" is never read as "no".
+ */
+public final class VoiceCommands {
+
+    public enum Command {
+        YES, NO, NOT_SURE, EXIT
+    }
+
+    /** A command and the index of the word just past it. */
+    public static final class Match {
+        public final Command command;
+        public final int end;
+
+        Match(Command command, int end) {
+            this.command = command;
+            this.end = end;
+        }
+
+        @Override
+        public String toString() {
+            return command + " ending at word " + end;
+        }
+    }
+
+    private static final int FUZZY_MIN_LENGTH = 4;
+
+    private static final class Phrase {
+        final String[] words;
+        final Command command;
+        final boolean fuzzy;  // Matches one edit away; false for sound-alikes
+
+        Phrase(Command command, String phrase, boolean fuzzy) {
+            this.words = phrase.split(" ");
+            this.command = command;
+            this.fuzzy = fuzzy;
+        }
+    }
+
+    private final List<Phrase> phrases = new ArrayList<>();
+
+    public VoiceCommands() {
+        add(Command.YES, true, "yes");
+        add(Command.YES, false, "yeah", "yep", "yup");
+        add(Command.NO, true, "no");
+        add(Command.NO, false, "nope", "nah", "know");
+        add(Command.NOT_SURE, true, "not sure", "unsure", "maybe");
+        add(Command.EXIT, true, "exit");
+        phrases.sort(Comparator.comparingInt((Phrase phrase) -> phrase.words.length).reversed());
+    }
+
+    private void add(Command command, boolean fuzzy, String... spoken) {
+        for (String phrase : spoken) {
+            phrases.add(new Phrase(command, phrase, fuzzy));
+        }
+    }
+
+    /** Lower-cased words of {@code text}, split at anything that is not a letter. */
+    public static String[] words(String text) {
+        String trimmed = text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}]+", " ").trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split(" ");
+    }
+
+    /** The first command in {@code words} starting at or after {@code from}, or null. */
+    public Match find(String[] words, int from) {
+        for (int start = from; start < words.length; start++) {
+            for (Phrase phrase : phrases) {
+                if (matches(phrase, words, start)) {
+                    return new Match(phrase.command, start + phrase.words.length);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** The first command in {@code text}, or null. */
+    public Command find(String text) {
+        Match match = find(words(text), 0);
+        return match == null ? null : match.command;
+    }
+
+    private static boolean matches(Phrase phrase, String[] words, int start) {
+        if (start + phrase.words.length > words.length) {
+            return false;
+        }
+        for (int i = 0; i < phrase.words.length; i++) {
+            String expected = phrase.words[i];
+            if (!(phrase.fuzzy ? sameWord(expected, words[start + i]) : expected.equals(words[start + i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean sameWord(String expected, String heard) {
+        if (expected.equals(heard)) {
+            return true;
+        }
+        return expected.length() >= FUZZY_MIN_LENGTH && withinOneEdit(expected, heard);
+    }
+
+    /** True if one insertion, deletion or substitution turns {@code a} into {@code b}. */
+    static boolean withinOneEdit(String a, String b) {
+        if (a.length() > b.length()) {
+            String swap = a;
+            a = b;
+            b = swap;
+        }
+        if (b.length() - a.length() > 1) {
+            return false;
+        }
+        int i = 0;
+        while (i < a.length() && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        // Past the first difference the rest must line up, skipping the extra letter if lengths differ
+        int skip = a.length() == b.length() ? 1 : 0;
+        return a.regionMatches(i + skip, b, i + 1, a.length() - i - skip);
+    }
+}
@@ -0,0 +1,43 @@
+package com.blue.curator;
+
+/**
+ * A speech recognizer as {@link VoiceSession} drives it: one utterance per
+ * {@link #start()}, reported as partial hypotheses and then a final one or an
+ * error. On Android this is {@code SpeechVoiceRecognizer}; tests script one.
+ */
+public interface VoiceRecognizer {
+
+    /** How an utterance ended without a final result. */
+    enum Failure {
+        /** Nothing was said, or nothing recognisable; listening again is fine. */
+        NO_SPEECH,
+        /** The recognizer or its service is busy or failed; try again after a pause. */
+        TRANSIENT,
+        /** It cannot work at all, e.g. without the microphone permission. */
+        FATAL
+    }
+
+    /** Called on the thread the recognizer reports on; on Android the UI thread. */
+    interface Listener {
+        void onSpeechStart();
+
+        /** The best hypothesis so far for the current utterance. */
+        void onPartial(String hypothesis);
+
+        /** The best final hypothesis; the utterance is over. */
+        void onFinal(String hypothesis);
+
+        /** The utterance is over without a result. */
+        void onFailure(Failure failure, int code);
+    }
+
+    void setListener(Listener listener);
+
+    /** Starts listening for one utterance. */
+    void start();
+
+    /** Abandons the current utterance; nothing more is reported for it. */
+    void cancel();
+
+    void destroy();
+}
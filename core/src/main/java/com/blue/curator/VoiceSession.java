@@ -0,0 +1,222 @@
+package com.blue.curator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps a {@link VoiceRecognizer} listening across images and turns what it
+ * hears into commands as soon as they show up in a partial result.
+ *
+ * The recognizer is restarted as soon as an utterance ends, so there is no
+ * warm-up per image. After a failure it is restarted with exponential backoff,
+ * which stops a busy recognizer from failing in a tight loop. Words already
+ * acted on are remembered per utterance, so the final result, or a later
+ * partial repeating them, does not fire the same command twice, while a second
+ * command in the same breath still counts.
+ *
+ * Commands go to whichever image {@link #arm} named last, with its token; when
+ * disarmed they are dropped. Not thread-safe: use it from the thread the
+ * recognizer reports on.
+ */
+public class VoiceSession implements VoiceRecognizer.Listener {
+
+    /** Receives recognised commands, and the end of the session if the recognizer cannot work. */
+    public interface Listener {
+        void onCommand(VoiceCommands.Command command, int token);
+
+        void onUnavailable(int code);
+    }
+
+    static final long INITIAL_BACKOFF_MILLIS = 250;
+    static final long MAX_BACKOFF_MILLIS = 8000;
+    private static final int NO_TOKEN = -1;
+
+    private final VoiceRecognizer recognizer;
+    private final VoiceCommands commands;
+    private final DecisionInput.Timer timer;
+    private final LongSupplier clock;
+    private final Listener listener;
+    private final Runnable restart = this::listen;
+    private boolean running;
+    private boolean listening;
+    private int token = NO_TOKEN;
+    private int consumed;
+    private long backoffMillis = INITIAL_BACKOFF_MILLIS;
+    private long speechStartNanos = -1;
+    private int dispatched;
+    private int unarmed;
+    private int utterances;
+    private int failures;
+    private int measured;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+
+    public VoiceSession(VoiceRecognizer recognizer, VoiceCommands commands, DecisionInput.Timer timer,
+                        Listener listener) {
+        this(recognizer, commands, timer, System::nanoTime, listener);
+    }
+
+    public VoiceSession(VoiceRecognizer recognizer, VoiceCommands commands, DecisionInput.Timer timer,
+                        LongSupplier clock, Listener listener) {
+        this.recognizer = recognizer;
+        this.commands = commands;
+        this.timer = timer;
+        this.clock = clock;
+        this.listener = listener;
+        recognizer.setListener(this);
+    }
+
+    /** Starts listening, if it is not already. */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        backoffMillis = INITIAL_BACKOFF_MILLIS;
+        listen();
+    }
+
+    /** Stops listening and releases the microphone; {@link #start} picks up again. */
+    public void stop() {
+        running = false;
+        timer.cancel(restart);
+        if (listening) {
+            listening = false;
+            recognizer.cancel();
+        }
+    }
+
+    public void destroy() {
+        stop();
+        recognizer.destroy();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Sends commands from now on to the image with {@code token}. */
+    public void arm(int token) {
+        this.token = token;
+    }
+
+    /** Drops commands until the next {@link #arm}. */
+    public void disarm() {
+        token = NO_TOKEN;
+    }
+
+    private void listen() {
+        if (!running) {
+            return;
+        }
+        consumed = 0;
+        speechStartNanos = -1;
+        listening = true;
+        recognizer.start();
+    }
+
+    @Override
+    public void onSpeechStart() {
+        speechStartNanos = clock.getAsLong();
+    }
+
+    @Override
+    public void onPartial(String hypothesis) {
+        if (listening) {
+            match(hypothesis);
+        }
+    }
+
+    @Override
+    public void onFinal(String hypothesis) {
+        if (!listening) {
+            return;
+        }
+        match(hypothesis);
+        listening = false;
+        utterances++;
+        backoffMillis = INITIAL_BACKOFF_MILLIS;
+        listen();
+    }
+
+    @Override
+    public void onFailure(VoiceRecognizer.Failure failure, int code) {
+        if (!listening) {
+            return;
+        }
+        listening = false;
+        switch (failure) {
+            case NO_SPEECH:
+                utterances++;
+                backoffMillis = INITIAL_BACKOFF_MILLIS;
+                listen();
+                break;
+            case TRANSIENT:
+                failures++;
+                timer.schedule(restart, backoffMillis);
+                backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+                break;
+            case FATAL:
+                failures++;
+                running = false;
+                listener.onUnavailable(code);
+                break;
+        }
+    }
+
+    private void match(String hypothesis) {
+        String[] words = VoiceCommands.words(hypothesis);
+        VoiceCommands.Match match;
+        while ((match = commands.find(words, consumed)) != null) {
+            consumed = match.end;
+            dispatch(match.command);
+        }
+    }
+
+    private void dispatch(VoiceCommands.Command command) {
+        if (speechStartNanos >= 0) {
+            long latency = clock.getAsLong() - speechStartNanos;
+            measured++;
+            totalLatencyNanos += latency;
+            maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+            speechStartNanos = -1;  // A second command in the utterance has no start of its own
+        }
+        if (token == NO_TOKEN) {
+            unarmed++;
+            return;
+        }
+        dispatched++;
+        listener.onCommand(command, token);
+    }
+
+    /** Commands passed on to an image. */
+    public int commands() {
+        return dispatched;
+    }
+
+    /** Commands heard while disarmed. */
+    public int unarmed() {
+        return unarmed;
+    }
+
+    public int failures() {
+        return failures;
+    }
+
+    /** Delay before the next restart after a transient failure. */
+    long backoffMillis() {
+        return backoffMillis;
+    }
+
+    /** Mean time from the start of speech to its command, over commands with a measured start. */
+    public long meanLatencyNanos() {
+        return measured == 0 ? 0 : totalLatencyNanos / measured;
+    }
+
+    @Override
+    public String toString() {
+        return "voice: " + dispatched + " commands (" + unarmed + " unarmed) in " + utterances + " utterances, "
+                + failures + " failures, latency mean " + TimeUnit.NANOSECONDS.toMillis(meanLatencyNanos())
+                + " ms max " + TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos) + " ms";
+    }
+}
@@ -0,0 +1,249 @@
+package com.blue.curator;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams a category of images straight from their documents into a ZIP
+ * archive, in one pass and without copying them anywhere first.
+ *
+ * Formats that are already compressed (JPEG, HEIC and friends) are STORED,
+ * which needs each entry's size and CRC32 before its data is written. A
+ * reader thread works ahead of the writer: it reads the next few files into
+ * memory and checksums them while the current one is being written, bounded
+ * by a file count and a byte budget. A STORED file too big for the budget is
+ * checksummed by the reader and streamed by the writer, so it is read twice
+ * but never held in memory. Other formats are DEFLATED. Exact copies of
+ * another image ({@link ExportItem#ofCopy}) are left out, so each photo is
+ * archived once.
+ */
+public class ZipExporter {
+
+    private static final int DEFAULT_READ_AHEAD_FILES = 4;
+    private static final int DEFAULT_READ_AHEAD_BYTES = 32 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final Set<String> COMPRESSED_TYPES = new HashSet<>(Arrays.asList(
+            "image/jpeg", "image/heic", "image/heif", "image/webp", "image/png", "image/gif"));
+
+    private final FileExportTarget.Source source;
+    private final int readAheadFiles;
+    private final int readAheadBytes;
+    private final ExecutorService reader = Executors.newSingleThreadExecutor();
+
+    public ZipExporter(FileExportTarget.Source source) {
+        this(source, DEFAULT_READ_AHEAD_FILES, DEFAULT_READ_AHEAD_BYTES);
+    }
+
+    public ZipExporter(FileExportTarget.Source source, int readAheadFiles, int readAheadBytes) {
+        this.source = source;
+        this.readAheadFiles = readAheadFiles;
+        this.readAheadBytes = readAheadBytes;
+    }
+
+    /**
+     * Writes {@code items} into {@code zipFile}. The archive is written to a
+     * {@code .part} file next to it and renamed when complete, so a failed or
+     * cancelled export never leaves a truncated archive behind.
+     */
+    public void writeTo(List<ExportItem> items, File zipFile, ExportTarget.Transfer transfer) throws IOException {
+        File part = new File(zipFile.getPath() + ".part");
+        try {
+            try (FileOutputStream out = new FileOutputStream(part)) {
+                write(items, new BufferedOutputStream(out, BUFFER_SIZE), transfer);
+                out.getFD().sync();
+            }
+            if (!part.renameTo(zipFile)) {
+                throw new IOException("Cannot rename " + part + " to " + zipFile);
+            }
+        } catch (IOException | RuntimeException e) {
+            part.delete();
+            throw e;
+        }
+    }
+
+    /** Writes {@code items} to {@code out} as a ZIP archive, one entry per image. Does not close {@code out}. */
+    public void write(List<ExportItem> items, OutputStream out, ExportTarget.Transfer transfer) throws IOException {
+        BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(readAheadFiles);
+        Semaphore budget = new Semaphore(readAheadBytes);
+        Future<?> readAhead = reader.submit(() -> readAhead(items, queue, budget, transfer));
+        try {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            Pending pending;
+            while ((pending = queue.take()) != Pending.END) {
+                if (transfer.isCancelled()) {
+                    throw new CancellationException();
+                }
+                if (pending.error != null) {
+                    throw new IOException("Cannot read " + pending.item.getDocumentId(), pending.error);
+                }
+                writeEntry(zip, pending, buffer, transfer);
+                budget.release(pending.permits);
+            }
+            if (transfer.isCancelled()) {
+                throw new CancellationException();
+            }
+            zip.finish();
+            zip.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        } finally {
+            readAhead.cancel(true);
+        }
+    }
+
+    /** Stops the reader thread once the archive being written is done. */
+    public void shutdown() {
+        reader.shutdown();
+    }
+
+    private void writeEntry(ZipOutputStream zip, Pending pending, byte[] buffer, ExportTarget.Transfer transfer)
+            throws IOException {
+        ZipEntry entry = new ZipEntry(pending.name);
+        if (pending.item.getLastModified() > 0) {
+            entry.setTime(pending.item.getLastModified());
+        }
+        if (pending.stored) {
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(pending.size);
+            entry.setCompressedSize(pending.size);
+            entry.setCrc(pending.crc);
+        } else {
+            entry.setMethod(ZipEntry.DEFLATED);
+        }
+        zip.putNextEntry(entry);
+        if (pending.data != null) {
+            zip.write(pending.data, 0, (int) pending.size);
+            transfer.addBytes(pending.size);
+        } else {
+            // Too big to hold: stream it. A STORED entry checks size and CRC against the reader's pass.
+            try (InputStream in = open(pending.item)) {
+                int length;
+                while ((length = in.read(buffer)) > 0) {
+                    if (transfer.isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    zip.write(buffer, 0, length);
+                    transfer.addBytes(length);
+                }
+            }
+        }
+        zip.closeEntry();
+    }
+
+    private void readAhead(List<ExportItem> items, BlockingQueue<Pending> queue, Semaphore budget,
+                           ExportTarget.Transfer transfer) {
+        Map<String, String> claimedNames = new HashMap<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            for (ExportItem item : items) {
+                if (transfer.isCancelled()) {
+                    break;
+                }
+                if (item.isCopy()) {
+                    continue;  // Archived once, as the image it copies
+                }
+                String name = ExportEngine.uniqueName(item, claimedNames);
+                claimedNames.put(item.getTargetFolder() + "/" + name, item.getDocumentId());
+                Pending pending = new Pending(item, name, COMPRESSED_TYPES.contains(item.getMimeType()));
+                try {
+                    if (item.getSize() >= 0 && item.getSize() <= readAheadBytes) {
+                        pending.permits = (int) item.getSize();
+                        budget.acquire(pending.permits);
+                        readFully(pending, buffer);
+                    } else if (pending.stored) {
+                        checksum(pending, buffer);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    pending.error = e;
+                }
+                queue.put(pending);
+                if (pending.error != null) {
+                    return;  // The writer gives up on the archive
+                }
+            }
+            queue.put(Pending.END);
+        } catch (InterruptedException e) {
+            // The writer has finished or failed
+        }
+    }
+
+    private void readFully(Pending pending, byte[] buffer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) pending.item.getSize());
+        CRC32 crc = new CRC32();
+        try (InputStream in = open(pending.item)) {
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, length);
+                crc.update(buffer, 0, length);
+            }
+        }
+        pending.data = bytes.toByteArray();
+        pending.size = pending.data.length;
+        pending.crc = crc.getValue();
+    }
+
+    private void checksum(Pending pending, byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream in = open(pending.item)) {
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, length);
+                size += length;
+            }
+        }
+        pending.size = size;
+        pending.crc = crc.getValue();
+    }
+
+    private InputStream open(ExportItem item) throws IOException {
+        InputStream in = source.open(item.getDocumentId());
+        if (in == null) {
+            throw new IOException("No stream for " + item.getDocumentId());
+        }
+        return in;
+    }
+
+    /** A file read (or checksummed) ahead of the writer. */
+    private static final class Pending {
+        static final Pending END = new Pending(null, null, false);
+
+        final ExportItem item;
+        final String name;
+        final boolean stored;
+        byte[] data;
+        long size;
+        long crc;
+        int permits;
+        Exception error;
+
+        Pending(ExportItem item, String name, boolean stored) {
+            this.item = item;
+            this.name = name;
+            this.stored = stored;
+        }
+    }
+}
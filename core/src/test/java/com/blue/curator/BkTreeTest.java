@@ -0,0 +1,62 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BkTreeTest {
+
+    @Test
+    public void findsExactlyWhatALinearScanFinds() {
+        Random random = new Random(42);
+        long[] hashes = new long[2000];
+        BkTree tree = new BkTree();
+        for (int i = 0; i < hashes.length; i++) {
+            // Some near-copies of earlier hashes so small radii have hits
+            hashes[i] = i > 0 && random.nextInt(4) == 0
+                    ? hashes[random.nextInt(i)] ^ (1L << random.nextInt(64)) ^ (1L << random.nextInt(64))
+                    : random.nextLong();
+            tree.add(hashes[i], i);
+        }
+        assertEquals(hashes.length, tree.size());
+        for (int radius : new int[]{0, 2, 6, 10}) {
+            for (int q = 0; q < 50; q++) {
+                long query = hashes[random.nextInt(hashes.length)] ^ (1L << random.nextInt(64));
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < hashes.length; i++) {
+                    if (PerceptualHash.distance(query, hashes[i]) <= radius) {
+                        expected.add(i);
+                    }
+                }
+                List<Integer> found = new ArrayList<>();
+                tree.search(query, radius, found::add);
+                Collections.sort(found);
+                assertEquals("radius " + radius, expected, found);
+            }
+        }
+    }
+
+    @Test
+    public void keepsEveryItemOfEqualHashes() {
+        BkTree tree = new BkTree();
+        tree.add(7L, 1);
+        tree.add(7L, 2);
+        tree.add(7L, 3);
+        List<Integer> found = new ArrayList<>();
+        tree.search(7L, 0, found::add);
+        Collections.sort(found);
+        assertEquals(List.of(1, 2, 3), found);
+    }
+
+    @Test
+    public void emptyTreeFindsNothing() {
+        List<Integer> found = new ArrayList<>();
+        new BkTree().search(0L, 64, found::add);
+        assertTrue(found.isEmpty());
+    }
+}
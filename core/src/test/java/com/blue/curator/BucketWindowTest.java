@@ -0,0 +1,75 @@
+package com.blue.curator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BucketWindowTest {
+
+    private static final int YES = 1;
+    private static final int NO = 2;
+
+    private CategoryIndex index;
+
+    @Before
+    public void setUp() {
+        index = new CategoryIndex("Yes", "No");
+        for (int i = 0; i < 1000; i++) {
+            index.assign(index.register("img" + i), i % 3 == 0 ? YES : NO);  // img0, img3, img6, ...
+        }
+    }
+
+    @Test
+    public void walksTheBucketInIdOrder() {
+        BucketWindow window = new BucketWindow(index, YES, 4);
+        assertEquals(334, window.size());
+        for (int position = 0; position < window.size(); position++) {
+            assertEquals("img" + 3 * position, window.imageAt(position));
+        }
+        assertNull(window.imageAt(334));
+        assertNull(window.imageAt(-1));
+    }
+
+    @Test
+    public void holdsOnlyTheWindowAroundThePosition() {
+        BucketWindow window = new BucketWindow(index, YES, 4);
+        assertEquals("img300", window.imageAt(100));
+        assertEquals(96, window.windowStart());
+        assertEquals(9, window.windowLength());
+
+        assertEquals("img309", window.imageAt(103));  // Inside the window: no refill
+        assertEquals(96, window.windowStart());
+    }
+
+    @Test
+    public void jumpsBackwardsAndForwards() {
+        BucketWindow window = new BucketWindow(index, YES, 2);
+        assertEquals("img900", window.imageAt(300));
+        assertEquals("img870", window.imageAt(290));
+        assertEquals("img0", window.imageAt(0));
+        assertEquals("img999", window.imageAt(333));
+        assertEquals("img597", window.imageAt(199));
+    }
+
+    @Test
+    public void refillsWhenTheBucketChanges() {
+        BucketWindow window = new BucketWindow(index, YES, 4);
+        assertEquals("img3", window.imageAt(1));
+
+        index.assign(index.idOf("img3"), NO);
+        assertEquals(333, window.size());
+        assertEquals("img6", window.imageAt(1));
+
+        index.assign(index.idOf("img1"), YES);
+        index.assign(index.idOf("img6"), NO);  // Same count, different members
+        assertEquals("img1", window.imageAt(1));
+    }
+
+    @Test
+    public void emptyBucketHasNoImages() {
+        BucketWindow window = new BucketWindow(new CategoryIndex("Yes"), YES, 4);
+        assertEquals(0, window.size());
+        assertNull(window.imageAt(0));
+    }
+}
@@ -0,0 +1,84 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class CaptureOrderTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Test
+    public void sortsByCaptureTimeAndSplitsBurstsAtGaps() {
+        Map<String, ExifInfo> exif = new HashMap<>();
+        exif.put("b2", exif(10_100));
+        exif.put("a1", exif(0));
+        exif.put("b1", exif(10_000));
+        exif.put("a2", exif(400));
+        exif.put("b3", exif(10_200));
+        exif.put("c1", exif(60_000));
+        CaptureOrder order = CaptureOrder.of(images("b2", "c1", "a1", "b3", "b1", "a2"), exif, 2000, UTC);
+
+        assertEquals(Arrays.asList("a1", "a2", "b1", "b2", "b3", "c1"), ids(order));
+        assertEquals(3, order.burstCount());
+        assertEquals(0, order.burstOf(1));
+        assertEquals(1, order.burstOf(2));
+        assertEquals(2, order.burstStart(1));
+        assertEquals(3, order.burstSize(1));
+        assertEquals(1, order.burstSize(2));
+        assertTrue(order.isBurstStart(2));
+        assertFalse(order.isBurstStart(3));
+    }
+
+    @Test
+    public void imagesWithoutExifFallBackToLocalModificationTime() {
+        TimeZone plusTwo = TimeZone.getTimeZone("GMT+02:00");
+        Map<String, ExifInfo> exif = new HashMap<>();
+        exif.put("camera", exif(7_200_000 + 1000));  // 02:00:01 on the camera's clock
+        List<ScannedImage> images = new ArrayList<>();
+        images.add(new ScannedImage("camera", "camera.jpg", "image/jpeg", 1, 0));
+        images.add(new ScannedImage("screenshot", "screenshot.png", "image/png", 1, 500));  // 00:00:00.5 UTC
+        CaptureOrder order = CaptureOrder.of(images, exif, 2000, plusTwo);
+        assertEquals(Arrays.asList("screenshot", "camera"), ids(order));
+        assertEquals(1, order.burstCount());
+    }
+
+    @Test
+    public void tiesKeepFileNameOrder() {
+        Map<String, ExifInfo> exif = new HashMap<>();
+        exif.put("x", exif(5000));
+        exif.put("y", exif(5000));
+        List<ScannedImage> images = new ArrayList<>();
+        images.add(new ScannedImage("y", "IMG_0002.jpg", "image/jpeg", 1, 0));
+        images.add(new ScannedImage("x", "IMG_0001.jpg", "image/jpeg", 1, 0));
+        assertEquals(Arrays.asList("x", "y"), ids(CaptureOrder.of(images, exif, 2000, UTC)));
+        assertEquals(0, CaptureOrder.of(new ArrayList<>(), exif, 2000, UTC).burstCount());
+    }
+
+    private static ExifInfo exif(long captureTime) {
+        return new ExifInfo(captureTime, 1, null, -1, -1);
+    }
+
+    private static List<ScannedImage> images(String... ids) {
+        List<ScannedImage> images = new ArrayList<>();
+        for (String id : ids) {
+            images.add(new ScannedImage(id, id + ".jpg", "image/jpeg", 1, 0));
+        }
+        return images;
+    }
+
+    private static List<String> ids(CaptureOrder order) {
+        List<String> ids = new ArrayList<>();
+        for (ScannedImage image : order.images()) {
+            ids.add(image.getDocumentId());
+        }
+        return ids;
+    }
+}
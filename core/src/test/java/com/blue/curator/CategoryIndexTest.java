@@ -0,0 +1,57 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CategoryIndexTest {
+
+    @Test
+    public void idsAreDenseAndStable() {
+        CategoryIndex index = new CategoryIndex("Yes", "No");
+        assertEquals(0, index.register("a"));
+        assertEquals(1, index.register("b"));
+        assertEquals(0, index.register("a"));
+        assertEquals(1, index.idOf("b"));
+        assertEquals(-1, index.idOf("missing"));
+        assertEquals("b", index.imageId(1));
+    }
+
+    @Test
+    public void reassignmentKeepsCountsInStep() {
+        CategoryIndex index = new CategoryIndex("Yes", "No", "Not Sure");
+        int yes = index.bucketNamed("Yes");
+        int no = index.bucketNamed("No");
+        for (int i = 0; i < 200; i++) {
+            index.register("img" + i);
+        }
+        assertEquals(200, index.count(CategoryIndex.UNDECIDED));
+
+        index.assign(5, yes);
+        index.assign(6, yes);
+        assertEquals(2, index.count(yes));
+        assertEquals(yes, index.assign(5, no));
+        assertEquals(1, index.count(yes));
+        assertEquals(1, index.count(no));
+        assertEquals(198, index.count(CategoryIndex.UNDECIDED));
+        assertTrue(index.isIn(5, no));
+        assertEquals(Arrays.asList("img6"), index.imagesIn(yes));
+    }
+
+    @Test
+    public void supportsMoreThanThreeBuckets() {
+        CategoryIndex index = new CategoryIndex("Cover", "Portfolio", "Client", "Archive", "Delete");
+        assertEquals(5, index.bucketCount());
+        int id = index.register("a");
+        index.assign(id, index.bucketNamed("Archive"));
+        assertEquals("Archive", index.bucketName(index.bucketOf(id)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownBucket() {
+        CategoryIndex index = new CategoryIndex("Yes");
+        index.assign(index.register("a"), 2);
+    }
+}
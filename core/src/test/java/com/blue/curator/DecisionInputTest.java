@@ -0,0 +1,166 @@
+package com.blue.curator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DecisionInputTest {
+
+    private static final int YES = 1;
+    private static final int NO = 2;
+
+    private long now;
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<String> calls = new ArrayList<>();
+    private DecisionInput input;
+
+    @Before
+    public void setUp() {
+        input = new DecisionInput(new DecisionInput.Actions() {
+            @Override
+            public void showControls() {
+                calls.add("show");
+            }
+
+            @Override
+            public void hideControls() {
+                calls.add("hide");
+            }
+
+            @Override
+            public void startListening(int token) {
+                calls.add("listen " + token);
+            }
+
+            @Override
+            public void stopListening() {
+                calls.add("stop");
+            }
+        }, new DecisionInput.Timer() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                scheduled.add(task);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                scheduled.remove(task);
+            }
+        }, () -> now);
+    }
+
+    @Test
+    public void inputOpensWhenTheImageIsShownWithNoDelay() {
+        int token = input.onImageRequested();
+        assertFalse(input.decide(token, YES, DecisionInput.Source.BUTTON));
+        assertEquals(1, input.early());
+
+        input.onImageShown(token);
+        assertEquals(DecisionInput.State.READY, input.state());
+        assertTrue(scheduled.isEmpty());
+        assertTrue(input.decide(token, YES, DecisionInput.Source.BUTTON));
+        assertEquals(DecisionInput.State.DECIDED, input.state());
+        assertEquals(Arrays.asList("hide", "show"), calls);
+    }
+
+    @Test
+    public void fallbackOpensInputIfTheImageNeverReportsIn() {
+        int token = input.onImageRequested();
+        assertEquals(1, scheduled.size());
+        scheduled.get(0).run();
+        assertEquals(DecisionInput.State.READY, input.state());
+        assertTrue(input.decide(token, NO, DecisionInput.Source.GESTURE));
+    }
+
+    @Test
+    public void navigationCancelsTheStaleFallback() {
+        int first = input.onImageRequested();
+        Runnable stale = scheduled.get(0);
+        int second = input.onImageRequested();
+        assertEquals(1, scheduled.size());
+        assertNotSame(stale, scheduled.get(0));
+
+        // A late callback for the first image does not open input for the second
+        input.onImageShown(first);
+        assertEquals(DecisionInput.State.LOADING, input.state());
+        input.onImageShown(second);
+        assertEquals(DecisionInput.State.READY, input.state());
+    }
+
+    @Test
+    public void oneDecisionPerImage() {
+        int token = input.onImageRequested();
+        input.onImageShown(token);
+        assertTrue(input.decide(token, YES, DecisionInput.Source.BUTTON));
+        assertFalse(input.decide(token, NO, DecisionInput.Source.VOICE));
+        assertEquals(1, input.accepted());
+        assertEquals(1, input.duplicates());
+    }
+
+    @Test
+    public void lateVoiceResultForThePreviousImageIsStale() {
+        input.setVoiceEnabled(true);
+        int first = input.onImageRequested();
+        input.onImageShown(first);
+        assertTrue(input.decide(first, YES, DecisionInput.Source.GESTURE));
+
+        int second = input.onImageRequested();
+        input.onImageShown(second);
+        assertFalse(input.decide(first, NO, DecisionInput.Source.VOICE));
+        assertEquals(1, input.stale());
+        assertEquals(DecisionInput.State.READY, input.state());
+    }
+
+    @Test
+    public void debouncesADoubleFireOnTheSameImage() {
+        int first = input.onImageRequested("a");
+        input.onImageShown(first);
+        assertTrue(input.decide(first, YES, DecisionInput.Source.BUTTON));
+
+        int again = input.onImageRequested("a");
+        input.onImageShown(again);
+        now += TimeUnit.MILLISECONDS.toNanos(100);
+        assertFalse(input.decide(again, YES, DecisionInput.Source.BUTTON));
+        assertEquals(1, input.duplicates());
+        // A different answer is deliberate, not a double fire
+        assertTrue(input.decide(again, NO, DecisionInput.Source.BUTTON));
+
+        int later = input.onImageRequested("a");
+        input.onImageShown(later);
+        now += DecisionInput.DEBOUNCE_NANOS;
+        assertTrue(input.decide(later, NO, DecisionInput.Source.BUTTON));
+    }
+
+    @Test
+    public void quickSameDecisionsOnDifferentImagesAllCount() {
+        int first = input.onImageRequested("a");
+        input.onImageShown(first);
+        assertTrue(input.decide(first, YES, DecisionInput.Source.BUTTON));
+
+        int second = input.onImageRequested("b");
+        input.onImageShown(second);
+        now += TimeUnit.MILLISECONDS.toNanos(100);
+        assertTrue(input.decide(second, YES, DecisionInput.Source.GESTURE));
+        assertEquals(0, input.duplicates());
+    }
+
+    @Test
+    public void listensWhileReadyAndStopsOnOtherInput() {
+        input.setVoiceEnabled(true);
+        int token = input.onImageRequested();
+        input.onImageShown(token);
+        assertTrue(input.decide(token, YES, DecisionInput.Source.BUTTON));
+        int next = input.onImageRequested();
+        input.onImageShown(next);
+        input.onImageRequested();
+
+        assertEquals(Arrays.asList("hide", "show", "listen 1", "stop", "hide", "show", "listen 2", "stop", "hide"),
+                calls);
+    }
+}
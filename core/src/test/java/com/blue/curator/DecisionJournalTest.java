@@ -0,0 +1,166 @@
+package com.blue.curator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DecisionJournalTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("journal").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.deleteRecursively(dir);
+    }
+
+    @Test
+    public void replayRestoresLatestDecisionPerImage() throws IOException {
+        DecisionJournal journal = DecisionJournal.open(dir);
+        journal.record("a", 1, 10);
+        journal.record("b", 2, 11);
+        journal.record("a", 3, 12);
+        journal.record("c", 1, 13);
+        journal.record("c", DecisionJournal.BUCKET_NONE, 14);
+        journal.close();
+
+        DecisionJournal replayed = DecisionJournal.open(dir);
+        assertEquals(3, replayed.bucketOf("a"));
+        assertEquals(2, replayed.bucketOf("b"));
+        assertEquals(DecisionJournal.BUCKET_NONE, replayed.bucketOf("c"));
+        assertEquals("a", replayed.lastDecision().getImageId());
+        assertEquals(2, replayed.size());
+        replayed.close();
+    }
+
+    @Test
+    public void recordAllAppendsOneDecisionPerImage() throws IOException {
+        DecisionJournal journal = DecisionJournal.open(dir);
+        journal.record("a", 1, 10);
+        journal.recordAll(Arrays.asList("a", "b", "c"), 2, 20);
+        journal.recordAll(Collections.emptyList(), 3, 30);
+        assertEquals(2, journal.bucketOf("a"));
+        journal.close();
+
+        DecisionJournal replayed = DecisionJournal.open(dir);
+        assertEquals(3, replayed.size());
+        for (Decision decision : replayed.decisions()) {
+            assertEquals(2, decision.getBucket());
+            assertEquals(20, decision.getTimestamp());
+        }
+        assertEquals("c", replayed.lastDecision().getImageId());
+        replayed.close();
+    }
+
+    @Test
+    public void compactionKeepsStateAndShrinksJournal() throws IOException {
+        DecisionJournal journal = DecisionJournal.open(dir, 8);
+        for (int i = 0; i < 100; i++) {
+            journal.record("img" + (i % 10), 1 + i % 3, i);
+        }
+        journal.close();
+
+        File journalFile = new File(dir, DecisionJournal.JOURNAL_FILE);
+        assertTrue(new File(dir, DecisionJournal.SNAPSHOT_FILE).exists());
+        assertTrue(journalFile.length() < 8 * 40);
+
+        DecisionJournal replayed = DecisionJournal.open(dir, 8);
+        assertEquals(10, replayed.size());
+        for (int i = 90; i < 100; i++) {
+            assertEquals(1 + i % 3, replayed.bucketOf("img" + (i % 10)));
+        }
+        replayed.close();
+    }
+
+    @Test
+    public void truncatedTailIsDroppedOnReplay() throws IOException {
+        DecisionJournal journal = DecisionJournal.open(dir);
+        journal.record("a", 1, 1);
+        journal.record("b", 2, 2);
+        journal.close();
+
+        File journalFile = new File(dir, DecisionJournal.JOURNAL_FILE);
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write(new byte[]{2, 0, 0, 0});
+        }
+
+        DecisionJournal replayed = DecisionJournal.open(dir);
+        assertEquals(2, replayed.size());
+        replayed.record("c", 3, 3);
+        replayed.close();
+
+        DecisionJournal again = DecisionJournal.open(dir);
+        assertEquals(3, again.bucketOf("c"));
+        again.close();
+    }
+
+    @Test
+    public void damagedRecordIsSkippedAndLaterRecordsKept() throws IOException {
+        DecisionJournal journal = DecisionJournal.open(dir);
+        journal.record("a", 1, 1);
+        journal.record("b", 2, 2);
+        journal.record("c", 3, 3);
+        journal.close();
+
+        // Flip a bit in the timestamp of "b": magic (4) + record "a" (1 + 8 + 2 + 1 + 4) + bucket (1)
+        File journalFile = new File(dir, DecisionJournal.JOURNAL_FILE);
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            long at = 4 + 16 + 1 + 7;
+            file.seek(at);
+            int b = file.read();
+            file.seek(at);
+            file.write(b ^ 1);
+        }
+
+        DecisionJournal replayed = DecisionJournal.open(dir);
+        assertEquals(1, replayed.bucketOf("a"));
+        assertEquals(DecisionJournal.BUCKET_NONE, replayed.bucketOf("b"));
+        assertEquals(3, replayed.bucketOf("c"));
+        replayed.record("d", 1, 4);
+        replayed.close();
+
+        DecisionJournal again = DecisionJournal.open(dir);
+        assertEquals(3, again.bucketOf("c"));
+        assertEquals(1, again.bucketOf("d"));
+        again.close();
+    }
+
+    @Test
+    public void legacyFilesListImagesPerBucketInDecisionOrder() throws IOException {
+        DecisionJournal journal = DecisionJournal.open(dir);
+        journal.record("a", 1, 1);
+        journal.record("b", 2, 2);
+        journal.record("c", 1, 3);
+
+        Map<Integer, File> files = new HashMap<>();
+        files.put(1, new File(dir, "selected.txt"));
+        files.put(2, new File(dir, "not_selected.txt"));
+        journal.writeLegacyFiles(files, id -> "uri:" + id);
+        journal.close();
+
+        List<String> selected = Files.readAllLines(files.get(1).toPath());
+        List<String> notSelected = Files.readAllLines(files.get(2).toPath());
+        assertEquals(2, selected.size());
+        assertEquals("uri:a", selected.get(0));
+        assertEquals("uri:c", selected.get(1));
+        assertEquals(1, notSelected.size());
+        assertEquals("uri:b", notSelected.get(0));
+    }
+}
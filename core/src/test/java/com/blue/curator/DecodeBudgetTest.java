@@ -0,0 +1,35 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DecodeBudgetTest {
+
+    @Test
+    public void defaultsToAShareOfTheHeap() {
+        DecodeBudget budget = DecodeBudget.forHeap(512L << 20, 0);
+        assertEquals(128L << 20, budget.budgetBytes());
+        assertEquals(budget.budgetBytes(), budget.memoryCacheBytes() + budget.bitmapPoolBytes());
+    }
+
+    @Test
+    public void configuredBudgetWins() {
+        assertEquals(64L << 20, DecodeBudget.forHeap(512L << 20, 64L << 20).budgetBytes());
+    }
+
+    @Test
+    public void prefetchCapacityCountsScreenSizedBitmaps() {
+        // A 2400 x 1080 screen at 4 bytes per pixel is about 9.9 MiB per image
+        DecodeBudget budget = new DecodeBudget(96L << 20);
+        assertEquals(5, budget.prefetchCapacity(2400, 1080, 4));
+        assertEquals(12, budget.prefetchCapacity(2400, 1080, 2));
+        assertEquals(0, new DecodeBudget(16L << 20).prefetchCapacity(2400, 1080, 4));
+    }
+
+    @Test
+    public void aFullResolutionDecodeWouldBlowTheBudget() {
+        DecodeBudget budget = new DecodeBudget(96L << 20);
+        assertTrue(DecodeBudget.bitmapBytes(8160, 6120, 4) > budget.budgetBytes());
+    }
+}
@@ -0,0 +1,185 @@
+package com.blue.curator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class DuplicateFinderTest {
+
+    private static final int LARGE = 3 * DuplicateFinder.PROBE_BYTES;
+
+    private File dir;
+    private DuplicateFinder finder;
+    private final List<ScannedImage> images = new ArrayList<>();
+    private final Map<String, AtomicLong> bytesRead = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("duplicates").toFile();
+        finder = new DuplicateFinder(2, 1);
+    }
+
+    @After
+    public void tearDown() {
+        finder.shutdown();
+        TestFiles.deleteRecursively(dir);
+    }
+
+    @Test
+    public void groupsIdenticalFilesInScanOrder() throws Exception {
+        byte[] photo = random(1, LARGE);
+        add("a", photo);
+        add("b", random(2, LARGE));
+        add("a copy", photo);
+        add("small", random(3, 1000));
+        add("small copy", random(3, 1000));
+
+        DuplicateGroups groups = find();
+
+        assertEquals(2, groups.groupCount());
+        assertEquals(Arrays.asList("a", "a copy"), groups.groupOf("a copy"));
+        assertEquals("a", groups.originalOf("a copy"));
+        assertTrue(groups.isCopy("a copy"));
+        assertFalse(groups.isCopy("a"));
+        assertTrue(groups.isCopy("small copy"));
+        assertTrue(groups.groupOf("b").isEmpty());
+        assertEquals("b", groups.originalOf("b"));
+    }
+
+    @Test
+    public void opensOnlyImagesThatShareTheirSize() throws Exception {
+        add("a", random(1, LARGE));
+        add("b", random(2, LARGE + 1));
+
+        DuplicateGroups groups = find();
+
+        assertEquals(0, groups.groupCount());
+        assertTrue(bytesRead.isEmpty());
+    }
+
+    @Test
+    public void hashesInFullOnlyWhenTheEndsMatch() throws Exception {
+        add("a", random(1, LARGE));
+        add("b", random(2, LARGE));
+        byte[] middle = random(3, LARGE);
+        byte[] changed = middle.clone();
+        changed[LARGE / 2] ^= 1;
+        add("c", middle);
+        add("d", changed);
+
+        DuplicateGroups groups = find();
+
+        assertEquals(0, groups.groupCount());
+        assertEquals(2 * DuplicateFinder.PROBE_BYTES, bytesRead.get("a").get());
+        assertEquals(2 * DuplicateFinder.PROBE_BYTES, bytesRead.get("b").get());
+        assertEquals(2 * DuplicateFinder.PROBE_BYTES + LARGE, bytesRead.get("c").get());
+        assertEquals(2 * DuplicateFinder.PROBE_BYTES + LARGE, bytesRead.get("d").get());
+    }
+
+    @Test
+    public void keepsUnreadableImagesApart() throws Exception {
+        byte[] photo = random(1, 1000);
+        add("a", photo);
+        add("a copy", photo);
+        images.add(new ScannedImage("gone", "gone", "image/jpeg", photo.length, 0));
+
+        AtomicReference<DuplicateFinder.Stats> stats = new AtomicReference<>();
+        DuplicateGroups groups = find(stats);
+
+        assertEquals(Arrays.asList("a", "a copy"), groups.groupOf("a"));
+        assertTrue(groups.groupOf("gone").isEmpty());
+        assertEquals(1, stats.get().getFailures());
+        assertEquals(3, stats.get().getProbed());
+    }
+
+    @Test
+    public void savedGroupsKeepOnlyUnchangedImages() throws Exception {
+        byte[] photo = random(1, 1000);
+        add("a", photo);
+        add("a copy", photo);
+        add("a second copy", photo);
+        add("b", random(2, 1000));
+        add("b copy", Files.readAllBytes(new File(dir, "b").toPath()));
+        File saved = new File(dir, DuplicateGroups.FILE);
+        find().write(saved, images);
+
+        images.set(2, new ScannedImage("a second copy", "a second copy", "image/jpeg", photo.length, 5));
+        images.remove(4);
+        DuplicateGroups groups = DuplicateGroups.read(saved, images);
+
+        assertEquals(1, groups.groupCount());
+        assertEquals(Arrays.asList("a", "a copy"), groups.groupOf("a"));
+        assertTrue(groups.groupOf("a second copy").isEmpty());
+        assertTrue(groups.groupOf("b").isEmpty());
+        assertEquals(0, DuplicateGroups.read(new File(dir, "missing"), images).groupCount());
+    }
+
+    private DuplicateGroups find() throws InterruptedException {
+        return find(new AtomicReference<>());
+    }
+
+    private DuplicateGroups find(AtomicReference<DuplicateFinder.Stats> stats) throws InterruptedException {
+        AtomicReference<DuplicateGroups> result = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        finder.find(images, this::open, (groups, passStats) -> {
+            result.set(groups);
+            stats.set(passStats);
+            done.countDown();
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return result.get();
+    }
+
+    private InputStream open(String documentId) throws IOException {
+        AtomicLong read = bytesRead.computeIfAbsent(documentId, id -> new AtomicLong());
+        return new FilterInputStream(new FileInputStream(new File(dir, documentId))) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    read.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) {
+                    read.addAndGet(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    private void add(String documentId, byte[] bytes) throws IOException {
+        Files.write(new File(dir, documentId).toPath(), bytes);
+        images.add(new ScannedImage(documentId, documentId, "image/jpeg", bytes.length, 0));
+    }
+
+    private static byte[] random(long seed, int length) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
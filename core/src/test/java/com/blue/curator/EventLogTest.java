@@ -0,0 +1,115 @@
+package com.blue.curator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EventLogTest {
+
+    private File dir;
+    private File file;
+    private final List<String> echoed = Collections.synchronizedList(new ArrayList<>());
+    private EventLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("eventlog").toFile();
+        file = new File(dir, "ErrorLog.txt");
+    }
+
+    @After
+    public void tearDown() {
+        if (log != null) {
+            log.close();
+        }
+        TestFiles.deleteRecursively(dir);
+    }
+
+    @Test
+    public void fillsPlaceholdersInOrder() {
+        assertEquals("Indexed 3 images in 12 ms", format("Indexed {} images in {} ms", 3, 12));
+        assertEquals("Scan of a: 5", format("Scan of {}:", "a", 5));
+    }
+
+    @Test
+    public void flushWritesEverythingRecordedBefore() throws IOException {
+        log = open(EventLog.Level.DEBUG, 64);
+        log.d(TAG, "Loaded {} images", 42L);
+        log.i(TAG, "Folder {}", "DCIM");
+        log.e(TAG, "Export failed", new IOException("disk full"));
+
+        assertTrue(log.flush(5000));
+        String text = read();
+        String thread = " [" + Thread.currentThread().getName() + "] ";
+        assertTrue(text, text.contains(" D Test" + thread + "Loaded 42 images\n"));
+        assertTrue(text, text.contains(" I Test" + thread + "Folder DCIM\n"));
+        assertTrue(text, text.contains(" E Test" + thread + "Export failed\n"));
+        assertTrue(text, text.contains("java.io.IOException: disk full"));
+        assertEquals(3, echoed.size());
+        assertEquals("ERROR Test Export failed", echoed.get(2));
+    }
+
+    @Test
+    public void skipsEntriesBelowTheMinimumLevel() throws IOException {
+        log = open(EventLog.Level.INFO, 64);
+        assertFalse(log.isLoggable(EventLog.Level.DEBUG));
+        log.d(TAG, "hidden");
+        log.w(TAG, "shown");
+
+        assertTrue(log.flush(5000));
+        assertFalse(read().contains("hidden"));
+        assertTrue(read().contains("shown"));
+    }
+
+    @Test
+    public void reportsDroppedEntriesWhenFull() throws IOException {
+        log = open(EventLog.Level.DEBUG, 2);
+        for (int i = 0; i < 1000; i++) {
+            log.d(TAG, "entry {}", i);
+        }
+
+        assertTrue(log.flush(5000));
+        log.close();
+        if (log.dropped() > 0) {
+            assertTrue(read().contains("entries dropped"));
+        }
+    }
+
+    @Test
+    public void closeWritesWhatIsQueuedAndIgnoresLaterEntries() throws IOException {
+        log = open(EventLog.Level.DEBUG, 64);
+        log.d(TAG, "last words");
+        log.close();
+        log.d(TAG, "too late");
+
+        assertTrue(read().contains("last words"));
+        assertFalse(read().contains("too late"));
+    }
+
+    private static final String TAG = "Test";
+
+    private EventLog open(EventLog.Level minLevel, int capacity) {
+        RotatingLogFile rotating = new RotatingLogFile(file, 1024 * 1024, 2);
+        return new EventLog(rotating, (level, tag, message, thrown) -> echoed.add(level + " " + tag + " " + message),
+                minLevel, capacity, TimeUnit.SECONDS.toNanos(10));
+    }
+
+    private static String format(String template, Object arg1, Object arg2) {
+        return EventLog.format(template, arg1, arg2, 0);
+    }
+
+    private String read() throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,150 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.*;
+
+public class ExifReaderTest {
+
+    private static final byte[] IMAGE_DATA = new byte[8192];
+
+    @Test
+    public void readsCaptureTimeCameraOrientationAndSize() throws IOException {
+        for (boolean littleEndian : new boolean[]{true, false}) {
+            ExifInfo info = ExifReader.read(new ByteArrayInputStream(jpeg(littleEndian, "2024:06:01 18:30:05", "042")));
+            assertNotNull(info);
+            long expected = LocalDateTime.of(2024, 6, 1, 18, 30, 5).toInstant(ZoneOffset.UTC).toEpochMilli() + 42;
+            assertEquals(expected, info.getCaptureTime());
+            assertEquals(6, info.getOrientation());
+            assertEquals("Canon EOS R6", info.getCamera());
+            assertEquals(6000, info.getWidth());
+            assertEquals(4000, info.getHeight());
+        }
+    }
+
+    @Test
+    public void readsOnlyTheHeader() throws IOException {
+        byte[] jpeg = jpeg(true, "2024:06:01 18:30:05", null);
+        ByteArrayInputStream in = new ByteArrayInputStream(jpeg);
+        assertNotNull(ExifReader.read(in));
+        assertTrue(in.available() >= IMAGE_DATA.length);
+    }
+
+    @Test
+    public void parsesCaptureTimes() {
+        assertEquals(0, ExifReader.captureTime("1970:01:01 00:00:00", null));
+        assertEquals(LocalDateTime.of(2000, 2, 29, 23, 59, 59).toInstant(ZoneOffset.UTC).toEpochMilli() + 5,
+                ExifReader.captureTime("2000:02:29 23:59:59", "005"));
+        assertEquals(1_000 + 123, ExifReader.captureTime("1970:01:01 00:00:01", "1234"));
+        assertEquals(-1, ExifReader.captureTime("    :  :     :  :  ", null));
+        assertEquals(-1, ExifReader.captureTime("2024:13:01 00:00:00", null));
+        assertEquals(-1, ExifReader.captureTime(null, "12"));
+    }
+
+    @Test
+    public void namesTheCameraOnce() {
+        assertEquals("Canon EOS R6", ExifReader.camera("Canon", "Canon EOS R6"));
+        assertEquals("SONY ILCE-7M4", ExifReader.camera("SONY", "ILCE-7M4"));
+        assertEquals("Pixel 8", ExifReader.camera(null, "Pixel 8"));
+        assertNull(ExifReader.camera(null, null));
+    }
+
+    @Test
+    public void imagesWithoutExifStillReportTheirSize() throws IOException {
+        byte[] jpeg = concat(new byte[]{(byte) 0xff, (byte) 0xd8}, sof(800, 600), IMAGE_DATA);
+        ExifInfo info = ExifReader.read(new ByteArrayInputStream(jpeg));
+        assertNotNull(info);
+        assertFalse(info.hasCaptureTime());
+        assertEquals(800, info.getWidth());
+        assertEquals(600, info.getHeight());
+        assertNull(ExifReader.read(new ByteArrayInputStream("\u0089PNG....".getBytes())));
+    }
+
+    /** SOI, EXIF APP1 (IFD0: make, model, orientation, EXIF IFD; EXIF IFD: date and sub-seconds), SOF, SOS. */
+    private static byte[] jpeg(boolean littleEndian, String dateTime, String subSec) {
+        byte[] make = "Canon\0".getBytes();
+        byte[] model = "Canon EOS R6\0".getBytes();
+        byte[] date = (dateTime + "\0").getBytes();
+        int ifd0 = 8;
+        int ifd0Entries = 4;
+        int exifIfd = ifd0 + 2 + ifd0Entries * 12 + 4;
+        int exifEntries = 2;
+        int data = exifIfd + 2 + exifEntries * 12 + 4;
+        int makeAt = data;
+        int modelAt = makeAt + make.length;
+        int dateAt = modelAt + model.length;
+
+        Tiff tiff = new Tiff(littleEndian);
+        tiff.bytes((littleEndian ? "II" : "MM").getBytes()).u16(42).u32(ifd0);
+        tiff.u16(ifd0Entries)
+                .u16(0x010f).u16(2).u32(make.length).u32(makeAt)
+                .u16(0x0110).u16(2).u32(model.length).u32(modelAt)
+                .u16(0x0112).u16(3).u32(1).u16(6).u16(0)
+                .u16(0x8769).u16(4).u32(1).u32(exifIfd)
+                .u32(0);
+        tiff.u16(exifEntries).u16(0x9003).u16(2).u32(date.length).u32(dateAt);
+        if (subSec == null) {
+            tiff.u16(0x0001).u16(3).u32(1).u32(0);  // Some other tag
+        } else {
+            byte[] sub = (subSec + "\0").getBytes();
+            tiff.u16(0x9291).u16(2).u32(sub.length).bytes(java.util.Arrays.copyOf(sub, 4));
+        }
+        tiff.u32(0).bytes(make).bytes(model).bytes(date);
+        byte[] app1 = concat("Exif\0\0".getBytes(), tiff.out.toByteArray());
+        return concat(new byte[]{(byte) 0xff, (byte) 0xd8}, segment(0xe1, app1), segment(0xdb, new byte[65]),
+                sof(6000, 4000), new byte[]{(byte) 0xff, (byte) 0xda, 0, 2}, IMAGE_DATA);
+    }
+
+    private static byte[] sof(int width, int height) {
+        return segment(0xc0, new byte[]{8, (byte) (height >> 8), (byte) height, (byte) (width >> 8), (byte) width,
+                3, 1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1});
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        int length = payload.length + 2;
+        return concat(new byte[]{(byte) 0xff, (byte) marker, (byte) (length >> 8), (byte) length}, payload);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Tiff {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final boolean littleEndian;
+
+        Tiff(boolean littleEndian) {
+            this.littleEndian = littleEndian;
+        }
+
+        Tiff bytes(byte[] b) {
+            out.write(b, 0, b.length);
+            return this;
+        }
+
+        Tiff u16(int v) {
+            if (littleEndian) {
+                out.write(v);
+                out.write(v >> 8);
+            } else {
+                out.write(v >> 8);
+                out.write(v);
+            }
+            return this;
+        }
+
+        Tiff u32(int v) {
+            return littleEndian ? u16(v & 0xffff).u16(v >>> 16) : u16(v >>> 16).u16(v & 0xffff);
+        }
+    }
+}
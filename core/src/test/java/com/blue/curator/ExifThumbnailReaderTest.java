@@ -0,0 +1,157 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ExifThumbnailReaderTest {
+
+    private static final byte[] PREVIEW = {(byte) 0xff, (byte) 0xd8, 1, 2, 3, 4, 5, (byte) 0xff, (byte) 0xd9};
+    private static final byte[] IMAGE_DATA = new byte[4096];
+
+    @Test
+    public void readsThePreviewFromIfd1() throws IOException {
+        for (boolean littleEndian : new boolean[]{true, false}) {
+            byte[] jpeg = jpeg(littleEndian, 1, PREVIEW);
+            assertArrayEquals(PREVIEW, ExifThumbnailReader.read(new ByteArrayInputStream(jpeg)));
+        }
+    }
+
+    @Test
+    public void stopsReadingAfterApp1() throws IOException {
+        byte[] jpeg = jpeg(true, 1, PREVIEW);
+        CountingStream in = new CountingStream(jpeg);
+        assertNotNull(ExifThumbnailReader.read(in));
+        assertTrue(in.read < jpeg.length - IMAGE_DATA.length);
+    }
+
+    @Test
+    public void carriesTheOrientationOfTheMainImage() throws IOException {
+        byte[] preview = ExifThumbnailReader.read(new ByteArrayInputStream(jpeg(false, 6, PREVIEW)));
+        assertNotNull(preview);
+        assertEquals((byte) 0xd8, preview[1]);
+        assertEquals((byte) 0xe1, preview[3]);
+        ExifThumbnailReader.Tiff tiff = new ExifThumbnailReader.Tiff(preview, 2 + 4 + 6);
+        assertTrue(tiff.valid());
+        assertEquals(6, tiff.findShort(tiff.u32(4), 0x0112, 1));
+        // The preview's own bytes follow, minus its SOI
+        assertArrayEquals(Arrays.copyOfRange(PREVIEW, 2, PREVIEW.length),
+                Arrays.copyOfRange(preview, preview.length - PREVIEW.length + 2, preview.length));
+    }
+
+    @Test
+    public void noPreviewReadsAsNull() throws IOException {
+        assertNull(ExifThumbnailReader.read(new ByteArrayInputStream(jpeg(true, 1, null))));
+        byte[] withoutExif = concat(new byte[]{(byte) 0xff, (byte) 0xd8}, segment(0xe0, "JFIF\0".getBytes()),
+                new byte[]{(byte) 0xff, (byte) 0xda, 0, 2}, IMAGE_DATA);
+        assertNull(ExifThumbnailReader.read(new ByteArrayInputStream(withoutExif)));
+        assertNull(ExifThumbnailReader.read(new ByteArrayInputStream("not a jpeg".getBytes())));
+        assertNull(ExifThumbnailReader.read(new ByteArrayInputStream(new byte[]{(byte) 0xff, (byte) 0xd8, (byte) 0xff})));
+    }
+
+    /** SOI, JFIF APP0, EXIF APP1 with IFD0 (orientation) and IFD1 (preview, if any), SOS and image data. */
+    private static byte[] jpeg(boolean littleEndian, int orientation, byte[] preview) {
+        Tiff tiff = new Tiff(littleEndian);
+        tiff.bytes(littleEndian ? "II" : "MM").u16(42).u32(8);
+        // IFD0 at 8: one entry, then the offset of IFD1
+        tiff.u16(1).u16(0x0112).u16(3).u32(1).u16(orientation).u16(0);
+        int ifd1 = 8 + 2 + 12 + 4;
+        tiff.u32(preview == null ? 0 : ifd1);
+        if (preview != null) {
+            int previewOffset = ifd1 + 2 + 3 * 12 + 4;
+            tiff.u16(3)
+                    .u16(0x0103).u16(3).u32(1).u16(6).u16(0)
+                    .u16(0x0201).u16(4).u32(1).u32(previewOffset)
+                    .u16(0x0202).u16(4).u32(1).u32(preview.length)
+                    .u32(0)
+                    .bytes(preview);
+        }
+        byte[] app1 = concat("Exif\0\0".getBytes(), tiff.out.toByteArray());
+        return concat(new byte[]{(byte) 0xff, (byte) 0xd8}, segment(0xe0, "JFIF\0".getBytes()), segment(0xe1, app1),
+                new byte[]{(byte) 0xff, (byte) 0xda, 0, 2}, IMAGE_DATA);
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        int length = payload.length + 2;
+        return concat(new byte[]{(byte) 0xff, (byte) marker, (byte) (length >> 8), (byte) length}, payload);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Tiff {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final boolean littleEndian;
+
+        Tiff(boolean littleEndian) {
+            this.littleEndian = littleEndian;
+        }
+
+        Tiff bytes(String s) {
+            return bytes(s.getBytes());
+        }
+
+        Tiff bytes(byte[] b) {
+            out.write(b, 0, b.length);
+            return this;
+        }
+
+        Tiff u16(int v) {
+            if (littleEndian) {
+                out.write(v);
+                out.write(v >> 8);
+            } else {
+                out.write(v >> 8);
+                out.write(v);
+            }
+            return this;
+        }
+
+        Tiff u32(int v) {
+            return littleEndian ? u16(v & 0xffff).u16(v >>> 16) : u16(v >>> 16).u16(v & 0xffff);
+        }
+    }
+
+    private static final class CountingStream extends InputStream {
+        private final ByteArrayInputStream in;
+        int read;
+
+        CountingStream(byte[] bytes) {
+            in = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() {
+            int b = in.read();
+            if (b >= 0) {
+                read++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int n = in.read(b, off, len);
+            read += Math.max(0, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = in.skip(n);
+            read += skipped;
+            return skipped;
+        }
+    }
+}
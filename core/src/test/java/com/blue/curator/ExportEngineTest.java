@@ -0,0 +1,154 @@
+package com.blue.curator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ExportEngineTest {
+
+    private File root;
+    private final Map<String, byte[]> contents = new HashMap<>();
+    private final AtomicInteger opens = new AtomicInteger();
+    private ExportEngine engine;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("export").toFile();
+        for (String id : new String[]{"a", "b", "c"}) {
+            byte[] bytes = new byte[100_000 + id.charAt(0)];
+            Arrays.fill(bytes, (byte) id.charAt(0));
+            contents.put(id, bytes);
+        }
+        engine = newEngine();
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+        TestFiles.deleteRecursively(root);
+    }
+
+    @Test
+    public void exportsOnlyWhatChanged() throws Exception {
+        ExportEngine.Progress first = run(item("a", "Yes"), item("b", "No"), item("c", null));
+        assertEquals(2, first.getFilesDone());
+        assertEquals(0, first.getFailures());
+        assertArrayEquals(contents.get("a"), Files.readAllBytes(new File(root, "Yes/a.jpg").toPath()));
+        assertArrayEquals(contents.get("b"), Files.readAllBytes(new File(root, "No/b.jpg").toPath()));
+
+        opens.set(0);
+        ExportEngine.Progress second = run(item("a", "Yes"), item("b", "No"), item("c", null));
+        assertEquals(0, second.getFilesTotal());
+        assertEquals(0, opens.get());
+
+        // b changes bucket, a is undecided again
+        ExportEngine.Progress third = run(item("a", null), item("b", "Yes"), item("c", null));
+        assertEquals(1, third.getFilesDone());
+        assertFalse(new File(root, "Yes/a.jpg").exists());
+        assertFalse(new File(root, "No/b.jpg").exists());
+        assertTrue(new File(root, "Yes/b.jpg").exists());
+    }
+
+    @Test
+    public void bucketChangeMovesTheExportWithoutCopying() throws Exception {
+        run(item("a", "Yes"));
+        opens.set(0);
+        ExportEngine.Progress progress = run(item("a", "No"));
+        assertEquals(1, progress.getFilesDone());
+        assertEquals(0, opens.get());
+        assertFalse(new File(root, "Yes/a.jpg").exists());
+        assertArrayEquals(contents.get("a"), Files.readAllBytes(new File(root, "No/a.jpg").toPath()));
+    }
+
+    @Test
+    public void manifestSurvivesARestart() throws Exception {
+        run(item("a", "Yes"), item("b", "Yes"));
+        engine.shutdown();
+
+        engine = newEngine();
+        opens.set(0);
+        ExportEngine.Progress progress = run(item("a", "Yes"), item("b", "Yes"), item("c", "Yes"));
+        assertEquals(1, progress.getFilesTotal());
+        assertEquals(1, opens.get());
+    }
+
+    @Test
+    public void sameNameInOneFolderGetsASuffix() throws Exception {
+        run(new ExportItem("a", "IMG.jpg", "image/jpeg", 1, 1, "Yes"),
+                new ExportItem("b", "IMG.jpg", "image/jpeg", 1, 1, "Yes"));
+        assertTrue(new File(root, "Yes/IMG.jpg").exists());
+        assertTrue(new File(root, "Yes/IMG_1.jpg").exists());
+    }
+
+    @Test
+    public void failedSourceLeavesNoPartialFile() throws Exception {
+        ExportEngine.Progress progress = run(item("missing", "Yes"), item("a", "Yes"));
+        assertEquals(1, progress.getFailures());
+        assertEquals(1, progress.getFilesDone());
+        assertEquals(Arrays.asList("a.jpg"), Arrays.asList(new File(root, "Yes").list()));
+    }
+
+    @Test
+    public void copyKeepsAnEarlierExportButIsNotExported() throws Exception {
+        run(item("a", "Yes"));
+        opens.set(0);
+        ExportEngine.Progress progress = run(copy("a", "No"), copy("b", "Yes"));
+        assertEquals(1, progress.getFilesDone());
+        assertEquals(0, opens.get());
+        assertTrue(new File(root, "No/a.jpg").exists());
+        assertFalse(new File(root, "Yes/b.jpg").exists());
+    }
+
+    private ExportEngine newEngine() {
+        FileExportTarget.Source source = documentId -> {
+            opens.incrementAndGet();
+            byte[] bytes = contents.get(documentId);
+            if (bytes == null) {
+                throw new IOException("No such document " + documentId);
+            }
+            return new ByteArrayInputStream(bytes);
+        };
+        return new ExportEngine(new FileExportTarget(source, root, 4096),
+                new ExportManifest(new File(root, "export.manifest")), 2);
+    }
+
+    private ExportEngine.Progress run(ExportItem... items) throws InterruptedException {
+        List<ExportEngine.Progress> finished = new ArrayList<>();
+        ExportEngine.Job job = engine.start(Arrays.asList(items), new ExportEngine.Listener() {
+            @Override
+            public void onProgress(ExportEngine.Progress progress) {
+            }
+
+            @Override
+            public void onFinished(ExportEngine.Progress progress) {
+                finished.add(progress);
+            }
+        });
+        ExportEngine.Progress progress = job.await();
+        assertFalse(progress.isCancelled());
+        return progress;
+    }
+
+    private ExportItem copy(String id, String folder) {
+        byte[] bytes = contents.get(id);
+        return ExportItem.ofCopy(new ScannedImage(id, id + ".jpg", "image/jpeg", bytes.length, 1), folder);
+    }
+
+    private ExportItem item(String id, String folder) {
+        byte[] bytes = contents.get(id);
+        return new ExportItem(id, id + ".jpg", "image/jpeg", bytes == null ? 0 : bytes.length, 1, folder);
+    }
+}
@@ -0,0 +1,75 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FolderScanOrderTest {
+
+    @Test
+    public void releasesFoldersInPathOrderWhateverOrderTheyFinishIn() {
+        FolderScanOrder order = new FolderScanOrder("root");
+        FolderScanOrder.Folder root = order.root();
+        FolderScanOrder.Folder b = FolderScanOrder.child(root, "b", "2024-02");
+        FolderScanOrder.Folder a = FolderScanOrder.child(root, "a", "2024-01");
+        FolderScanOrder.Folder aBurst = FolderScanOrder.child(a, "a1", "burst");
+
+        List<String> released = new ArrayList<>();
+        collect(released, order.completed(root, images("root", "z.jpg", "m.jpg"), Arrays.asList(b, a)));
+        assertEquals(Arrays.asList("m.jpg", "z.jpg"), released);
+
+        // "2024-02" finishes first but has to wait for "2024-01" and its burst folder
+        collect(released, order.completed(b, images("2024-02", "b.jpg"), Collections.emptyList()));
+        assertEquals(2, released.size());
+        collect(released, order.completed(a, images("2024-01", "a.jpg"), Collections.singletonList(aBurst)));
+        assertEquals(3, released.size());
+        collect(released, order.completed(aBurst, images("2024-01/burst", "c.jpg", "b.jpg"), Collections.emptyList()));
+
+        assertEquals(Arrays.asList("m.jpg", "z.jpg", "a.jpg", "b.jpg", "c.jpg", "b.jpg"), released);
+        assertTrue(order.isDone());
+        assertEquals(4, order.foldersFound());
+        assertEquals(4, order.foldersScanned());
+        assertEquals("2024-01/burst", aBurst.getPath());
+    }
+
+    @Test
+    public void aFolderComesWithEverythingBelowItBeforeItsNextSibling() {
+        FolderScanOrder order = new FolderScanOrder("root");
+        FolderScanOrder.Folder root = order.root();
+        FolderScanOrder.Folder a = FolderScanOrder.child(root, "a", "a");
+        FolderScanOrder.Folder aDash = FolderScanOrder.child(root, "a-b", "a-b");
+        FolderScanOrder.Folder aDot = FolderScanOrder.child(root, "a.1", "a.1");
+        FolderScanOrder.Folder ax = FolderScanOrder.child(a, "ax", "x");
+
+        List<String> released = new ArrayList<>();
+        collect(released, order.completed(root, Collections.emptyList(), Arrays.asList(aDot, a, aDash)));
+        collect(released, order.completed(aDot, images("a.1", "3.jpg"), Collections.emptyList()));
+        collect(released, order.completed(aDash, images("a-b", "2.jpg"), Collections.emptyList()));
+        collect(released, order.completed(a, images("a", "0.jpg"), Collections.singletonList(ax)));
+        collect(released, order.completed(ax, images("a/x", "1.jpg"), Collections.emptyList()));
+
+        // A plain path sort would put "a-b" and "a.1" before "a/x"
+        assertEquals(Arrays.asList("0.jpg", "1.jpg", "2.jpg", "3.jpg"), released);
+    }
+
+    private static void collect(List<String> released, List<FolderScanOrder.Folder> ready) {
+        for (FolderScanOrder.Folder folder : ready) {
+            for (ScannedImage image : folder.getImages()) {
+                released.add(image.getDisplayName());
+            }
+        }
+    }
+
+    private static List<ScannedImage> images(String folder, String... names) {
+        List<ScannedImage> images = new ArrayList<>();
+        for (String name : names) {
+            images.add(new ScannedImage(folder + "/" + name, folder, name, "image/jpeg", 1, 1));
+        }
+        return images;
+    }
+}
@@ -0,0 +1,34 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GridSelectionTest {
+
+    @Test
+    public void tapsToggleAndLongPressSelectsFromTheAnchor() {
+        GridSelection selection = new GridSelection();
+        assertTrue(selection.toggle(7));
+        selection.extendTo(3);
+        assertArrayEquals(new int[]{3, 4, 5, 6, 7}, selection.positions());
+
+        assertFalse(selection.toggle(5));
+        selection.extendTo(9);
+        assertArrayEquals(new int[]{3, 4, 5, 6, 7, 8, 9}, selection.positions());
+        assertEquals(7, selection.count());
+    }
+
+    @Test
+    public void longPressWithoutAnchorSelectsOne() {
+        GridSelection selection = new GridSelection();
+        selection.extendTo(4);
+        assertArrayEquals(new int[]{4}, selection.positions());
+
+        selection.clear();
+        assertEquals(0, selection.count());
+        selection.extendTo(2);
+        assertTrue(selection.isSelected(2));
+        assertFalse(selection.isSelected(4));
+    }
+}
@@ -0,0 +1,67 @@
+package com.blue.curator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class HashStoreTest {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("hashstore").toFile();
+        file = new File(dir, "tree.hashes");
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.deleteRecursively(dir);
+    }
+
+    @Test
+    public void roundTripsHashesKeyedByDocumentAndModificationTime() throws IOException {
+        HashStore store = new HashStore(file);
+        store.load();
+        store.put("a", 100, 0x1234L);
+        store.put("b", 200, -1L);
+        store.save();
+
+        HashStore reloaded = new HashStore(file);
+        reloaded.load();
+        assertEquals(2, reloaded.size());
+        assertEquals(Long.valueOf(0x1234L), reloaded.get("a", 100));
+        assertEquals(Long.valueOf(-1L), reloaded.get("b", 200));
+        assertNull("edited since hashed", reloaded.get("a", 101));
+        assertNull(reloaded.get("c", 100));
+    }
+
+    @Test
+    public void forgetsImagesNoLongerPresent() {
+        HashStore store = new HashStore(file);
+        store.put("a", 1, 1L);
+        store.put("b", 1, 2L);
+        store.retainAll(Collections.singletonList("b"));
+        assertNull(store.get("a", 1));
+        assertEquals(Long.valueOf(2L), store.get("b", 1));
+    }
+
+    @Test
+    public void damagedFileReadsAsEmpty() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{0x43, 0x50, 0x48, 0x31, 0, 0, 0, 5, 0});
+        }
+        HashStore store = new HashStore(file);
+        store.load();
+        assertEquals(0, store.size());
+    }
+}
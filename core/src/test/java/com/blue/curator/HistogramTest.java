@@ -0,0 +1,78 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void bucketsCoverTheRangeInOrder() {
+        assertEquals(0, Histogram.bucketOf(0));
+        assertEquals(7, Histogram.bucketOf(7));
+        assertEquals(8, Histogram.bucketOf(8));
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucketOf(Long.MAX_VALUE));
+        long previous = -1;
+        for (int bucket = 0; bucket < Histogram.BUCKETS; bucket++) {
+            long lower = Histogram.lowerBound(bucket);
+            assertTrue(lower > previous);
+            assertEquals(bucket, Histogram.bucketOf(lower));
+            assertEquals(bucket - 1 < 0 ? 0 : bucket - 1, Histogram.bucketOf(Math.max(0, lower - 1)));
+            previous = lower;
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinABucket() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000_000L);  // 1..1000 ms
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1_000_000_000L, histogram.max());
+        assertEquals(500_500_000L, histogram.mean());
+        assertNear(500_000_000L, histogram.percentile(50));
+        assertNear(990_000_000L, histogram.percentile(99));
+        assertEquals(1_000_000_000L, histogram.percentile(100));
+    }
+
+    @Test
+    public void emptyAndNegative() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.percentile(50));
+        assertEquals(0, histogram.mean());
+        histogram.record(-5);
+        assertEquals(0, histogram.max());
+        assertEquals(1, histogram.count());
+    }
+
+    @Test
+    public void recordsFromManyThreads() throws Exception {
+        Histogram histogram = new Histogram();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            done.add(pool.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            }));
+        }
+        for (Future<?> future : done) {
+            future.get();
+        }
+        pool.shutdown();
+        assertEquals(40_000, histogram.count());
+        assertEquals(9_999, histogram.max());
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue(actual + " not within 12.5% of " + expected, Math.abs(actual - expected) <= expected / 8);
+    }
+}
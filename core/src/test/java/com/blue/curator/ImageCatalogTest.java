@@ -0,0 +1,30 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ImageCatalogTest {
+
+    @Test
+    public void positionsFollowPagesAndReplacement() {
+        ImageCatalog catalog = new ImageCatalog();
+        catalog.addAll(Arrays.asList(image("a"), image("b")));
+        catalog.addAll(Arrays.asList(image("c")));
+        assertEquals(2, catalog.positionOf("c"));
+        assertEquals(-1, catalog.positionOf("z"));
+        assertEquals(-1, catalog.positionOf(null));
+
+        catalog.replaceAll(Arrays.asList(image("c"), image("a")));
+        assertEquals(0, catalog.positionOf("c"));
+        assertEquals(1, catalog.positionOf("a"));
+        assertEquals(-1, catalog.positionOf("b"));
+        assertEquals(2, catalog.size());
+    }
+
+    private static ScannedImage image(String id) {
+        return new ScannedImage(id, id + ".jpg", "image/jpeg", 1, 1);
+    }
+}
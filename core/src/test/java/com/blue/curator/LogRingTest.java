@@ -0,0 +1,88 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LogRingTest {
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(2, new LogRing(1).capacity());
+        assertEquals(8, new LogRing(5).capacity());
+        assertEquals(8, new LogRing(8).capacity());
+        assertEquals(4096, new LogRing(4000).capacity());
+    }
+
+    @Test
+    public void consumerSeesOnlyPublishedEntriesInOrder() {
+        LogRing ring = new LogRing(4);
+        long first = ring.claim();
+        long second = ring.claim();
+        ring.slot(second).tag = "second";
+        ring.publish(second);
+        assertNull(ring.peek());  // The first is claimed but not yet published
+
+        ring.slot(first).tag = "first";
+        ring.publish(first);
+        LogRing.Slot slot = ring.peek();
+        assertEquals("first", slot.tag);
+        ring.release(slot);
+        assertNull(slot.tag);
+        assertEquals("second", ring.peek().tag);
+        ring.release(ring.peek());
+        assertNull(ring.peek());
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void dropsWhenFullInsteadOfWaiting() {
+        LogRing ring = new LogRing(2);
+        ring.publish(ring.claim());
+        ring.publish(ring.claim());
+
+        assertEquals(-1, ring.claim());
+        assertEquals(1, ring.dropped());
+
+        ring.release(ring.peek());
+        assertEquals(2, ring.claim());  // Freed slots are reused
+    }
+
+    @Test
+    public void concurrentProducersLoseNothingThatFits() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 10_000;
+        LogRing ring = new LogRing(producers * perProducer);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    long sequence = ring.claim();
+                    ring.slot(sequence).value = sequence;
+                    ring.publish(sequence);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        for (long expected = 0; expected < producers * perProducer; expected++) {
+            LogRing.Slot slot = ring.peek();
+            assertEquals(expected, slot.value);
+            ring.release(slot);
+        }
+        assertEquals(0, ring.dropped());
+    }
+}
@@ -0,0 +1,37 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    private long now;
+
+    @Test
+    public void reportsTimingsInMillisecondsAndRatesPerMinute() {
+        Metrics metrics = new Metrics(() -> now);
+        metrics.record(Metrics.FIRST_PIXEL_NANOS, TimeUnit.MILLISECONDS.toNanos(40));
+        metrics.record(Metrics.EXPORT_BYTES_PER_SECOND, 2048);
+        metrics.mark(Metrics.DECISIONS);
+        now += TimeUnit.SECONDS.toNanos(30);
+        metrics.mark(Metrics.DECISIONS);
+        metrics.gauge(Metrics.PREFETCH_HIT_PERCENT, () -> 75);
+
+        String report = metrics.report();
+        assertTrue(report, report.contains("image.first_pixel_nanos: n=1 mean=40.0ms"));
+        assertTrue(report, report.contains("export.bytes_per_second: n=1 mean=2048"));
+        assertTrue(report, report.contains("decision: n=2 4.0/min"));
+        assertTrue(report, report.contains("prefetch.hit_percent: 75"));
+    }
+
+    @Test
+    public void oneMarkHasNoRateYet() {
+        Metrics metrics = new Metrics(() -> now);
+        metrics.mark(Metrics.DECISIONS);
+        assertEquals(0, metrics.meter(Metrics.DECISIONS).perMinute(), 0);
+        assertSame(metrics.histogram("a"), metrics.histogram("a"));
+    }
+}
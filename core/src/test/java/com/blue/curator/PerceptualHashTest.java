@@ -0,0 +1,62 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PerceptualHashTest {
+
+    @Test
+    public void brighterLeftPixelsSetBits() {
+        int[] pixels = new int[PerceptualHash.WIDTH * PerceptualHash.HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            int x = i % PerceptualHash.WIDTH;
+            pixels[i] = gray(255 - x * 20);  // Darker to the right
+        }
+        assertEquals(-1L, PerceptualHash.dHash(pixels));
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = gray(100);
+        }
+        assertEquals(0L, PerceptualHash.dHash(pixels));
+    }
+
+    @Test
+    public void smallChangesMoveFewBits() {
+        int[] pixels = gradient(0);
+        int[] brighter = gradient(12);  // Same scene, exposed a little brighter
+        assertEquals(0, PerceptualHash.distance(PerceptualHash.dHash(pixels), PerceptualHash.dHash(brighter)));
+        int[] mirrored = new int[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            int y = i / PerceptualHash.WIDTH;
+            int x = i % PerceptualHash.WIDTH;
+            mirrored[i] = pixels[y * PerceptualHash.WIDTH + PerceptualHash.WIDTH - 1 - x];
+        }
+        assertTrue(PerceptualHash.distance(PerceptualHash.dHash(pixels), PerceptualHash.dHash(mirrored)) > 32);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTheWrongSize() {
+        PerceptualHash.dHash(new int[64]);
+    }
+
+    @Test
+    public void distanceCountsDifferingBits() {
+        assertEquals(0, PerceptualHash.distance(0x1234L, 0x1234L));
+        assertEquals(64, PerceptualHash.distance(0L, -1L));
+        assertEquals(2, PerceptualHash.distance(0b1010L, 0b0110L));
+    }
+
+    private static int[] gradient(int offset) {
+        int[] pixels = new int[PerceptualHash.WIDTH * PerceptualHash.HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            int y = i / PerceptualHash.WIDTH;
+            int x = i % PerceptualHash.WIDTH;
+            pixels[i] = gray(Math.min(255, offset + ((x * 37 + y * 11) % 9) * 25));
+        }
+        return pixels;
+    }
+
+    private static int gray(int level) {
+        return 0xff000000 | (level << 16) | (level << 8) | level;
+    }
+}
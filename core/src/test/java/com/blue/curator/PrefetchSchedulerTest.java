@@ -0,0 +1,161 @@
+package com.blue.curator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PrefetchSchedulerTest {
+
+    private long now;
+    private final Map<Integer, Runnable> pending = new LinkedHashMap<>();
+    private final Map<Integer, Runnable> failing = new LinkedHashMap<>();
+    private final Map<Integer, Long> startedAt = new LinkedHashMap<>();
+    private final List<Integer> cancelled = new ArrayList<>();
+    private PrefetchScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new PrefetchScheduler(new PrefetchScheduler.Loader() {
+            @Override
+            public void prefetch(int position, Runnable whenReady, Runnable whenFailed) {
+                pending.put(position, whenReady);
+                failing.put(position, whenFailed);
+                startedAt.put(position, now);
+            }
+
+            @Override
+            public void cancel(int position) {
+                pending.remove(position);
+                cancelled.add(position);
+            }
+        }, () -> now);
+        scheduler.setCount(100);
+    }
+
+    @Test
+    public void neighboursWaitForTheCurrentImage() {
+        scheduler.onNavigate(10);
+        assertTrue(pending.isEmpty());
+
+        scheduler.onCurrentShown(10);
+        // Nearest first in the direction of travel, then one behind
+        assertEquals(Arrays.asList(11, 12, 9), new ArrayList<>(pending.keySet()).subList(0, 3));
+    }
+
+    @Test
+    public void countsHitsLateHitsAndMisses() {
+        scheduler.onNavigate(0);
+        scheduler.onCurrentShown(0);
+        finish(1);
+
+        step(1, 2_000);  // prefetched and ready
+        scheduler.onCurrentShown(1);
+        step(2, 2_000);  // requested but not ready yet
+        step(9, 2_000);  // never requested
+
+        assertEquals(1, scheduler.hits());
+        assertEquals(1, scheduler.lateHits());
+        assertEquals(2, scheduler.misses());  // 0 and 9
+    }
+
+    @Test
+    public void windowGrowsWhenTheUserSpeedsUp() {
+        scheduler.onNavigate(0);
+        scheduler.onCurrentShown(0);
+        int slow = scheduler.ahead();
+
+        // Decisions every 100 ms while a prefetch takes 300 ms
+        for (int position = 1; position <= 30; position++) {
+            step(position, 100);
+            finishStartedBefore(now - TimeUnit.MILLISECONDS.toNanos(300));
+            scheduler.onCurrentShown(position);
+        }
+        assertTrue(scheduler.ahead() > slow);
+        assertTrue(scheduler.ahead() <= PrefetchScheduler.MAX_AHEAD);
+    }
+
+    @Test
+    public void windowFollowsTheDirectionAndCancelsWhatFallsOut() {
+        scheduler.onNavigate(50);
+        scheduler.onCurrentShown(50);
+        assertTrue(pending.containsKey(51));
+
+        step(49, 2_000);
+        step(48, 2_000);
+        scheduler.onCurrentShown(48);
+
+        assertTrue(cancelled.contains(51));
+        assertTrue(pending.containsKey(47));
+        assertFalse(pending.containsKey(51));
+    }
+
+    @Test
+    public void resetCancelsEverything() {
+        scheduler.onNavigate(5);
+        scheduler.onCurrentShown(5);
+        int started = pending.size();
+
+        scheduler.reset();
+        assertTrue(pending.isEmpty());
+        assertEquals(started, scheduler.cancelled());
+    }
+
+    @Test
+    public void capacityDropsTheFarthestNeighbours() {
+        scheduler.setCapacity(2);
+        scheduler.onNavigate(10);
+        scheduler.onCurrentShown(10);
+        assertEquals(Arrays.asList(11, 12), new ArrayList<>(pending.keySet()));
+    }
+
+    @Test
+    public void failedPrefetchFreesItsSlot() {
+        scheduler.setCapacity(2);
+        scheduler.onNavigate(10);
+        scheduler.onCurrentShown(10);
+        pending.remove(11);
+        failing.remove(11).run();
+        assertEquals(1, scheduler.failed());
+
+        scheduler.onCurrentShown(10);
+        assertEquals(Arrays.asList(12, 11), new ArrayList<>(pending.keySet()));
+        assertEquals(3, scheduler.issued());
+    }
+
+    @Test
+    public void staysInsideTheList() {
+        scheduler.setCount(3);
+        scheduler.onNavigate(2);
+        scheduler.onCurrentShown(2);
+        assertEquals(Arrays.asList(1), new ArrayList<>(pending.keySet()));
+    }
+
+    private void step(int position, long afterMillis) {
+        now += TimeUnit.MILLISECONDS.toNanos(afterMillis);
+        scheduler.onNavigate(position);
+    }
+
+    private void finishStartedBefore(long time) {
+        for (Map.Entry<Integer, Long> started : new ArrayList<>(startedAt.entrySet())) {
+            if (started.getValue() <= time) {
+                startedAt.remove(started.getKey());
+                finish(started.getKey());
+            }
+        }
+    }
+
+    private void finish(int position) {
+        Runnable whenReady = pending.remove(position);
+        if (whenReady != null) {
+            whenReady.run();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.blue.curator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RootLibraryTest {
+
+    private static final String CARD_A = "content://tree/primary%3ADCIM%2FCardA";
+    private static final String CARD_B = "content://tree/primary%3ADCIM%2FCardB";
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("library").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.deleteRecursively(dir);
+    }
+
+    @Test
+    public void keepsRootsAndResumePointsAcrossOpens() throws IOException {
+        RootLibrary library = RootLibrary.open(dir);
+        library.use(CARD_A, "CardA", 1000);
+        library.use(CARD_B, "CardB", 2000);
+        library.setResumePoint(CARD_A, "doc:7", "doc:6");
+        library.save();
+
+        RootLibrary reopened = RootLibrary.open(dir);
+        assertEquals(2, reopened.size());
+        RootLibrary.Root a = reopened.get(CARD_A);
+        assertEquals("CardA", a.getName());
+        assertEquals("doc:7", a.getLastViewedDocumentId());
+        assertEquals("doc:6", a.getLastDecidedDocumentId());
+        assertNull(reopened.get(CARD_B).getLastViewedDocumentId());
+    }
+
+    @Test
+    public void listsMostRecentlyUsedFirst() {
+        RootLibrary library = RootLibrary.open(dir);
+        library.use(CARD_A, "CardA", 1000);
+        library.use(CARD_B, "CardB", 2000);
+        library.use(CARD_A, "ignored", 3000);
+
+        List<RootLibrary.Root> roots = library.roots();
+        assertEquals(CARD_A, roots.get(0).getTreeUri());
+        assertEquals("CardA", roots.get(0).getName());  // Using a root again keeps its name
+        assertEquals(CARD_B, roots.get(1).getTreeUri());
+    }
+
+    @Test
+    public void everyRootHasItsOwnDirectory() {
+        RootLibrary library = RootLibrary.open(dir);
+        assertNotEquals(library.directoryFor(CARD_A), library.directoryFor(CARD_B));
+        assertEquals(dir, library.directoryFor(CARD_A).getParentFile());
+    }
+
+    @Test
+    public void adoptsLegacyStateOnlyIntoARootWithoutItsOwn() throws IOException {
+        RootLibrary library = RootLibrary.open(dir);
+        File legacy = new File(dir, "legacy");
+        assertTrue(legacy.mkdirs());
+        write(new File(legacy, "decisions.journal"));
+        write(new File(legacy, "selected.txt"));
+
+        assertEquals(2, library.adopt(CARD_A, legacy, "decisions.journal", "decisions.snapshot", "selected.txt"));
+        assertTrue(new File(library.directoryFor(CARD_A), "decisions.journal").exists());
+        assertFalse(new File(legacy, "decisions.journal").exists());
+
+        write(new File(legacy, "decisions.journal"));
+        assertEquals(0, library.adopt(CARD_A, legacy, "decisions.journal"));
+        assertTrue(new File(legacy, "decisions.journal").exists());
+    }
+
+    @Test
+    public void damagedLibraryReadsAsEmpty() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(new File(dir, RootLibrary.LIBRARY_FILE))) {
+            out.write(new byte[]{0x43, 0x52, 0x4c, 0x31, 0, 0, 0, 5, 1});
+        }
+        assertEquals(0, RootLibrary.open(dir).size());
+    }
+
+    @Test
+    public void removedRootCanComeBack() {
+        RootLibrary library = RootLibrary.open(dir);
+        library.use(CARD_A, "CardA", 1000);
+        assertTrue(library.remove(CARD_A));
+        assertFalse(library.remove(CARD_A));
+        assertNull(library.get(CARD_A));
+    }
+
+    private static void write(File file) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(1);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.blue.curator;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RootSchedulerTest {
+
+    private final RootScheduler scheduler = new RootScheduler(2);
+
+    @After
+    public void tearDown() throws InterruptedException {
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void runsOneRootsWorkInOrderAndOneAtATime() throws Exception {
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        Future<?> last = null;
+        for (int i = 0; i < 50; i++) {
+            int n = i;
+            last = scheduler.submit("a", () -> {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                order.add(n);
+                running.decrementAndGet();
+            });
+        }
+        last.get(10, TimeUnit.SECONDS);
+
+        assertEquals(0, overlaps.get());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void rootsRunSideBySide() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        Future<Boolean> a = scheduler.submit("a", () -> {
+            bothStarted.countDown();
+            return bothStarted.await(10, TimeUnit.SECONDS);
+        });
+        Future<Boolean> b = scheduler.submit("b", () -> {
+            bothStarted.countDown();
+            return bothStarted.await(10, TimeUnit.SECONDS);
+        });
+
+        assertTrue(a.get(10, TimeUnit.SECONDS));
+        assertTrue(b.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void aBusyRootDoesNotHoldUpAnother() throws Exception {
+        RootScheduler single = new RootScheduler(1);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            List<String> order = Collections.synchronizedList(new ArrayList<>());
+            single.submit("a", () -> {
+                release.await();
+                return null;
+            });
+            for (int i = 0; i < 3; i++) {
+                single.submit("a", () -> order.add("a"));
+            }
+            Future<?> b = single.submit("b", () -> order.add("b"));
+            release.countDown();
+            b.get(10, TimeUnit.SECONDS);
+
+            assertEquals("b", order.get(0));  // Its turn came before the rest of a's backlog
+        } finally {
+            single.shutdown();
+            single.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void cancelDropsWorkThatHasNotStarted() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> started = scheduler.submit("a", () -> {
+            running.countDown();
+            release.await();
+            return null;
+        });
+        Future<?> queued = scheduler.submit("a", () -> fail("Cancelled work ran"));
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+
+        assertEquals(1, scheduler.pending("a"));
+        assertEquals(1, scheduler.cancel("a"));
+        assertTrue(queued.isCancelled());
+        release.countDown();
+        started.get(10, TimeUnit.SECONDS);
+        assertEquals(0, scheduler.pending("a"));
+    }
+
+    @Test
+    public void failuresStayInTheirFuture() throws Exception {
+        Future<?> failing = scheduler.submit("a", () -> {
+            throw new IllegalStateException("boom");
+        });
+        Future<String> next = scheduler.submit("a", () -> "still running");
+
+        try {
+            failing.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals("still running", next.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shutdownFinishesQueuedWork() throws Exception {
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 20; i++) {
+            scheduler.submit("a", done::incrementAndGet);
+            scheduler.submit("b", done::incrementAndGet);
+        }
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(40, done.get());
+    }
+}
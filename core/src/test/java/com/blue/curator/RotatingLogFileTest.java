@@ -0,0 +1,68 @@
+package com.blue.curator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class RotatingLogFileTest {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("log").toFile();
+        file = new File(dir, "ErrorLog.txt");
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.deleteRecursively(dir);
+    }
+
+    @Test
+    public void namesHistoryAfterTheFile() {
+        RotatingLogFile log = new RotatingLogFile(file, 100, 2);
+        assertEquals(new File(dir, "ErrorLog.1.txt"), log.historyFile(1));
+        assertEquals(new File(dir, "ErrorLog.2.txt"), log.historyFile(2));
+    }
+
+    @Test
+    public void rollsOverAndKeepsOnlyTheNewestHistory() throws IOException {
+        RotatingLogFile log = new RotatingLogFile(file, 10, 2);
+        log.append("aaaaaaaa\n");
+        log.append("bbbbbbbb\n");
+        log.append("cccccccc\n");
+        log.append("dddddddd\n");
+        log.close();
+
+        assertEquals("dddddddd\n", read(file));
+        assertEquals("cccccccc\n", read(log.historyFile(1)));
+        assertEquals("bbbbbbbb\n", read(log.historyFile(2)));
+        assertFalse(log.historyFile(3).exists());
+    }
+
+    @Test
+    public void appendsToWhatAnEarlierProcessWrote() throws IOException {
+        RotatingLogFile first = new RotatingLogFile(file, 100, 2);
+        first.append("before\n");
+        first.close();
+
+        RotatingLogFile second = new RotatingLogFile(file, 100, 2);
+        second.append("after\n");
+        second.close();
+
+        assertEquals("before\nafter\n", read(file));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
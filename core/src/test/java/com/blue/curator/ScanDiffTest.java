@@ -0,0 +1,88 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScanDiffTest {
+
+    @Test
+    public void keepsOrderAndInsertsNewImagesAfterTheirScanNeighbour() {
+        List<ScannedImage> current = images("a", "b", "c", "d");
+        List<ScannedImage> scanned = images("new0", "a", "c", "new1", "new2", "d");
+
+        ScanDiff diff = ScanDiff.apply(current, scanned);
+
+        assertEquals(Arrays.asList("new0", "a", "c", "new1", "new2", "d"), ids(diff.images()));
+        assertEquals(3, diff.added());
+        assertEquals(1, diff.removed());
+        assertFalse(diff.isEmpty());
+    }
+
+    @Test
+    public void savedPositionFollowsItsImage() {
+        List<ScannedImage> current = images("a", "b", "c", "d");
+        ScanDiff diff = ScanDiff.apply(current, images("x", "y", "a", "b", "c", "d"));
+        assertEquals("c", diff.images().get(diff.positionOf(2)).getDocumentId());
+
+        // The current image was deleted: land on the one after it
+        diff = ScanDiff.apply(current, images("a", "b", "d"));
+        assertEquals("d", diff.images().get(diff.positionOf(2)).getDocumentId());
+
+        // Everything after it is gone too: land on the last one left
+        diff = ScanDiff.apply(current, images("a"));
+        assertEquals("a", diff.images().get(diff.positionOf(3)).getDocumentId());
+    }
+
+    @Test
+    public void unchangedScanIsEmpty() {
+        List<ScannedImage> current = images("a", "b");
+        assertTrue(ScanDiff.apply(current, images("b", "a")).isEmpty());
+        assertEquals(Arrays.asList("a", "b"), ids(ScanDiff.apply(current, images("b", "a")).images()));
+    }
+
+    @Test
+    public void manifestRoundTrips() throws IOException {
+        File dir = Files.createTempDirectory("manifest").toFile();
+        try {
+            ScanManifest manifest = new ScanManifest(ScanManifest.fileFor(dir, "content://tree/primary%3ADCIM"));
+            assertTrue(manifest.load().isEmpty());
+
+            List<ScannedImage> saved = new ArrayList<>();
+            saved.add(new ScannedImage("a", "2024/burst", "IMG_1.jpg", "image/jpeg", 123, 456));
+            saved.add(new ScannedImage("b", "", "IMG_2.heic", "image/heic", 7, 8));
+            manifest.save(saved);
+
+            List<ScannedImage> loaded = manifest.load();
+            assertEquals(ids(saved), ids(loaded));
+            assertEquals("2024/burst", loaded.get(0).getFolderPath());
+            assertEquals(123, loaded.get(0).getSize());
+            assertEquals(8, loaded.get(1).getLastModified());
+        } finally {
+            TestFiles.deleteRecursively(dir);
+        }
+    }
+
+    private static List<ScannedImage> images(String... ids) {
+        List<ScannedImage> images = new ArrayList<>();
+        for (String id : ids) {
+            images.add(new ScannedImage(id, id + ".jpg", "image/jpeg", 1, 1));
+        }
+        return images;
+    }
+
+    private static List<String> ids(List<ScannedImage> images) {
+        List<String> ids = new ArrayList<>();
+        for (ScannedImage image : images) {
+            ids.add(image.getDocumentId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,59 @@
+package com.blue.curator;
+
+import java.util.function.LongConsumer;
+
+/**
+ * A {@link VoiceRecognizer} that reports whatever the test scripts, advancing
+ * a fake clock between events the way a real recognizer's latency would.
+ */
+class ScriptedRecognizer implements VoiceRecognizer {
+
+    private final LongConsumer advanceNanos;
+    private Listener listener;
+    int starts;
+    int cancels;
+    boolean listening;
+    boolean destroyed;
+
+    ScriptedRecognizer(LongConsumer advanceNanos) {
+        this.advanceNanos = advanceNanos;
+    }
+
+    /** Speaks one utterance: each partial {@code partialNanos} after the last, then the final result. */
+    void say(long partialNanos, String... partials) {
+        listener.onSpeechStart();
+        for (String partial : partials) {
+            advanceNanos.accept(partialNanos);
+            listener.onPartial(partial);
+        }
+        advanceNanos.accept(partialNanos);
+        listener.onFinal(partials.length == 0 ? "" : partials[partials.length - 1]);
+    }
+
+    void fail(Failure failure, int code) {
+        listening = false;
+        listener.onFailure(failure, code);
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void start() {
+        starts++;
+        listening = true;
+    }
+
+    @Override
+    public void cancel() {
+        cancels++;
+        listening = false;
+    }
+
+    @Override
+    public void destroy() {
+        destroyed = true;
+    }
+}
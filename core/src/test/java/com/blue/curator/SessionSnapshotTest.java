@@ -0,0 +1,68 @@
+package com.blue.curator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class SessionSnapshotTest {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("session").toFile();
+        file = new File(dir, "session.snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.deleteRecursively(dir);
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        ScannedImage image = new ScannedImage("doc:42", "2024/burst", "IMG_42.jpg", "image/jpeg", 1234, 5678);
+        new SessionSnapshot("content://tree/primary%3ADCIM", image, 41, 300, new int[]{12, 30, 4}).write(file);
+
+        SessionSnapshot read = SessionSnapshot.read(file);
+        assertNotNull(read);
+        assertEquals("content://tree/primary%3ADCIM", read.getTreeUri());
+        assertEquals("doc:42", read.getImage().getDocumentId());
+        assertEquals("2024/burst", read.getImage().getFolderPath());
+        assertEquals(5678, read.getImage().getLastModified());
+        assertEquals(41, read.getPosition());
+        assertEquals(300, read.getImageCount());
+        assertEquals(12, read.count(1));
+        assertEquals(4, read.count(3));
+        assertEquals(0, read.count(4));
+        assertFalse(new File(dir, "session.snapshot.tmp").exists());
+    }
+
+    @Test
+    public void keepsAMissingNameAndTypeMissing() throws IOException {
+        ScannedImage image = new ScannedImage("doc:7", "", null, null, 10, 20);
+        new SessionSnapshot("content://tree/x", image, 0, 1, new int[]{0, 0, 0}).write(file);
+
+        SessionSnapshot read = SessionSnapshot.read(file);
+        assertNotNull(read);
+        assertNull(read.getImage().getDisplayName());
+        assertNull(read.getImage().getMimeType());
+    }
+
+    @Test
+    public void missingOrDamagedSnapshotReadsAsNone() throws IOException {
+        assertNull(SessionSnapshot.read(file));
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{0x43, 0x53, 0x53, 0x31, 0, 5, 'a'});  // Cut off mid-record
+        }
+        assertNull(SessionSnapshot.read(file));
+    }
+}
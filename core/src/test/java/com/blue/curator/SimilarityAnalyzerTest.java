@@ -0,0 +1,119 @@
+package com.blue.curator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SimilarityAnalyzerTest {
+
+    private File dir;
+    private SimilarityAnalyzer analyzer;
+    private final Map<String, Long> hashes = new HashMap<>();
+    private final Set<String> hashedIds = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("hashes").toFile();
+        analyzer = new SimilarityAnalyzer(4);
+        // A burst of three, a pair, and two unrelated images
+        hashes.put("burst1", 0x0f0f0f0f0f0f0f0fL);
+        hashes.put("burst2", 0x0f0f0f0f0f0f0f0eL);
+        hashes.put("burst3", 0x0f0f0f0f0f0f0f1fL);
+        hashes.put("pair1", 0x123456789abcdef0L);
+        hashes.put("pair2", 0x123456789abcdef1L);
+        hashes.put("alone1", 0L);
+        hashes.put("alone2", -1L);
+    }
+
+    @After
+    public void tearDown() {
+        analyzer.shutdown();
+        TestFiles.deleteRecursively(dir);
+    }
+
+    @Test
+    public void clustersNearDuplicatesInScanOrder() throws Exception {
+        SimilarityClusters clusters = analyze(images("burst1", "alone1", "pair1", "burst2", "pair2", "burst3", "alone2"));
+        assertEquals(2, clusters.clusterCount());
+        assertEquals(5, clusters.clusteredImages());
+        assertEquals(Arrays.asList("burst1", "burst2", "burst3"), clusters.clusterOf("burst3"));
+        assertEquals(Arrays.asList("pair1", "pair2"), clusters.clusterOf("pair1"));
+        assertTrue(clusters.clusterOf("alone1").isEmpty());
+        assertTrue(clusters.clusterOf("unknown").isEmpty());
+    }
+
+    @Test
+    public void clustersDoNotChainThroughNeighbours() {
+        // b is near a and c, but a and c are far apart
+        long a = 0L;
+        long b = 0xffL;
+        long c = 0xffffL;
+        SimilarityClusters clusters = SimilarityClusters.of(Arrays.asList("a", "b", "c"), new long[]{a, b, c}, 8);
+        assertEquals(Arrays.asList("a", "b"), clusters.clusterOf("a"));
+        assertTrue(clusters.clusterOf("c").isEmpty());
+    }
+
+    @Test
+    public void storedHashesAreReusedUntilTheImageChanges() throws Exception {
+        List<ScannedImage> images = images("burst1", "burst2", "alone1");
+        analyze(images);
+        assertEquals(3, hashedIds.size());
+
+        hashedIds.clear();
+        images.set(1, new ScannedImage("burst2", "burst2.jpg", "image/jpeg", 1000, 99));  // Edited
+        SimilarityClusters clusters = analyze(images);
+        assertEquals(Set.of("burst2"), hashedIds);
+        assertEquals(Arrays.asList("burst1", "burst2"), clusters.clusterOf("burst1"));
+    }
+
+    @Test
+    public void imagesThatCannotBeHashedAreLeftOut() throws Exception {
+        hashes.remove("pair2");
+        SimilarityClusters clusters = analyze(images("pair1", "pair2", "burst1", "burst2"));
+        assertTrue(clusters.clusterOf("pair1").isEmpty());
+        assertEquals(Arrays.asList("burst1", "burst2"), clusters.clusterOf("burst2"));
+    }
+
+    private SimilarityClusters analyze(List<ScannedImage> images) throws InterruptedException {
+        HashStore store = new HashStore(new File(dir, "test.hashes"));
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<SimilarityClusters> result = new AtomicReference<>();
+        analyzer.analyze(images, image -> {
+            hashedIds.add(image.getDocumentId());
+            Long hash = hashes.get(image.getDocumentId());
+            if (hash == null) {
+                throw new IOException("Cannot decode " + image.getDocumentId());
+            }
+            return hash;
+        }, store, SimilarityClusters.DEFAULT_MAX_DISTANCE, (clusters, stats) -> {
+            result.set(clusters);
+            done.countDown();
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        return result.get();
+    }
+
+    private static List<ScannedImage> images(String... ids) {
+        List<ScannedImage> images = new ArrayList<>();
+        for (String id : ids) {
+            images.add(new ScannedImage(id, id + ".jpg", "image/jpeg", 1000, 1));
+        }
+        return images;
+    }
+}
@@ -0,0 +1,44 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StartupTimingTest {
+
+    private long now = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    public void coldStartCountsFromProcessStart() {
+        Metrics metrics = new Metrics(() -> now);
+        long processStart = now - TimeUnit.MILLISECONDS.toNanos(300);
+        StartupTiming timing = new StartupTiming(StartupTiming.Kind.COLD, processStart, () -> now);
+        now += TimeUnit.MILLISECONDS.toNanos(5);
+        timing.mark("session restored");
+        now += TimeUnit.MILLISECONDS.toNanos(95);
+        assertFalse(timing.isReady());
+        assertEquals(-1, timing.startupNanos());
+
+        assertTrue(timing.ready(metrics));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(400), timing.startupNanos());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), timing.sinceCreateNanos());
+        assertEquals(1, metrics.histogram(Metrics.STARTUP_COLD_NANOS).count());
+        assertEquals(0, metrics.histogram(Metrics.STARTUP_WARM_NANOS).count());
+        assertEquals("cold start: 400 ms (session restored 305 ms)", timing.toString());
+    }
+
+    @Test
+    public void onlyTheFirstReadyCounts() {
+        Metrics metrics = new Metrics(() -> now);
+        StartupTiming timing = new StartupTiming(StartupTiming.Kind.WARM, now, () -> now);
+        now += TimeUnit.MILLISECONDS.toNanos(50);
+        assertTrue(timing.ready(metrics));
+        now += TimeUnit.MILLISECONDS.toNanos(50);
+        assertFalse(timing.ready(metrics));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), timing.startupNanos());
+        assertEquals(1, metrics.histogram(Metrics.STARTUP_WARM_NANOS).count());
+        assertEquals("warm start: 50 ms", timing.toString());
+    }
+}
@@ -0,0 +1,19 @@
+package com.blue.curator;
+
+import java.io.File;
+
+final class TestFiles {
+
+    private TestFiles() {
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,86 @@
+package com.blue.curator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailPagerTest {
+
+    private final Map<Integer, Runnable> pending = new LinkedHashMap<>();
+    private final List<Integer> cancelled = new ArrayList<>();
+    private ThumbnailPager pager;
+
+    @Before
+    public void setUp() {
+        pager = new ThumbnailPager(new PrefetchScheduler.Loader() {
+            @Override
+            public void prefetch(int position, Runnable whenReady, Runnable whenFailed) {
+                pending.put(position, whenReady);
+            }
+
+            @Override
+            public void cancel(int position) {
+                pending.remove(position);
+                cancelled.add(position);
+            }
+        }, 4);
+        pager.setCount(100);
+    }
+
+    @Test
+    public void loadsThePageAheadInTheDirectionOfTravel() {
+        pager.onVisibleRange(0, 11);
+        assertEquals(Arrays.asList(12, 13, 14, 15), new ArrayList<>(pending.keySet()));
+
+        finishAll();
+        pager.onVisibleRange(40, 51);
+        pending.clear();
+        pager.onVisibleRange(36, 47);
+        // Scrolling back loads above the visible rows
+        assertEquals(Arrays.asList(35, 34, 33, 32), new ArrayList<>(pending.keySet()));
+    }
+
+    @Test
+    public void doesNotReloadWhatIsInFlightOrLoaded() {
+        pager.onVisibleRange(0, 11);
+        pending.remove(12).run();
+        pager.onVisibleRange(1, 12);
+        // 13-15 still in flight, 12 loaded; only 16 is new
+        assertEquals(Arrays.asList(13, 14, 15, 16), new ArrayList<>(pending.keySet()));
+        assertEquals(4, pager.inFlight());
+    }
+
+    @Test
+    public void cancelsLoadsScrolledOutOfReach() {
+        pager.onVisibleRange(0, 11);
+        pager.onVisibleRange(40, 51);
+        assertEquals(Arrays.asList(12, 13, 14, 15), cancelled);
+        assertEquals(Arrays.asList(52, 53, 54, 55), new ArrayList<>(pending.keySet()));
+    }
+
+    @Test
+    public void stopsAtTheEnds() {
+        pager.onVisibleRange(90, 98);
+        assertEquals(Arrays.asList(99), new ArrayList<>(pending.keySet()));
+
+        pager.setCount(100);
+        assertEquals(Arrays.asList(99), cancelled);
+        pager.onVisibleRange(0, 11);
+        pager.onVisibleRange(0, 11);
+        assertEquals(4, pager.inFlight());
+    }
+
+    private void finishAll() {
+        for (Runnable whenReady : new ArrayList<>(pending.values())) {
+            whenReady.run();
+        }
+        pending.clear();
+    }
+}
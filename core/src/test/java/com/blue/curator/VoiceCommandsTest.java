@@ -0,0 +1,63 @@
+package com.blue.curator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VoiceCommandsTest {
+
+    private final VoiceCommands commands = new VoiceCommands();
+
+    @Test
+    public void findsCommandsAndSoundAlikes() {
+        assertEquals(VoiceCommands.Command.YES, commands.find("Yes"));
+        assertEquals(VoiceCommands.Command.YES, commands.find("yeah!"));
+        assertEquals(VoiceCommands.Command.NO, commands.find("nope"));
+        assertEquals(VoiceCommands.Command.NO, commands.find("I know"));
+        assertEquals(VoiceCommands.Command.EXIT, commands.find("exit"));
+        assertNull(commands.find("yesterday"));
+        assertNull(commands.find(""));
+    }
+
+    @Test
+    public void longestPhraseWins() {
+        assertEquals(VoiceCommands.Command.NOT_SURE, commands.find("not sure"));
+        assertEquals(VoiceCommands.Command.NOT_SURE, commands.find("Not shure"));
+        // "not" alone is too short to be a mishearing of "no"
+        assertNull(commands.find("not"));
+    }
+
+    @Test
+    public void toleratesOneEditInLongerWords() {
+        assertEquals(VoiceCommands.Command.EXIT, commands.find("exist"));
+        assertEquals(VoiceCommands.Command.NOT_SURE, commands.find("unshure"));
+        assertNull(commands.find("yet"));
+        assertTrue(VoiceCommands.withinOneEdit("sure", "sur"));
+        assertTrue(VoiceCommands.withinOneEdit("sure", "shure"));
+        assertTrue(VoiceCommands.withinOneEdit("sure", "sore"));
+        assertFalse(VoiceCommands.withinOneEdit("sure", "shore"));
+        assertFalse(VoiceCommands.withinOneEdit("sure", "su"));
+    }
+
+    @Test
+    public void soundAlikesMatchOnlyExactly() {
+        assertNull(commands.find("now"));
+        assertNull(commands.find("none"));
+        assertNull(commands.find("snow"));
+        assertNull(commands.find("knew"));
+        assertNull(commands.find("hope"));
+        assertNull(commands.find("note"));
+        assertNull(commands.find("yeap"));
+    }
+
+    @Test
+    public void findsFromAWordOnward() {
+        String[] words = VoiceCommands.words("yes, and no");
+        VoiceCommands.Match first = commands.find(words, 0);
+        assertEquals(VoiceCommands.Command.YES, first.command);
+        VoiceCommands.Match second = commands.find(words, first.end);
+        assertEquals(VoiceCommands.Command.NO, second.command);
+        assertEquals(3, second.end);
+        assertNull(commands.find(words, second.end));
+    }
+}
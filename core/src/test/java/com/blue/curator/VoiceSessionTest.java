@@ -0,0 +1,137 @@
+package com.blue.curator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class VoiceSessionTest {
+
+    private static final long PARTIAL_NANOS = TimeUnit.MILLISECONDS.toNanos(150);
+
+    private long now;
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<Long> delays = new ArrayList<>();
+    private final List<String> heard = new ArrayList<>();
+    private int unavailable = -1;
+    private ScriptedRecognizer recognizer;
+    private VoiceSession session;
+
+    @Before
+    public void setUp() {
+        recognizer = new ScriptedRecognizer(nanos -> now += nanos);
+        session = new VoiceSession(recognizer, new VoiceCommands(), new DecisionInput.Timer() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                scheduled.add(task);
+                delays.add(delayMillis);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                scheduled.remove(task);
+            }
+        }, () -> now, new VoiceSession.Listener() {
+            @Override
+            public void onCommand(VoiceCommands.Command command, int token) {
+                heard.add(command + " " + token);
+            }
+
+            @Override
+            public void onUnavailable(int code) {
+                unavailable = code;
+            }
+        });
+        session.start();
+    }
+
+    @Test
+    public void actsOnTheFirstPartialThatHoldsACommand() {
+        session.arm(1);
+        recognizer.say(PARTIAL_NANOS, "uh", "uh yes", "uh yes");
+        assertEquals(Arrays.asList("YES 1"), heard);
+        // Two partials in, not after the final result
+        assertEquals(2 * PARTIAL_NANOS, session.meanLatencyNanos());
+    }
+
+    @Test
+    public void staysListeningAcrossUtterances() {
+        session.arm(1);
+        recognizer.say(PARTIAL_NANOS, "yes");
+        session.arm(2);
+        recognizer.say(PARTIAL_NANOS, "no");
+        assertEquals(Arrays.asList("YES 1", "NO 2"), heard);
+        assertEquals(3, recognizer.starts);
+        assertTrue(recognizer.listening);
+    }
+
+    @Test
+    public void secondCommandInOneBreathGoesToTheNextImage() {
+        session.arm(1);
+        recognizer.say(PARTIAL_NANOS, "yes");
+        // Partials keep growing within an utterance; only the new words count
+        session.arm(2);
+        recognizer.say(PARTIAL_NANOS, "no", "no no");
+        assertEquals(Arrays.asList("YES 1", "NO 2", "NO 2"), heard);
+    }
+
+    @Test
+    public void dropsCommandsWhileDisarmed() {
+        recognizer.say(PARTIAL_NANOS, "yes");
+        session.arm(4);
+        session.disarm();
+        recognizer.say(PARTIAL_NANOS, "no");
+        assertTrue(heard.isEmpty());
+        assertEquals(2, session.unarmed());
+    }
+
+    @Test
+    public void restartsAfterFailuresWithBackoff() {
+        recognizer.fail(VoiceRecognizer.Failure.NO_SPEECH, 6);
+        assertEquals(2, recognizer.starts);
+        assertTrue(scheduled.isEmpty());
+
+        for (int i = 0; i < 8; i++) {
+            recognizer.fail(VoiceRecognizer.Failure.TRANSIENT, 8);
+            assertEquals(2 + i, recognizer.starts);
+            scheduled.remove(0).run();
+        }
+        assertEquals(Arrays.asList(250L, 500L, 1000L, 2000L, 4000L, 8000L, 8000L, 8000L), delays);
+
+        // A result resets the backoff
+        recognizer.say(PARTIAL_NANOS, "hello");
+        assertEquals(VoiceSession.INITIAL_BACKOFF_MILLIS, session.backoffMillis());
+    }
+
+    @Test
+    public void stopCancelsAPendingRestart() {
+        recognizer.fail(VoiceRecognizer.Failure.TRANSIENT, 8);
+        assertEquals(1, scheduled.size());
+        session.stop();
+        assertTrue(scheduled.isEmpty());
+        assertFalse(session.isRunning());
+
+        session.start();
+        assertEquals(2, recognizer.starts);
+    }
+
+    @Test
+    public void fatalFailureEndsTheSession() {
+        recognizer.fail(VoiceRecognizer.Failure.FATAL, 9);
+        assertEquals(9, unavailable);
+        assertFalse(session.isRunning());
+        assertEquals(1, recognizer.starts);
+    }
+
+    @Test
+    public void destroyReleasesTheRecognizer() {
+        session.destroy();
+        assertEquals(1, recognizer.cancels);
+        assertTrue(recognizer.destroyed);
+    }
+}
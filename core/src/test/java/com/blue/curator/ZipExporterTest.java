@@ -0,0 +1,154 @@
+package com.blue.curator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.*;
+
+public class ZipExporterTest {
+
+    private File root;
+    private final Map<String, byte[]> contents = new HashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final ExportTarget.Transfer transfer = new ExportTarget.Transfer() {
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void addBytes(long count) {
+            bytes.addAndGet(count);
+        }
+    };
+    private ZipExporter exporter;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("zip").toFile();
+        for (String id : new String[]{"a", "b", "c"}) {
+            byte[] data = new byte[50_000 * (id.charAt(0) - 'a' + 1)];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) (i * 31 + id.charAt(0));
+            }
+            contents.put(id, data);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (exporter != null) {
+            exporter.shutdown();
+        }
+        TestFiles.deleteRecursively(root);
+    }
+
+    @Test
+    public void storesJpegsAndDeflatesTheRest() throws Exception {
+        exporter = new ZipExporter(this::open);
+        File zipFile = new File(root, "Yes.zip");
+        exporter.writeTo(Arrays.asList(
+                item("a", "IMG.jpg", "image/jpeg"),
+                item("b", "IMG.jpg", "image/jpeg"),
+                item("c", "scan.bmp", "image/bmp")), zipFile, transfer);
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            assertEquals(3, zip.size());
+            assertEntry(zip, "IMG.jpg", ZipEntry.STORED, "a");
+            assertEntry(zip, "IMG_1.jpg", ZipEntry.STORED, "b");
+            assertEntry(zip, "scan.bmp", ZipEntry.DEFLATED, "c");
+        }
+        assertEquals(300_000, bytes.get());
+        assertFalse(new File(root, "Yes.zip.part").exists());
+    }
+
+    @Test
+    public void filesOverTheReadAheadBudgetAreStreamed() throws Exception {
+        exporter = new ZipExporter(this::open, 1, 60_000);
+        File zipFile = new File(root, "No.zip");
+        exporter.writeTo(Arrays.asList(
+                item("c", "c.jpg", "image/jpeg"),
+                item("a", "a.jpg", "image/jpeg"),
+                item("b", "b.bmp", "image/bmp")), zipFile, transfer);
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            assertEntry(zip, "c.jpg", ZipEntry.STORED, "c");
+            assertEntry(zip, "a.jpg", ZipEntry.STORED, "a");
+            assertEntry(zip, "b.bmp", ZipEntry.DEFLATED, "b");
+        }
+    }
+
+    @Test
+    public void unreadableImageLeavesNoArchive() throws Exception {
+        exporter = new ZipExporter(this::open);
+        File zipFile = new File(root, "Yes.zip");
+        try {
+            exporter.writeTo(Arrays.asList(item("a", "a.jpg", "image/jpeg"),
+                    item("missing", "m.jpg", "image/jpeg")), zipFile, transfer);
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            // The whole archive is abandoned
+        }
+        assertFalse(zipFile.exists());
+        assertFalse(new File(root, "Yes.zip.part").exists());
+    }
+
+    @Test
+    public void exactCopiesAreLeftOut() throws Exception {
+        exporter = new ZipExporter(this::open);
+        File zipFile = new File(root, "Yes.zip");
+        exporter.writeTo(Arrays.asList(
+                item("a", "IMG.jpg", "image/jpeg"),
+                ExportItem.ofCopy(new ScannedImage("b", "IMG.jpg", "image/jpeg", 100_000, 1), "Yes"),
+                item("c", "c.jpg", "image/jpeg")), zipFile, transfer);
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            assertEquals(2, zip.size());
+            assertEntry(zip, "IMG.jpg", ZipEntry.STORED, "a");
+            assertNull(zip.getEntry("IMG_1.jpg"));
+            assertEntry(zip, "c.jpg", ZipEntry.STORED, "c");
+        }
+        assertEquals(200_000, bytes.get());
+    }
+
+    private void assertEntry(ZipFile zip, String name, int method, String id) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        assertNotNull(name, entry);
+        assertEquals(method, entry.getMethod());
+        try (InputStream in = zip.getInputStream(entry)) {
+            byte[] read = new byte[contents.get(id).length + 1];
+            int total = 0;
+            int length;
+            while ((length = in.read(read, total, read.length - total)) > 0) {
+                total += length;
+            }
+            assertArrayEquals(contents.get(id), Arrays.copyOf(read, total));
+        }
+    }
+
+    private InputStream open(String documentId) throws IOException {
+        byte[] data = contents.get(documentId);
+        if (data == null) {
+            throw new IOException("No such document " + documentId);
+        }
+        return new ByteArrayInputStream(data);
+    }
+
+    private ExportItem item(String id, String name, String mimeType) {
+        byte[] data = contents.get(id);
+        return new ExportItem(id, name, mimeType, data == null ? 0 : data.length, 1_600_000_000_000L, "Yes");
+    }
+}
@@ -19,3 +19,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "Curator"
 include(":app")
+include(":core")
+include(":benchmark")